@@ -46,17 +46,19 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 
 import jcifs.smb.SmbFile;
+import net.sf.regain.util.io.FieldValueFile;
 import net.sf.regain.util.io.PathFilenamePair;
+import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.WhitespaceAnalyzer;
@@ -78,6 +80,9 @@ import org.apache.lucene.util.Version;
  */
 public class RegainToolkit {
 
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(RegainToolkit.class);
+
   /** The encoding used for storing URLs in the index */
   public static final String INDEX_ENCODING = "UTF-8";
 
@@ -101,6 +106,14 @@ public class RegainToolkit {
   private static String mLineSeparator;
   /** The current version matching to the embedded lucene jars. */
   private static final Version LUCENE_VERSION = Version.LUCENE_36;
+  /**
+   * The methods needed for creating hard links: File.toPath() and
+   * Files.createLink(Path, Path). Is <code>null</code> if hard links are not
+   * supported by the JVM (they are supported since Java 7).
+   */
+  private static Method[] mHardLinkMethodArr;
+  /** Specifies whether {@link #mHardLinkMethodArr} was already looked up. */
+  private static boolean mHardLinkMethodsLookedUp;
 
 
 
@@ -181,6 +194,64 @@ public class RegainToolkit {
     }
   }
 
+  /**
+   * Creates a hard link to a file or copies the file if hard links are not
+   * supported.
+   * <p>
+   * NOTE: Only use this method for files that are never changed in place
+   * (like the files of a Lucene index), since a change of the one file would
+   * change the other one, too.
+   *
+   * @param from The source file.
+   * @param to The target file. Must not exist.
+   * @return Whether the file was copied (and not linked).
+   * @throws RegainException If both linking and copying failed.
+   */
+  public static boolean linkOrCopyFile(File from, File to) throws RegainException {
+    Method[] methodArr = getHardLinkMethods();
+    if (methodArr != null) {
+      try {
+        Object toPath = methodArr[0].invoke(to);
+        Object fromPath = methodArr[0].invoke(from);
+        methodArr[1].invoke(null, toPath, fromPath);
+        return false;
+      } catch (Exception exc) {
+        // The file system might not support hard links -> Copy the file
+        if (mLog.isDebugEnabled()) {
+          mLog.debug("Creating hard link failed for " + from.getAbsolutePath()
+                  + ". Copying the file instead.", exc);
+        }
+      }
+    }
+
+    copyFile(from, to);
+    return true;
+  }
+
+  /**
+   * Gets the methods needed for creating hard links.
+   *
+   * @return The methods File.toPath() and Files.createLink(Path, Path) or
+   *         <code>null</code> if the JVM doesn't support hard links.
+   */
+  private static synchronized Method[] getHardLinkMethods() {
+    if (! mHardLinkMethodsLookedUp) {
+      mHardLinkMethodsLookedUp = true;
+      try {
+        Class<?> pathClass = Class.forName("java.nio.file.Path");
+        Class<?> filesClass = Class.forName("java.nio.file.Files");
+        mHardLinkMethodArr = new Method[] {
+          File.class.getMethod("toPath"),
+          filesClass.getMethod("createLink", pathClass, pathClass)
+        };
+      } catch (Exception exc) {
+        mLog.info("Hard links are not supported by this JVM. Files will be copied.");
+        mHardLinkMethodArr = null;
+      }
+    }
+    return mHardLinkMethodArr;
+  }
+
   /**
    * Copies a file.
    *
@@ -497,89 +568,106 @@ public class RegainToolkit {
    * They will be extracted from the search index if there are no matching
    * cache files. After extracting the cache files will be created, so the next
    * call will be faster.
+   * <p>
+   * NOTE: The number of documents having a value includes deleted documents.
    *
    * @param indexReader The index reader to use for reading the field values.
    * @param fieldNameArr The names of the fields to read the destinct values for.
    * @param indexDir The index directory where to read or write the cached
    *        destinct values. May be null.
    * @return A hashmap containing for a field name (key, String) the sorted
-   *         array of destinct values (value, String[]).
+   *         destinct values together with the number of documents having each
+   *         value (value, FieldValueFile).
    * @throws RegainException If reading from the index failed. Or if reading or
    *         writing a cache file failed.
    */
-  public static HashMap<String, String[]> readFieldValues(IndexReader indexReader,
+  public static HashMap<String, FieldValueFile> readFieldValues(IndexReader indexReader,
           String[] fieldNameArr, File indexDir)
           throws RegainException {
     // Create the result map
-    HashMap<String, String[]> resultMap = new HashMap<String, String[]>();
+    HashMap<String, FieldValueFile> resultMap = new HashMap<String, FieldValueFile>();
 
-    // Try to read the field values from the cache files
-    // and remember the failed field names in a set
-    HashMap<String, ArrayList<String>> fieldsToReadSet = new HashMap<String, ArrayList<String>>();
     for (int i = 0; i < fieldNameArr.length; i++) {
       String field = fieldNameArr[i];
 
-      String[] fieldValueArr = null;
+      // Try to read the field values from the cache file
+      // NOTE: fieldValues stays null if the file does not exist
+      FieldValueFile fieldValues = null;
       if (indexDir != null) {
-        File fieldFile = new File(indexDir, "field_values_" + field + ".txt");
-
-        // NOTE: fieldValueArr stays null if the file does not exist
-        fieldValueArr = readListFromFile(fieldFile);
+        fieldValues = FieldValueFile.read(FieldValueFile.getFile(indexDir, field));
       }
 
-      if (fieldValueArr != null) {
-        resultMap.put(field, fieldValueArr);
-      } else {
+      if (fieldValues == null) {
         // There is no cache file -> We have to read the values from the index
-        fieldsToReadSet.put(field, new ArrayList<String>());
+        fieldValues = readFieldValuesFromIndex(indexReader, field);
+
+        // Write the results to a file
+        if (indexDir != null) {
+          fieldValues.write(FieldValueFile.getFile(indexDir, field));
+        }
       }
+
+      resultMap.put(field, fieldValues);
     }
 
-    // For bug-prevention: Enforce the usage of the fieldsToReadSet
-    // (There may be some field names removed)
-    fieldNameArr = null;
+    return resultMap;
+  }
 
-    // Read the terms
-    if (!fieldsToReadSet.isEmpty()) {
+  /**
+   * Reads the destinct values of a field from an index. Only the terms of the
+   * field are read.
+   *
+   * @param indexReader The index reader to use for reading the field values.
+   * @param field The name of the field to read the destinct values for.
+   * @return The sorted destinct values of the field.
+   * @throws RegainException If reading from the index failed.
+   */
+  private static FieldValueFile readFieldValuesFromIndex(IndexReader indexReader,
+          String field)
+          throws RegainException {
+    final ArrayList<String> valueList = new ArrayList<String>();
+    ArrayList<Integer> docFreqList = new ArrayList<Integer>();
+    try {
+      // Start at the first term of the field
+      TermEnum termEnum = indexReader.terms(new Term(field, ""));
       try {
-        TermEnum termEnum = indexReader.terms();
-        while (termEnum.next()) {
+        do {
           Term term = termEnum.term();
-          String field = term.field();
-
-          ArrayList<String> valueList = fieldsToReadSet.get(field);
-          if (valueList != null) {
-            // This is a value of a wanted field
-            valueList.add(term.text());
+          if ((term == null) || ! field.equals(term.field())) {
+            // We reached the terms of the next field
+            break;
           }
-        }
-      } catch (IOException exc) {
-        throw new RegainException("Reading terms from index failed", exc);
+          valueList.add(term.text());
+          docFreqList.add(termEnum.docFreq());
+        } while (termEnum.next());
+      } finally {
+        termEnum.close();
       }
+    } catch (IOException exc) {
+      throw new RegainException("Reading terms from index failed", exc);
     }
 
-    // Convert the lists into arrays.
-    for (Map.Entry<String, ArrayList<String>> entry : fieldsToReadSet.entrySet()) {
-      String field = entry.getKey();
-
-      ArrayList<String> valueList = entry.getValue();
-      String[] valueArr = new String[valueList.size()];
-      valueList.toArray(valueArr);
-
-      // Sort the array
-      Arrays.sort(valueArr);
-
-      // Add the array to results
-      resultMap.put(field, valueArr);
-
-      // Write the results to a file
-      if (indexDir != null) {
-        File fieldFile = new File(indexDir, "field_values_" + field + ".txt");
-        writeListToFile(valueArr, fieldFile);
+    // Sort the values the same way as before
+    // NOTE: The terms are already sorted by lucene, but maybe in another order
+    Integer[] orderArr = new Integer[valueList.size()];
+    for (int i = 0; i < orderArr.length; i++) {
+      orderArr[i] = i;
+    }
+    Arrays.sort(orderArr, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer index1, Integer index2) {
+        return valueList.get(index1).compareTo(valueList.get(index2));
       }
+    });
+
+    String[] valueArr = new String[orderArr.length];
+    int[] docFreqArr = new int[orderArr.length];
+    for (int i = 0; i < orderArr.length; i++) {
+      valueArr[i] = valueList.get(orderArr[i]);
+      docFreqArr[i] = docFreqList.get(orderArr[i]);
     }
 
-    return resultMap;
+    return new FieldValueFile(valueArr, docFreqArr);
   }
 
   /**
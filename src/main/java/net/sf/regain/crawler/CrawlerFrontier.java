@@ -0,0 +1,369 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The list of the crawler jobs that still have to be processed.
+ * <p>
+ * The frontier is shared by all crawler threads. Besides the waiting jobs it
+ * counts the jobs that were taken by a crawler thread but are not finished yet.
+ * This way the crawler knows when it is done: When there are neither waiting
+ * nor active jobs, no thread can find new URLs any more.
+ * <p>
+ * The frontier can be paused. While paused no jobs are handed out, so the
+ * crawler can wait until all active jobs are finished (see
+ * {@link #awaitIdle()}) and create a breakpoint. At a breakpoint the waiting
+ * jobs can be saved (see {@link #writeState(DataOutput)}), so the crawling can
+ * be resumed later.
+ * <p>
+ * Only a limited number of jobs is held in memory. If there are more, the
+ * jobs that are added at the end are appended to a temporary file and read
+ * back in batches when the jobs in memory are done.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class CrawlerFrontier {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(CrawlerFrontier.class);
+
+  /** The default maximum number of waiting jobs held in memory. */
+  public static final int DEFAULT_MAX_MEMORY_JOB_COUNT = 10000;
+
+  /** The jobs waiting for being processed that are held in memory. */
+  private LinkedList<CrawlerJob> mJobList;
+  /**
+   * The maximum number of waiting jobs held in memory. Jobs added at the end
+   * are written to the spill file if there are more.
+   */
+  private int mMaxMemoryJobCount;
+  /**
+   * The temporary file holding the waiting jobs that come after the jobs in
+   * memory. Is <code>null</code> if there are no such jobs.
+   */
+  private File mSpillFile;
+  /** The stream writing to {@link #mSpillFile}. */
+  private DataOutputStream mSpillOut;
+  /** The stream reading from {@link #mSpillFile}. */
+  private DataInputStream mSpillIn;
+  /** The number of jobs written to {@link #mSpillFile}. */
+  private int mSpillWriteCount;
+  /** The number of jobs read from {@link #mSpillFile}. */
+  private int mSpillReadCount;
+  /** The number of jobs that are waiting or active. */
+  private int mPendingJobCount;
+  /** The number of jobs that were taken, but are not finished yet. */
+  private int mActiveJobCount;
+  /** Specifies whether no jobs should be handed out at the moment. */
+  private boolean mPaused;
+  /** Specifies whether the crawling was stopped. */
+  private boolean mStopped;
+
+
+  /**
+   * Creates a new instance of CrawlerFrontier.
+   */
+  public CrawlerFrontier() {
+    this(DEFAULT_MAX_MEMORY_JOB_COUNT);
+  }
+
+
+  /**
+   * Creates a new instance of CrawlerFrontier.
+   *
+   * @param maxMemoryJobCount The maximum number of waiting jobs held in
+   *        memory.
+   */
+  public CrawlerFrontier(int maxMemoryJobCount) {
+    mJobList = new LinkedList<CrawlerJob>();
+    mMaxMemoryJobCount = Math.max(1, maxMemoryJobCount);
+  }
+
+
+  /**
+   * Adds a job.
+   *
+   * @param job The job to add.
+   * @param atFront Whether the job should be processed before all other
+   *        waiting jobs.
+   */
+  public synchronized void addJob(CrawlerJob job, boolean atFront) {
+    if (atFront) {
+      mJobList.addFirst(job);
+    } else if ((mSpillReadCount < mSpillWriteCount)
+      || (mJobList.size() >= mMaxMemoryJobCount))
+    {
+      // The job has to wait behind the spilled jobs or the memory is full
+      spillJob(job);
+    } else {
+      mJobList.addLast(job);
+    }
+    mPendingJobCount++;
+    notifyAll();
+  }
+
+
+  /**
+   * Takes the next job. Blocks until there is a job, the frontier is paused
+   * or there is nothing to do any more.
+   * <p>
+   * Every job returned by this method must be passed to
+   * {@link #finishJob(CrawlerJob)} after it was processed.
+   *
+   * @return The next job or <code>null</code> if the crawling is finished.
+   * @throws InterruptedException If the thread was interrupted while waiting.
+   */
+  public synchronized CrawlerJob takeJob() throws InterruptedException {
+    while (true) {
+      if (mStopped || (mPendingJobCount == 0)) {
+        return null;
+      }
+      if (mJobList.isEmpty() && (mSpillReadCount < mSpillWriteCount)) {
+        readSpilledJobs();
+      }
+      if ((! mPaused) && (! mJobList.isEmpty())) {
+        mActiveJobCount++;
+        return mJobList.removeFirst();
+      }
+      wait();
+    }
+  }
+
+
+  /**
+   * Marks a job as finished.
+   *
+   * @param job The finished job.
+   */
+  public synchronized void finishJob(CrawlerJob job) {
+    mActiveJobCount--;
+    mPendingJobCount--;
+    notifyAll();
+  }
+
+
+  /**
+   * Stops handing out jobs until {@link #resume()} is called.
+   */
+  public synchronized void pause() {
+    mPaused = true;
+  }
+
+
+  /**
+   * Goes on handing out jobs after a {@link #pause()}.
+   */
+  public synchronized void resume() {
+    mPaused = false;
+    notifyAll();
+  }
+
+
+  /**
+   * Waits until there are no active jobs any more.
+   *
+   * @throws InterruptedException If the thread was interrupted while waiting.
+   */
+  public synchronized void awaitIdle() throws InterruptedException {
+    while (mActiveJobCount > 0) {
+      wait();
+    }
+  }
+
+
+  /**
+   * Waits until all jobs are finished.
+   *
+   * @param timeout The maximum time to wait (in milli seconds).
+   * @return Whether all jobs are finished.
+   * @throws InterruptedException If the thread was interrupted while waiting.
+   */
+  public synchronized boolean awaitFinished(long timeout)
+    throws InterruptedException
+  {
+    if ((mPendingJobCount > 0) && (! mStopped)) {
+      wait(timeout);
+    }
+    return (mPendingJobCount == 0) || mStopped;
+  }
+
+
+  /**
+   * Stops the crawling. All threads waiting for a job get <code>null</code>.
+   */
+  public synchronized void stop() {
+    mStopped = true;
+    deleteSpillFile();
+    notifyAll();
+  }
+
+
+  /**
+   * Gets the number of jobs that are waiting for being processed.
+   *
+   * @return The number of waiting jobs.
+   */
+  public synchronized int getWaitingJobCount() {
+    return mJobList.size() + (mSpillWriteCount - mSpillReadCount);
+  }
+
+
+  /**
+   * Writes all waiting jobs, so the crawling can be resumed later using
+   * {@link #readState(DataInput)}.
+   * <p>
+   * This method should only be called when there are no active jobs (see
+   * {@link #awaitIdle()}), otherwise the jobs found by the active jobs are
+   * missing.
+   *
+   * @param out The output to write to.
+   * @throws IOException If writing failed.
+   */
+  public synchronized void writeState(DataOutput out) throws IOException {
+    out.writeInt(getWaitingJobCount());
+    for (CrawlerJob job : mJobList) {
+      job.write(out);
+    }
+
+    if (mSpillReadCount < mSpillWriteCount) {
+      // Copy the spilled jobs that were not read yet
+      mSpillOut.flush();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(mSpillFile)));
+      try {
+        for (int i = 0; i < mSpillWriteCount; i++) {
+          CrawlerJob job = CrawlerJob.read(in);
+          if (i >= mSpillReadCount) {
+            job.write(out);
+          }
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+  }
+
+
+  /**
+   * Adds the jobs written by {@link #writeState(DataOutput)}.
+   *
+   * @param in The input to read from.
+   * @throws IOException If reading failed.
+   */
+  public synchronized void readState(DataInput in) throws IOException {
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      addJob(CrawlerJob.read(in), false);
+    }
+  }
+
+
+  /**
+   * Appends a job to the spill file.
+   *
+   * @param job The job to append.
+   */
+  private void spillJob(CrawlerJob job) {
+    try {
+      if (mSpillOut == null) {
+        mSpillFile = File.createTempFile("regain_frontier_", ".dat");
+        mSpillOut = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(mSpillFile)));
+      }
+      job.write(mSpillOut);
+      mSpillWriteCount++;
+    }
+    catch (IOException exc) {
+      mLog.error("Writing crawler job to temporary file failed: " + mSpillFile
+        + ". Keeping the job in memory.", exc);
+      mJobList.addLast(job);
+    }
+  }
+
+
+  /**
+   * Reads the next batch of spilled jobs into memory. If all spilled jobs are
+   * read, the spill file is deleted.
+   */
+  private void readSpilledJobs() {
+    try {
+      mSpillOut.flush();
+      if (mSpillIn == null) {
+        mSpillIn = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(mSpillFile)));
+      }
+      int count = Math.min(mSpillWriteCount - mSpillReadCount,
+        Math.max(1, mMaxMemoryJobCount / 2));
+      for (int i = 0; i < count; i++) {
+        mJobList.addLast(CrawlerJob.read(mSpillIn));
+        mSpillReadCount++;
+      }
+    }
+    catch (IOException exc) {
+      int lostCount = mSpillWriteCount - mSpillReadCount;
+      mLog.error("Reading crawler jobs from temporary file failed: " + mSpillFile
+        + ". " + lostCount + " jobs are lost.", exc);
+      mPendingJobCount -= lostCount;
+      mSpillReadCount = mSpillWriteCount;
+    }
+
+    if (mSpillReadCount == mSpillWriteCount) {
+      deleteSpillFile();
+    }
+  }
+
+
+  /**
+   * Closes and deletes the spill file.
+   */
+  private void deleteSpillFile() {
+    if (mSpillIn != null) {
+      try { mSpillIn.close(); } catch (IOException exc) {}
+      mSpillIn = null;
+    }
+    if (mSpillOut != null) {
+      try { mSpillOut.close(); } catch (IOException exc) {}
+      mSpillOut = null;
+    }
+    if ((mSpillFile != null) && (! mSpillFile.delete())) {
+      mSpillFile.deleteOnExit();
+    }
+    mSpillFile = null;
+    mSpillWriteCount = 0;
+    mSpillReadCount = 0;
+  }
+
+}
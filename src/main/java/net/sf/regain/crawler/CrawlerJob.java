@@ -20,6 +20,10 @@
  */
 package net.sf.regain.crawler;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Hilfsklasse für den Crawler.
  * <p>
@@ -136,4 +140,80 @@ public class CrawlerJob {
     return mShouldBeIndexed;
   }
 
+
+
+  /**
+   * Writes the job, so it can be read again by {@link #read(DataInput)}.
+   *
+   * @param out The output to write to.
+   * @throws IOException If writing failed.
+   */
+  public void write(DataOutput out) throws IOException {
+    writeString(out, mUrl);
+    writeString(out, mSourceUrl);
+    writeString(out, mSourceLinkText);
+    out.writeBoolean(mShouldBeParsed);
+    out.writeBoolean(mShouldBeIndexed);
+  }
+
+
+
+  /**
+   * Reads a job written by {@link #write(DataOutput)}.
+   *
+   * @param in The input to read from.
+   * @return The read job.
+   * @throws IOException If reading failed.
+   */
+  public static CrawlerJob read(DataInput in) throws IOException {
+    String url = readString(in);
+    String sourceUrl = readString(in);
+    String sourceLinkText = readString(in);
+    boolean shouldBeParsed = in.readBoolean();
+    boolean shouldBeIndexed = in.readBoolean();
+    return new CrawlerJob(url, sourceUrl, sourceLinkText, shouldBeParsed,
+      shouldBeIndexed);
+  }
+
+
+
+  /**
+   * Writes a String that may be <code>null</code>.
+   * <p>
+   * Unlike {@link DataOutput#writeUTF(String)} there is no limit for the
+   * length of the String.
+   *
+   * @param out The output to write to.
+   * @param str The String to write. May be <code>null</code>.
+   * @throws IOException If writing failed.
+   */
+  private static void writeString(DataOutput out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = str.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+
+
+  /**
+   * Reads a String written by {@link #writeString(DataOutput, String)}.
+   *
+   * @param in The input to read from.
+   * @return The read String. May be <code>null</code>.
+   * @throws IOException If reading failed.
+   */
+  private static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length == -1) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
 }
@@ -35,6 +35,7 @@ import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.access.AccountPasswordEntry;
 import net.sf.regain.crawler.config.CrawlerConfig;
+import net.sf.regain.crawler.document.HttpValidators;
 import net.sf.regain.util.io.HtmlEntities;
 
 /**
@@ -48,6 +49,11 @@ public class CrawlerToolkit {
 
   /** The logger for this class */
   private static Logger mLog = Logger.getLogger(CrawlerToolkit.class);
+  /**
+   * The maximum number of bytes read from a response that is released. If the
+   * response is longer, the connection is closed instead.
+   */
+  private static final int MAX_RELEASE_BYTES = 64 * 1024;
   private static Pattern urlPatternLeft = Pattern.compile("([\\w]*://[\\w\\.:\\d-]*[^/]).*");
 
   public static String createURLFromProps(String[] parts) {
@@ -194,6 +200,50 @@ public class CrawlerToolkit {
    */
   public static InputStream getHttpStream(URL url)
     throws RedirectException, HttpStreamException
+  {
+    URLConnection conn;
+    try {
+      conn = getHttpConnection(url, 0, null);
+    }
+    catch (NotModifiedException exc) {
+      // Can't happen, because the request is not conditional
+      throw HttpStreamException.createInstance("Could not get HTTP connection to "
+          + url.toString(), exc, null);
+    }
+
+    try {
+      return conn.getInputStream();
+    }
+    catch (IOException exc) {
+      throw HttpStreamException.createInstance("Could not get HTTP connection to "
+          + url.toString(), exc, conn);
+    }
+  }
+
+
+  /**
+   * Opens a connection to an URL and checks the response.
+   * <p>
+   * The stream of the returned connection must be closed by the caller. If it
+   * is read completely before, the connection is kept alive and will be reused
+   * for the next request to the same host.
+   *
+   * @param url the URL of the page
+   * @param timeout The timeout for connecting and for each read (in milli
+   *        seconds). 0 means no timeout.
+   * @param validators The validators of the already known version of the
+   *        document. If given, the document is only loaded if it has changed.
+   *        May be <code>null</code>.
+   * @return The connection. Its stream is ready for reading.
+   * @throws RedirectException if the URL redirects to another URL.
+   * @throws NotModifiedException if the document has not changed since the
+   *         version the validators belong to.
+   * @throws HttpStreamException if something went wrong.
+   * @see #getHttpStream(URL)
+   */
+  public static URLConnection getHttpConnection(URL url, int timeout,
+    HttpValidators validators)
+    throws RedirectException, NotModifiedException, HttpStreamException
   {
     URLConnection conn = null;
     try {
@@ -212,6 +262,8 @@ public class CrawlerToolkit {
         });
       }
       conn = url.openConnection();
+      conn.setConnectTimeout(timeout);
+      conn.setReadTimeout(timeout);
       if (conn instanceof HttpURLConnection) {
         HttpURLConnection hconn = (HttpURLConnection) conn;
         // Required in Java 1.5 (redirect followed automatically)
@@ -222,13 +274,28 @@ public class CrawlerToolkit {
         String charset = RegainToolkit.getSystemDefaultEncoding() + ",utf-8,*";
         hconn.setRequestProperty("Accept-Charset", charset);
 
+        // Make the request conditional
+        if (validators != null) {
+          if (validators.getETag() != null) {
+            hconn.setRequestProperty("If-None-Match", validators.getETag());
+          }
+          if (validators.getLastModified() != null) {
+            hconn.setRequestProperty("If-Modified-Since", validators.getLastModified());
+          }
+        }
+
         // Check the response code
         int response = hconn.getResponseCode();
+        if (response == HttpURLConnection.HTTP_NOT_MODIFIED) {
+          releaseHttpConnection(hconn, false);
+          throw new NotModifiedException("Not modified: " + url);
+        }
         boolean redirect = (response >= 300 && response <= 399);
 
         // In the case of a redirect, we want to actually change the URL
         // that was input to the new, redirected URL
         if (redirect) {
+          releaseHttpConnection(hconn, false);
           String loc = conn.getHeaderField("Location");
           if (loc != null) {
             String redirectUrl;
@@ -244,14 +311,63 @@ public class CrawlerToolkit {
         }
       }
 
-      return conn.getInputStream();
+      // Open the stream (this throws an exception for error responses)
+      conn.getInputStream();
+      return conn;
     }
     catch (RedirectException thr) {
       throw thr;
     }
+    catch (NotModifiedException thr) {
+      throw thr;
+    }
     catch (Throwable thr) {
-      throw HttpStreamException.createInstance("Could not get HTTP connection to "
-          + url.toString(), thr, conn);
+      HttpStreamException exc = HttpStreamException.createInstance(
+          "Could not get HTTP connection to " + url.toString(), thr, conn);
+      if (conn instanceof HttpURLConnection) {
+        releaseHttpConnection((HttpURLConnection) conn, true);
+      }
+      throw exc;
+    }
+  }
+
+
+  /**
+   * Reads the rest of a response that is not needed and closes it. This way
+   * the connection can be reused for the next request. If the response has
+   * more than {@link #MAX_RELEASE_BYTES} bytes, the connection is closed
+   * instead of reading it all.
+   *
+   * @param conn The connection to release.
+   * @param failed Whether the request failed. In this case the error stream
+   *        is read (if there is one).
+   */
+  private static void releaseHttpConnection(HttpURLConnection conn, boolean failed) {
+    InputStream in = null;
+    try {
+      in = failed ? conn.getErrorStream() : conn.getInputStream();
+      if (in != null) {
+        byte[] buffer = new byte[1024];
+        int total = 0;
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+          // Skip the data
+          total += len;
+          if (total > MAX_RELEASE_BYTES) {
+            // Reading the rest is more expensive than a new connection
+            conn.disconnect();
+            break;
+          }
+        }
+      }
+    }
+    catch (IOException exc) {
+      // The connection can't be reused
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
     }
   }
 
@@ -0,0 +1,423 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * A compact table holding the last-modified date and the preparation state of
+ * every entry of an index.
+ * <p>
+ * The table is read once when an existing index is updated. So the crawler can
+ * check whether an index entry is up-to-date without searching the index.
+ * <p>
+ * The URLs are stored as UTF-8 bytes in one big array and are found using an
+ * open addressing hash table. So even millions of URLs don't need millions of
+ * objects.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class IndexEntryTable {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(IndexEntryTable.class);
+
+  /** The last-modified value of entries that have no last-modified field. */
+  public static final long UNKNOWN_LAST_MODIFIED = Long.MIN_VALUE;
+
+  /** The initial size of the URL byte array. It grows as needed. */
+  private static final int INITIAL_URL_BYTES_LENGTH = 4096;
+
+  /** The maximum size of an array some VMs can allocate. */
+  private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+  /** The fields that are loaded from the index. */
+  private static final String[] LOADED_FIELDS = {
+    "url", "last-modified", "preparation-error"
+  };
+
+  /** The bytes of all URLs. */
+  private byte[] mUrlBytes;
+  /** The number of used bytes in {@link #mUrlBytes}. */
+  private int mUrlBytesLength;
+  /** The start of each entry's URL in {@link #mUrlBytes}. */
+  private int[] mUrlOffsetArr;
+  /** The length of each entry's URL. */
+  private int[] mUrlLengthArr;
+  /** The last-modified date of each entry (in milli seconds). */
+  private long[] mLastModifiedArr;
+  /** The number of index entries for each URL (max. Byte.MAX_VALUE). */
+  private byte[] mEntryCountArr;
+  /** Whether the preparation of an entry failed. */
+  private boolean[] mFailedArr;
+  /** The document number of each entry in the read index or -1. */
+  private int[] mDocIdArr;
+  /** The number of entries. */
+  private int mEntryCount;
+  /**
+   * The hash table. Holds the entry index plus one for each slot, 0 for
+   * empty slots.
+   */
+  private int[] mSlotArr;
+
+
+  /**
+   * Creates a new, empty instance of IndexEntryTable.
+   *
+   * @param expectedEntryCount The number of entries expected.
+   */
+  public IndexEntryTable(int expectedEntryCount) {
+    int capacity = Math.max(16, expectedEntryCount);
+    mUrlBytes = new byte[INITIAL_URL_BYTES_LENGTH];
+    mUrlOffsetArr = new int[capacity];
+    mUrlLengthArr = new int[capacity];
+    mLastModifiedArr = new long[capacity];
+    mEntryCountArr = new byte[capacity];
+    mFailedArr = new boolean[capacity];
+    mDocIdArr = new int[capacity];
+    mSlotArr = new int[tableSizeFor(capacity)];
+  }
+
+
+  /**
+   * Reads the entries of an index.
+   *
+   * @param reader The reader of the index.
+   * @return The table with all entries of the index.
+   * @throws IOException If reading the index failed.
+   */
+  public static IndexEntryTable read(IndexReader reader) throws IOException {
+    IndexEntryTable table = new IndexEntryTable(reader.numDocs());
+    MapFieldSelector fieldSelector = new MapFieldSelector(LOADED_FIELDS);
+
+    int docCount = reader.maxDoc();
+    for (int docIdx = 0; docIdx < docCount; docIdx++) {
+      if (! reader.isDeleted(docIdx)) {
+        Document doc = reader.document(docIdx, fieldSelector);
+        String url = doc.get("url");
+        if (url != null) {
+          long lastModified = UNKNOWN_LAST_MODIFIED;
+          String asString = doc.get("last-modified");
+          if (asString != null) {
+            try {
+              lastModified = DateTools.stringToTime(asString);
+            } catch (ParseException exc) {
+              mLog.warn("Couldn't parse last-modified date from index. Document: " +
+                url, exc);
+            }
+          }
+          boolean failed = (doc.get("preparation-error") != null);
+
+          table.put(url, lastModified, failed, docIdx);
+        }
+      }
+    }
+
+    return table;
+  }
+
+
+  /**
+   * Adds an index entry.
+   * <p>
+   * If there already is an entry for the URL, the URL is counted twice. The
+   * values of the first entry are kept.
+   *
+   * @param url The URL of the entry.
+   * @param lastModified The last-modified date of the entry (in milli
+   *        seconds) or {@link #UNKNOWN_LAST_MODIFIED}.
+   * @param failed Whether the preparation of the entry failed.
+   */
+  public void put(String url, long lastModified, boolean failed) {
+    put(url, lastModified, failed, -1);
+  }
+
+
+  /**
+   * Adds an index entry.
+   * <p>
+   * If there already is an entry for the URL, the URL is counted twice. The
+   * values of the first entry are kept.
+   *
+   * @param url The URL of the entry.
+   * @param lastModified The last-modified date of the entry (in milli
+   *        seconds) or {@link #UNKNOWN_LAST_MODIFIED}.
+   * @param failed Whether the preparation of the entry failed.
+   * @param docId The document number of the entry in the index or -1 if
+   *        unknown.
+   */
+  public void put(String url, long lastModified, boolean failed, int docId) {
+    byte[] urlBytes = toBytes(url);
+    int slot = findSlot(urlBytes);
+    int entry = mSlotArr[slot] - 1;
+    if (entry >= 0) {
+      // This is a duplicate entry
+      if (mEntryCountArr[entry] < Byte.MAX_VALUE) {
+        mEntryCountArr[entry]++;
+      }
+      return;
+    }
+
+    // Add the entry
+    ensureCapacity(urlBytes.length);
+    entry = mEntryCount;
+    System.arraycopy(urlBytes, 0, mUrlBytes, mUrlBytesLength, urlBytes.length);
+    mUrlOffsetArr[entry] = mUrlBytesLength;
+    mUrlLengthArr[entry] = urlBytes.length;
+    mUrlBytesLength += urlBytes.length;
+    mLastModifiedArr[entry] = lastModified;
+    mEntryCountArr[entry] = 1;
+    mFailedArr[entry] = failed;
+    mDocIdArr[entry] = docId;
+    mEntryCount++;
+
+    mSlotArr[slot] = entry + 1;
+    if (mEntryCount * 2 > mSlotArr.length) {
+      rehash(mSlotArr.length * 2);
+    }
+  }
+
+
+  /**
+   * Gets the entry of an URL.
+   *
+   * @param url The URL to get the entry for.
+   * @return The number of the entry or -1 if there is no entry for the URL.
+   */
+  public int getEntry(String url) {
+    return mSlotArr[findSlot(toBytes(url))] - 1;
+  }
+
+
+  /**
+   * Gets the last-modified date of an entry.
+   *
+   * @param entry The number of the entry.
+   * @return The last-modified date (in milli seconds) or
+   *         {@link #UNKNOWN_LAST_MODIFIED}.
+   */
+  public long getLastModified(int entry) {
+    return mLastModifiedArr[entry];
+  }
+
+
+  /**
+   * Gets whether the preparation of an entry failed.
+   *
+   * @param entry The number of the entry.
+   * @return Whether the preparation of the entry failed.
+   */
+  public boolean isFailed(int entry) {
+    return mFailedArr[entry];
+  }
+
+
+  /**
+   * Gets the document number of an entry in the index the table was read
+   * from.
+   *
+   * @param entry The number of the entry.
+   * @return The document number or -1 if unknown.
+   */
+  public int getDocId(int entry) {
+    return mDocIdArr[entry];
+  }
+
+
+  /**
+   * Gets the number of index entries having the URL of an entry.
+   *
+   * @param entry The number of the entry.
+   * @return The number of index entries for the URL. If there are more than
+   *         {@link Byte#MAX_VALUE} entries, {@link Byte#MAX_VALUE} is returned.
+   */
+  public int getIndexEntryCount(int entry) {
+    return mEntryCountArr[entry];
+  }
+
+
+  /**
+   * Gets the number of entries.
+   *
+   * @return The number of entries.
+   */
+  public int size() {
+    return mEntryCount;
+  }
+
+
+  /**
+   * Finds the slot of an URL.
+   *
+   * @param urlBytes The UTF-8 bytes of the URL.
+   * @return The slot holding the URL or the empty slot where the URL has to be
+   *         put.
+   */
+  private int findSlot(byte[] urlBytes) {
+    int mask = mSlotArr.length - 1;
+    int slot = hash(urlBytes) & mask;
+    while (true) {
+      int entry = mSlotArr[slot] - 1;
+      if ((entry < 0) || equalsUrl(entry, urlBytes)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+
+  /**
+   * Checks whether an entry has a certain URL.
+   *
+   * @param entry The number of the entry.
+   * @param urlBytes The UTF-8 bytes of the URL.
+   * @return Whether the entry has the URL.
+   */
+  private boolean equalsUrl(int entry, byte[] urlBytes) {
+    if (mUrlLengthArr[entry] != urlBytes.length) {
+      return false;
+    }
+    int offset = mUrlOffsetArr[entry];
+    for (int i = 0; i < urlBytes.length; i++) {
+      if (mUrlBytes[offset + i] != urlBytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Makes sure there is space for one more entry.
+   *
+   * @param urlLength The length of the URL of the new entry.
+   */
+  private void ensureCapacity(int urlLength) {
+    long neededLength = (long) mUrlBytesLength + urlLength;
+    if (neededLength > mUrlBytes.length) {
+      if (neededLength > MAX_ARRAY_LENGTH) {
+        throw new IllegalStateException("The URLs of " + mEntryCount
+            + " entries don't fit into one array");
+      }
+      long newLength = Math.min(Math.max(mUrlBytes.length * 2L, neededLength),
+          MAX_ARRAY_LENGTH);
+      mUrlBytes = Arrays.copyOf(mUrlBytes, (int) newLength);
+    }
+    if (mEntryCount == mUrlOffsetArr.length) {
+      int newLength = mUrlOffsetArr.length * 2;
+      mUrlOffsetArr = Arrays.copyOf(mUrlOffsetArr, newLength);
+      mUrlLengthArr = Arrays.copyOf(mUrlLengthArr, newLength);
+      mLastModifiedArr = Arrays.copyOf(mLastModifiedArr, newLength);
+      mEntryCountArr = Arrays.copyOf(mEntryCountArr, newLength);
+      mFailedArr = Arrays.copyOf(mFailedArr, newLength);
+      mDocIdArr = Arrays.copyOf(mDocIdArr, newLength);
+    }
+  }
+
+
+  /**
+   * Rebuilds the hash table with a new size.
+   *
+   * @param tableSize The new size of the hash table. Must be a power of two.
+   */
+  private void rehash(int tableSize) {
+    mSlotArr = new int[tableSize];
+    int mask = tableSize - 1;
+    for (int entry = 0; entry < mEntryCount; entry++) {
+      int slot = hash(mUrlBytes, mUrlOffsetArr[entry], mUrlLengthArr[entry]) & mask;
+      while (mSlotArr[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      mSlotArr[slot] = entry + 1;
+    }
+  }
+
+
+  /**
+   * Gets the size of the hash table for a number of entries.
+   *
+   * @param entryCount The number of entries.
+   * @return The smallest power of two that is at least twice the entry count.
+   */
+  private static int tableSizeFor(int entryCount) {
+    int size = 16;
+    while (size < entryCount * 2) {
+      size *= 2;
+    }
+    return size;
+  }
+
+
+  /**
+   * Calculates the hash code of an URL.
+   *
+   * @param urlBytes The UTF-8 bytes of the URL.
+   * @return The hash code.
+   */
+  private static int hash(byte[] urlBytes) {
+    return hash(urlBytes, 0, urlBytes.length);
+  }
+
+
+  /**
+   * Calculates the hash code of an URL (FNV-1a).
+   *
+   * @param bytes The array holding the URL.
+   * @param offset The start of the URL.
+   * @param length The length of the URL.
+   * @return The hash code.
+   */
+  private static int hash(byte[] bytes, int offset, int length) {
+    int hash = 0x811c9dc5;
+    for (int i = offset; i < offset + length; i++) {
+      hash ^= (bytes[i] & 0xff);
+      hash *= 0x01000193;
+    }
+    // Spread the high bits, since only the low bits are used for the slot
+    return hash ^ (hash >>> 16);
+  }
+
+
+  /**
+   * Converts an URL to UTF-8 bytes.
+   *
+   * @param url The URL to convert.
+   * @return The UTF-8 bytes.
+   */
+  private static byte[] toBytes(String url) {
+    try {
+      return url.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException exc) {
+      // Every JVM supports UTF-8
+      throw new IllegalStateException(exc);
+    }
+  }
+
+}
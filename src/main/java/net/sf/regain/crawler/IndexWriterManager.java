@@ -24,34 +24,39 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.config.CrawlerConfig;
-import net.sf.regain.crawler.config.UrlMatcher;
 import net.sf.regain.crawler.document.DocumentFactory;
+import net.sf.regain.crawler.document.HttpValidators;
 import net.sf.regain.crawler.document.RawDocument;
 import net.sf.regain.crawler.plugin.CrawlerPluginManager;
+import net.sf.regain.util.io.FieldValueFile;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermEnum;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
@@ -63,6 +68,16 @@ import org.apache.lucene.store.FSDirectory;
  * auf. Rufen Sie am Ende {@link #close(boolean)} auf, um den Index zu
  * schlie�en. Danach sind keine weiteren Aufrufe von
  * {@link #addToIndex(RawDocument, ErrorLogger)} erlaubt.
+ * <p>
+ * The crawler uses several threads. So the preparation of a document
+ * ({@link #prepareDocument(RawDocument, ErrorLogger)}) may run in parallel,
+ * while all accesses to the index itself are synchronized.
+ * <p>
+ * There is one IndexWriter for the whole crawling process. When an existing
+ * index is updated, its entries are read once into an {@link IndexEntryTable},
+ * so checking whether an entry is up-to-date doesn't need to search the index.
+ * A near-real-time reader from the writer is used when the current state of
+ * the index is needed (see {@link #refreshIndexReader()}).
  *
  * @author Til Schneider, www.murfman.de
  */
@@ -100,6 +115,27 @@ public class IndexWriterManager {
    * was fully created.
    */
   private static final String BREAKPOINT_INDEX_SUBDIR = "breakpoint";
+  /**
+   * The name of the file holding the ID of the index. The ID is kept when an
+   * index is updated, so the crawler knows whether a breakpoint was created
+   * from the same index.
+   */
+  private static final String INDEX_ID_FILE = "indexId.txt";
+  /**
+   * The name of the file in a breakpoint that lists the index files of the
+   * breakpoint and their sizes.
+   * <p>
+   * NOTE: Lucene never changes an index file once it was written. So a file
+   * listed in the manifest doesn't have to be copied again for the next
+   * breakpoint.
+   */
+  private static final String BREAKPOINT_MANIFEST_FILE = "breakpointManifest.txt";
+  /**
+   * The name of the file in a breakpoint that holds the state of the crawler
+   * (the waiting jobs and the known URLs). It is in a sub directory, so it is
+   * not taken for an index file.
+   */
+  private static final String CRAWLER_STATE_FILE = "crawlerstate" + File.separator + "state.dat";
   /**
    * Gibt an, ob die Terme sortiert in die Terme-Datei geschrieben werden soll.
    *
@@ -114,45 +150,56 @@ public class IndexWriterManager {
    * probiert, bis es entweder funktioniert oder bis der Timeout abgelaufen ist.
    */
   private static final long RENAME_TIMEOUT = 60000; // 1 min
+  /** The fields holding the HTTP validators of a document. */
+  private static final String[] HTTP_VALIDATOR_FIELDS = {
+    DocumentFactory.HTTP_ETAG_FIELD, DocumentFactory.HTTP_LAST_MODIFIED_FIELD
+  };
+  /** The field holding the links of a document. */
+  private static final String[] OUTLINKS_FIELDS = {
+    DocumentFactory.OUTLINKS_FIELD
+  };
+  /** The fields needed for deciding whether an index entry is obsolete. */
+  private static final String[] OBSOLETE_CHECK_FIELDS = {
+    "url", "last-modified"
+  };
   /**
-   * The writing mode.
-   * @see #setIndexMode(int)
+   * The number of index entries that are checked together by
+   * {@link #removeObsoleteEntries(UrlChecker)}.
    */
-  private static final int WRITING_MODE = 1;
+  private static final int OBSOLETE_CHECK_BATCH_SIZE = 1000;
+
   /**
-   * The reading mode.
-   * @see #setIndexMode(int)
+   * The result of {@link #checkIndexEntry(RawDocument)}: A new index entry
+   * has to be created.
    */
-  private static final int READING_MODE = 2;
+  private static final int CREATE_ENTRY = 1;
   /**
-   * The searching mode.
-   * @see #setIndexMode(int)
+   * The result of {@link #checkIndexEntry(RawDocument)}: The document has to
+   * be parsed, but the index entry is kept.
    */
-  private static final int SEARCHING_MODE = 3;
+  private static final int PARSE_ONLY = 2;
   /**
-   * The all closed mode.
-   * @see #setIndexMode(int)
+   * The result of {@link #checkIndexEntry(RawDocument)}: The index entry is
+   * up-to-date, nothing has to be done.
    */
-  private static final int ALL_CLOSED_MODE = 4;
+  private static final int ENTRY_UP_TO_DATE = 3;
   /** The crawler configuration. */
   private CrawlerConfig mConfig;
   /** Der Analyzer, der vom IndexWriter genutzt werden soll. */
   private Analyzer mAnalyzer;
-  /** Der gekapselte IndexWriter, der den eigentlichen Index erstellt. */
-  private IndexWriter mIndexWriter;
   /**
-   * Der gekapselte IndexReader. Wird zum L�schen von Dokumenten aus dem Index
-   * ben�tigt.
-   * <p>
-   * Ist <code>null</code>, wenn der Index nicht aktualisiert werden soll.
+   * Der gekapselte IndexWriter, der den eigentlichen Index erstellt. It is
+   * opened when the IndexWriterManager is created and closed in
+   * {@link #close(boolean)}.
    */
-  private IndexReader mIndexReader;
+  private IndexWriter mIndexWriter;
   /**
-   * Der gekapselte IndexSearcher. Wird zum Finden von Dokumenten ben�tigt.
-   * <p>
-   * Ist <code>null</code>, wenn der Index nicht aktualisiert werden soll.
+   * The near-real-time reader from {@link #mIndexWriter}. Is <code>null</code>
+   * until it is needed the first time.
+   *
+   * @see #refreshIndexReader()
    */
-  private IndexSearcher mIndexSearcher;
+  private IndexReader mIndexReader;
   /**
    * Gibt an, ob ein bestehender Index aktualisiert wird.
    * <p>
@@ -181,6 +228,8 @@ public class IndexWriterManager {
   private Directory mLuceneTempIndexDir;
   /** The directory to create breakpoint indices. */
   private File mBreakpointIndexDir;
+  /** Specifies whether the index was copied from a breakpoint. */
+  private boolean mUpdatingBreakpoint;
   /** Das Verzeichnis, in dem die Analyse-Dateien erstellt werden soll. */
   private File mAnalysisDir;
   /** The file where the error log should be stored. */
@@ -202,15 +251,23 @@ public class IndexWriterManager {
   private int mInitialDocCount;
   /** Der Profiler der das Hinzufügen zum Index mißt. */
   private Profiler mAddToIndexProfiler = new Profiler("Indexed documents", "docs");
+  /** The ID of the index. */
+  private String mIndexId;
   /** The profiler for the breakpoint creation. */
   private Profiler mBreakpointProfiler = new Profiler("Created breakpoints", "breakpoints");
+  /** The number of index entries that were removed or replaced. */
+  private AtomicInteger mRemovedDocCount = new AtomicInteger();
   /**
-   * enthält die URL und den LastUpdated-String aller Dokumente, deren Eintr�ge
-   * beim Abschlie�en des Index entfernt werden m�ssen.
-   * <p>
-   * Die URL bildet den key, der LastUpdated-String die value.
+   * The entries of the old index. Is <code>null</code> if a new index is
+   * created.
    */
-  private HashMap<String, String> mUrlsToDeleteHash;
+  private IndexEntryTable mIndexEntryTable;
+  /**
+   * The reader the {@link #mIndexEntryTable} was read from. It is kept open,
+   * so the stored fields of the old entries can be read using the document
+   * numbers of the table. Is <code>null</code> if a new index is created.
+   */
+  private IndexReader mOldIndexReader;
 
   /** Crawler Plugin Manager instance */
   private CrawlerPluginManager pluginManager = CrawlerPluginManager.getInstance();
@@ -283,29 +340,46 @@ public class IndexWriterManager {
       }
     }
 
-    // Check whether we have to create a new index
-    boolean createNewIndex = !updateIndex;
-    if (createNewIndex) {
-      // Create a new index
+    if (updateIndex) {
+      // Force an unlock of the index (we just created a copy so this is save)
       try {
-        mIndexWriter = createIndexWriter(true);
+        if (IndexWriter.isLocked(mLuceneTempIndexDir)) {
+          IndexWriter.unlock(mLuceneTempIndexDir);
+        }
       } catch (IOException exc) {
-        throw new RegainException("Creating new index failed", exc);
+        throw new RegainException("Forcing unlock failed", exc);
       }
     }
 
+    // Open the IndexWriter (it stays open until the index is closed)
+    try {
+      mIndexWriter = createIndexWriter(!updateIndex);
+    } catch (IOException exc) {
+      throw new RegainException("Creating IndexWriter failed", exc);
+    }
+
     if (updateIndex) {
-      // Force an unlock of the index (we just created a copy so this is save)
-      setIndexMode(READING_MODE);
+      // Read the entries of the old index, so we can check for up-to-date
+      // entries without searching the index
+      refreshIndexReader();
+      mInitialDocCount = mIndexReader.numDocs();
+      mLog.info("Reading the entries of the old index");
       try {
-
-        IndexWriter.unlock(mIndexReader.directory());
-        mInitialDocCount = mIndexReader.numDocs();
+        mIndexEntryTable = IndexEntryTable.read(mIndexReader);
+        mOldIndexReader = mIndexReader;
+        mOldIndexReader.incRef();
       } catch (IOException exc) {
-        throw new RegainException("Forcing unlock failed", exc);
+        throw new RegainException("Reading the entries of the old index failed", exc);
       }
     }
 
+    // Create a new ID, if this is a new index
+    if (mIndexId == null) {
+      mIndexId = Long.toHexString(System.currentTimeMillis()) + "-"
+              + Long.toHexString(Double.doubleToLongBits(Math.random()));
+    }
+    RegainToolkit.writeToFile(mIndexId, new File(mTempIndexDir, INDEX_ID_FILE));
+
     // Write the stopWordList and the exclusionList in a file so it can be found
     // by the search mask
     RegainToolkit.writeToFile(analyzerType, new File(mTempIndexDir, "analyzerType.txt"));
@@ -338,6 +412,30 @@ public class IndexWriterManager {
     return mUpdateIndex;
   }
 
+  /**
+   * Gets the file that holds the state of the crawler at the last breakpoint.
+   * <p>
+   * The state is written by the crawler after each breakpoint. It is deleted
+   * when the next breakpoint is created, so it always belongs to the index of
+   * the breakpoint.
+   *
+   * @return The crawler state file of the breakpoint.
+   */
+  public File getCrawlerStateFile() {
+    return new File(mBreakpointIndexDir, CRAWLER_STATE_FILE);
+  }
+
+  /**
+   * Gets whether the index is updated from a breakpoint. In this case the
+   * crawler may resume at the state of the breakpoint.
+   *
+   * @return Whether the index is updated from a breakpoint.
+   * @see #getCrawlerStateFile()
+   */
+  public boolean getUpdatingBreakpoint() {
+    return mUpdatingBreakpoint;
+  }
+
   /**
    * Gets the number of documents that were in the (old) index when the
    * IndexWriterManager was created.
@@ -363,10 +461,7 @@ public class IndexWriterManager {
    * @return The number of documents removed from the index.
    */
   public int getRemovedDocCount() {
-    // NOTE: We get a local pointer to the mUrlsToDeleteHash, if the hash should
-    //       be set to null in the same time.
-    HashMap<String, String> hash = mUrlsToDeleteHash;
-    return (hash == null) ? 0 : hash.size();
+    return mRemovedDocCount.get();
   }
 
   /**
@@ -376,7 +471,7 @@ public class IndexWriterManager {
    * @param thr The error to log. May be <code>null</code>.
    * @throws RegainException If writing to the error log failed.
    */
-  public void logError(String msg, Throwable thr) throws RegainException {
+  public synchronized void logError(String msg, Throwable thr) throws RegainException {
     if (mErrorLogStream == null) {
       try {
         new File(mTempIndexDir, "log").mkdir();
@@ -398,99 +493,47 @@ public class IndexWriterManager {
   }
 
   /**
-   * Sets the current mode
-   * <p>
-   * The are the following modes:
-   * <ul>
-   *   <li>Writing mode: The mIndexWriter is opened, the mIndexSearcher may be
-   *     opened, the mIndexReader is closed. In this mode documents may be added
-   *     to the index.</li>
-   *   <li>Reading mode: The mIndexReader is opened, the mIndexSearcher may be
-   *     opened, the mIndexWriter is closed. In this mode documents may be
-   *     read or removed from the index.</li>
-   *   <li>Searching mode: The mIndexSearcher is opened, the mIndexWriter or
-   *     mIndexReader may be opened. In this mode documents may be searched.
-   *   <li>All closed mode: All access to the index ist closed:
-   *     mIndexWriter, mIndexReader and mIndexSearcher. In this mode the index
-   *     can't be accessed at all.
-   * </ul>
+   * Opens or refreshes the near-real-time reader from the IndexWriter.
    * <p>
-   * If the index already is in the wanted mode nothing happens. This method is
-   * very fast in this case.
+   * The reader is not refreshed after every change, it is only refreshed when
+   * all changes have to be visible (e.g. when counting the entries or removing
+   * the obsolete entries).
    *
-   * @param mode The mode the index should have. Must be one of
-   *        {@link #WRITING_MODE}, {@link #READING_MODE}, {@link #SEARCHING_MODE}
-   *        or {@link #ALL_CLOSED_MODE}.
-   * @throws RegainException If closing or opening failed.
-   */
-  private void setIndexMode(int mode) throws RegainException {
-    // Close the mIndexReader in WRITING_MODE and ALL_CLOSED_MODE
-    if ((mode == WRITING_MODE) || (mode == ALL_CLOSED_MODE)) {
-      if (mIndexReader != null) {
-        try {
-          mIndexReader.close();
-          mIndexReader = null;
-        } catch (IOException exc) {
-          throw new RegainException("Closing IndexReader failed", exc);
-        }
-      }
-    }
-
-    // Close the mIndexWriter in READING_MODE and ALL_CLOSED_MODE
-    if ((mode == READING_MODE) || (mode == ALL_CLOSED_MODE)) {
-      if (mIndexWriter != null) {
-        try {
-          mIndexWriter.close();
-          mIndexWriter = null;
-        } catch (IOException exc) {
-          throw new RegainException("Closing IndexWriter failed", exc);
+   * @throws RegainException If opening the reader failed.
+   */
+  private void refreshIndexReader() throws RegainException {
+    try {
+      IndexReader newReader;
+      if (mIndexReader == null) {
+        newReader = IndexReader.open(mIndexWriter, true);
+      } else {
+        newReader = IndexReader.openIfChanged(mIndexReader, mIndexWriter, true);
+        if (newReader == null) {
+          // Nothing has changed
+          return;
         }
       }
-    }
-
-    // Close the mIndexSearcher in ALL_CLOSED_MODE
-    if ((mode == ALL_CLOSED_MODE) && (mIndexSearcher != null)) {
-      try {
-        mIndexSearcher.close();
-        mIndexSearcher = null;
-      } catch (IOException exc) {
-        throw new RegainException("Closing IndexSearcher failed", exc);
-      }
-    }
-
-    // Open the mIndexWriter in WRITING_MODE
-    if ((mode == WRITING_MODE) && (mIndexWriter == null)) {
-      mLog.info("Switching to index mode: adding mode");
-      try {
-        mIndexWriter = createIndexWriter(false);
-      } catch (IOException exc) {
-        throw new RegainException("Creating IndexWriter failed", exc);
-      }
-    }
 
-    // Open the mIndexReader in READING_MODE
-    if ((mode == READING_MODE) && (mIndexReader == null)) {
-      mLog.info("Switching to index mode: deleting mode");
-      try {
-        mIndexReader = IndexReader.open(mLuceneTempIndexDir, false);
-      } catch (IOException exc) {
-        throw new RegainException("Creating IndexReader failed", exc);
-      }
+      closeIndexReader();
+      mIndexReader = newReader;
+    } catch (IOException exc) {
+      throw new RegainException("Opening near-real-time IndexReader failed", exc);
     }
+  }
 
-    // Open the mIndexSearcher in SEARCHING_MODE
-    if ((mode == SEARCHING_MODE) && (mIndexSearcher == null)) {
-      mLog.info("Switching to index mode: searching mode");
-      try {
-        mIndexSearcher = new IndexSearcher(mLuceneTempIndexDir, false);
-      } catch (IOException exc) {
-        throw new RegainException("Creating IndexSearcher failed", exc);
+  /**
+   * Closes the near-real-time reader.
+   *
+   * @throws RegainException If closing failed.
+   */
+  private void closeIndexReader() throws RegainException {
+    try {
+      if (mIndexReader != null) {
+        mIndexReader.close();
+        mIndexReader = null;
       }
-    }
-
-    // Tell the user, when switching to ALL_CLOSED_MODE
-    if (mode == ALL_CLOSED_MODE) {
-      mLog.info("Switching to index mode: all closed mode");
+    } catch (IOException exc) {
+      throw new RegainException("Closing IndexReader failed", exc);
     }
   }
 
@@ -559,10 +602,33 @@ public class IndexWriterManager {
       return false;
     }
 
+    // Keep the ID of the old index
+    String indexId = RegainToolkit.readStringFromFile(new File(oldIndexDir, INDEX_ID_FILE));
+    if (indexId != null) {
+      mIndexId = indexId.trim();
+    }
+
     // Index in Arbeitsverzeichnis kopieren
+    // NOTE: The index files are linked if possible, since Lucene never changes
+    //       them. The other files (*.txt and the field values) are written
+    //       again anyway.
     mLog.info("Updating index from " + oldIndexDir.getAbsolutePath());
-    RegainToolkit.copyDirectory(oldIndexDir, mTempIndexDir, false, ".txt");
+    File[] fileArr = oldIndexDir.listFiles();
+    for (int i = 0; i < fileArr.length; i++) {
+      String fileName = fileArr[i].getName();
+      if (fileArr[i].isFile() && (!fileName.endsWith(".txt"))
+          && (!fileName.startsWith(FieldValueFile.FILE_NAME_PREFIX)))
+      {
+        File targetFile = new File(mTempIndexDir, fileName);
+        if (fileName.equals(IndexFileNames.SEGMENTS_GEN)) {
+          RegainToolkit.copyFile(fileArr[i], targetFile);
+        } else {
+          RegainToolkit.linkOrCopyFile(fileArr[i], targetFile);
+        }
+      }
+    }
 
+    mUpdatingBreakpoint = (oldIndexDir == mBreakpointIndexDir);
     return true;
   }
 
@@ -571,32 +637,102 @@ public class IndexWriterManager {
    *
    * @param url to check for
    * @return true if there exist the document for the url in the index.
+   */
+  public boolean isAlreadyIndexed(String url) {
+    if (mUpdateIndex) {
+      int entry = mIndexEntryTable.getEntry(url);
+      // we found one hit for our URL
+      return (entry != -1) && (mIndexEntryTable.getIndexEntryCount(entry) == 1);
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Gets the HTTP validators stored in the old index entry of a document.
    *
-   * @throws RegainException if checking for url failed
+   * @param url The URL of the document.
+   * @return The validators or <code>null</code> if there is no (single) old
+   *         entry or if it has no validators.
+   * @throws RegainException If reading the index entry failed.
    */
-  public boolean isAlreadyIndexed(String url) throws RegainException {
-    boolean result = false;
+  public HttpValidators getHttpValidators(String url) throws RegainException {
+    Document doc = loadOldEntry(url, HTTP_VALIDATOR_FIELDS);
+    if (doc == null) {
+      return null;
+    }
+    HttpValidators validators = new HttpValidators(
+      doc.get(DocumentFactory.HTTP_ETAG_FIELD),
+      doc.get(DocumentFactory.HTTP_LAST_MODIFIED_FIELD));
+    return validators.isEmpty() ? null : validators;
+  }
 
-    if (mUpdateIndex) {
-      // Search the entry for this URL
-      Term urlTerm = new Term("url", url);
-      Query query = new TermQuery(urlTerm);
+  /**
+   * Gets the links stored in the old index entry of a document.
+   *
+   * @param url The URL of the document.
+   * @return The links (key: URL, value: link text) or <code>null</code> if
+   *         they are not known.
+   * @throws RegainException If reading the index entry failed.
+   */
+  public Map<String, String> getStoredLinks(String url) throws RegainException {
+    Document doc = loadOldEntry(url, OUTLINKS_FIELDS);
+    if (doc == null) {
+      return null;
+    }
+    return DocumentFactory.parseOutlinks(doc.get(DocumentFactory.OUTLINKS_FIELD));
+  }
 
-      try {
-        setIndexMode(SEARCHING_MODE);
-        TopScoreDocCollector collector = TopScoreDocCollector.create(2, false);
-        mIndexSearcher.search(query, collector);
+  /**
+   * Loads some stored fields of the old index entry of a document.
+   *
+   * @param url The URL of the document.
+   * @param fieldNames The names of the fields to load.
+   * @return The index entry or <code>null</code> if there is no (single) old
+   *         entry.
+   * @throws RegainException If reading the index entry failed.
+   */
+  private Document loadOldEntry(String url, String[] fieldNames) throws RegainException {
+    if (mOldIndexReader == null) {
+      return null;
+    }
+    int entry = mIndexEntryTable.getEntry(url);
+    if ((entry == -1) || (mIndexEntryTable.getIndexEntryCount(entry) != 1)) {
+      return null;
+    }
+    try {
+      return mOldIndexReader.document(mIndexEntryTable.getDocId(entry),
+              new MapFieldSelector(fieldNames));
+    } catch (IOException exc) {
+      throw new RegainException("Reading index entry failed for " + url, exc);
+    }
+  }
 
-        if (collector.getTotalHits() == 1) {
-          // we found one hit for our URL
-          result = true;
+  /**
+   * Checks whether there is an up-to-date index entry for a document, so the
+   * document has neither to be loaded nor to be prepared.
+   * <p>
+   * This check is only done using the entries read when the
+   * IndexWriterManager was created, so it is very fast.
+   *
+   * @param url The URL of the document.
+   * @param lastModified The last modification date of the document.
+   * @return Whether there is an up-to-date index entry.
+   */
+  public boolean isEntryUpToDate(String url, Date lastModified) {
+    if (! mUpdateIndex) {
+      return false;
+    }
 
-        }
-      } catch (IOException exc) {
-        throw new RegainException("Searching old index entry failed for " + url, exc);
-      }
+    int entry = mIndexEntryTable.getEntry(url);
+    if ((entry == -1) || (mIndexEntryTable.getIndexEntryCount(entry) != 1)) {
+      return false;
     }
-    return result;
+    boolean upToDate = (checkIndexEntry(url, lastModified, entry, false) == ENTRY_UP_TO_DATE);
+    if (upToDate && mLog.isDebugEnabled()) {
+      mLog.debug("Index entry is already up to date: " + url);
+    }
+    return upToDate;
   }
 
   /**
@@ -609,127 +745,219 @@ public class IndexWriterManager {
    */
   public void addToIndex(RawDocument rawDocument, ErrorLogger errorLogger)
           throws RegainException {
+    Document doc = prepareDocument(rawDocument, errorLogger);
+    if (doc != null) {
+      addDocument(doc, rawDocument);
+    }
+  }
+
+  /**
+   * Prepares a document for the index, but doesn't add it.
+   * <p>
+   * If the index is updated and there already is an up-to-date entry, the
+   * document is not prepared. The preparation itself does not lock the index,
+   * so this method may be called by several threads at the same time.
+   *
+   * @param rawDocument The document to prepare.
+   * @param errorLogger The error logger to use for logging errors.
+   * @return The document to add using {@link #addDocument(Document, RawDocument)}
+   *         or <code>null</code> if there is nothing to add.
+   * @throws RegainException If checking the old index entry failed.
+   */
+  public Document prepareDocument(RawDocument rawDocument, ErrorLogger errorLogger)
+          throws RegainException {
     // Check whether there already is an up-to-date entry in the index
     if (mUpdateIndex) {
-      boolean removeOldEntry = false;
-
-      // Search the entry for this URL
-      Term urlTerm = new Term("url", rawDocument.getUrl());
-      Query query = new TermQuery(urlTerm);
-      Document doc;
-      try {
-        setIndexMode(SEARCHING_MODE);
-        TopScoreDocCollector collector = TopScoreDocCollector.create(20, false);
-        mIndexSearcher.search(query, collector);
-        ScoreDoc[] hits = collector.topDocs().scoreDocs;
-
-        if (hits.length > 0) {
-          if (hits.length > 1) {
-            for (int i = 1; i < hits.length; i++) {
-              markForDeletion(mIndexSearcher.doc(hits[i].doc));
+      int action = checkIndexEntry(rawDocument);
+      if (action == ENTRY_UP_TO_DATE) {
+        if (rawDocument.getHttpValidators() != null) {
+          // The links of a HTTP document are needed for crawling on.
+          // Take the stored ones or parse the document if they are unknown.
+          Map<String, String> links = getStoredLinks(rawDocument.getUrl());
+          if (links == null) {
+            parseDocument(rawDocument, errorLogger);
+          } else {
+            for (Map.Entry<String, String> link : links.entrySet()) {
+              rawDocument.addLink(link.getKey(), link.getValue());
             }
-            mLog.warn("There are duplicate entries (" + hits.length + " in " +
-                    "total) for " + rawDocument.getUrl() + ". They will be removed.");
           }
-
-          doc = mIndexSearcher.doc(hits[0].doc);
-        } else {
-          doc = null;
         }
-      } catch (IOException exc) {
-        throw new RegainException("Searching old index entry failed for " + rawDocument.getUrl(), exc);
+        return null;
+      } else if (action == PARSE_ONLY) {
+        parseDocument(rawDocument, errorLogger);
+        return null;
       }
+    }
+
+    // Create a new entry
+    if (mLog.isDebugEnabled()) {
+      mLog.debug("Creating document: " + rawDocument.getUrl());
+    }
+    Document doc = mDocumentFactory.createDocument(rawDocument, errorLogger);
+    if ((doc == null) && mUpdateIndex) {
+      // There is no new entry that could replace an outdated one
+      deleteIndexEntries(rawDocument.getUrl());
+    }
+    return doc;
+  }
+
+  /**
+   * Deletes all index entries of an URL.
+   *
+   * @param url The URL to delete the entries for.
+   * @throws RegainException If deleting failed.
+   */
+  private synchronized void deleteIndexEntries(String url) throws RegainException {
+    try {
+      mIndexWriter.deleteDocuments(new Term("url", url));
+    } catch (IOException exc) {
+      throw new RegainException("Deleting index entries failed for " + url, exc);
+    }
+  }
+
+  /**
+   * Checks whether there is an up-to-date entry for a document in the index.
+   * <p>
+   * Outdated entries are not deleted here, they are replaced when the new
+   * entry is added (see {@link #addDocument(Document, RawDocument)}).
+   *
+   * @param rawDocument The document to check.
+   * @return What to do with the document. One of {@link #CREATE_ENTRY},
+   *         {@link #PARSE_ONLY} or {@link #ENTRY_UP_TO_DATE}.
+   * @throws RegainException If reading the old index entry failed.
+   */
+  private int checkIndexEntry(RawDocument rawDocument) throws RegainException {
+    String url = rawDocument.getUrl();
+    int entry = mIndexEntryTable.getEntry(url);
+    if (entry == -1) {
+      // There is no entry for this URL
+      return CREATE_ENTRY;
+    }
 
-      // If we found an entry, check whether it is up-to-date
-      if (doc != null) {
-        // Get the last modification date from the document
-        Date docLastModified = rawDocument.getLastModified();
+    int indexEntryCount = mIndexEntryTable.getIndexEntryCount(entry);
+    int action;
+    if (indexEntryCount > 1) {
+      // All entries will be replaced by the new one
+      mLog.warn("There are duplicate entries (" + indexEntryCount + " in " +
+              "total) for " + url + ". They will be removed.");
+      action = CREATE_ENTRY;
+    } else if (hasNewHttpValidators(rawDocument)) {
+      // The server sent the document although we asked for changes only or
+      // the index entry has no validators yet -> Create a new entry
+      mLog.info("HTTP validators have changed. Creating a new index entry: " + url);
+      action = CREATE_ENTRY;
+    } else {
+      action = checkIndexEntry(url, rawDocument.getLastModified(), entry, true);
+    }
 
-        if (docLastModified == null) {
-          // We are not able to get the last modification date from the
-          // document (this happens with all http-URLs)
-          // -> Delete the old entry and create a new one
-          mLog.info("Don't know when the document was last modified. " +
-                  "Creating a new index entry...");
-          removeOldEntry = true;
+    if (action == CREATE_ENTRY) {
+      // The old entries will be replaced
+      mRemovedDocCount.addAndGet(indexEntryCount);
+    }
+    return action;
+  }
 
-        } else {
-          // Compare the modification date with the one from the index entry
-          String asString = doc.get("last-modified");
-          if (asString != null) {
-            long diff = 86400001L;
-            Date indexLastModified = null;
-            try {
-              indexLastModified = DateTools.stringToDate(asString);
-              diff = docLastModified.getTime() - indexLastModified.getTime();
-            } catch (ParseException parseException) {
-              mLog.warn("Couldn't parse last-modified date from index. Document: " +
-                      rawDocument.getUrl(), parseException);
-            }
-            if (diff > 86400000L) {
-              // -> The index entry is not up-to-date -> Delete the old entry
-              mLog.info("Index entry is outdated. Creating a new one (source=" +
-                      docLastModified + "), (index=" + indexLastModified + "): " +
-                      rawDocument.getUrl());
-              removeOldEntry = true;
-
-            } else if ((new Date().getTime()) - indexLastModified.getTime() < 86400000L) {
-              // Spidering at the same day
-              // Due to the fuzziness of the docLastModified.getTime() (day accuracy)
-              // we can't be sure whether the document is up-to-date or not
-              mLog.info("Index entry is from the same day. Therefore we have to recrawl but do not index the document." +
-                      "Creating a new one (source=" + docLastModified + "), (index=" + indexLastModified + "): " +
-                      rawDocument.getUrl());
-
-              parseDocument(rawDocument, errorLogger);
-
-              return;
-
-            } else {
-              // The index entry is up-to-date
-
-              // Check whether the preparation failed the last time
-              boolean failedLastTime = doc.get("preparation-error") != null;
-              if (failedLastTime) {
-                if (mRetryFailedDocs) {
-                  // The entry failed the last time, the user want's a retry
-                  // -> We do a retry
-                  mLog.info("Retrying preparation of: " + rawDocument.getUrl());
-                  removeOldEntry = true;
-                } else {
-                  // The entry failed the last time, the user want's no retry
-                  // -> We are done
-                  mLog.info("Ignoring " + rawDocument.getUrl() + ", because " +
-                          "preparation already failed the last time and no retry is wanted.");
-                  return;
-                }
-              } else {
-                // The entry is up-to-date and contains text -> We are done
-                mLog.info("Index entry is already up to date (index=" + indexLastModified + "), " +
-                        "(source=" + docLastModified + "): " + rawDocument.getUrl());
-                return;
-              }
-            }
-          } else {
-            // We don't know the last modification date from the index entry
-            // -> Delete the entry
-            mLog.info("Index entry has no last-modified field. " +
-                    "Creating a new one: " + rawDocument.getUrl());
-            removeOldEntry = true;
-          }
-        }
+  /**
+   * Checks whether the validators a server sent for a HTTP document differ
+   * from the ones stored in the old index entry.
+   *
+   * @param rawDocument The document to check.
+   * @return Whether the validators differ. <code>false</code> if the server
+   *         sent no validators.
+   * @throws RegainException If reading the old index entry failed.
+   */
+  private boolean hasNewHttpValidators(RawDocument rawDocument) throws RegainException {
+    HttpValidators validators = rawDocument.getHttpValidators();
+    if ((validators == null) || validators.isEmpty()) {
+      return false;
+    }
+    return ! validators.equals(getHttpValidators(rawDocument.getUrl()));
+  }
+
+  /**
+   * Checks whether an index entry is up-to-date.
+   *
+   * @param url The URL of the document.
+   * @param docLastModified The last modification date of the document. May be
+   *        <code>null</code>.
+   * @param entry The number of the entry in the {@link #mIndexEntryTable}.
+   * @param logDecision Whether to log why the entry is (not) up-to-date.
+   * @return What to do with the document. One of {@link #CREATE_ENTRY},
+   *         {@link #PARSE_ONLY} or {@link #ENTRY_UP_TO_DATE}.
+   */
+  private int checkIndexEntry(String url, Date docLastModified, int entry,
+          boolean logDecision) {
+    if (docLastModified == null) {
+      // We are not able to get the last modification date from the
+      // document (this happens with all http-URLs)
+      // -> Delete the old entry and create a new one
+      if (logDecision) {
+        mLog.info("Don't know when the document was last modified. " +
+                "Creating a new index entry...");
       }
+      return CREATE_ENTRY;
+    }
 
-      // Check whether we have to delete the old entry
-      if (removeOldEntry) {
-        // We don't delete the entry immediately, but we remember it.
-        // See javadoc of markForDeletion(Document)
-        markForDeletion(doc);
+    // Compare the modification date with the one from the index entry
+    long indexLastModifiedTime = mIndexEntryTable.getLastModified(entry);
+    if (indexLastModifiedTime == IndexEntryTable.UNKNOWN_LAST_MODIFIED) {
+      // We don't know the last modification date from the index entry
+      // -> Delete the entry
+      if (logDecision) {
+        mLog.info("Index entry has no last-modified field. " +
+                "Creating a new one: " + url);
       }
+      return CREATE_ENTRY;
     }
 
-    // Create a new entry
-    createNewIndexEntry(rawDocument, errorLogger);
+    Date indexLastModified = new Date(indexLastModifiedTime);
+    long diff = docLastModified.getTime() - indexLastModifiedTime;
+    if (diff > 86400000L) {
+      // -> The index entry is not up-to-date -> Delete the old entry
+      if (logDecision) {
+        mLog.info("Index entry is outdated. Creating a new one (source=" +
+                docLastModified + "), (index=" + indexLastModified + "): " +
+                url);
+      }
+      return CREATE_ENTRY;
+
+    } else if ((new Date().getTime()) - indexLastModifiedTime < 86400000L) {
+      // Spidering at the same day
+      // Due to the fuzziness of the docLastModified.getTime() (day accuracy)
+      // we can't be sure whether the document is up-to-date or not
+      if (logDecision) {
+        mLog.info("Index entry is from the same day. Therefore we have to recrawl but do not index the document." +
+                "Creating a new one (source=" + docLastModified + "), (index=" + indexLastModified + "): " +
+                url);
+      }
+      return PARSE_ONLY;
+
+    } else if (mIndexEntryTable.isFailed(entry)) {
+      // The index entry is up-to-date, but the preparation failed the last time
+      if (mRetryFailedDocs) {
+        // The entry failed the last time, the user want's a retry
+        // -> We do a retry
+        if (logDecision) {
+          mLog.info("Retrying preparation of: " + url);
+        }
+        return CREATE_ENTRY;
+      } else {
+        // The entry failed the last time, the user want's no retry
+        // -> We are done
+        if (logDecision) {
+          mLog.info("Ignoring " + url + ", because " +
+                  "preparation already failed the last time and no retry is wanted.");
+        }
+        return ENTRY_UP_TO_DATE;
+      }
+    } else {
+      // The entry is up-to-date and contains text -> We are done
+      if (logDecision) {
+        mLog.info("Index entry is already up to date (index=" + indexLastModified + "), " +
+                "(source=" + docLastModified + "): " + url);
+      }
+      return ENTRY_UP_TO_DATE;
+    }
   }
 
   /**
@@ -750,17 +978,35 @@ public class IndexWriterManager {
 
     // Dokument in den Index aufnehmen
     if (doc != null) {
+      addDocument(doc, rawDocument);
+    }
+  }
 
-      mAddToIndexProfiler.startMeasuring();
-      try {
-        setIndexMode(WRITING_MODE);
-        pluginManager.eventCreateIndexEntry(doc, mIndexWriter);
+  /**
+   * Adds a prepared document to the index.
+   * <p>
+   * If an existing index is updated, the old entries of the document's URL are
+   * replaced.
+   *
+   * @param doc The document to add.
+   * @param rawDocument The raw document the document was created from.
+   *
+   * @throws RegainException If adding the document failed.
+   */
+  public synchronized void addDocument(Document doc, RawDocument rawDocument)
+          throws RegainException {
+    mAddToIndexProfiler.startMeasuring();
+    try {
+      pluginManager.eventCreateIndexEntry(doc, mIndexWriter);
+      if (mUpdateIndex) {
+        mIndexWriter.updateDocument(new Term("url", rawDocument.getUrl()), doc);
+      } else {
         mIndexWriter.addDocument(doc);
-        mAddToIndexProfiler.stopMeasuring(rawDocument.getLength());
-      } catch (IOException exc) {
-        mAddToIndexProfiler.abortMeasuring();
-        throw new RegainException("Adding document to index failed", exc);
       }
+      mAddToIndexProfiler.stopMeasuring(rawDocument.getLength());
+    } catch (IOException exc) {
+      mAddToIndexProfiler.abortMeasuring();
+      throw new RegainException("Adding document to index failed", exc);
     }
   }
 
@@ -796,17 +1042,15 @@ public class IndexWriterManager {
   /**
    * Goes through the index and deletes all obsolete entries.
    * <p>
-   * Entries are obsolete if they are marked for deletion by the
-   * IndexWriterManager (see {@link #mUrlsToDeleteHash}) or if the don't neither
-   * match an entry of the urlToKeepSet nor of the prefixesToKeepArr.
+   * Entries are obsolete if they have no last-modified field or if the don't
+   * neither match an entry of the urlToKeepSet nor of the prefixesToKeepArr.
    *
    * @param urlChecker The UrlChecker to use for deciding whether an index entry
-   *        should be kept in the index or not. If null only the documents in
-   *        the {@link #mUrlsToDeleteHash} will be deleted.
+   *        should be kept in the index or not.
    * @throws RegainException If an index entry could either not be read or
    *         deleted.
    */
-  public void removeObsoleteEntries(UrlChecker urlChecker)
+  public synchronized void removeObsoleteEntries(UrlChecker urlChecker)
           throws RegainException {
     if (!mUpdateIndex) {
       // Wir haben einen komplett neuen Index erstellt
@@ -815,137 +1059,164 @@ public class IndexWriterManager {
       return;
     }
 
-    if ((mUrlsToDeleteHash == null) && (urlChecker == null)) {
-      // There is nothing to delete -> Fast return
-      return;
-    }
-
-    // Get the UrlMatchers that identify URLs that should not be deleted
-    UrlMatcher[] preserveUrlMatcherArr = null;
-    if (urlChecker != null) {
-      preserveUrlMatcherArr = urlChecker.createPreserveUrlMatcherArr();
-    }
-
     // Go through the index
-    setIndexMode(READING_MODE);
-    int docCount = mIndexReader.numDocs();
-    for (int docIdx = 0; docIdx < docCount; docIdx++) {
-      if (!mIndexReader.isDeleted(docIdx)) {
-        // Document lesen
-        Document doc;
-        try {
-          doc = mIndexReader.document(docIdx);
-        } catch (Throwable thr) {
-          throw new RegainException("Getting document #" + docIdx + " from index failed.", thr);
-        }
+    // NOTE: The entries added in this run must be visible, too.
+    refreshIndexReader();
 
-        // URL und last-modified holen
-        String url = doc.get("url");
-        String lastModified = doc.get("last-modified");
-
-        // Prüfen, ob die URL gelöscht werden soll
-        boolean shouldBeDeleted;
-        if (url != null) {
-          // Prüfen, ob dieser Eintrag zum Löschen vorgesehen ist
-          if (isMarkedForDeletion(doc)) {
-            shouldBeDeleted = true;
-          } // Check whether all other documents should NOT be deleted
-          else if ((urlChecker == null)) {
-            shouldBeDeleted = false;
-          } // Check whether this document should be kept in the index
-          else if (urlChecker.shouldBeKeptInIndex(url)) {
-            shouldBeDeleted = false;
-          } // Prüfen, ob die URL zu einem zu-verschonen-Präfix passt
-          else {
-            shouldBeDeleted = true;
-            for (int i = 0; i < preserveUrlMatcherArr.length; i++) {
-              if (preserveUrlMatcherArr[i].matches(url)) {
-                shouldBeDeleted = false;
-                break;
-              }
-            }
+    // Checking whether a file still exists takes most of the time, so the
+    // entries are checked in batches by several threads
+    int threadCount = Math.max(1, mConfig.getFetcherThreadCount());
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      MapFieldSelector fieldSelector = new MapFieldSelector(OBSOLETE_CHECK_FIELDS);
+      int[] docIdxArr = new int[OBSOLETE_CHECK_BATCH_SIZE];
+      String[] urlArr = new String[OBSOLETE_CHECK_BATCH_SIZE];
+      String[] lastModifiedArr = new String[OBSOLETE_CHECK_BATCH_SIZE];
+      int docCount = mIndexReader.maxDoc();
+      int batchSize = 0;
+      for (int docIdx = 0; docIdx < docCount; docIdx++) {
+        if (!mIndexReader.isDeleted(docIdx)) {
+          // Only read the URL and the last-modified field
+          Document doc;
+          try {
+            doc = mIndexReader.document(docIdx, fieldSelector);
+          } catch (Throwable thr) {
+            throw new RegainException("Getting document #" + docIdx + " from index failed.", thr);
           }
 
-          if (shouldBeDeleted) {
-        	pluginManager.eventDeleteIndexEntry(doc, mIndexReader);
-
-            try {
-              mLog.info("Deleting from index: " + url + " from " + lastModified);
-              mIndexReader.deleteDocument(docIdx);
-            } catch (IOException exc) {
-              throw new RegainException("Deleting document #" + docIdx + " from index failed: " + url + " from " + lastModified, exc);
-            }
+          String url = doc.get("url");
+          if (url != null) {
+            docIdxArr[batchSize] = docIdx;
+            urlArr[batchSize] = url;
+            lastModifiedArr[batchSize] = doc.get("last-modified");
+            batchSize++;
           }
         }
+
+        if ((batchSize == OBSOLETE_CHECK_BATCH_SIZE)
+          || ((docIdx == docCount - 1) && (batchSize > 0)))
+        {
+          removeObsoleteEntries(urlChecker, executor, threadCount, docIdxArr,
+            urlArr, lastModifiedArr, batchSize);
+          batchSize = 0;
+        }
       }
     }
-
-    // Merkliste der zu l�schenden Eintr�ge l�schen
-    mUrlsToDeleteHash = null;
+    finally {
+      executor.shutdown();
+    }
   }
 
   /**
-   * Goes through the index and deletes all obsolete entries.
-   * <p>
-   * Entries are obsolete if they are marked for deletion by the
-   * IndexWriterManager (see {@link #mUrlsToDeleteHash}).
+   * Checks a batch of index entries and deletes the obsolete ones.
    *
-   * @throws RegainException If an index entry could either not be read or
+   * @param urlChecker The UrlChecker to use for deciding whether an index entry
+   *        should be kept in the index or not.
+   * @param executor The executor running the checks.
+   * @param threadCount The number of threads of the executor.
+   * @param docIdxArr The document numbers of the entries.
+   * @param urlArr The URLs of the entries.
+   * @param lastModifiedArr The last-modified fields of the entries. An element
+   *        is <code>null</code> if the entry has no last-modified field.
+   * @param batchSize The number of entries in the batch.
+   * @throws RegainException If an index entry could either not be checked or
    *         deleted.
    */
-  private void removeObsoleteEntries() throws RegainException {
-    removeObsoleteEntries(null);
-  }
-
-  /**
-   * Merkt ein Dokument für die sp�tere L�schung vor.
-   * <p>
-   * Diese Methode ist Teil eines Workaround: Ein alter Eintrag, der durch einen
-   * neuen ersetzt wird, wird nicht sofort gel�scht, sondern nur zur L�schung
-   * vorgemerkt. Auf diese Weise wird ein seltener Fehler umgangen, der das
-   * Schlie�en des IndexWriter verhindert, wenn h�ufig zwischen InderWriter und
-   * IndexReader gewechselt wird.
-   *
-   * @param doc Das vorzumerkende Dokument.
-   */
-  private void markForDeletion(Document doc) {
-    if (mUrlsToDeleteHash == null) {
-      mUrlsToDeleteHash = new HashMap<String, String>();
+  private void removeObsoleteEntries(final UrlChecker urlChecker,
+    ExecutorService executor, int threadCount, int[] docIdxArr,
+    final String[] urlArr, final String[] lastModifiedArr, int batchSize)
+    throws RegainException
+  {
+    // Check the entries in parallel, each thread a part of the batch
+    final boolean[] shouldBeDeletedArr = new boolean[batchSize];
+    ArrayList<Callable<Object>> taskList = new ArrayList<Callable<Object>>();
+    int partSize = (batchSize + threadCount - 1) / threadCount;
+    for (int start = 0; start < batchSize; start += partSize) {
+      final int partStart = start;
+      final int partEnd = Math.min(start + partSize, batchSize);
+      taskList.add(new Callable<Object>() {
+        public Object call() throws RegainException {
+          for (int i = partStart; i < partEnd; i++) {
+            shouldBeDeletedArr[i] = isObsoleteEntry(urlChecker, urlArr[i], lastModifiedArr[i]);
+          }
+          return null;
+        }
+      });
+    }
+    try {
+      for (Future<Object> future : executor.invokeAll(taskList)) {
+        future.get();
+      }
+    }
+    catch (InterruptedException exc) {
+      throw new RegainException("Checking index entries was interrupted", exc);
+    }
+    catch (ExecutionException exc) {
+      throw new RegainException("Checking index entries failed", exc.getCause());
     }
 
-    String url = doc.get("url");
-    String lastModified = doc.get("last-modified");
-    if ((url != null) || (lastModified != null)) {
-      mLog.info("Marking old entry for a later deletion: " + url + " from " + lastModified);
-      mUrlsToDeleteHash.put(url, lastModified);
+    // Delete the obsolete entries
+    // NOTE: Whether an entry is obsolete only depends on the URL, so all
+    //       entries of an URL are deleted
+    ArrayList<Term> deleteTermList = new ArrayList<Term>();
+    for (int i = 0; i < batchSize; i++) {
+      if (shouldBeDeletedArr[i]) {
+        // The plugins get the complete document
+        Document doc;
+        try {
+          doc = mIndexReader.document(docIdxArr[i]);
+        } catch (Throwable thr) {
+          throw new RegainException("Getting document #" + docIdxArr[i] + " from index failed.", thr);
+        }
+        pluginManager.eventDeleteIndexEntry(doc, mIndexReader);
+
+        mLog.info("Deleting from index: " + urlArr[i] + " from " + lastModifiedArr[i]);
+        deleteTermList.add(new Term("url", urlArr[i]));
+        mRemovedDocCount.incrementAndGet();
+      }
+    }
+    if (! deleteTermList.isEmpty()) {
+      try {
+        mIndexWriter.deleteDocuments(deleteTermList.toArray(new Term[deleteTermList.size()]));
+      } catch (IOException exc) {
+        throw new RegainException("Deleting " + deleteTermList.size()
+          + " documents from index failed", exc);
+      }
     }
   }
 
   /**
-   * Gibt zurück, ob ein Dokument für die Löschung vorgemerkt wurde.
+   * Checks whether an index entry is obsolete.
+   * <p>
+   * An entry without last-modified field is always obsolete, even if its URL
+   * is still accepted or preserved. The crawler writes the last-modified field
+   * for every document, so such an entry was written by an old or broken
+   * crawler run and can't be checked for changes. Deleting it lets the
+   * document be indexed again. This is the same handling as before the
+   * entries were checked in batches.
    *
-   * @param doc Das zu prüfende Dokument.
-   * @return Ob das Dokument für die Löschung vorgemerkt wurde.
+   * @param urlChecker The UrlChecker to use for deciding whether an index entry
+   *        should be kept in the index or not.
+   * @param url The URL of the entry.
+   * @param lastModified The last-modified field of the entry. May be
+   *        <code>null</code>.
+   * @return Whether the entry should be deleted.
+   * @throws RegainException If checking the entry failed.
    */
-  private boolean isMarkedForDeletion(Document doc) {
-    String url = doc.get("url");
-    String lastModified = doc.get("last-modified");
-
-    if ((url == null) || (lastModified == null)) {
-      // url und last-modified sind Mussfelder
-      // Da eines fehlt -> Dokument l�schen
+  public static boolean isObsoleteEntry(UrlChecker urlChecker, String url,
+    String lastModified)
+    throws RegainException
+  {
+    // url and last-modified are required -> Delete entries without
+    if (lastModified == null) {
       return true;
     }
-
-    if (mUrlsToDeleteHash == null) {
-      // Es sind gar keine Dokumente zum Löschen vorgemerkt
+    // Check whether this document should be kept in the index
+    if (urlChecker.shouldBeKeptInIndex(url)) {
       return false;
     }
-
-    // Prüfen, ob es einen Eintrag für diese URL gibt und ob er dem
-    // last-modified des Dokuments entspricht
-    String lastModifiedToDelete = mUrlsToDeleteHash.get(url);
-    return lastModified.equals(lastModifiedToDelete);
+    // Check whether the URL belongs to a white list entry that is not updated
+    return ! urlChecker.shouldBePreserved(url);
   }
 
   /**
@@ -954,29 +1225,24 @@ public class IndexWriterManager {
    * @return Die Anzahl der Eintr�ge im Index.
    * @throws RegainException Wenn die Anzahl nicht ermittelt werden konnte.
    */
-  public int getIndexEntryCount() throws RegainException {
-    if (mIndexReader != null) {
-      return mIndexReader.numDocs();
-    } else {
-      setIndexMode(WRITING_MODE);
-      return mIndexWriter.maxDoc();
-    }
+  public synchronized int getIndexEntryCount() throws RegainException {
+    refreshIndexReader();
+    return mIndexReader.numDocs();
   }
 
   /**
-   * Prepares a breakpoint.
+   * Commits all changes, so the index files in the working directory form a
+   * complete index.
    *
-   * @throws RegainException If preparing the breakpoint failed.
+   * @throws RegainException If committing failed.
    */
-  private void prepareBreakpoint() throws RegainException {
-    // Testen, ob noch Eintr�ge für die L�schung vorgesehen sind
-    if (mUrlsToDeleteHash != null) {
-      throw new RegainException("There are still documents marked for deletion." + " The method removeObsoleteEntires(...) has to be called first.");
+  private void commit() throws RegainException {
+    try {
+      mIndexWriter.commit();
+    } catch (IOException exc) {
+      throw new RegainException("Committing index failed", exc);
     }
 
-    // Switch to ALL_CLOSED_MODE
-    setIndexMode(ALL_CLOSED_MODE);
-
     // Close the error log of the index
     if (mErrorLogStream != null) {
       mErrorLogWriter.close();
@@ -991,59 +1257,278 @@ public class IndexWriterManager {
     }
   }
 
+  /**
+   * Gets the last commit of the working index.
+   *
+   * @return The last commit.
+   * @throws RegainException If reading the commits failed.
+   */
+  private IndexCommit getLastCommit() throws RegainException {
+    try {
+      IndexCommit lastCommit = null;
+      for (IndexCommit commit : IndexReader.listCommits(mLuceneTempIndexDir)) {
+        if ((lastCommit == null) || (commit.getGeneration() > lastCommit.getGeneration())) {
+          lastCommit = commit;
+        }
+      }
+      if (lastCommit == null) {
+        throw new RegainException("There is no commit in " + mTempIndexDir.getAbsolutePath());
+      }
+      return lastCommit;
+    } catch (IOException exc) {
+      throw new RegainException("Reading the last commit of the index failed", exc);
+    }
+  }
+
   /**
    * Creates a breakpoint.
+   * <p>
+   * If there already is a breakpoint of this index, only the index files that
+   * were created since then are copied. Otherwise a complete new breakpoint is
+   * created.
    *
    * @throws RegainException If creating the breakpoint failed.
    */
-  public void createBreakpoint() throws RegainException {
+  public synchronized void createBreakpoint() throws RegainException {
     mLog.info("Creating a breakpoint...");
     try {
       mBreakpointProfiler.startMeasuring();
 
-      // Remove the entries that were marked for deletion
-      removeObsoleteEntries();
-
-      // Prepare the breakpoint
-      prepareBreakpoint();
-
-      // Create a temp directory
-      // NOTE: We copy to a temp directory and rename it when we are finished.
-      File tempDir = new File(mBreakpointIndexDir.getAbsolutePath() + "_tmp");
-      RegainToolkit.deleteDirectory(tempDir);
-      tempDir.mkdir();
-
-      // Copy the current working index to the breakpoint directory
-      RegainToolkit.copyDirectory(mTempIndexDir, tempDir, false);
+      // The crawler state of the old breakpoint doesn't fit to the new one
+      File crawlerStateFile = getCrawlerStateFile();
+      if (crawlerStateFile.exists() && !crawlerStateFile.delete()) {
+        throw new RegainException("Deleting " + crawlerStateFile.getAbsolutePath() + " failed");
+      }
 
-      // Delete the old breakpoint if it exists
-      deleteOldIndex(mBreakpointIndexDir);
+      // Commit the changes
+      commit();
+      IndexCommit commit = getLastCommit();
 
-      // Rename the temp directory and let it become the new breakpoint
-      if (!tempDir.renameTo(mBreakpointIndexDir)) {
-        throw new RegainException("Renaming temporary copy directory failed: " +
-                tempDir.getAbsolutePath());
+      long copiedBytes;
+      Map<String, Long> manifest = readBreakpointManifest();
+      if (manifest == null) {
+        copiedBytes = createFullBreakpoint(commit);
+      } else {
+        copiedBytes = updateBreakpoint(commit, manifest);
       }
 
       // Stop measuring
-      long breakpointSize = RegainToolkit.getDirectorySize(mBreakpointIndexDir);
-      mBreakpointProfiler.stopMeasuring(breakpointSize);
+      mBreakpointProfiler.stopMeasuring(copiedBytes);
     } catch (RegainException exc) {
       mBreakpointProfiler.abortMeasuring();
       throw exc;
     }
   }
 
+  /**
+   * Creates a complete new breakpoint.
+   *
+   * @param commit The commit to create the breakpoint from.
+   * @return The number of bytes copied.
+   * @throws RegainException If creating the breakpoint failed.
+   */
+  private long createFullBreakpoint(IndexCommit commit) throws RegainException {
+    // Create a temp directory
+    // NOTE: We copy to a temp directory and rename it when we are finished.
+    File tempDir = new File(mBreakpointIndexDir.getAbsolutePath() + "_tmp");
+    RegainToolkit.deleteDirectory(tempDir);
+    tempDir.mkdir();
+
+    // Copy the current working index to the breakpoint directory
+    long copiedBytes = transferCommit(commit, tempDir, null);
+
+    // Delete the old breakpoint if it exists
+    deleteOldIndex(mBreakpointIndexDir);
+
+    // Rename the temp directory and let it become the new breakpoint
+    if (!tempDir.renameTo(mBreakpointIndexDir)) {
+      throw new RegainException("Renaming temporary copy directory failed: " +
+              tempDir.getAbsolutePath());
+    }
+
+    return copiedBytes;
+  }
+
+  /**
+   * Updates the existing breakpoint.
+   * <p>
+   * The breakpoint is updated the same way Lucene commits: First the new
+   * index files are added, then the new segments file. After that the files
+   * that are no longer needed are deleted. So the breakpoint is always a
+   * valid index, even if the crawler is stopped in between.
+   *
+   * @param commit The commit to create the breakpoint from.
+   * @param manifest The manifest of the existing breakpoint.
+   * @return The number of bytes copied.
+   * @throws RegainException If updating the breakpoint failed.
+   */
+  private long updateBreakpoint(IndexCommit commit, Map<String, Long> manifest)
+          throws RegainException {
+    long copiedBytes = transferCommit(commit, mBreakpointIndexDir, manifest);
+
+    // Delete the index files that are no longer part of the breakpoint
+    Collection<String> fileNames;
+    try {
+      fileNames = commit.getFileNames();
+    } catch (IOException exc) {
+      throw new RegainException("Reading the files of the commit failed", exc);
+    }
+    File[] fileArr = mBreakpointIndexDir.listFiles();
+    for (int i = 0; i < fileArr.length; i++) {
+      String fileName = fileArr[i].getName();
+      if (fileArr[i].isFile() && (!fileNames.contains(fileName))
+          && (!fileName.equals(IndexFileNames.SEGMENTS_GEN))
+          && (!fileName.endsWith(".txt")))
+      {
+        if (!fileArr[i].delete()) {
+          // The file may still be used by the search mask -> We'll try again
+          // the next time
+          mLog.debug("Deleting obsolete breakpoint file failed: " + fileArr[i]);
+        }
+      }
+    }
+
+    return copiedBytes;
+  }
+
+  /**
+   * Transfers the files of a commit into a breakpoint directory and writes the
+   * manifest.
+   * <p>
+   * The index files are linked if possible. The segments file of the commit
+   * is transfered after all other index files.
+   *
+   * @param commit The commit to transfer.
+   * @param toDir The breakpoint directory.
+   * @param manifest The manifest of the files already in the directory. May be
+   *        <code>null</code>.
+   * @return The number of bytes copied.
+   * @throws RegainException If transfering failed.
+   */
+  private long transferCommit(IndexCommit commit, File toDir,
+          Map<String, Long> manifest)
+          throws RegainException {
+    Collection<String> fileNames;
+    try {
+      fileNames = commit.getFileNames();
+    } catch (IOException exc) {
+      throw new RegainException("Reading the files of the commit failed", exc);
+    }
+    String segmentsFileName = commit.getSegmentsFileName();
+
+    long copiedBytes = 0;
+    ArrayList<String> manifestLines = new ArrayList<String>();
+    manifestLines.add(mIndexId);
+    for (String fileName : fileNames) {
+      File file = new File(mTempIndexDir, fileName);
+      long size = file.length();
+      if (! fileName.equals(segmentsFileName)) {
+        Long sizeInManifest = (manifest == null) ? null : manifest.get(fileName);
+        if ((sizeInManifest == null) || (sizeInManifest.longValue() != size)) {
+          copiedBytes += transferFile(file, toDir, true);
+        }
+      }
+      manifestLines.add(fileName + " " + size);
+    }
+
+    // Add the segments file of the commit. This makes the new files visible.
+    copiedBytes += transferFile(new File(mTempIndexDir, segmentsFileName), toDir, false);
+    File segmentsGenFile = new File(mTempIndexDir, IndexFileNames.SEGMENTS_GEN);
+    if (segmentsGenFile.exists()) {
+      copiedBytes += transferFile(segmentsGenFile, toDir, false);
+    }
+
+    // Copy the other files (analyzerType.txt, ...)
+    File[] fileArr = mTempIndexDir.listFiles();
+    for (int i = 0; i < fileArr.length; i++) {
+      if (fileArr[i].isFile() && fileArr[i].getName().endsWith(".txt")) {
+        copiedBytes += transferFile(fileArr[i], toDir, false);
+      }
+    }
+
+    // Write the manifest
+    String[] manifestArr = new String[manifestLines.size()];
+    manifestLines.toArray(manifestArr);
+    RegainToolkit.writeListToFile(manifestArr, new File(toDir, BREAKPOINT_MANIFEST_FILE));
+
+    return copiedBytes;
+  }
+
+  /**
+   * Transfers a file into a directory.
+   *
+   * @param file The file to transfer.
+   * @param toDir The directory to transfer the file to.
+   * @param link Whether the file may be linked.
+   * @return The number of bytes copied.
+   * @throws RegainException If transfering the file failed.
+   */
+  private long transferFile(File file, File toDir, boolean link)
+          throws RegainException {
+    File targetFile = new File(toDir, file.getName());
+    if (targetFile.exists() && !targetFile.delete()) {
+      throw new RegainException("Deleting " + targetFile.getAbsolutePath() + " failed");
+    }
+
+    boolean copied;
+    if (link) {
+      copied = RegainToolkit.linkOrCopyFile(file, targetFile);
+    } else {
+      RegainToolkit.copyFile(file, targetFile);
+      copied = true;
+    }
+    return copied ? file.length() : 0;
+  }
+
+  /**
+   * Reads the manifest of the existing breakpoint.
+   *
+   * @return The size of each index file in the breakpoint or <code>null</code>
+   *         if there is no breakpoint of this index.
+   * @throws RegainException If reading the manifest failed.
+   */
+  private Map<String, Long> readBreakpointManifest() throws RegainException {
+    File manifestFile = new File(mBreakpointIndexDir, BREAKPOINT_MANIFEST_FILE);
+    String[] lineArr = RegainToolkit.readListFromFile(manifestFile);
+    if ((lineArr == null) || (lineArr.length == 0) || (!lineArr[0].equals(mIndexId))) {
+      // There is no breakpoint of this index
+      return null;
+    }
+
+    HashMap<String, Long> manifest = new HashMap<String, Long>();
+    for (int i = 1; i < lineArr.length; i++) {
+      int spacePos = lineArr[i].lastIndexOf(' ');
+      if (spacePos != -1) {
+        try {
+          manifest.put(lineArr[i].substring(0, spacePos),
+                  Long.valueOf(lineArr[i].substring(spacePos + 1)));
+        } catch (NumberFormatException exc) {
+          mLog.warn("Breakpoint manifest has a wrong line: " + lineArr[i]);
+        }
+      }
+    }
+    return manifest;
+  }
+
   /**
    * Optimiert und schlie�t den Index
    *
    * @param putIntoQuarantine Gibt an, ob der Index in Quarant�ne soll.
    * @throws RegainException Wenn der Index nicht geschlossen werden konnte.
    */
-  public void close(boolean putIntoQuarantine) throws RegainException {
+  public synchronized void close(boolean putIntoQuarantine) throws RegainException {
+    // The old entries are not needed any more
+    if (mOldIndexReader != null) {
+      try {
+        mOldIndexReader.decRef();
+        mOldIndexReader = null;
+      } catch (IOException exc) {
+        throw new RegainException("Closing IndexReader of the old index failed", exc);
+      }
+    }
+
     // Index optimieren
     try {
-      setIndexMode(WRITING_MODE);
       mIndexWriter.optimize(); // TODO: Use maybeMerge instead?
     } catch (IOException exc) {
       throw new RegainException("Finishing IndexWriter failed", exc);
@@ -1060,13 +1545,19 @@ public class IndexWriterManager {
       }
       mLog.info(msg.toString());
 
-      setIndexMode(READING_MODE);
+      refreshIndexReader();
       RegainToolkit.readFieldValues(mIndexReader, prefetchFields, mTempIndexDir);
     }
 
-    // Prepare the final 'breakpoint'
-    // NOTE: This will set the ALL_CLOSED_MODE
-    prepareBreakpoint();
+    // Close the index
+    commit();
+    closeIndexReader();
+    try {
+      mIndexWriter.close();
+      mIndexWriter = null;
+    } catch (IOException exc) {
+      throw new RegainException("Closing IndexWriter failed", exc);
+    }
 
     // Ressourcen der DocumentFactory freigeben
     mDocumentFactory.close();
@@ -0,0 +1,26 @@
+package net.sf.regain.crawler;
+
+import net.sf.regain.RegainException;
+
+/**
+ * Used for handling HTTP 304 (Not Modified) responses to conditional requests.
+ * The document has not changed since it was indexed, so the index entry is
+ * still up-to-date.
+ *
+ * @see net.sf.regain.crawler.CrawlerToolkit#getHttpConnection(java.net.URL, int, net.sf.regain.crawler.document.HttpValidators)
+ * @author Til Schneider, www.murfman.de
+ */
+public class NotModifiedException extends RegainException {
+
+  static final long serialVersionUID = 1L;
+
+  /**
+   * Creates a new instance of NotModifiedException.
+   *
+   * @param message The error message.
+   */
+  public NotModifiedException(String message) {
+    super(message);
+  }
+
+}
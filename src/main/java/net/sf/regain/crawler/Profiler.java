@@ -53,10 +53,23 @@ public class Profiler {
   /** Die Anzahl der abgebrochenen Messungen. */
   private int mAbortedMeasureCount;
   /**
-   * Die Zeit, zu der die laufende Messung begonnen hat. Ist -1, wenn keine
-   * Messung läuft.
+   * The time when the running measuring of the current thread has started.
+   * Is -1 if the current thread has no running measuring.
+   * <p>
+   * NOTE: The crawler processes documents in several threads at the same
+   * time, so every thread needs its own start time.
    */
-  private long mMeasureStart = -1;
+  private ThreadLocal<Long> mMeasureStart = new ThreadLocal<Long>() {
+    @Override
+    protected Long initialValue() {
+      return Long.valueOf(-1);
+    }
+  };
+  /**
+   * The time when the last measuring (of any thread) has started. Is -1 if
+   * there is no measuring running.
+   */
+  private volatile long mLastMeasureStart = -1;
 
 
 
@@ -82,7 +95,7 @@ public class Profiler {
    *
    * @return The number of measures.
    */
-  public int getMeasureCount() {
+  public synchronized int getMeasureCount() {
     return mMeasureCount;
   }
 
@@ -92,20 +105,21 @@ public class Profiler {
    *
    * @return The number of aborted measures.
    */
-  public int getAbortedMeasureCount() {
+  public synchronized int getAbortedMeasureCount() {
     return mAbortedMeasureCount;
   }
 
 
   /**
-   * Gets the current time of the measuring running now.
+   * Gets the current time of the measuring running now. If several threads
+   * are measuring, the time of the measuring started last is returned.
    *
    * @return The current measuring time in milli seconds.
    */
   public long getCurrentMeasuringTime() {
     // NOTE: We put the start time in a local variable to avoid it is changed
     //       while this method is executed.
-    long startTime = mMeasureStart;
+    long startTime = mLastMeasureStart;
     if (startTime == -1) {
       return -1;
     } else {
@@ -140,11 +154,13 @@ public class Profiler {
    * Startet eine Messung.
    */
   public void startMeasuring() {
-    if (mMeasureStart != -1) {
+    if (mMeasureStart.get().longValue() != -1) {
       mLog.warn("A profiler measuring for " + mName + " was started, although "
         + "there is currently a measuring running!");
     }
-    mMeasureStart = System.currentTimeMillis();
+    long startTime = System.currentTimeMillis();
+    mMeasureStart.set(Long.valueOf(startTime));
+    mLastMeasureStart = startTime;
   }
 
 
@@ -155,15 +171,13 @@ public class Profiler {
    * @param bytes Die Anzahl der verarbeiteten Bytes.
    */
   public void stopMeasuring(long bytes) {
-    if (mMeasureStart == -1) {
+    long startTime = mMeasureStart.get().longValue();
+    if (startTime == -1) {
       mLog.warn("A profiler measuring for " + mName + " was stopped, although "
         + "there was currently no measuring running!");
     } else {
-      mTotalTime += System.currentTimeMillis() - mMeasureStart;
-      mTotalBytes += bytes;
-      mMeasureCount++;
-
-      mMeasureStart = -1;
+      mMeasureStart.set(Long.valueOf(-1));
+      addMeasuring(startTime, bytes);
     }
   }
 
@@ -175,17 +189,47 @@ public class Profiler {
    * Exception geworfen wurde.
    */
   public void abortMeasuring() {
-    if (mMeasureStart == -1) {
+    if (mMeasureStart.get().longValue() == -1) {
       mLog.warn("A profiler measuring for " + mName + " was aborted, although "
         + "there was currently no measuring running!");
     } else {
-      mMeasureStart = -1;
-      mAbortedMeasureCount++;
+      mMeasureStart.set(Long.valueOf(-1));
+      addAbortedMeasuring();
     }
   }
 
 
 
+  /**
+   * Adds a finished measuring. Use this method if a processing step was
+   * started in one thread and finished in another one.
+   *
+   * @param startTime The time when the processing step was started
+   *        (see {@link System#currentTimeMillis()}).
+   * @param bytes The number of bytes processed.
+   */
+  public synchronized void addMeasuring(long startTime, long bytes) {
+    mTotalTime += System.currentTimeMillis() - startTime;
+    mTotalBytes += bytes;
+    mMeasureCount++;
+
+    if (mLastMeasureStart == startTime) {
+      mLastMeasureStart = -1;
+    }
+  }
+
+
+
+  /**
+   * Adds an aborted measuring. Use this method if a processing step was
+   * started in one thread and failed in another one.
+   */
+  public synchronized void addAbortedMeasuring() {
+    mAbortedMeasureCount++;
+  }
+
+
+
   /**
    * Gibt das Resultat der Messungen als String zurück.
    *
@@ -193,10 +237,16 @@ public class Profiler {
    */
   public String toString() {
     // Get a current snap shot
-    long totalTime = mTotalTime;
-    long totalBytes = mTotalBytes;
-    int measureCount = mMeasureCount;
-    int abortedMeasureCount = mAbortedMeasureCount;
+    long totalTime;
+    long totalBytes;
+    int measureCount;
+    int abortedMeasureCount;
+    synchronized (this) {
+      totalTime = mTotalTime;
+      totalBytes = mTotalBytes;
+      measureCount = mMeasureCount;
+      abortedMeasureCount = mAbortedMeasureCount;
+    }
 
     // Calculate the results
     long averageTime = 0;
@@ -308,7 +358,7 @@ public class Profiler {
    *
    * @return Ob dieser Profiler genutzt wurde.
    */
-  public boolean wasUsed() {
+  public synchronized boolean wasUsed() {
     return (mMeasureCount > 0) || (mAbortedMeasureCount > 0);
   }
 
@@ -317,7 +367,7 @@ public class Profiler {
    *
    * @return Die Resultate saemtlicher genutzter Profiler.
    */
-  public static String getProfilerResults() {
+  public static synchronized String getProfilerResults() {
     if (mProfilerList == null) {
       return "";
     }
@@ -20,9 +20,13 @@
  */
 package net.sf.regain.crawler;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -31,6 +35,7 @@ import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.config.StartUrl;
 import net.sf.regain.crawler.config.UrlMatcher;
 import net.sf.regain.crawler.config.UrlMatcherResult;
+import net.sf.regain.crawler.config.UrlMatcherSet;
 import net.sf.regain.crawler.config.WhiteListEntry;
 
 import org.apache.log4j.Logger;
@@ -45,7 +50,11 @@ import org.apache.log4j.Logger;
  * other (Wich is done by {@link #normalizeStartUrls(StartUrl[])}).
  * <p>
  * For http-URLs we have to remember all accepted or ignored URLs, because in
- * http URLs are found by page parsing which can ramdomly find any URL.
+ * http URLs are found by page parsing which can ramdomly find any URL. Only a
+ * fingerprint of these URLs is kept (see {@link UrlFingerprintSet}).
+ * <p>
+ * This class is thread safe, so it may be used by several crawler threads at
+ * the same time.
  *
  * @author Til Schneider, www.murfman.de
  */
@@ -55,11 +64,11 @@ public class UrlChecker {
   private static Logger mLog = Logger.getLogger(UrlChecker.class);
 
   /** Contains all http-URLs that have been accepted. */
-  private HashSet<String> mAcceptedUrlSet;
+  private UrlFingerprintSet mAcceptedUrlSet;
   /** Contains all http-URLs that have been ignored. */
-  private HashSet<String> mIgnoredUrlSet;
+  private UrlFingerprintSet mIgnoredUrlSet;
   /** The number of URLs that have been ignored. */
-  private int mIgnoredCount;
+  private AtomicInteger mIgnoredCount;
 
   /**
    * The white list.
@@ -68,13 +77,18 @@ public class UrlChecker {
    * in order to be processed.
    */
   private WhiteListEntry[] mWhiteListEntryArr;
+
+  /** The matchers of the white list entries that should be updated. */
+  private UrlMatcherSet mWhiteListSet;
   /**
    * The black list.
    * <p>
-   * The black list is an array of UrlMatchers, a URL <i>must not</i> match to,
+   * The black list holds the UrlMatchers, a URL <i>must not</i> match to,
    * in order to be processed.
    */
-  private UrlMatcher[] mBlackListArr;
+  private UrlMatcherSet mBlackListSet;
+  /** The matchers of the white list entries that should not be updated. */
+  private UrlMatcherSet mPreserveSet;
 
 
   /**
@@ -86,12 +100,24 @@ public class UrlChecker {
    *        a URL <i>must not</i> match to, in order to be processed.
    */
   public UrlChecker(WhiteListEntry[] whiteList, UrlMatcher[] blackList) {
-    mAcceptedUrlSet = new HashSet<String>();
-    mIgnoredUrlSet = new HashSet<String>();
-    mIgnoredCount = 0;
+    mAcceptedUrlSet = new UrlFingerprintSet();
+    mIgnoredUrlSet = new UrlFingerprintSet();
+    mIgnoredCount = new AtomicInteger();
 
     mWhiteListEntryArr = whiteList;
-    mBlackListArr = blackList;
+
+    ArrayList<UrlMatcher> updateList = new ArrayList<UrlMatcher>();
+    ArrayList<UrlMatcher> preserveList = new ArrayList<UrlMatcher>();
+    for (int i = 0; i < whiteList.length; i++) {
+      if (whiteList[i].shouldBeUpdated()) {
+        updateList.add(whiteList[i].getUrlMatcher());
+      } else {
+        preserveList.add(whiteList[i].getUrlMatcher());
+      }
+    }
+    mWhiteListSet = new UrlMatcherSet(updateList.toArray(new UrlMatcher[updateList.size()]));
+    mBlackListSet = new UrlMatcherSet(blackList);
+    mPreserveSet = new UrlMatcherSet(preserveList.toArray(new UrlMatcher[preserveList.size()]));
   }
 
 
@@ -207,29 +233,28 @@ public class UrlChecker {
   public UrlMatcher isUrlAccepted(String url) {
 
     UrlMatcher urlMatchResult = new UrlMatcherResult(false, false);
-    mLog.debug("isUrlAccepted for url: " + url);
+    if (mLog.isDebugEnabled()) {
+      mLog.debug("isUrlAccepted for url: " + url);
+    }
     // check whether this URL matches to a white list prefix
-    for (int i = 0; i < mWhiteListEntryArr.length; i++) {
-      if (mWhiteListEntryArr[i].shouldBeUpdated()) {
-        UrlMatcher matcher = mWhiteListEntryArr[i].getUrlMatcher();
-        if (matcher.matches(url)) {
-          // get the values for link extraction and indexing
-          // from the current matcher hit
-          urlMatchResult.setShouldBeParsed(matcher.getShouldBeParsed());
-          urlMatchResult.setShouldBeIndexed(matcher.getShouldBeIndexed());
-          mLog.debug("Whitelist matches for url: " + url);
-          break;
-        }
+    UrlMatcher matcher = mWhiteListSet.findFirstMatch(url);
+    if (matcher != null) {
+      // get the values for link extraction and indexing
+      // from the first matcher hit
+      urlMatchResult.setShouldBeParsed(matcher.getShouldBeParsed());
+      urlMatchResult.setShouldBeIndexed(matcher.getShouldBeIndexed());
+      if (mLog.isDebugEnabled()) {
+        mLog.debug("Whitelist matches for url: " + url);
       }
     }
 
     // check whether this URL matches to a black list prefix
     // check only if there was a whitelist-hit
     if( urlMatchResult.getShouldBeParsed() || urlMatchResult.getShouldBeIndexed() ) {
-      for (int i = 0; i < mBlackListArr.length; i++) {
-        if (mBlackListArr[i].matches(url)) {
-          urlMatchResult.setShouldBeParsed(false);
-          urlMatchResult.setShouldBeIndexed(false);
+      if (mBlackListSet.matchesAny(url)) {
+        urlMatchResult.setShouldBeParsed(false);
+        urlMatchResult.setShouldBeIndexed(false);
+        if (mLog.isDebugEnabled()) {
           mLog.debug("Blacklist matches for url: " + url);
         }
       }
@@ -240,27 +265,15 @@ public class UrlChecker {
 
 
   /**
-   * Creates an array of UrlMatchers that identify URLs that should not be
-   * deleted from the search index.
-   * <p>
-   * This list is according to the white list entries whichs
-   * <code>shouldBeUpdated</code> flag is <code>false</code>.
+   * Decides whether a URL should not be deleted from the search index, because
+   * it belongs to a white list entry whichs <code>shouldBeUpdated</code> flag
+   * is <code>false</code>.
    *
-   * @return An array of UrlMatchers that identify URLs that should not be
-   *         deleted from the search index.
-   * @see WhiteListEntry#shouldBeUpdated()
+   * @param url The URL to check.
+   * @return Whether the URL should be preserved.
    */
-  public UrlMatcher[] createPreserveUrlMatcherArr() {
-    ArrayList<UrlMatcher> list = new ArrayList<UrlMatcher>();
-    for (int i = 0; i < mWhiteListEntryArr.length; i++) {
-      if (! mWhiteListEntryArr[i].shouldBeUpdated()) {
-        list.add(mWhiteListEntryArr[i].getUrlMatcher());
-      }
-    }
-
-    UrlMatcher[] asArr = new UrlMatcher[list.size()];
-    list.toArray(asArr);
-    return asArr;
+  public boolean shouldBePreserved(String url) {
+    return mPreserveSet.matchesAny(url);
   }
 
 
@@ -275,7 +288,7 @@ public class UrlChecker {
       // This is a file URL -> We haven't found it yet (Why? See class javadoc)
       return false;
     } else {
-      return getmAcceptedUrlSet().contains(url);
+      return mAcceptedUrlSet.contains(url);
     }
   }
 
@@ -325,7 +338,7 @@ public class UrlChecker {
       // All tests passed -> Keep the file
       return true;
     } else {
-      return getmAcceptedUrlSet().contains(url);
+      return mAcceptedUrlSet.contains(url);
     }
   }
 
@@ -334,12 +347,16 @@ public class UrlChecker {
    * Used by the crawler to set the accepted state for a certain URL.
    *
    * @param url The URL that was accepted by the crawler.
+   * @return Whether the URL was accepted for the first time. Is
+   *         <code>false</code> if another crawler thread accepted the same URL
+   *         in the meantime.
    */
-  public void setAccepted(String url) {
+  public boolean setAccepted(String url) {
     if (url.startsWith("file://")) {
       // This is a file URL -> We haven't to remember it (Why? See class javadoc)
+      return true;
     } else {
-      getmAcceptedUrlSet().add(url);
+      return mAcceptedUrlSet.add(url);
     }
   }
 
@@ -350,7 +367,7 @@ public class UrlChecker {
    * @param url The URL that was ignored by the crawler.
    */
   public void setIgnored(String url) {
-    mIgnoredCount++;
+    mIgnoredCount.incrementAndGet();
 
     if (url.startsWith("file://")) {
       // This is a file URL -> We haven't to remember it (Why? See class javadoc)
@@ -366,17 +383,35 @@ public class UrlChecker {
    * @return The number of URLs that have been ignored.
    */
   public int getIgnoredCount() {
-    return mIgnoredCount;
+    return mIgnoredCount.get();
+  }
+
+
+  /**
+   * Writes the accepted and ignored URLs, so the crawling can be resumed
+   * later using {@link #readState(DataInput)}.
+   *
+   * @param out The output to write to.
+   * @throws IOException If writing failed.
+   */
+  public void writeState(DataOutput out) throws IOException {
+    mAcceptedUrlSet.write(out);
+    mIgnoredUrlSet.write(out);
+    out.writeInt(mIgnoredCount.get());
   }
 
 
   /**
-   * Gets the set of accepted URLs.
+   * Adds the accepted and ignored URLs written by
+   * {@link #writeState(DataOutput)}.
    *
-   * @return the mAcceptedUrlSet
+   * @param in The input to read from.
+   * @throws IOException If reading failed.
    */
-  public HashSet<String> getmAcceptedUrlSet() {
-    return mAcceptedUrlSet;
+  public void readState(DataInput in) throws IOException {
+    mAcceptedUrlSet.read(in);
+    mIgnoredUrlSet.read(in);
+    mIgnoredCount.addAndGet(in.readInt());
   }
 
 
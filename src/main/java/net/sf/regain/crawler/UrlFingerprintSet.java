@@ -0,0 +1,190 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A set of URLs that only holds a 64 bit fingerprint of each URL.
+ * <p>
+ * The fingerprints are held in a primitive open addressing hash table, so
+ * each URL takes about 16 bytes, no matter how long it is. The price is a
+ * very small probability that two different URLs have the same fingerprint
+ * (about 1 : 30000 for 100 million URLs). In this case the second URL is
+ * treated as already known.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class UrlFingerprintSet {
+
+  /** The fingerprints. 0 marks an empty slot. */
+  private long[] mSlotArr;
+  /** The number of fingerprints in the set. */
+  private int mSize;
+
+
+  /**
+   * Creates a new, empty instance of UrlFingerprintSet.
+   */
+  public UrlFingerprintSet() {
+    mSlotArr = new long[1024];
+  }
+
+
+  /**
+   * Adds an URL.
+   *
+   * @param url The URL to add.
+   * @return Whether the URL was added. Is <code>false</code> if the set
+   *         already contained the URL.
+   */
+  public synchronized boolean add(String url) {
+    return addFingerprint(fingerprint(url));
+  }
+
+
+  /**
+   * Checks whether the set contains an URL.
+   *
+   * @param url The URL to check.
+   * @return Whether the set contains the URL.
+   */
+  public synchronized boolean contains(String url) {
+    long fingerprint = fingerprint(url);
+    return mSlotArr[findSlot(mSlotArr, fingerprint)] == fingerprint;
+  }
+
+
+  /**
+   * Gets the number of URLs in the set.
+   *
+   * @return The number of URLs.
+   */
+  public synchronized int size() {
+    return mSize;
+  }
+
+
+  /**
+   * Writes the set.
+   *
+   * @param out The output to write to.
+   * @throws IOException If writing failed.
+   * @see #read(DataInput)
+   */
+  public synchronized void write(DataOutput out) throws IOException {
+    out.writeInt(mSize);
+    for (int i = 0; i < mSlotArr.length; i++) {
+      if (mSlotArr[i] != 0) {
+        out.writeLong(mSlotArr[i]);
+      }
+    }
+  }
+
+
+  /**
+   * Adds the URLs of a set written by {@link #write(DataOutput)}.
+   *
+   * @param in The input to read from.
+   * @throws IOException If reading failed.
+   */
+  public synchronized void read(DataInput in) throws IOException {
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      addFingerprint(in.readLong());
+    }
+  }
+
+
+  /**
+   * Adds a fingerprint.
+   *
+   * @param fingerprint The fingerprint to add. Must not be 0.
+   * @return Whether the fingerprint was added.
+   */
+  private boolean addFingerprint(long fingerprint) {
+    int slot = findSlot(mSlotArr, fingerprint);
+    if (mSlotArr[slot] == fingerprint) {
+      return false;
+    }
+
+    mSlotArr[slot] = fingerprint;
+    mSize++;
+    if (mSize * 2 > mSlotArr.length) {
+      // Keep the table at most half full
+      long[] newSlotArr = new long[mSlotArr.length * 2];
+      for (int i = 0; i < mSlotArr.length; i++) {
+        if (mSlotArr[i] != 0) {
+          newSlotArr[findSlot(newSlotArr, mSlotArr[i])] = mSlotArr[i];
+        }
+      }
+      mSlotArr = newSlotArr;
+    }
+    return true;
+  }
+
+
+  /**
+   * Finds the slot of a fingerprint.
+   *
+   * @param slotArr The hash table to search.
+   * @param fingerprint The fingerprint to find.
+   * @return The slot holding the fingerprint or the empty slot where it
+   *         would be put.
+   */
+  private static int findSlot(long[] slotArr, long fingerprint) {
+    int mask = slotArr.length - 1;
+    int slot = (int) fingerprint & mask;
+    while ((slotArr[slot] != 0) && (slotArr[slot] != fingerprint)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+
+  /**
+   * Calculates the fingerprint of an URL.
+   *
+   * @param url The URL.
+   * @return The fingerprint. Is never 0.
+   */
+  static long fingerprint(String url) {
+    // FNV-1a over the chars followed by the finalizer of MurmurHash3, so the
+    // lower bits used for the slot are well distributed
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < url.length(); i++) {
+      hash ^= url.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= (hash >>> 33);
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= (hash >>> 33);
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= (hash >>> 33);
+
+    return (hash == 0) ? 1 : hash;
+  }
+
+}
@@ -76,6 +76,21 @@ public interface CrawlerConfig {
    */
   public int getHttpTimeoutSecs();
 
+  /**
+   * Returns the maximum number of concurrent HTTP requests to one host.
+   *
+   * @return The maximum number of concurrent HTTP requests to one host.
+   */
+  public int getMaxHttpConnectionsPerHost();
+
+  /**
+   * Returns the minimum time between the start of two HTTP requests to the
+   * same host (in milli seconds).
+   *
+   * @return The minimum time between two HTTP requests to the same host.
+   */
+  public long getHttpPolitenessDelay();
+
   /**
    * Returns the user agent the crawler should in order to identify at the HTTP
    * server(s). If null, the default (Java) user agent should be used.
@@ -158,6 +173,74 @@ public interface CrawlerConfig {
    */
   public int getBreakpointInterval();
 
+  /**
+   * Returns the number of threads that load the documents (and list the
+   * directories).
+   *
+   * @return The number of fetcher threads. Always &gt;= 1.
+   */
+  public int getFetcherThreadCount();
+
+  /**
+   * Returns the number of threads that prepare the documents (mime type
+   * detection, text extraction and link extraction).
+   *
+   * @return The number of preparator threads. Always &gt;= 1.
+   */
+  public int getPreparatorThreadCount();
+
+  /**
+   * Returns the number of threads that add the prepared documents to the
+   * index.
+   *
+   * @return The number of indexer threads. Always &gt;= 1.
+   */
+  public int getIndexerThreadCount();
+
+  /**
+   * Returns the number of preparator host processes. The preparators marked
+   * as isolated run in these processes instead of the crawler process, so a
+   * document that crashes or hangs a preparator only costs a restart of one
+   * process.
+   *
+   * @return The number of preparator host processes. Is 0 if all preparators
+   *         run in the crawler process.
+   */
+  public int getPreparatorHostCount();
+
+  /**
+   * Returns the maximum CPU time a preparator host may use for preparing one
+   * document. If a document takes longer, the process is restarted.
+   *
+   * @return The maximum CPU time per document (in seconds).
+   */
+  public int getPreparatorHostTimeout();
+
+  /**
+   * Returns the maximum heap size of a preparator host process.
+   *
+   * @return The maximum heap size (in MB).
+   */
+  public int getPreparatorHostMaxMemory();
+
+  /**
+   * Returns the directory of the preparation cache. The cache holds the
+   * results of the preparators by the content of the documents, so copies
+   * of a document and moved documents are not prepared again.
+   *
+   * @return The directory of the preparation cache or <code>null</code> if
+   *         the results should not be cached.
+   */
+  public String getPreparationCacheDir();
+
+  /**
+   * Returns the maximum size of the preparation cache. If the cache gets
+   * bigger, the results not used for the longest time are removed.
+   *
+   * @return The maximum size of the preparation cache (in MB).
+   */
+  public int getPreparationCacheMaxSize();
+
   /**
    * Gibt den maximalen Prozentsatz von gescheiterten Dokumenten zurï¿œck. (0..1)
    * <p>
@@ -205,6 +288,15 @@ public interface CrawlerConfig {
    */
   public boolean getStoreContentForPreview();
 
+  /**
+   * Returns whether term vectors with positions and offsets should be stored
+   * for the summary. This makes the index bigger, but the search results can
+   * be highlighted without analyzing the summary again.
+   *
+   * @return Whether term vectors should be stored for the summary.
+   */
+  public boolean getStoreTermVectors();
+
   /**
    *
    * @return Die StartUrls.
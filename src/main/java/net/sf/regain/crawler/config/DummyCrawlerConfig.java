@@ -41,6 +41,17 @@ public class DummyCrawlerConfig implements CrawlerConfig {
     return true;
   }
 
+  /**
+   * Returns whether term vectors with positions and offsets should be stored
+   * for the summary.
+   *
+   * @return Whether term vectors should be stored for the summary.
+   */
+  @Override
+  public boolean getStoreTermVectors() {
+    return false;
+  }
+
   /**
    * Gibt den Host-Namen des Proxy-Servers zur�ck. Wenn kein Host konfiguriert
    * wurde, wird <CODE>null</CODE> zur�ckgegeben.
@@ -120,6 +131,29 @@ public class DummyCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Returns the maximum number of concurrent HTTP requests to one host.
+   *
+   * @return The maximum number of concurrent HTTP requests to one host.
+   */
+  @Override
+  public int getMaxHttpConnectionsPerHost() {
+    return 2;
+  }
+
+
+  /**
+   * Returns the minimum time between the start of two HTTP requests to the
+   * same host (in milli seconds).
+   *
+   * @return The minimum time between two HTTP requests to the same host.
+   */
+  @Override
+  public long getHttpPolitenessDelay() {
+    return 0;
+  }
+
+
   /**
    * Gibt zur�ck, ob URLs geladen werden sollen, die weder durchsucht noch
    * indiziert werden.
@@ -221,6 +255,95 @@ public class DummyCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Returns the number of threads that load the documents.
+   *
+   * @return The number of fetcher threads.
+   */
+  @Override
+  public int getFetcherThreadCount() {
+    return 1;
+  }
+
+
+  /**
+   * Returns the number of threads that prepare the documents.
+   *
+   * @return The number of preparator threads.
+   */
+  @Override
+  public int getPreparatorThreadCount() {
+    return 1;
+  }
+
+
+  /**
+   * Returns the number of threads that add the prepared documents to the
+   * index.
+   *
+   * @return The number of indexer threads.
+   */
+  @Override
+  public int getIndexerThreadCount() {
+    return 1;
+  }
+
+
+  /**
+   * Returns the number of preparator host processes.
+   *
+   * @return The number of preparator host processes.
+   */
+  @Override
+  public int getPreparatorHostCount() {
+    return 0;
+  }
+
+
+  /**
+   * Returns the maximum CPU time a preparator host may use for one document.
+   *
+   * @return The maximum CPU time per document (in seconds).
+   */
+  @Override
+  public int getPreparatorHostTimeout() {
+    return 300;
+  }
+
+
+  /**
+   * Returns the maximum heap size of a preparator host process.
+   *
+   * @return The maximum heap size (in MB).
+   */
+  @Override
+  public int getPreparatorHostMaxMemory() {
+    return 256;
+  }
+
+
+  /**
+   * Returns the directory of the preparation cache.
+   *
+   * @return The directory of the preparation cache.
+   */
+  @Override
+  public String getPreparationCacheDir() {
+    return null;
+  }
+
+
+  /**
+   * Returns the maximum size of the preparation cache.
+   *
+   * @return The maximum size of the preparation cache (in MB).
+   */
+  @Override
+  public int getPreparationCacheMaxSize() {
+    return 1024;
+  }
+
+
   /**
    * Gibt den maximalen Prozentsatz von gescheiterten Dokumenten zur�ck. (0..1)
    * <p>
@@ -55,11 +55,24 @@ public class PrefixUrlMatcher extends UrlMatcherResult {
    */
   @Override
   public boolean matches(String url) {
-    mLog.debug("Matches with prefix: " + url + ", " + mUrlPrefix);
+    if (mLog.isDebugEnabled()) {
+      mLog.debug("Matches with prefix: " + url + ", " + mUrlPrefix);
+    }
     return url.startsWith(mUrlPrefix);
   }
 
 
+  /**
+   * Gets the prefix a URL must start with in order to be matched by this
+   * matcher.
+   *
+   * @return The URL prefix.
+   */
+  public String getUrlPrefix() {
+    return mUrlPrefix;
+  }
+
+
   /**
    * Gets a String representation of this UrlMatcher.
    */
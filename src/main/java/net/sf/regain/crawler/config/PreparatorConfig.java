@@ -20,6 +20,7 @@
  */
 package net.sf.regain.crawler.config;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -37,7 +38,9 @@ import net.sf.regain.util.ChainedHashMap;
  *
  * @author Til Schneider, www.murfman.de
  */
-public class PreparatorConfig implements Iterable<Map.Entry<String, Map<String, String>>>{
+public class PreparatorConfig implements Iterable<Map.Entry<String, Map<String, String>>>, Serializable {
+
+  static final long serialVersionUID = 1L;
 
   /**
    * The sections of this config.<br>
@@ -20,14 +20,20 @@
  */
 package net.sf.regain.crawler.config;
 
+import java.io.Serializable;
 
 /**
  * The settings of a preparator
+ * <p>
+ * The settings are serializable, so they can be sent to the preparator host
+ * processes (see {@link net.sf.regain.crawler.document.PreparatorHostPool}).
  *
  * @see net.sf.regain.crawler.document.Preparator
  * @author Til Schneider, www.murfman.de
  */
-public class PreparatorSettings {
+public class PreparatorSettings implements Serializable {
+
+  static final long serialVersionUID = 1L;
 
   /** The default preparator package. */
   public static final String DEFAULT_PREPARATOR_PACKAGE = "net.sf.regain.crawler.preparator";
@@ -38,6 +44,9 @@ public class PreparatorSettings {
   /** Specifies the priority of the preparator */
   private int mPriority;
 
+  /** Specifies whether the preparator runs in a preparator host process. */
+  private boolean mIsIsolated;
+
   /**
    * The class name of the preparator. The class must implement
    * {@link net.sf.regain.crawler.document.Preparator Preparator}.
@@ -69,8 +78,30 @@ public class PreparatorSettings {
    */
   public PreparatorSettings(boolean isEnabled, int priority, String preparatorClassName,
     String urlRegex, PreparatorConfig preparatorConfig)
+  {
+    this(isEnabled, priority, preparatorClassName, urlRegex, preparatorConfig, false);
+  }
+
+
+  /**
+   * Creates a new instance of PreparatorSettings.
+   *
+   * @param isEnabled Specifies whether the preparator is enabled.
+   * @param priority The priority of the preparator.
+   * @param preparatorClassName The class name of the preparator. The class must
+   *        implement {@link net.sf.regain.crawler.document.Preparator Preparator}.
+   * @param urlRegex The regular expression a URL must match to, to be prepared
+   *        by this preparator. If <code>null</code> the default regex of the
+   *        preparator should be used.
+   * @param preparatorConfig The configuration of the preparator.
+   * @param isIsolated Specifies whether the preparator runs in a preparator
+   *        host process (if there are any).
+   */
+  public PreparatorSettings(boolean isEnabled, int priority, String preparatorClassName,
+    String urlRegex, PreparatorConfig preparatorConfig, boolean isIsolated)
   {
     mIsEnabled = isEnabled;
+    mIsIsolated = isIsolated;
     mPriority = priority;
     mUrlRegex = urlRegex;
     mPreparatorConfig = preparatorConfig;
@@ -133,4 +164,15 @@ public class PreparatorSettings {
     return mPriority;
   }
 
+
+  /**
+   * Gets whether the preparator runs in a preparator host process instead of
+   * the crawler process (if there are preparator host processes).
+   *
+   * @return Whether the preparator runs in a preparator host process.
+   */
+  public boolean isIsolated() {
+    return mIsIsolated;
+  }
+
 }
@@ -0,0 +1,403 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.config;
+
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An ordered list of UrlMatchers that is compiled for checking many URLs.
+ * <p>
+ * The prefixes of all {@link PrefixUrlMatcher}s are put into a prefix trie, so
+ * they are checked by walking along the URL once, no matter how many there
+ * are. A {@link RegexUrlMatcher} is put into the trie with the literal prefix
+ * of its regular expression (e.g. <code>http://www.example.com/</code> for
+ * <code>http://www\.example\.com/.*\.pdf</code>), so the expression is only
+ * evaluated for URLs starting with this prefix. The regular expressions
+ * without a literal prefix are combined into one pattern for
+ * {@link #matchesAny(String)}.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class UrlMatcherSet {
+
+  /** The logger for this class. */
+  private static Logger mLog = Logger.getLogger(UrlMatcherSet.class);
+
+  /** The index used for "no matcher". */
+  private static final int NO_MATCH = Integer.MAX_VALUE;
+
+  /** An empty index array. */
+  private static final int[] EMPTY_INDEX_ARR = new int[0];
+
+  /** The matchers in their original order. */
+  private UrlMatcher[] mMatcherArr;
+
+  /** The root of the prefix trie. */
+  private TrieNode mRoot;
+
+  /**
+   * The regular expressions without a literal prefix combined into one
+   * pattern. Is <code>null</code> if there are none.
+   */
+  private Pattern mCombinedPattern;
+
+  /**
+   * The indexes of the matchers without a literal prefix that are not part of
+   * {@link #mCombinedPattern}.
+   */
+  private int[] mUncombinedIndexArr;
+
+
+  /**
+   * Creates a new instance of UrlMatcherSet.
+   *
+   * @param matcherArr The matchers. If several matchers match to a URL, the
+   *        first one wins.
+   */
+  public UrlMatcherSet(UrlMatcher[] matcherArr) {
+    mMatcherArr = matcherArr;
+    mRoot = new TrieNode();
+
+    for (int i = 0; i < matcherArr.length; i++) {
+      UrlMatcher matcher = matcherArr[i];
+      if (matcher instanceof PrefixUrlMatcher) {
+        TrieNode node = mRoot.getOrCreateNode(((PrefixUrlMatcher) matcher).getUrlPrefix());
+        node.mPrefixIndex = Math.min(node.mPrefixIndex, i);
+      } else if (matcher instanceof RegexUrlMatcher) {
+        String literalPrefix = getLiteralPrefix(((RegexUrlMatcher) matcher).getUrlRegex());
+        mRoot.getOrCreateNode(literalPrefix).addCandidateIndex(i);
+      } else {
+        mRoot.addCandidateIndex(i);
+      }
+    }
+
+    // Combine the regular expressions without literal prefix
+    StringBuilder combined = new StringBuilder();
+    ArrayList<Integer> uncombinedList = new ArrayList<Integer>();
+    for (int i = 0; i < mRoot.mCandidateIndexArr.length; i++) {
+      int index = mRoot.mCandidateIndexArr[i];
+      UrlMatcher matcher = matcherArr[index];
+      if ((matcher instanceof RegexUrlMatcher)
+        && isCombinable(((RegexUrlMatcher) matcher).getUrlRegex()))
+      {
+        if (combined.length() != 0) {
+          combined.append('|');
+        }
+        combined.append("(?:").append(((RegexUrlMatcher) matcher).getUrlRegex()).append(')');
+      } else {
+        uncombinedList.add(index);
+      }
+    }
+    if (combined.length() != 0) {
+      try {
+        mCombinedPattern = Pattern.compile(combined.toString());
+      }
+      catch (PatternSyntaxException exc) {
+        // This should not happen, since each part is a valid expression
+        // -> Check them one by one
+        mLog.warn("Combining the URL regular expressions failed", exc);
+        mCombinedPattern = null;
+        uncombinedList.clear();
+        for (int i = 0; i < mRoot.mCandidateIndexArr.length; i++) {
+          uncombinedList.add(mRoot.mCandidateIndexArr[i]);
+        }
+      }
+    }
+    mUncombinedIndexArr = new int[uncombinedList.size()];
+    for (int i = 0; i < mUncombinedIndexArr.length; i++) {
+      mUncombinedIndexArr[i] = uncombinedList.get(i);
+    }
+  }
+
+
+  /**
+   * Gets the first matcher that matches to a URL.
+   *
+   * @param url The URL to check.
+   * @return The first matching matcher (in the order given to the
+   *         constructor) or <code>null</code> if no matcher matches.
+   */
+  public UrlMatcher findFirstMatch(String url) {
+    // Find the first matching prefix
+    int bestIndex = NO_MATCH;
+    TrieNode node = mRoot;
+    int depth = 0;
+    while (true) {
+      bestIndex = Math.min(bestIndex, node.mPrefixIndex);
+      if (depth == url.length()) {
+        break;
+      }
+      TrieNode child = node.getChild(url.charAt(depth));
+      if (child == null) {
+        break;
+      }
+      node = child;
+      depth++;
+    }
+
+    // Check the regular expressions that come before the matching prefix
+    node = mRoot;
+    for (int i = 0; node != null; i++) {
+      for (int j = 0; j < node.mCandidateIndexArr.length; j++) {
+        int index = node.mCandidateIndexArr[j];
+        if ((index < bestIndex) && mMatcherArr[index].matches(url)) {
+          bestIndex = index;
+        }
+      }
+      node = (i < depth) ? node.getChild(url.charAt(i)) : null;
+    }
+
+    return (bestIndex == NO_MATCH) ? null : mMatcherArr[bestIndex];
+  }
+
+
+  /**
+   * Checks whether any matcher matches to a URL.
+   *
+   * @param url The URL to check.
+   * @return Whether any matcher matches to the URL.
+   */
+  public boolean matchesAny(String url) {
+    // Check the prefixes
+    TrieNode node = mRoot;
+    int depth = 0;
+    while (true) {
+      if (node.mPrefixIndex != NO_MATCH) {
+        return true;
+      }
+      if (depth == url.length()) {
+        break;
+      }
+      TrieNode child = node.getChild(url.charAt(depth));
+      if (child == null) {
+        break;
+      }
+      node = child;
+      depth++;
+    }
+
+    // Check the matchers without literal prefix
+    if ((mCombinedPattern != null) && mCombinedPattern.matcher(url).matches()) {
+      return true;
+    }
+    for (int i = 0; i < mUncombinedIndexArr.length; i++) {
+      if (mMatcherArr[mUncombinedIndexArr[i]].matches(url)) {
+        return true;
+      }
+    }
+
+    // Check the regular expressions whose literal prefix matches
+    node = mRoot;
+    for (int i = 0; i < depth; i++) {
+      node = node.getChild(url.charAt(i));
+      for (int j = 0; j < node.mCandidateIndexArr.length; j++) {
+        if (mMatcherArr[node.mCandidateIndexArr[j]].matches(url)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Gets the literal prefix of a regular expression. Every string the
+   * expression matches to starts with this prefix.
+   *
+   * @param regex The regular expression.
+   * @return The literal prefix. May be empty.
+   */
+  static String getLiteralPrefix(String regex) {
+    if (regex.indexOf('|') != -1) {
+      // The prefix of an alternative may not apply to the others
+      return "";
+    }
+
+    StringBuilder prefix = new StringBuilder();
+    int pos = regex.startsWith("^") ? 1 : 0;
+    while (pos < regex.length()) {
+      char c = regex.charAt(pos);
+      char literal;
+      int literalEnd;
+      if (c == '\\') {
+        // Only escaped punctuation is a literal (\d, \Q, \1 etc. are not)
+        if ((pos + 1 == regex.length()) || Character.isLetterOrDigit(regex.charAt(pos + 1))) {
+          break;
+        }
+        literal = regex.charAt(pos + 1);
+        literalEnd = pos + 2;
+      } else if ("[](){}.*+?^$".indexOf(c) != -1) {
+        break;
+      } else {
+        literal = c;
+        literalEnd = pos + 1;
+      }
+
+      // A literal followed by a quantifier may be missing
+      if ((literalEnd < regex.length()) && ("?*+{".indexOf(regex.charAt(literalEnd)) != -1)) {
+        break;
+      }
+
+      prefix.append(literal);
+      pos = literalEnd;
+    }
+
+    return prefix.toString();
+  }
+
+
+  /**
+   * Checks whether a regular expression may be combined with others to one
+   * alternation without changing its meaning.
+   *
+   * @param regex The regular expression to check.
+   * @return Whether the expression may be combined.
+   */
+  private static boolean isCombinable(String regex) {
+    // Back references would refer to other groups, a \Q would quote the
+    // closing bracket and flags or named groups may affect the other parts.
+    if ((regex.indexOf("\\Q") != -1) || (regex.indexOf("\\k") != -1)) {
+      return false;
+    }
+    for (int i = 0; i < regex.length() - 1; i++) {
+      if ((regex.charAt(i) == '(') && (regex.charAt(i + 1) == '?')
+        && ((i + 2 == regex.length()) || (regex.charAt(i + 2) != ':')))
+      {
+        return false;
+      }
+      if (regex.charAt(i) == '\\') {
+        if (Character.isDigit(regex.charAt(i + 1))) {
+          return false;
+        }
+        // Skip the escaped char
+        i++;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * A node of the prefix trie.
+   */
+  private static class TrieNode {
+
+    /** The chars of the child nodes (sorted). */
+    private char[] mCharArr = new char[0];
+    /** The child nodes (in the order of {@link #mCharArr}). */
+    private TrieNode[] mChildArr = new TrieNode[0];
+
+    /**
+     * The index of the first PrefixUrlMatcher whose prefix ends at this node.
+     * Is {@link UrlMatcherSet#NO_MATCH} if there is none.
+     */
+    private int mPrefixIndex = NO_MATCH;
+
+    /**
+     * The indexes of the matchers that must be evaluated for URLs reaching
+     * this node (ascending).
+     */
+    private int[] mCandidateIndexArr = EMPTY_INDEX_ARR;
+
+
+    /**
+     * Gets a child node.
+     *
+     * @param c The char of the child node.
+     * @return The child node or <code>null</code> if there is none.
+     */
+    public TrieNode getChild(char c) {
+      int low = 0;
+      int high = mCharArr.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (mCharArr[mid] < c) {
+          low = mid + 1;
+        } else if (mCharArr[mid] > c) {
+          high = mid - 1;
+        } else {
+          return mChildArr[mid];
+        }
+      }
+      return null;
+    }
+
+
+    /**
+     * Gets the node for a key below this node. Missing nodes are created.
+     *
+     * @param key The key.
+     * @return The node of the key.
+     */
+    public TrieNode getOrCreateNode(String key) {
+      TrieNode node = this;
+      for (int i = 0; i < key.length(); i++) {
+        char c = key.charAt(i);
+        TrieNode child = node.getChild(c);
+        if (child == null) {
+          child = new TrieNode();
+
+          // Insert the child at the right position
+          int pos = 0;
+          while ((pos < node.mCharArr.length) && (node.mCharArr[pos] < c)) {
+            pos++;
+          }
+          char[] charArr = new char[node.mCharArr.length + 1];
+          TrieNode[] childArr = new TrieNode[node.mChildArr.length + 1];
+          System.arraycopy(node.mCharArr, 0, charArr, 0, pos);
+          System.arraycopy(node.mChildArr, 0, childArr, 0, pos);
+          charArr[pos] = c;
+          childArr[pos] = child;
+          System.arraycopy(node.mCharArr, pos, charArr, pos + 1, node.mCharArr.length - pos);
+          System.arraycopy(node.mChildArr, pos, childArr, pos + 1, node.mChildArr.length - pos);
+          node.mCharArr = charArr;
+          node.mChildArr = childArr;
+        }
+        node = child;
+      }
+      return node;
+    }
+
+
+    /**
+     * Adds the index of a matcher that must be evaluated for URLs reaching
+     * this node.
+     *
+     * @param index The index to add. Must be greater than the indexes added
+     *        before.
+     */
+    public void addCandidateIndex(int index) {
+      int[] indexArr = new int[mCandidateIndexArr.length + 1];
+      System.arraycopy(mCandidateIndexArr, 0, indexArr, 0, mCandidateIndexArr.length);
+      indexArr[mCandidateIndexArr.length] = index;
+      mCandidateIndexArr = indexArr;
+    }
+
+  }
+
+}
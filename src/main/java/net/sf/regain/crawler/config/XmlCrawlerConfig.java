@@ -65,6 +65,13 @@ public class XmlCrawlerConfig implements CrawlerConfig {
    * in Sekunden, die ein HTTP-Download insgesamt dauern darf.
    */
   private int mHttpTimeoutSecs;
+  /** The maximum number of concurrent HTTP requests to one host. */
+  private int mMaxHttpConnectionsPerHost;
+  /**
+   * The minimum time between the start of two HTTP requests to the same host
+   * (in milli seconds).
+   */
+  private long mHttpPolitenessDelay;
   /** Das Verzeichnis, in dem der Suchindex stehen soll. */
   private String mIndexDir;
 
@@ -89,6 +96,22 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   private boolean mWriteAnalysisFiles;
   /** The interval between two breakpoint in minutes. */
   private int mBreakpointInterval;
+  /** The number of threads that load the documents. */
+  private int mFetcherThreadCount;
+  /** The number of threads that prepare the documents. */
+  private int mPreparatorThreadCount;
+  /** The number of threads that add the documents to the index. */
+  private int mIndexerThreadCount;
+  /** The number of preparator host processes. */
+  private int mPreparatorHostCount;
+  /** The maximum CPU time a preparator host may use for one document (in seconds). */
+  private int mPreparatorHostTimeout;
+  /** The maximum heap size of a preparator host process (in MB). */
+  private int mPreparatorHostMaxMemory;
+  /** The directory of the preparation cache. Is <code>null</code> if there is no cache. */
+  private String mPreparationCacheDir;
+  /** The maximum size of the preparation cache (in MB). */
+  private int mPreparationCacheMaxSize;
   /**
    * Der maximale Prozentsatz von gescheiterten Dokumenten (0..100), der fï¿œr
    * die Freigabe eines Index toleriert wird.
@@ -143,6 +166,9 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   /** Flag for enabling/disabling content for a preview in the result page */
   private boolean storeContentForPreview;
 
+  /** Whether term vectors should be stored for the summary. */
+  private boolean mStoreTermVectors;
+
   private String[] mURLCleaners;
 
   /**
@@ -160,6 +186,7 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     readProxyConfig(config);
     readLoadUnparsedUrls(config);
     readHttpTimeoutSecs(config);
+    readHttpHostLimits(config);
     readUserAgent(config);
     readIndexConfig(config);
     readControlFileConfig(config);
@@ -175,6 +202,86 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     readMaxCycleCount(config);
     readMaxSummaryLength(config);
     readURLCleaner(config);
+    readThreadConfig(config);
+    readPreparatorHostConfig(config);
+    readPreparationCacheConfig(config);
+  }
+
+  /**
+   * Reads the number of threads for every stage of the crawler.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readThreadConfig(Element config) throws RegainException {
+    mFetcherThreadCount = 1;
+    mPreparatorThreadCount = 1;
+    mIndexerThreadCount = 1;
+
+    Node threadsNode = XmlToolkit.getChild(config, "crawlerThreads");
+    if (threadsNode != null) {
+      Node node = XmlToolkit.getChild(threadsNode, "fetcherCount");
+      if (node != null) {
+        mFetcherThreadCount = Math.max(1, XmlToolkit.getTextAsInt(node));
+      }
+      node = XmlToolkit.getChild(threadsNode, "preparatorCount");
+      if (node != null) {
+        mPreparatorThreadCount = Math.max(1, XmlToolkit.getTextAsInt(node));
+      }
+      node = XmlToolkit.getChild(threadsNode, "indexerCount");
+      if (node != null) {
+        mIndexerThreadCount = Math.max(1, XmlToolkit.getTextAsInt(node));
+      }
+    }
+  }
+
+  /**
+   * Reads the settings of the preparator host processes.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readPreparatorHostConfig(Element config) throws RegainException {
+    mPreparatorHostCount = 0;
+    mPreparatorHostTimeout = 300;
+    mPreparatorHostMaxMemory = 256;
+
+    Node hostNode = XmlToolkit.getChild(config, "preparatorHost");
+    if (hostNode != null) {
+      Node node = XmlToolkit.getChild(hostNode, "count");
+      if (node != null) {
+        mPreparatorHostCount = Math.max(0, XmlToolkit.getTextAsInt(node));
+      }
+      node = XmlToolkit.getChild(hostNode, "timeout");
+      if (node != null) {
+        mPreparatorHostTimeout = Math.max(1, XmlToolkit.getTextAsInt(node));
+      }
+      node = XmlToolkit.getChild(hostNode, "maxMemory");
+      if (node != null) {
+        mPreparatorHostMaxMemory = Math.max(16, XmlToolkit.getTextAsInt(node));
+      }
+    }
+  }
+
+  /**
+   * Reads the settings of the preparation cache.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readPreparationCacheConfig(Element config) throws RegainException {
+    mPreparationCacheDir = null;
+    mPreparationCacheMaxSize = 1024;
+
+    Node cacheNode = XmlToolkit.getChild(config, "preparationCache");
+    if (cacheNode != null) {
+      Node node = XmlToolkit.getChild(cacheNode, "dir", true);
+      mPreparationCacheDir = XmlToolkit.getText(node, true);
+      node = XmlToolkit.getChild(cacheNode, "maxSize");
+      if (node != null) {
+        mPreparationCacheMaxSize = Math.max(1, XmlToolkit.getTextAsInt(node));
+      }
+    }
   }
 
   /**
@@ -234,6 +341,20 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Reads the limits for the HTTP requests to one host from the config.
+   *
+   * @param config The configuration to read from.
+   * @throws RegainException If the configuration has an error.
+   */
+  private void readHttpHostLimits(Element config) throws RegainException {
+    Node node = XmlToolkit.getChild(config, "httpConnectionsPerHost");
+    mMaxHttpConnectionsPerHost = (node == null) ? 2 : Math.max(1, XmlToolkit.getTextAsInt(node));
+    node = XmlToolkit.getChild(config, "httpPolitenessDelay");
+    mHttpPolitenessDelay = (node == null) ? 0 : Math.max(0, XmlToolkit.getTextAsInt(node));
+  }
+
+
   /**
    * Reads the user agent from the config.
    *
@@ -318,6 +439,9 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     node = XmlToolkit.getChild(indexNode, "storeContentForPreview");
     this.storeContentForPreview = (node == null) ? false : XmlToolkit.getTextAsBoolean(node) ;
 
+    node = XmlToolkit.getChild(indexNode, "storeTermVectors");
+    mStoreTermVectors = (node == null) ? false : XmlToolkit.getTextAsBoolean(node);
+
   }
 
 
@@ -497,6 +621,8 @@ public class XmlCrawlerConfig implements CrawlerConfig {
 
       int priority = XmlToolkit.getAttributeAsInt(nodeArr[i], "priority", 0);
 
+      boolean isolated = XmlToolkit.getAttributeAsBoolean(nodeArr[i], "isolated", false);
+
       node = XmlToolkit.getChild(nodeArr[i], "class", true);
       String className = XmlToolkit.getText(node, true);
 
@@ -514,7 +640,8 @@ public class XmlCrawlerConfig implements CrawlerConfig {
         prepConfig = new PreparatorConfig();
       }
 
-      mPreparatorSettingsArr[i] = new PreparatorSettings(enabled, priority, className, urlRegex, prepConfig);
+      mPreparatorSettingsArr[i] = new PreparatorSettings(enabled, priority, className,
+              urlRegex, prepConfig, isolated);
     }
   }
 
@@ -790,6 +917,29 @@ public class XmlCrawlerConfig implements CrawlerConfig {
   }
 
 
+  /**
+   * Returns the maximum number of concurrent HTTP requests to one host.
+   *
+   * @return The maximum number of concurrent HTTP requests to one host.
+   */
+  @Override
+  public int getMaxHttpConnectionsPerHost() {
+    return mMaxHttpConnectionsPerHost;
+  }
+
+
+  /**
+   * Returns the minimum time between the start of two HTTP requests to the
+   * same host (in milli seconds).
+   *
+   * @return The minimum time between two HTTP requests to the same host.
+   */
+  @Override
+  public long getHttpPolitenessDelay() {
+    return mHttpPolitenessDelay;
+  }
+
+
   /**
    * Gibt zurück, ob URLs geladen werden sollen, die weder durchsucht noch
    * indiziert werden.
@@ -957,6 +1107,17 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     return this.storeContentForPreview;
   }
 
+  /**
+   * Returns whether term vectors with positions and offsets should be stored
+   * for the summary.
+   *
+   * @return Whether term vectors should be stored for the summary.
+   */
+  @Override
+  public boolean getStoreTermVectors() {
+    return mStoreTermVectors;
+  }
+
   /**
    * @return Die StartUrls.
    */
@@ -1098,6 +1259,89 @@ public class XmlCrawlerConfig implements CrawlerConfig {
     return mCrawlerAccessControllerConfig;
   }
 
+  /**
+   * Returns the number of threads that load the documents (and list the
+   * directories).
+   *
+   * @return The number of fetcher threads.
+   */
+  @Override
+  public int getFetcherThreadCount() {
+    return mFetcherThreadCount;
+  }
+
+  /**
+   * Returns the number of threads that prepare the documents.
+   *
+   * @return The number of preparator threads.
+   */
+  @Override
+  public int getPreparatorThreadCount() {
+    return mPreparatorThreadCount;
+  }
+
+  /**
+   * Returns the number of threads that add the prepared documents to the
+   * index.
+   *
+   * @return The number of indexer threads.
+   */
+  @Override
+  public int getIndexerThreadCount() {
+    return mIndexerThreadCount;
+  }
+
+  /**
+   * Returns the number of preparator host processes.
+   *
+   * @return The number of preparator host processes.
+   */
+  @Override
+  public int getPreparatorHostCount() {
+    return mPreparatorHostCount;
+  }
+
+  /**
+   * Returns the maximum CPU time a preparator host may use for one document.
+   *
+   * @return The maximum CPU time per document (in seconds).
+   */
+  @Override
+  public int getPreparatorHostTimeout() {
+    return mPreparatorHostTimeout;
+  }
+
+  /**
+   * Returns the maximum heap size of a preparator host process.
+   *
+   * @return The maximum heap size (in MB).
+   */
+  @Override
+  public int getPreparatorHostMaxMemory() {
+    return mPreparatorHostMaxMemory;
+  }
+
+  /**
+   * Returns the directory of the preparation cache.
+   *
+   * @return The directory of the preparation cache or <code>null</code> if
+   *         there is no cache.
+   */
+  @Override
+  public String getPreparationCacheDir() {
+    return mPreparationCacheDir;
+  }
+
+  /**
+   * Returns the maximum size of the preparation cache.
+   *
+   * @return The maximum size of the preparation cache (in MB).
+   */
+  @Override
+  public int getPreparationCacheMaxSize() {
+    return mPreparationCacheMaxSize;
+  }
+
   /**
    * Returns the maximum count of equal occurences of path-parts in an URI.
    *
@@ -20,6 +20,7 @@
  */
 package net.sf.regain.crawler.document;
 
+import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -65,6 +66,15 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
   private String[] mMimeTypes;
   /** The priority of the preparator. Used for the selection of preparators */
   private int mPriority;
+  /**
+   * The sink the content is written to. Is <code>null</code> if the content
+   * was not written to a sink.
+   */
+  private ContentSink mContentSink;
+  /** The maximum number of tokens indexed for a field. Is -1 if not limited. */
+  private int mMaxFieldLength = -1;
+  /** The maximum length of the summary. */
+  private int mMaxSummaryLength = -1;
 
   /**
    * Creates a new instance of AbstractPreparator.
@@ -239,6 +249,31 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
     }
   }
 
+  /**
+   * Gets the mime types of the documents this preparator accepts, if it
+   * accepts the documents by their mime type only. So the
+   * {@link DocumentFactory} can find the preparators for a mime type once
+   * instead of asking each preparator for each document.
+   *
+   * @return The accepted mime types or <code>null</code> if
+   *         {@link #accepts(RawDocument)} has to be called for each document
+   *         (if the preparator has a URL regex or its own rule).
+   */
+  public String[] getAcceptedMimeTypes() {
+    if (mUrlRegex != null) {
+      return null;
+    }
+    try {
+      Method acceptsMethod = getClass().getMethod("accepts", RawDocument.class);
+      if (acceptsMethod.getDeclaringClass() != AbstractPreparator.class) {
+        return null;
+      }
+    } catch (NoSuchMethodException exc) {
+      return null;
+    }
+    return (mMimeTypes == null) ? new String[0] : mMimeTypes;
+  }
+
   /**
    * Gibt den Titel des Dokuments zurück.
    * <p>
@@ -261,6 +296,56 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
     mTitle = title;
   }
 
+  /**
+   * Sets how much of the content is needed for the index. Content exceeding
+   * these limits is dropped (see {@link ContentSink}).
+   *
+   * @param maxFieldLength The maximum number of tokens indexed for a field.
+   *        If -1 or 0 the content is not limited.
+   * @param maxSummaryLength The maximum length of the summary.
+   */
+  public void setContentLimits(int maxFieldLength, int maxSummaryLength) {
+    mMaxFieldLength = (maxFieldLength > 0) ? maxFieldLength : -1;
+    mMaxSummaryLength = maxSummaryLength;
+  }
+
+  /**
+   * Gets the maximum number of tokens indexed for a field.
+   *
+   * @return The maximum number of tokens or -1 if the content is not limited.
+   */
+  public int getMaxFieldLength() {
+    return mMaxFieldLength;
+  }
+
+  /**
+   * Gets the maximum length of the summary.
+   *
+   * @return The maximum length of the summary.
+   */
+  public int getMaxSummaryLength() {
+    return mMaxSummaryLength;
+  }
+
+  /**
+   * Gets the sink to write the content of the current document to. Preparators
+   * extracting large documents should write the content to the sink instead of
+   * using {@link #setCleanedContent(String)} and stop as soon as the sink is
+   * full (see {@link ContentSink#isFull()}).
+   *
+   * @return The sink for the content.
+   */
+  protected ContentSink getContentSink() {
+    if (mContentSink == null) {
+      mContentSink = new ContentSink(mMaxFieldLength, mMaxSummaryLength);
+      if (mCleanedContent != null) {
+        mContentSink.write(mCleanedContent);
+        mCleanedContent = null;
+      }
+    }
+    return mContentSink;
+  }
+
   /**
    * Gibt den von Formatierungsinformation befreiten Inhalt des Dokuments zurück.
    *
@@ -268,6 +353,10 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
    */
   @Override
   public String getCleanedContent() {
+    if (mContentSink != null) {
+      mCleanedContent = mContentSink.toString();
+      mContentSink = null;
+    }
     return mCleanedContent;
   }
 
@@ -278,7 +367,8 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
    * @param cleanedContent
    */
   public void setCleanedContent(String cleanedContent) {
-    mCleanedContent = cleanedContent;
+    mContentSink = null;
+    mCleanedContent = ContentSink.limit(cleanedContent, mMaxFieldLength, mMaxSummaryLength);
   }
 
   /**
@@ -394,6 +484,22 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
     mAdditionalFieldMap.put(fieldName, fieldValue);
   }
 
+  /**
+   * Gets whether the result of this preparator only depends on the content of
+   * the document (and the configuration of the preparator). Only such results
+   * may be reused for other documents having the same content (see
+   * {@link PreparationCache}).
+   * <p>
+   * Preparators that use the URL of the document (e.g. its file name or its
+   * extension), set a path or add links must return <code>false</code>.
+   * Returns <code>false</code> by default.
+   *
+   * @return Whether the result only depends on the content.
+   */
+  public boolean isContentOnly() {
+    return false;
+  }
+
   /**
    * Gets the priority of the preparator
    * @return int the priority
@@ -419,6 +525,7 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
   public void cleanUp() {
     mTitle = null;
     mCleanedContent = null;
+    mContentSink = null;
     mSummary = null;
     mHeadlines = null;
     mPath = null;
@@ -455,6 +562,23 @@ public abstract class AbstractPreparator implements Preparator, WriteablePrepara
     return result.toString();
   }
 
+  /**
+   * Appends a part to the content in a sink, use ', ' as delimiter. This is the
+   * streaming version of {@link #concatenateStringParts(List, int)}: If the
+   * part is empty it will be neglected.
+   *
+   * @param sink The sink to append the part to.
+   * @param part The part to append.
+   */
+  protected void appendStringPart(ContentSink sink, String part) {
+    if (part.length() > 0) {
+      if (sink.length() > 0) {
+        sink.write(", ");
+      }
+      sink.write(part);
+    }
+  }
+
   /**
    * Frees all resources reserved by the preparator.
    * <p>
@@ -0,0 +1,340 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.CrawlerToolkit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Holds the content of a document that was not loaded from the local file
+ * system (e.g. via HTTP).
+ * <p>
+ * Small contents are held in memory. Only if the content gets bigger than a
+ * threshold, it is written to a temporary file. Either way the content can be
+ * read as often as needed (see {@link #openStream()}), so preparators that
+ * read a stream don't need a file.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class ContentBuffer {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(ContentBuffer.class);
+
+  /**
+   * The maximum size of a content held in memory (in bytes). Bigger contents
+   * are written to a temporary file.
+   */
+  public static final int MAX_MEMORY_SIZE = 4 * 1024 * 1024; // 4 MB
+
+  /** The content. Is <code>null</code> if the content is in a file. */
+  private byte[] mBytes;
+
+  /** The number of used bytes in {@link #mBytes}. */
+  private int mLength;
+
+  /**
+   * The temporary file holding the content. Is <code>null</code> if the
+   * content is held in memory.
+   */
+  private File mFile;
+
+  /** Whether {@link #mFile} is deleted by {@link #dispose()}. */
+  private boolean mIsTemporaryFile;
+
+
+  /**
+   * Creates a new instance of ContentBuffer holding a content in memory.
+   *
+   * @param bytes The content.
+   */
+  public ContentBuffer(byte[] bytes) {
+    mBytes = bytes;
+    mLength = bytes.length;
+  }
+
+
+  /**
+   * Creates a new instance of ContentBuffer holding a content in a temporary
+   * file.
+   *
+   * @param file The temporary file. Will be deleted by {@link #dispose()}.
+   */
+  private ContentBuffer(File file) {
+    this(file, true);
+  }
+
+
+  /**
+   * Creates a new instance of ContentBuffer holding a content in a file.
+   *
+   * @param file The file.
+   * @param isTemporaryFile Whether the file is deleted by {@link #dispose()}.
+   */
+  private ContentBuffer(File file, boolean isTemporaryFile) {
+    mFile = file;
+    mIsTemporaryFile = isTemporaryFile;
+  }
+
+
+  /**
+   * Creates a ContentBuffer for a content that is already in a file. The file
+   * is read on demand and is not deleted by {@link #dispose()}.
+   *
+   * @param file The file holding the content.
+   * @return The ContentBuffer.
+   */
+  public static ContentBuffer forFile(File file) {
+    return new ContentBuffer(file, false);
+  }
+
+
+  /**
+   * Reads a content from a stream. The stream is not closed.
+   *
+   * @param in The stream to read.
+   * @param expectedLength The expected length of the content or -1 if
+   *        unknown.
+   * @param maxMemorySize The maximum number of bytes to hold in memory. If the
+   *        content is bigger, it is written to a temporary file.
+   * @param fileExtension The extension the temporary file should have
+   *        (e.g. ".pdf") or an empty String.
+   * @return The read content.
+   * @throws RegainException If reading the stream or writing the temporary
+   *         file failed.
+   */
+  public static ContentBuffer read(InputStream in, int expectedLength,
+    int maxMemorySize, String fileExtension)
+    throws RegainException
+  {
+    int capacity = (expectedLength < 0) ? 8192 : expectedLength;
+    byte[] bytes = new byte[Math.min(capacity, maxMemorySize) + 1];
+    int length = 0;
+    try {
+      // Read until either the stream ends or the buffer is full
+      while (true) {
+        if (length == bytes.length) {
+          if (length > maxMemorySize) {
+            break;
+          }
+          int newLength = (int) Math.min((long) bytes.length * 2, (long) maxMemorySize + 1);
+          bytes = Arrays.copyOf(bytes, newLength);
+        }
+
+        int count = in.read(bytes, length, bytes.length - length);
+        if (count == -1) {
+          return new ContentBuffer(Arrays.copyOf(bytes, length));
+        }
+        length += count;
+      }
+    }
+    catch (IOException exc) {
+      throw new RegainException("Reading content failed", exc);
+    }
+
+    // The content is too big for the memory -> Write it to a temporary file
+    File file;
+    try {
+      file = File.createTempFile("lucenesearch_", fileExtension);
+    }
+    catch (IOException exc) {
+      throw new RegainException("Getting temporary File failed", exc);
+    }
+
+    if (mLog.isDebugEnabled()) {
+      mLog.debug("Content is bigger than " + maxMemorySize
+        + " bytes. Writing it to temporary file: " + file.getAbsolutePath());
+    }
+
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(file);
+      out.write(bytes, 0, length);
+      RegainToolkit.pipe(in, out);
+      out.close();
+      out = null;
+    }
+    catch (IOException exc) {
+      if (out != null) {
+        try { out.close(); } catch (IOException exc2) {}
+      }
+      file.delete();
+      throw new RegainException("Writing content to temporary file failed: "
+        + file.getAbsolutePath(), exc);
+    }
+
+    return new ContentBuffer(file);
+  }
+
+
+  /**
+   * Gets the length of the content (in bytes).
+   *
+   * @return The length of the content.
+   */
+  public long getLength() {
+    if (mFile != null) {
+      return mFile.length();
+    } else {
+      return mLength;
+    }
+  }
+
+
+  /**
+   * Gets whether the content is held in memory.
+   *
+   * @return Whether the content is held in memory.
+   */
+  public boolean isInMemory() {
+    return (mFile == null);
+  }
+
+
+  /**
+   * Gets the temporary file holding the content.
+   *
+   * @return The temporary file or <code>null</code> if the content is held in
+   *         memory.
+   */
+  public File getFile() {
+    return mFile;
+  }
+
+
+  /**
+   * Gets the first bytes of the content.
+   *
+   * @param maxLength The maximum number of bytes to get.
+   * @return The first bytes of the content. The array is shorter than
+   *         <code>maxLength</code> if the content is shorter.
+   * @throws RegainException If reading the temporary file failed.
+   */
+  public byte[] getHeader(int maxLength) throws RegainException {
+    if (mFile == null) {
+      return Arrays.copyOf(mBytes, Math.min(maxLength, mLength));
+    } else {
+      return readHeader(mFile, maxLength);
+    }
+  }
+
+
+  /**
+   * Gets the whole content.
+   * <p>
+   * If the content is in a temporary file, the file is loaded each time.
+   *
+   * @return The content.
+   * @throws RegainException If reading the temporary file failed.
+   */
+  public byte[] getBytes() throws RegainException {
+    if (mFile == null) {
+      return mBytes;
+    } else {
+      return CrawlerToolkit.loadFile(mFile);
+    }
+  }
+
+
+  /**
+   * Opens a stream that reads the content. The stream must be closed by the
+   * caller.
+   *
+   * @return A stream that reads the content.
+   * @throws RegainException If opening the temporary file failed.
+   */
+  public InputStream openStream() throws RegainException {
+    if (mFile == null) {
+      return new ByteArrayInputStream(mBytes, 0, mLength);
+    } else {
+      try {
+        return new FileInputStream(mFile);
+      }
+      catch (IOException exc) {
+        throw new RegainException("Creating stream for file failed: " + mFile, exc);
+      }
+    }
+  }
+
+
+  /**
+   * Deletes the temporary file (if there is one).
+   */
+  public void dispose() {
+    if ((mFile != null) && mIsTemporaryFile) {
+      if (mLog.isDebugEnabled()) {
+        mLog.debug("Deleting temporary file: " + mFile.getAbsolutePath());
+      }
+      if (! mFile.delete()) {
+        mFile.deleteOnExit();
+        mLog.debug("Deleting temporary file failed: " + mFile.getAbsolutePath() +
+                ". File will be deleted on program exit.");
+      }
+    }
+  }
+
+
+  /**
+   * Reads the first bytes of a file.
+   *
+   * @param file The file to read.
+   * @param maxLength The maximum number of bytes to read.
+   * @return The first bytes of the file. The array is shorter than
+   *         <code>maxLength</code> if the file is shorter.
+   * @throws RegainException If reading the file failed.
+   */
+  public static byte[] readHeader(File file, int maxLength) throws RegainException {
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      byte[] bytes = new byte[maxLength];
+      int length = 0;
+      int count;
+      while ((length < maxLength)
+        && ((count = in.read(bytes, length, maxLength - length)) != -1))
+      {
+        length += count;
+      }
+      return (length == maxLength) ? bytes : Arrays.copyOf(bytes, length);
+    }
+    catch (IOException exc) {
+      throw new RegainException("Reading file failed: " + file.getAbsolutePath(), exc);
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.Writer;
+
+/**
+ * Collects the content of a document while a preparator extracts it. Only as
+ * much text is kept as is needed for the index: Lucene only indexes the first
+ * tokens of a field (see {@link net.sf.regain.crawler.config.CrawlerConfig#getMaxFieldLength()})
+ * and the summary is cut from the beginning of the content (see
+ * {@link net.sf.regain.crawler.config.CrawlerConfig#getMaxSummaryLength()}).
+ * The rest is dropped, and preparators can stop extracting as soon as the sink
+ * is full (see {@link #isFull()}).
+ * <p>
+ * The tokens are estimated by counting the words (text between whitespace).
+ * Since the analyzer drops stop words and punctuation, the sink keeps
+ * {@link #WORD_FACTOR} times as many words as tokens are indexed. In order to
+ * bound the memory for text without whitespace too, it keeps at most
+ * {@link #MAX_CHARS_PER_WORD} characters per word.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class ContentSink extends Writer {
+
+  /** The number of words kept for each token indexed. */
+  public static final int WORD_FACTOR = 4;
+  /** The maximum number of characters kept for each word. */
+  public static final int MAX_CHARS_PER_WORD = 16;
+
+  /** The content collected so far. */
+  private StringBuilder mBuffer;
+
+  /** The maximum number of words. Is -1 if the content is not limited. */
+  private int mMaxWords;
+  /** The minimum number of characters to keep (needed for the summary). */
+  private int mMinChars;
+  /** The maximum number of characters. Is -1 if the content is not limited. */
+  private int mMaxChars;
+
+  /** The number of words collected so far. */
+  private int mWordCount;
+  /** Whether the last character collected belongs to a word. */
+  private boolean mInWord;
+  /** Whether the sink is full. */
+  private boolean mIsFull;
+
+
+  /**
+   * Creates a new instance of ContentSink.
+   *
+   * @param maxFieldLength The maximum number of tokens indexed for a field.
+   *        If -1 or 0 the content is not limited.
+   * @param maxSummaryLength The maximum length of the summary.
+   */
+  public ContentSink(int maxFieldLength, int maxSummaryLength) {
+    if (maxFieldLength > 0) {
+      mMaxWords = (int) Math.min(Integer.MAX_VALUE, (long) maxFieldLength * WORD_FACTOR);
+      mMinChars = Math.max(0, maxSummaryLength) + 1;
+      mMaxChars = (int) Math.max(mMinChars,
+          Math.min(Integer.MAX_VALUE, (long) mMaxWords * MAX_CHARS_PER_WORD));
+    } else {
+      mMaxWords = -1;
+      mMaxChars = -1;
+    }
+    mBuffer = new StringBuilder(Preparator.DEFAULT_BUFFER_SIZE);
+  }
+
+
+  /**
+   * Cuts a text the same way a sink with these limits would.
+   *
+   * @param text The text to cut.
+   * @param maxFieldLength The maximum number of tokens indexed for a field.
+   *        If -1 or 0 the text is not cut.
+   * @param maxSummaryLength The maximum length of the summary.
+   * @return The beginning of the text the sink would keep or the text itself
+   *         if it is not too long.
+   */
+  public static String limit(String text, int maxFieldLength, int maxSummaryLength) {
+    if ((text == null) || (maxFieldLength <= 0)) {
+      return text;
+    }
+    ContentSink sink = new ContentSink(maxFieldLength, maxSummaryLength);
+    int end = sink.accept(text, 0, text.length());
+    return (end == text.length()) ? text : text.substring(0, end);
+  }
+
+
+  /**
+   * Counts the words of a part of a text and finds the position where the sink
+   * gets full.
+   *
+   * @param text The text.
+   * @param start The start of the part.
+   * @param end The end of the part.
+   * @return The end of the part the sink takes.
+   */
+  private int accept(CharSequence text, int start, int end) {
+    if (mIsFull) {
+      return start;
+    }
+    if (mMaxWords == -1) {
+      return end;
+    }
+
+    int length = mBuffer.length();
+    for (int i = start; i < end; i++) {
+      int pos = length + i - start;
+      if (pos >= mMaxChars) {
+        mIsFull = true;
+        return i;
+      }
+
+      char c = text.charAt(i);
+      if (Character.isWhitespace(c)) {
+        mInWord = false;
+      } else if (! mInWord) {
+        if ((mWordCount >= mMaxWords) && (pos >= mMinChars)) {
+          mIsFull = true;
+          return i;
+        }
+        mInWord = true;
+        mWordCount++;
+      }
+    }
+    return end;
+  }
+
+
+  /**
+   * Checks whether the sink is full. All text written afterwards is dropped,
+   * so the preparator may stop extracting.
+   *
+   * @return Whether the sink is full.
+   */
+  public boolean isFull() {
+    return mIsFull;
+  }
+
+
+  /**
+   * Gets the length of the content collected so far.
+   *
+   * @return The length of the content.
+   */
+  public int length() {
+    return mBuffer.length();
+  }
+
+
+  @Override
+  public void write(char[] cbuf, int off, int len) {
+    int end = accept(new CharArraySequence(cbuf), off, off + len);
+    mBuffer.append(cbuf, off, end - off);
+  }
+
+
+  @Override
+  public void write(int c) {
+    if (accept(String.valueOf((char) c), 0, 1) == 1) {
+      mBuffer.append((char) c);
+    }
+  }
+
+
+  @Override
+  public void write(String str) {
+    write(str, 0, str.length());
+  }
+
+
+  @Override
+  public void write(String str, int off, int len) {
+    int end = accept(str, off, off + len);
+    mBuffer.append(str, off, end);
+  }
+
+
+  @Override
+  public ContentSink append(CharSequence csq) {
+    if (csq == null) {
+      csq = "null";
+    }
+    return append(csq, 0, csq.length());
+  }
+
+
+  @Override
+  public ContentSink append(CharSequence csq, int start, int end) {
+    if (csq == null) {
+      csq = "null";
+    }
+    int acceptedEnd = accept(csq, start, end);
+    mBuffer.append(csq, start, acceptedEnd);
+    return this;
+  }
+
+
+  @Override
+  public ContentSink append(char c) {
+    write(c);
+    return this;
+  }
+
+
+  @Override
+  public void flush() {
+  }
+
+
+  @Override
+  public void close() {
+  }
+
+
+  /**
+   * Gets the content collected so far.
+   *
+   * @return The content.
+   */
+  @Override
+  public String toString() {
+    return mBuffer.toString();
+  }
+
+
+  /**
+   * A char array as CharSequence, so it can be scanned without copying it.
+   */
+  private static class CharArraySequence implements CharSequence {
+
+    /** The chars. */
+    private char[] mCharArr;
+
+    /**
+     * Creates a new instance of CharArraySequence.
+     *
+     * @param charArr The chars.
+     */
+    public CharArraySequence(char[] charArr) {
+      mCharArr = charArr;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return mCharArr[index];
+    }
+
+    @Override
+    public int length() {
+      return mCharArr.length;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(mCharArr, start, end - start);
+    }
+
+  }
+
+}
@@ -22,16 +22,21 @@ package net.sf.regain.crawler.document;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.PriorityQueue;
 import java.util.Properties;
+import java.util.Set;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
@@ -61,6 +66,9 @@ import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifie
  * Fabrik, die aus der URL und den Rohdaten eines Dokuments ein Lucene-Ducument
  * erzeugt, das nur noch den, von Formatierungen gesäuberten, Text des Dokuments,
  * sowie seine URL und seinen Titel enthält.
+ * <p>
+ * The preparators are not thread safe. Therefore every thread that creates
+ * documents gets its own set of preparator instances.
  *
  * @see Document
  * @author Til Schneider, www.murfman.de
@@ -68,6 +76,15 @@ import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifie
 public class DocumentFactory {
 
   private static final String MIME_TYPE_UNKNOWN = "application/x-unknown-mime-type";
+  /** The stored field holding the ETag of a HTTP document. */
+  public static final String HTTP_ETAG_FIELD = "http-etag";
+  /** The stored field holding the Last-Modified header of a HTTP document. */
+  public static final String HTTP_LAST_MODIFIED_FIELD = "http-last-modified";
+  /**
+   * The stored field holding the links of a HTTP document. One link per line,
+   * the URL and the link text are separated by a tab.
+   */
+  public static final String OUTLINKS_FIELD = "outlinks";
   /** The logger for this class */
   private static Logger mLog = Logger.getLogger(DocumentFactory.class);
   /** The crawler config. */
@@ -76,15 +93,66 @@ public class DocumentFactory {
   private int mMaxSummaryLength;
   /** should the whole content stored in the index for a preview on the result page */
   private boolean storeContentForPreview;
+  /**
+   * The maximum number of tokens indexed for the content. Is -1 if the
+   * preparators should not limit the content.
+   */
+  private int mMaxFieldLength;
+  /** Whether term vectors should be stored for the summary. */
+  private boolean mStoreTermVectors;
   /**
    * Das Verzeichnis, in dem Analyse-Dateien erzeugt werden sollen. Ist
    * <CODE>null</CODE>, wenn keine Analyse-Dateien erzeugt werden sollen.
    */
   private File mAnalysisDir = null;
-  /** The preparators. */
-  private Preparator[] mPreparatorArr;
-  /** Die Profiler, die die Bearbeitung durch die Präparatoren messen. */
+  /** The preparator settings to use for creating preparator sets. */
+  private PreparatorSettings[] mPreparatorSettingsArr;
+  /** The preparators of the current thread. */
+  private ThreadLocal<Preparator[]> mThreadPreparatorArr;
+  /** All preparator sets that were created (one per thread). */
+  private List<Preparator[]> mPreparatorArrList;
+  /** The preparator sets that were created but are not used by a thread yet. */
+  private List<Preparator[]> mUnusedPreparatorArrList;
+  /**
+   * The processes preparing the documents for the isolated preparators. Is
+   * <code>null</code> if all preparators run in the crawler process.
+   */
+  private PreparatorHostPool mPreparatorHostPool;
+  /**
+   * The cache holding the results of the preparators by the content of the
+   * documents. Is <code>null</code> if the results are not cached.
+   */
+  private PreparationCache mPreparationCache;
+  /**
+   * Die Profiler, die die Bearbeitung durch die Präparatoren messen. The key
+   * is the class name of the preparator.
+   */
+  private Map<String, Profiler> mPreparatorProfilerMap;
+  /**
+   * The profilers of the preparators by their index in a set of preparators.
+   */
   private Profiler[] mPreparatorProfilerArr;
+  /**
+   * The class names of the preparators in a set. All sets must have the same
+   * order, since the dispatch table holds indexes.
+   */
+  private String[] mPreparatorClassNameArr;
+  /**
+   * The preparators to try for a mime type. The key is the mime type, the
+   * value holds the indexes of the preparators ordered by priority.
+   */
+  private Map<String, int[]> mDispatchMap;
+  /**
+   * The preparators to try for a mime type that is not in the dispatch map.
+   * These are the preparators not accepting documents by mime type only.
+   */
+  private int[] mDefaultDispatchArr;
+  /**
+   * Whether a preparator accepts documents by their mime type only. The index
+   * is the one of the preparator. These preparators don't have to be asked
+   * whether they accept a document found in the dispatch map.
+   */
+  private boolean[] mAcceptsByMimeTypeArr;
   /**
    * The {@link CrawlerAccessController} to use for identifying the groups that
    * are allowed to read a document. May be <code>null</code>.
@@ -100,6 +168,8 @@ public class DocumentFactory {
   private Profiler mWriteAnalysisProfiler = new Profiler("Writing Analysis files", "files");
   /** The mimetype mimeTypeIdentifier */
   MimeTypeIdentifier mimeTypeIdentifier;
+  /** Identifies the common binary formats before the mimeTypeIdentifier is asked. */
+  private MimeTypeSniffer mMimeTypeSniffer;
   /** Crawler Plugin Manager instance */
   private CrawlerPluginManager pluginManager = CrawlerPluginManager.getInstance();
 
@@ -118,19 +188,55 @@ public class DocumentFactory {
     mConfig = config;
     mAnalysisDir = analysisDir;
 
+    // Read some more configuration entries from the config
+    this.mMaxSummaryLength = this.mConfig.getMaxSummaryLength();
+    this.storeContentForPreview = this.mConfig.getStoreContentForPreview();
+    this.mStoreTermVectors = this.mConfig.getStoreTermVectors();
+    // NOTE: The whole content is needed for the preview
+    this.mMaxFieldLength = this.storeContentForPreview ? -1 : this.mConfig.getMaxFieldLength();
+
     // Create the preparators
-    try {
-      PreparatorSettings[] prepConf = config.getPreparatorSettingsList();
-      mPreparatorArr = PreparatorFactory.getInstance().createPreparatorArr(prepConf);
-    } catch (RegainException exc) {
-      throw new RegainException("Creating the document preparators failed", exc);
-    }
+    // NOTE: We create the first set now in order to find configuration errors
+    //       as early as possible. It will be used by the first crawler thread.
+    mPreparatorSettingsArr = config.getPreparatorSettingsList();
+    mThreadPreparatorArr = new ThreadLocal<Preparator[]>();
+    mPreparatorArrList = new ArrayList<Preparator[]>();
+    mUnusedPreparatorArrList = new ArrayList<Preparator[]>();
+    Preparator[] preparatorArr = createPreparatorArr();
+    mUnusedPreparatorArrList.add(preparatorArr);
 
     // Create a profiler for each preparator
-    mPreparatorProfilerArr = new Profiler[mPreparatorArr.length];
-    for (int i = 0; i < mPreparatorProfilerArr.length; i++) {
-      String name = mPreparatorArr[i].getClass().getName();
-      mPreparatorProfilerArr[i] = new Profiler("Preparator " + name, "docs");
+    mPreparatorProfilerMap = new HashMap<String, Profiler>();
+    mPreparatorProfilerArr = new Profiler[preparatorArr.length];
+    for (int i = 0; i < preparatorArr.length; i++) {
+      String name = preparatorArr[i].getClass().getName();
+      Profiler profiler = mPreparatorProfilerMap.get(name);
+      if (profiler == null) {
+        profiler = new Profiler("Preparator " + name, "docs");
+        mPreparatorProfilerMap.put(name, profiler);
+      }
+      mPreparatorProfilerArr[i] = profiler;
+    }
+
+    // Find the preparators for each mime type
+    createDispatchTable(preparatorArr);
+
+    // Create the pool of preparator hosts for the isolated preparators
+    int preparatorHostCount = config.getPreparatorHostCount();
+    if ((preparatorHostCount > 0)
+        && PreparatorHostPool.hasIsolatedPreparators(mPreparatorSettingsArr))
+    {
+      mPreparatorHostPool = new PreparatorHostPool(mPreparatorSettingsArr,
+              preparatorHostCount, config.getPreparatorHostTimeout(),
+              config.getPreparatorHostMaxMemory(), mMaxFieldLength, mMaxSummaryLength);
+      mLog.info("Using " + preparatorHostCount + " preparator hosts for the isolated preparators");
+    }
+
+    // Create the preparation cache
+    String preparationCacheDir = config.getPreparationCacheDir();
+    if (preparationCacheDir != null) {
+      mPreparationCache = new PreparationCache(new File(preparationCacheDir),
+              config.getPreparationCacheMaxSize() * 1024L * 1024L, mPreparatorSettingsArr);
     }
 
     // Create the CrawlerAccessController
@@ -165,14 +271,145 @@ public class DocumentFactory {
         }
       }
     }
-    // Read some more configuration entries from the config
-    this.mMaxSummaryLength = this.mConfig.getMaxSummaryLength();
-    this.storeContentForPreview = this.mConfig.getStoreContentForPreview();
-
     // Set up the MimeTypeIdentifierFactory
     MagicMimeTypeIdentifierFactory factory = new MagicMimeTypeIdentifierFactory();
     mimeTypeIdentifier = factory.get();
+    mMimeTypeSniffer = new MimeTypeSniffer();
+
+  }
+
+  /**
+   * Creates the dispatch table that holds the preparators to try for each mime
+   * type.
+   *
+   * @param preparatorArr The preparators.
+   */
+  private void createDispatchTable(final Preparator[] preparatorArr) {
+    mPreparatorClassNameArr = new String[preparatorArr.length];
+    mAcceptsByMimeTypeArr = new boolean[preparatorArr.length];
+    String[][] mimeTypesArr = new String[preparatorArr.length][];
+    for (int i = 0; i < preparatorArr.length; i++) {
+      mPreparatorClassNameArr[i] = preparatorArr[i].getClass().getName();
+      if (preparatorArr[i] instanceof AbstractPreparator) {
+        mimeTypesArr[i] = ((AbstractPreparator) preparatorArr[i]).getAcceptedMimeTypes();
+        mAcceptsByMimeTypeArr[i] = (mimeTypesArr[i] != null);
+      }
+    }
+
+    // Order the preparators by priority (higher values first)
+    Integer[] orderArr = new Integer[preparatorArr.length];
+    for (int i = 0; i < orderArr.length; i++) {
+      orderArr[i] = i;
+    }
+    Arrays.sort(orderArr, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer index1, Integer index2) {
+        int priority1 = preparatorArr[index1].getPriority();
+        int priority2 = preparatorArr[index2].getPriority();
+        return (priority1 < priority2) ? 1 : ((priority1 > priority2) ? -1 : 0);
+      }
+    });
+
+    // The preparators not accepting by mime type only are tried for all
+    // documents
+    List<Integer> defaultList = new ArrayList<Integer>();
+    Set<String> mimeTypeSet = new HashSet<String>();
+    for (int index : orderArr) {
+      if (mAcceptsByMimeTypeArr[index]) {
+        mimeTypeSet.addAll(Arrays.asList(mimeTypesArr[index]));
+      } else {
+        defaultList.add(index);
+      }
+    }
+    mDefaultDispatchArr = toIntArray(defaultList);
+
+    mDispatchMap = new HashMap<String, int[]>();
+    for (String mimeType : mimeTypeSet) {
+      List<Integer> indexList = new ArrayList<Integer>();
+      for (int index : orderArr) {
+        if (! mAcceptsByMimeTypeArr[index]
+            || Arrays.asList(mimeTypesArr[index]).contains(mimeType))
+        {
+          indexList.add(index);
+        }
+      }
+      mDispatchMap.put(mimeType, toIntArray(indexList));
+    }
+  }
+
+  /**
+   * Converts a list of Integers into an int array.
+   *
+   * @param list The list to convert.
+   * @return The int array.
+   */
+  private static int[] toIntArray(List<Integer> list) {
+    int[] arr = new int[list.size()];
+    for (int i = 0; i < arr.length; i++) {
+      arr[i] = list.get(i);
+    }
+    return arr;
+  }
+
+  /**
+   * Creates a new set of preparators.
+   *
+   * @return The new preparators.
+   * @throws RegainException If creating the preparators failed.
+   */
+  private Preparator[] createPreparatorArr() throws RegainException {
+    Preparator[] preparatorArr;
+    try {
+      preparatorArr = PreparatorFactory.getInstance().createPreparatorArr(mPreparatorSettingsArr);
+    } catch (RegainException exc) {
+      throw new RegainException("Creating the document preparators failed", exc);
+    }
+    for (int i = 0; i < preparatorArr.length; i++) {
+      if (preparatorArr[i] instanceof AbstractPreparator) {
+        ((AbstractPreparator) preparatorArr[i]).setContentLimits(mMaxFieldLength, mMaxSummaryLength);
+      }
+    }
 
+    // The dispatch table holds the indexes of the first set
+    if (mPreparatorClassNameArr != null) {
+      boolean sameOrder = (preparatorArr.length == mPreparatorClassNameArr.length);
+      for (int i = 0; sameOrder && (i < preparatorArr.length); i++) {
+        sameOrder = preparatorArr[i].getClass().getName().equals(mPreparatorClassNameArr[i]);
+      }
+      if (! sameOrder) {
+        throw new RegainException("The document preparators were created in "
+                + "another order than the first set");
+      }
+    }
+
+    synchronized (mPreparatorArrList) {
+      mPreparatorArrList.add(preparatorArr);
+    }
+    return preparatorArr;
+  }
+
+  /**
+   * Gets the preparators of the current thread. If the thread has no
+   * preparators yet, they are created.
+   *
+   * @return The preparators of the current thread.
+   * @throws RegainException If creating the preparators failed.
+   */
+  private Preparator[] getPreparatorArr() throws RegainException {
+    Preparator[] preparatorArr = mThreadPreparatorArr.get();
+    if (preparatorArr == null) {
+      synchronized (mPreparatorArrList) {
+        if (! mUnusedPreparatorArrList.isEmpty()) {
+          preparatorArr = mUnusedPreparatorArrList.remove(0);
+        }
+      }
+      if (preparatorArr == null) {
+        mLog.info("Creating preparators for thread " + Thread.currentThread().getName());
+        preparatorArr = createPreparatorArr();
+      }
+      mThreadPreparatorArr.set(preparatorArr);
+    }
+    return preparatorArr;
   }
 
   /**
@@ -188,20 +425,25 @@ public class DocumentFactory {
 
     // Determine the mime-type
     String mimeType;
-    FileInputStream fis = null;
     try {
-      File file = rawDocument.getContentAsFile();
-      if (file.canRead() == false) {
-        mLog.warn("canRead() on file return: false. Maybe no access rights for sourceURL: "
-                + RegainToolkit.fileToUrl(file));
-        return null;
+      if (rawDocument.getUrl().startsWith("file://")) {
+        File file = rawDocument.getContentAsFile();
+        if (file.canRead() == false) {
+          mLog.warn("canRead() on file return: false. Maybe no access rights for sourceURL: "
+                  + RegainToolkit.fileToUrl(file));
+          return null;
+        }
       }
 
-      fis = new FileInputStream(file);
-      byte[] bytes = new byte[mimeTypeIdentifier.getMinArrayLength()];
-      fis.read(bytes);
-      mimeType = mimeTypeIdentifier.identify(bytes, file.getPath(),
-              new URIImpl(rawDocument.getUrl(), false));
+      // NOTE: Only the header of the content is read, so documents that are
+      //       not in a file (e.g. loaded via HTTP) don't have to be written
+      //       to a file
+      byte[] bytes = rawDocument.getContentHeader(mimeTypeIdentifier.getMinArrayLength());
+      mimeType = mMimeTypeSniffer.identify(bytes, rawDocument.getContentFileName());
+      if (mimeType == null) {
+        mimeType = mimeTypeIdentifier.identify(bytes, rawDocument.getContentFileName(),
+                new URIImpl(rawDocument.getUrl(), false));
+      }
       if (mimeType == null || mimeType.length() == 0) {
         mimeType = MIME_TYPE_UNKNOWN;
       }
@@ -214,46 +456,63 @@ public class DocumentFactory {
         mimeType = mimeTypeIdentifier.identify(bytes, null,
                 new URIImpl("zip:mime:file:" + rawDocument.getUrl()));
         mLog.debug("Detected mimetype cycle 2: " + mimeType + ". " + "zip:mime:file:" + rawDocument.getUrl());
+
+        if ("application/zip".equalsIgnoreCase(mimeType)) {
+          // OOXML documents without a known extension: Look into the zip file
+          String containerMimeType = mMimeTypeSniffer.identifyZipContainer(rawDocument.getContentAsFile());
+          if (containerMimeType != null) {
+            mimeType = containerMimeType;
+            mLog.debug("Detected mimetype cycle 3: " + mimeType + ". " + rawDocument.getUrl());
+          }
+        }
       }
     } catch (Exception exc) {
       errorLogger.logError("Determine mime-type of " + rawDocument.getUrl()
               + " failed", exc, false);
       mimeType = MIME_TYPE_UNKNOWN;
-    } finally {
-      if (fis != null) {
-        try { fis.close(); } catch(IOException e) {}
-      }
     }
 
     rawDocument.setMimeType(mimeType);
 
-    // Find the preparator that will prepare this URL
-    PriorityQueue<PreparatorProfilerPair> matchingPreparators = new PriorityQueue<PreparatorProfilerPair>(mPreparatorArr.length);
-    for (int i = 0; i < mPreparatorArr.length; i++) {
-      if (mPreparatorArr[i].accepts(rawDocument)) {
-        // This preparator can prepare this URL
+    // Get the preparators of this thread
+    Preparator[] preparatorArr;
+    try {
+      preparatorArr = getPreparatorArr();
+    } catch (RegainException exc) {
+      errorLogger.logError("Creating the preparators for " + rawDocument.getUrl()
+              + " failed", exc, false);
+      return null;
+    }
 
-        matchingPreparators.add(new PreparatorProfilerPair(mPreparatorArr[i], mPreparatorProfilerArr[i]));
-        if (mLog.isDebugEnabled()) {
-          mLog.debug("Found: " + mPreparatorArr[i].getClass().getSimpleName()
-                  + ", Prio: " + mPreparatorArr[i].getPriority());
-        }
-      }
+    // Find the preparators that may prepare this URL (ordered by priority)
+    int[] dispatchArr = mDispatchMap.get(mimeType);
+    if (dispatchArr == null) {
+      dispatchArr = mDefaultDispatchArr;
     }
 
     Document doc = null;
     boolean preparatorFound = false;
-      PreparatorProfilerPair preparatorProfiler;
-      while (doc == null && (preparatorProfiler = matchingPreparators.poll()) != null)
+      for (int i = 0; (doc == null) && (i < dispatchArr.length); i++)
       {
+        int index = dispatchArr[i];
+        Preparator preparator = preparatorArr[index];
+        if (! mAcceptsByMimeTypeArr[index] && ! preparator.accepts(rawDocument)) {
+          continue;
+        }
+
+        // This preparator can prepare this URL
+        if (mLog.isDebugEnabled()) {
+          mLog.debug("Found: " + preparator.getClass().getSimpleName()
+                  + ", Prio: " + preparator.getPriority());
+        }
         preparatorFound = true;
         try {
-          doc = createDocument(preparatorProfiler.getPreparator(), preparatorProfiler.getProfiler(), rawDocument);
-          mLog.info("Preparation with " + preparatorProfiler.getPreparator().getClass().getSimpleName()
+          doc = createDocument(preparator, mPreparatorProfilerArr[index], rawDocument);
+          mLog.info("Preparation with " + preparator.getClass().getSimpleName()
                   + " done: " + rawDocument.getUrl());
         } catch (RegainException exc) {
           errorLogger.logError("Preparing " + rawDocument.getUrl()
-                  + " with preparator " + preparatorProfiler.getPreparator().getClass().getName()
+                  + " with preparator " + preparator.getClass().getName()
                   + " failed", exc, false);
         }
 
@@ -312,11 +571,35 @@ public class DocumentFactory {
               + " for " + rawDocument + ", " + rawDocument.getMimeType());
     }
 
-    preparatorProfiler.startMeasuring();
     pluginManager.eventBeforePrepare(rawDocument, (WriteablePreparator) preparator);
 
+    // Use the result of the same content prepared before
+    String cacheKey = null;
+    boolean isCached = false;
+    if ((mPreparationCache != null) && mPreparationCache.accepts(preparator)) {
+      cacheKey = mPreparationCache.getKey(preparator, rawDocument);
+      isCached = (cacheKey != null) && mPreparationCache.load(cacheKey, preparator);
+      if (isCached && mLog.isDebugEnabled()) {
+        mLog.debug("Took the result of " + preparator.getClass().getName()
+                + " for " + url + " from the preparation cache");
+      }
+    }
+
+    if (! isCached) {
+      preparatorProfiler.startMeasuring();
+    }
     try {
-      preparator.prepare(rawDocument);
+      if (! isCached) {
+        if ((mPreparatorHostPool != null) && mPreparatorHostPool.isIsolated(preparator)) {
+          mPreparatorHostPool.prepare(preparator, rawDocument);
+        } else {
+          preparator.prepare(rawDocument);
+        }
+
+        if (cacheKey != null) {
+          mPreparationCache.store(cacheKey, preparator);
+        }
+      }
 
       pluginManager.eventAfterPrepare(rawDocument, (WriteablePreparator) preparator);
 
@@ -330,9 +613,13 @@ public class DocumentFactory {
 
       preparator.cleanUp();
 
-      preparatorProfiler.stopMeasuring(rawDocument.getLength());
+      if (! isCached) {
+        preparatorProfiler.stopMeasuring(rawDocument.getLength());
+      }
     } catch (Throwable thr) {
-      preparatorProfiler.abortMeasuring();
+      if (! isCached) {
+        preparatorProfiler.abortMeasuring();
+      }
       throw new RegainException("Preparing " + url
               + " with preparator " + preparator.getClass().getName() + " failed", thr);
     }
@@ -510,6 +797,22 @@ public class DocumentFactory {
             DateTools.dateToString(lastModified, DateTools.Resolution.DAY), Field.Store.YES,
             Field.Index.NOT_ANALYZED));
 
+    // Add the HTTP validators and the links, so the document doesn't have to
+    // be loaded again as long as it doesn't change
+    HttpValidators httpValidators = rawDocument.getHttpValidators();
+    if (httpValidators != null) {
+      if (httpValidators.getETag() != null) {
+        doc.add(new Field(HTTP_ETAG_FIELD, httpValidators.getETag(),
+                Field.Store.YES, Field.Index.NO));
+      }
+      if (httpValidators.getLastModified() != null) {
+        doc.add(new Field(HTTP_LAST_MODIFIED_FIELD, httpValidators.getLastModified(),
+                Field.Store.YES, Field.Index.NO));
+      }
+      doc.add(new Field(OUTLINKS_FIELD, formatOutlinks(rawDocument.getLinks()),
+              Field.Store.YES, Field.Index.NO));
+    }
+
     // Write the raw content to an analysis file
     writeContentAnalysisFile(rawDocument);
 
@@ -564,7 +867,9 @@ public class DocumentFactory {
       summary = createSummaryFromContent(cleanedContent);
     }
     if (hasContent(summary)) {
-      doc.add(new Field("summary", summary, Field.Store.NO, Field.Index.ANALYZED));
+      // The term vectors allow highlighting the summary without analyzing it
+      doc.add(new Field("summary", summary, Field.Store.NO, Field.Index.ANALYZED,
+              mStoreTermVectors ? Field.TermVector.WITH_POSITIONS_OFFSETS : Field.TermVector.NO));
       doc.add(new Field("summary", CompressionTools.compressString(summary)));
     }
 
@@ -594,6 +899,58 @@ public class DocumentFactory {
     return doc;
   }
 
+  /**
+   * Formats the links of a document for the {@link #OUTLINKS_FIELD}.
+   *
+   * @param links The links (key: URL, value: link text).
+   * @return The links as String.
+   * @see #parseOutlinks(String)
+   */
+  private static String formatOutlinks(Map<String, String> links) {
+    StringBuilder builder = new StringBuilder();
+    for (Entry<String, String> link : links.entrySet()) {
+      builder.append(link.getKey());
+      builder.append('\t');
+      if (link.getValue() != null) {
+        builder.append(link.getValue().replaceAll("\\s+", " ").trim());
+      }
+      builder.append('\n');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Parses the value of a {@link #OUTLINKS_FIELD}.
+   *
+   * @param outlinks The value of the field. May be <code>null</code>.
+   * @return The links (key: URL, value: link text) or <code>null</code> if
+   *         <code>outlinks</code> is <code>null</code>.
+   * @see #formatOutlinks(Map)
+   */
+  public static Map<String, String> parseOutlinks(String outlinks) {
+    if (outlinks == null) {
+      return null;
+    }
+    Map<String, String> links = new HashMap<String, String>();
+    int lineStart = 0;
+    while (lineStart < outlinks.length()) {
+      int lineEnd = outlinks.indexOf('\n', lineStart);
+      if (lineEnd == -1) {
+        lineEnd = outlinks.length();
+      }
+      int tabPos = outlinks.indexOf('\t', lineStart);
+      if ((tabPos != -1) && (tabPos < lineEnd)) {
+        String linkText = outlinks.substring(tabPos + 1, lineEnd);
+        links.put(outlinks.substring(lineStart, tabPos),
+                (linkText.length() == 0) ? null : linkText);
+      } else if (lineEnd > lineStart) {
+        links.put(outlinks.substring(lineStart, lineEnd), null);
+      }
+      lineStart = lineEnd + 1;
+    }
+    return links;
+  }
+
   /**
    * Gibt zurück, ob der String einen Inhalt hat. Dies ist der Fall, wenn er
    * weder <code>null</code> noch ein Leerstring ist.
@@ -758,18 +1115,30 @@ public class DocumentFactory {
    * bearbeitet wurden.
    */
   public void close() {
-    for (int i = 0; i < mPreparatorArr.length; i++) {
-      mLog.info("Closing preparator " + mPreparatorArr[i].getClass().getName());
-      try {
-        mPreparatorArr[i].close();
-      } catch (Throwable thr) {
-        mLog.error("Closing preparator failed: "
-                + mPreparatorArr[i].getClass().getName(), thr);
+    synchronized (mPreparatorArrList) {
+      for (Preparator[] preparatorArr : mPreparatorArrList) {
+        for (int i = 0; i < preparatorArr.length; i++) {
+          mLog.info("Closing preparator " + preparatorArr[i].getClass().getName());
+          try {
+            preparatorArr[i].close();
+          } catch (Throwable thr) {
+            mLog.error("Closing preparator failed: "
+                    + preparatorArr[i].getClass().getName(), thr);
+          }
+        }
       }
+
+      // Ensure that no call of createDocument(RawDocument) is possible any more
+      mPreparatorArrList.clear();
+      mUnusedPreparatorArrList.clear();
+      mThreadPreparatorArr = null;
     }
 
-    // Ensure that no call of createDocument(RawDocument) is possible any more
-    mPreparatorArr = null;
+    // Stop the preparator hosts
+    if (mPreparatorHostPool != null) {
+      mPreparatorHostPool.close();
+      mPreparatorHostPool = null;
+    }
 
     // Close CrawlerAccessControl if possible
     if (mCrawlerAccessController != null && mCrawlerAccessController instanceof Closeable)
@@ -0,0 +1,347 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Date;
+import java.util.HashMap;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.CrawlerToolkit;
+
+/**
+ * Loads documents via HTTP.
+ * <p>
+ * The fetcher is shared by all crawler threads, so documents are loaded
+ * concurrently. The connections are kept alive and are reused for the next
+ * request to the same host. In order to not overload a server, the number of
+ * concurrent requests per host is limited and there may be a delay between
+ * two requests to the same host.
+ * <p>
+ * The timeout is enforced by the socket timeouts and by checking the time
+ * while reading. So no extra thread is needed for watching a download.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class HttpFetcher {
+
+  /**
+   * The timeout for a download (in milli seconds). This is the maximum time a
+   * whole download may take.
+   */
+  private int mTimeout;
+
+  /** The maximum number of concurrent requests to one host. */
+  private int mMaxConnectionsPerHost;
+
+  /**
+   * The minimum time between the start of two requests to the same host (in
+   * milli seconds).
+   */
+  private long mPolitenessDelay;
+
+  /** The state of each host. Key: The host (e.g. "http://localhost:80"). */
+  private HashMap<String, HostState> mHostStateMap;
+
+
+  /**
+   * Creates a new instance of HttpFetcher.
+   *
+   * @param timeoutSecs The maximum time a download may take (in seconds).
+   * @param maxConnectionsPerHost The maximum number of concurrent requests to
+   *        one host.
+   * @param politenessDelay The minimum time between the start of two requests
+   *        to the same host (in milli seconds).
+   */
+  public HttpFetcher(int timeoutSecs, int maxConnectionsPerHost,
+    long politenessDelay)
+  {
+    mTimeout = timeoutSecs * 1000;
+    mMaxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+    mPolitenessDelay = Math.max(0, politenessDelay);
+    mHostStateMap = new HashMap<String, HostState>();
+
+    // Java keeps at most http.maxConnections idle connections per host (5 by
+    // default). Allow one idle connection for each concurrent request.
+    if ((System.getProperty("http.maxConnections") == null)
+      && (mMaxConnectionsPerHost > 5))
+    {
+      System.setProperty("http.maxConnections", Integer.toString(mMaxConnectionsPerHost));
+    }
+  }
+
+
+  /**
+   * Loads a document.
+   * <p>
+   * Blocks until a connection to the host is free. The waiting time does not
+   * count for the timeout.
+   *
+   * @param url The URL of the document.
+   * @param fileExtension The extension of the temporary file, if the document
+   *        is too big to be held in memory (e.g. ".pdf").
+   * @param validators The validators of the already known version of the
+   *        document. If given, the document is only loaded if it has changed.
+   *        May be <code>null</code>.
+   * @return The loaded document.
+   * @throws net.sf.regain.crawler.RedirectException If the URL redirects to
+   *         another URL.
+   * @throws net.sf.regain.crawler.NotModifiedException If the document has
+   *         not changed since the version the validators belong to.
+   * @throws RegainException If loading the document failed or timed out.
+   */
+  public Response fetch(String url, String fileExtension,
+    HttpValidators validators)
+    throws RegainException
+  {
+    URL asUrl;
+    try {
+      asUrl = new URL(url);
+    }
+    catch (MalformedURLException exc) {
+      throw new RegainException("Invalid URL: " + url, exc);
+    }
+
+    HostState hostState = getHostState(asUrl);
+    try {
+      hostState.acquire();
+    }
+    catch (InterruptedException exc) {
+      throw new RegainException("Waiting for a connection to " + asUrl.getHost()
+        + " was interrupted", exc);
+    }
+
+    InputStream in = null;
+    try {
+      long deadline = System.currentTimeMillis() + mTimeout;
+      URLConnection conn = CrawlerToolkit.getHttpConnection(asUrl, mTimeout, validators);
+      in = new DeadlineInputStream(conn.getInputStream(), deadline);
+      ContentBuffer content = ContentBuffer.read(in, -1,
+        ContentBuffer.MAX_MEMORY_SIZE, fileExtension);
+
+      HttpValidators responseValidators = new HttpValidators(
+        conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
+      long lastModified = conn.getLastModified();
+      return new Response(content, responseValidators,
+        (lastModified == 0) ? null : new Date(lastModified));
+    }
+    catch (IOException exc) {
+      throw new RegainException("Loading Document by HTTP failed: " + url, exc);
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+      hostState.release();
+    }
+  }
+
+
+  /**
+   * Gets the state of the host of an URL.
+   *
+   * @param url The URL to get the host state for.
+   * @return The state of the host.
+   */
+  private HostState getHostState(URL url) {
+    int port = (url.getPort() == -1) ? url.getDefaultPort() : url.getPort();
+    String key = url.getProtocol() + "://" + url.getHost().toLowerCase() + ":" + port;
+
+    synchronized (mHostStateMap) {
+      HostState hostState = mHostStateMap.get(key);
+      if (hostState == null) {
+        hostState = new HostState();
+        mHostStateMap.put(key, hostState);
+      }
+      return hostState;
+    }
+  }
+
+
+  /**
+   * A loaded document.
+   */
+  public static class Response {
+
+    /** The content of the document. */
+    private ContentBuffer mContent;
+
+    /** The validators sent by the server. */
+    private HttpValidators mValidators;
+
+    /** The last modification date sent by the server. */
+    private Date mLastModified;
+
+
+    /**
+     * Creates a new instance of Response.
+     *
+     * @param content The content of the document.
+     * @param validators The validators sent by the server.
+     * @param lastModified The last modification date sent by the server. May
+     *        be <code>null</code>.
+     */
+    public Response(ContentBuffer content, HttpValidators validators,
+      Date lastModified)
+    {
+      mContent = content;
+      mValidators = validators;
+      mLastModified = lastModified;
+    }
+
+
+    /**
+     * Gets the content of the document.
+     *
+     * @return The content of the document.
+     */
+    public ContentBuffer getContent() {
+      return mContent;
+    }
+
+
+    /**
+     * Gets the validators sent by the server.
+     *
+     * @return The validators. If the server sent no validators,
+     *         {@link HttpValidators#isEmpty()} is <code>true</code>.
+     */
+    public HttpValidators getValidators() {
+      return mValidators;
+    }
+
+
+    /**
+     * Gets the last modification date sent by the server.
+     *
+     * @return The last modification date or <code>null</code> if the server
+     *         didn't send one.
+     */
+    public Date getLastModified() {
+      return mLastModified;
+    }
+
+  }
+
+
+  /**
+   * The state of one host. Limits the number of concurrent requests and keeps
+   * the politeness delay.
+   */
+  private class HostState {
+
+    /** The number of requests that are currently running. */
+    private int mActiveCount;
+
+    /** The earliest time the next request may start. */
+    private long mNextStartTime;
+
+
+    /**
+     * Waits until a request to the host may start.
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    public synchronized void acquire() throws InterruptedException {
+      while (true) {
+        if (mActiveCount < mMaxConnectionsPerHost) {
+          long waitTime = mNextStartTime - System.currentTimeMillis();
+          if (waitTime <= 0) {
+            mActiveCount++;
+            mNextStartTime = System.currentTimeMillis() + mPolitenessDelay;
+            return;
+          }
+          wait(waitTime);
+        } else {
+          wait();
+        }
+      }
+    }
+
+
+    /**
+     * Marks a request to the host as finished.
+     */
+    public synchronized void release() {
+      mActiveCount--;
+      notifyAll();
+    }
+
+  }
+
+
+  /**
+   * A stream that throws a {@link SocketTimeoutException} when it is read
+   * after a deadline.
+   */
+  private class DeadlineInputStream extends FilterInputStream {
+
+    /** The time when reading times out. */
+    private long mDeadline;
+
+
+    /**
+     * Creates a new instance of DeadlineInputStream.
+     *
+     * @param in The stream to read from.
+     * @param deadline The time when reading times out.
+     */
+    public DeadlineInputStream(InputStream in, long deadline) {
+      super(in);
+      mDeadline = deadline;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+      checkDeadline();
+      return super.read();
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      checkDeadline();
+      return super.read(b, off, len);
+    }
+
+
+    /**
+     * Checks whether the deadline has passed.
+     *
+     * @throws SocketTimeoutException If the deadline has passed.
+     */
+    private void checkDeadline() throws SocketTimeoutException {
+      if (System.currentTimeMillis() > mDeadline) {
+        throw new SocketTimeoutException("Loading Document by HTTP timed out after "
+          + (mTimeout / 1000) + " seconds");
+      }
+    }
+
+  }
+
+}
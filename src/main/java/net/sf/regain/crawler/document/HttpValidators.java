@@ -0,0 +1,114 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+/**
+ * The validators of an HTTP document: The values of the <code>ETag</code> and
+ * the <code>Last-Modified</code> response headers.
+ * <p>
+ * The validators are stored in the index. When the document is loaded the
+ * next time, they are sent back to the server (as <code>If-None-Match</code>
+ * and <code>If-Modified-Since</code>), so the server only sends the document
+ * if it has changed.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class HttpValidators {
+
+  /** The value of the ETag header. May be <code>null</code>. */
+  private String mETag;
+
+  /** The value of the Last-Modified header. May be <code>null</code>. */
+  private String mLastModified;
+
+
+  /**
+   * Creates a new instance of HttpValidators.
+   *
+   * @param eTag The value of the ETag header. May be <code>null</code>.
+   * @param lastModified The value of the Last-Modified header. May be
+   *        <code>null</code>.
+   */
+  public HttpValidators(String eTag, String lastModified) {
+    mETag = eTag;
+    mLastModified = lastModified;
+  }
+
+
+  /**
+   * Gets the value of the ETag header.
+   *
+   * @return The value of the ETag header or <code>null</code>.
+   */
+  public String getETag() {
+    return mETag;
+  }
+
+
+  /**
+   * Gets the value of the Last-Modified header.
+   *
+   * @return The value of the Last-Modified header or <code>null</code>.
+   */
+  public String getLastModified() {
+    return mLastModified;
+  }
+
+
+  /**
+   * Gets whether there is no validator at all.
+   *
+   * @return Whether both the ETag and the Last-Modified value are missing.
+   */
+  public boolean isEmpty() {
+    return (mETag == null) && (mLastModified == null);
+  }
+
+
+  @Override
+  public boolean equals(Object obj) {
+    if (! (obj instanceof HttpValidators)) {
+      return false;
+    }
+    HttpValidators other = (HttpValidators) obj;
+    return equals(mETag, other.mETag) && equals(mLastModified, other.mLastModified);
+  }
+
+
+  @Override
+  public int hashCode() {
+    return ((mETag == null) ? 0 : mETag.hashCode()) * 31
+      + ((mLastModified == null) ? 0 : mLastModified.hashCode());
+  }
+
+
+  /**
+   * Checks whether two values are equal.
+   *
+   * @param value1 The first value. May be <code>null</code>.
+   * @param value2 The second value. May be <code>null</code>.
+   * @return Whether both values are equal.
+   */
+  private static boolean equals(String value1, String value2) {
+    return (value1 == null) ? (value2 == null) : value1.equals(value2);
+  }
+
+}
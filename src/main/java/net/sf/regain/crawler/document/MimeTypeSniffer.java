@@ -0,0 +1,377 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifier;
+import org.semanticdesktop.aperture.mime.identifier.magic.MagicNumber;
+import org.semanticdesktop.aperture.mime.identifier.magic.MagicString;
+import org.semanticdesktop.aperture.mime.identifier.magic.MimeTypeDescription;
+
+/**
+ * Identifies the common binary formats (PDF, images, MS Office and zip files)
+ * by their magic number, so they don't have to run through all mime type
+ * descriptions of the {@link MagicMimeTypeIdentifier}.
+ * <p>
+ * The signatures are taken from the descriptions of the identifier and the
+ * result is always the same as the one of the identifier: A signature is only
+ * used if no magic string of the identifier can match a document starting
+ * with it. The magic numbers of the descriptions checked before that could
+ * still match (e.g. the one of tar files at offset 257) are checked for each
+ * document. For all other documents <code>null</code> is returned and the
+ * identifier has to be asked.
+ * <p>
+ * Zip files may be checked for being OOXML documents (see
+ * {@link #identifyZipContainer(File)}).
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class MimeTypeSniffer {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(MimeTypeSniffer.class);
+
+  /** The mime types identified by the sniffer. */
+  private static final String[] SNIFFED_MIME_TYPES = {
+    "application/zip", "application/vnd.ms-office", "application/pdf",
+    "image/jpeg", "image/png", "image/gif"
+  };
+
+  /**
+   * The OOXML mime types. Each is followed by the directory its main part is
+   * stored in.
+   */
+  private static final String[] OOXML_MIME_TYPES = {
+    "application/vnd.openxmlformats-officedocument.wordprocessingml", "word/",
+    "application/vnd.openxmlformats-officedocument.spreadsheetml", "xl/",
+    "application/vnd.openxmlformats-officedocument.presentationml", "ppt/"
+  };
+
+  /** The signatures. */
+  private Signature[] mSignatureArr;
+
+
+  /**
+   * Creates a new instance of MimeTypeSniffer.
+   */
+  @SuppressWarnings("unchecked")
+  public MimeTypeSniffer() {
+    List<MimeTypeDescription> descList = new DescriptionReader().getDescriptions();
+
+    List<Signature> signatureList = new ArrayList<Signature>();
+    List<String> sniffedList = Arrays.asList(SNIFFED_MIME_TYPES);
+    for (int i = 0; i < descList.size(); i++) {
+      MimeTypeDescription desc = descList.get(i);
+      if (! sniffedList.contains(desc.getMimeType()) || ! hasExtensionChildrenOnly(desc)) {
+        continue;
+      }
+
+      List<MagicNumber> magicNumberList = desc.getMagicNumbers();
+      for (MagicNumber magicNumber : magicNumberList) {
+        if (magicNumber.getOffset() != 0) {
+          continue;
+        }
+        byte[] magic = magicNumber.getMagicBytes();
+
+        // The identifier checks the magic strings of all descriptions first
+        if (canMatchMagicString(descList, magic)) {
+          continue;
+        }
+
+        // Find the magic numbers of the descriptions before that could match
+        List<MagicNumber> checkList = new ArrayList<MagicNumber>();
+        for (int j = 0; j < i; j++) {
+          List<MagicNumber> otherList = descList.get(j).getMagicNumbers();
+          for (MagicNumber other : otherList) {
+            if (! conflicts(other, magic)) {
+              checkList.add(other);
+            }
+          }
+        }
+
+        signatureList.add(new Signature(magic, desc,
+            checkList.toArray(new MagicNumber[checkList.size()])));
+      }
+    }
+    mSignatureArr = signatureList.toArray(new Signature[signatureList.size()]);
+
+    if (mLog.isDebugEnabled()) {
+      StringBuilder types = new StringBuilder();
+      for (int i = 0; i < mSignatureArr.length; i++) {
+        types.append(' ').append(mSignatureArr[i].mDescription.getMimeType());
+      }
+      mLog.debug("Sniffing mime types by " + mSignatureArr.length + " signatures:" + types);
+    }
+  }
+
+
+  /**
+   * Checks whether the sub types of a description are identified by the file
+   * extension only.
+   *
+   * @param desc The description to check.
+   * @return Whether all sub types (recursively) have no magic.
+   */
+  @SuppressWarnings("unchecked")
+  private static boolean hasExtensionChildrenOnly(MimeTypeDescription desc) {
+    List<MimeTypeDescription> childList = desc.getRequiringTypes();
+    if (childList != null) {
+      for (MimeTypeDescription child : childList) {
+        if (! child.getMagicNumbers().isEmpty() || ! child.getMagicStrings().isEmpty()
+            || ! hasExtensionChildrenOnly(child))
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Checks whether a magic string of a description could match a document
+   * starting with a magic number.
+   *
+   * @param descList The descriptions.
+   * @param magic The magic number.
+   * @return Whether a magic string could match.
+   */
+  @SuppressWarnings("unchecked")
+  private static boolean canMatchMagicString(List<MimeTypeDescription> descList, byte[] magic) {
+    // NOTE: The magic strings are matched against the decoded document. A
+    //       non-ASCII byte can't be decoded to the ASCII char a magic string
+    //       starts with.
+    int first = magic[0] & 0xff;
+    if (first >= 0x80) {
+      return false;
+    }
+    if (Character.isWhitespace((char) first)) {
+      // Some magic strings may follow white space
+      return true;
+    }
+
+    for (MimeTypeDescription desc : descList) {
+      List<MagicString> magicStringList = desc.getMagicStrings();
+      for (MagicString magicString : magicStringList) {
+        char[] chars = magicString.getMagicChars();
+        if ((chars.length == 0)
+            || (Character.toLowerCase(chars[0]) == Character.toLowerCase((char) first)))
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Checks whether a magic number can't match a document starting with another
+   * magic number.
+   *
+   * @param magicNumber The magic number to check.
+   * @param magic The magic number the document starts with.
+   * @return Whether the magic numbers differ in a common byte.
+   */
+  private static boolean conflicts(MagicNumber magicNumber, byte[] magic) {
+    byte[] bytes = magicNumber.getMagicBytes();
+    int offset = magicNumber.getOffset();
+    for (int i = 0; i < bytes.length; i++) {
+      int pos = offset + i;
+      if ((pos < magic.length) && (bytes[i] != magic[pos])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Checks whether a document has a magic number.
+   *
+   * @param header The header of the document.
+   * @param bytes The bytes of the magic number.
+   * @param offset The offset of the magic number.
+   * @return Whether the document has the magic number.
+   */
+  private static boolean startsWith(byte[] header, byte[] bytes, int offset) {
+    if (header.length < offset + bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (header[offset + i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Identifies the mime type of a document by its magic number.
+   *
+   * @param header The header of the document.
+   * @param fileName The name of the file holding the document. The extension
+   *        is used to find the sub type (e.g. application/vnd.ms-excel for
+   *        application/vnd.ms-office).
+   * @return The mime type or <code>null</code> if the document has to be
+   *         identified by the {@link MagicMimeTypeIdentifier}.
+   */
+  @SuppressWarnings("unchecked")
+  public String identify(byte[] header, String fileName) {
+    for (int i = 0; i < mSignatureArr.length; i++) {
+      Signature signature = mSignatureArr[i];
+      if (startsWith(header, signature.mMagic, 0)) {
+        for (int j = 0; j < signature.mCheckArr.length; j++) {
+          MagicNumber other = signature.mCheckArr[j];
+          if (startsWith(header, other.getMagicBytes(), other.getOffset())) {
+            return null;
+          }
+        }
+
+        // Find the sub type the same way the identifier does
+        String extension = null;
+        if (fileName != null) {
+          int dotPos = fileName.lastIndexOf('.');
+          if ((dotPos > 0) && (dotPos < fileName.length() - 1)) {
+            extension = fileName.substring(dotPos + 1).toLowerCase();
+          }
+        }
+        MimeTypeDescription desc = signature.mDescription;
+        boolean found = (extension != null);
+        while (found) {
+          found = false;
+          List<MimeTypeDescription> childList = desc.getRequiringTypes();
+          if (childList != null) {
+            for (MimeTypeDescription child : childList) {
+              if (child.containsExtension(extension)) {
+                desc = child;
+                found = true;
+                break;
+              }
+            }
+          }
+        }
+        return desc.getMimeType();
+      }
+    }
+
+    return null;
+  }
+
+
+  /**
+   * Checks whether a zip file is an OOXML document (docx, xlsx or pptx). Only
+   * the central directory of the zip file is read.
+   *
+   * @param file The zip file.
+   * @return The mime type of the OOXML document or <code>null</code> if the
+   *         file is no OOXML document.
+   */
+  public String identifyZipContainer(File file) {
+    ZipFile zipFile = null;
+    try {
+      zipFile = new ZipFile(file);
+      if (zipFile.getEntry("[Content_Types].xml") == null) {
+        return null;
+      }
+
+      for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+        String name = entries.nextElement().getName();
+        for (int i = 0; i < OOXML_MIME_TYPES.length; i += 2) {
+          if (name.startsWith(OOXML_MIME_TYPES[i + 1])) {
+            return OOXML_MIME_TYPES[i];
+          }
+        }
+      }
+      return null;
+    }
+    catch (IOException exc) {
+      // This is no valid zip file
+      return null;
+    }
+    finally {
+      if (zipFile != null) {
+        try { zipFile.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * A magic number the sniffer identifies.
+   */
+  private static class Signature {
+
+    /** The magic number. */
+    private byte[] mMagic;
+    /** The description having the magic number. */
+    private MimeTypeDescription mDescription;
+    /**
+     * The magic numbers of the descriptions before that could match too. If one
+     * matches, the document must be identified by the identifier.
+     */
+    private MagicNumber[] mCheckArr;
+
+    /**
+     * Creates a new instance of Signature.
+     *
+     * @param magic The magic number.
+     * @param description The description having the magic number.
+     * @param checkArr The magic numbers of the descriptions before that could
+     *        match too.
+     */
+    public Signature(byte[] magic, MimeTypeDescription description, MagicNumber[] checkArr) {
+      mMagic = magic;
+      mDescription = description;
+      mCheckArr = checkArr;
+    }
+
+  }
+
+
+  /**
+   * Reads the mime type descriptions of the {@link MagicMimeTypeIdentifier}.
+   */
+  private static class DescriptionReader extends MagicMimeTypeIdentifier {
+
+    /**
+     * Gets the mime type descriptions in the order the identifier checks them.
+     *
+     * @return The mime type descriptions.
+     */
+    @SuppressWarnings("unchecked")
+    public List<MimeTypeDescription> getDescriptions() {
+      return getMimeTypeDescriptions();
+    }
+
+  }
+
+}
@@ -20,12 +20,16 @@
  */
 package net.sf.regain.crawler.document;
 
+import java.io.Serializable;
+
 /**
  * Ein Element eines Pfades. Besteht aus einer URL und einem Titel
  *
  * @author Til Schneider, www.murfman.de
  */
-public class PathElement {
+public class PathElement implements Serializable {
+
+  static final long serialVersionUID = 1L;
 
   /** Die URL. */
   private String mUrl;
@@ -0,0 +1,484 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.Profiler;
+import net.sf.regain.crawler.config.PreparatorSettings;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Caches the results of the preparators by the content of the documents. So
+ * copies of a document (e.g. the same PDF in several project folders) and
+ * documents that were moved or renamed are not prepared again.
+ * <p>
+ * The key of a result is the hash of the content together with the identity
+ * of the preparator: Its class, the version of the jar it was loaded from, its
+ * settings and the limits of the content. So the results are prepared again after a preparator was
+ * updated or configured differently.
+ * <p>
+ * Each result is stored compressed in its own file in the cache directory. If
+ * the cache gets bigger than its maximum size, the results not used for the
+ * longest time are removed. The time a result was used last is kept as the
+ * modification time of its file, so it is known in the next crawler run too.
+ * <p>
+ * Only the results of preparators that only depend on the content are cached
+ * (see {@link AbstractPreparator#isContentOnly()}). The results of all other
+ * preparators may depend on the URL of the document (e.g. its file name, its
+ * links or its path).
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparationCache {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PreparationCache.class);
+
+  /** The extension of the result files. */
+  private static final String FILE_EXTENSION = ".gz";
+  /** The first int of a result file ("RGPC"). */
+  private static final int FILE_MAGIC = 0x52475043;
+  /** The character encoding of the strings in a result file. */
+  private static final String ENCODING = "UTF-8";
+
+  /** The profiler that measures loading results from the cache. */
+  private static final Profiler LOAD_PROFILER
+    = new Profiler("Preparation results loaded from the cache", "docs");
+
+  /** The directory of the cache. */
+  private File mCacheDir;
+
+  /** The maximum size of the cache (in bytes). */
+  private long mMaxSize;
+
+  /**
+   * The sizes of the result files. Key: The key of the result, value: The
+   * size of its file. The results used least recently come first.
+   */
+  private LinkedHashMap<String, Long> mFileSizeHash;
+
+  /** The size of all result files (in bytes). */
+  private long mSize;
+
+  /** The preparator settings of the crawler. */
+  private PreparatorSettings[] mPreparatorSettingsArr;
+
+  /** The identities of the preparators. Key: The class name of the preparator. */
+  private HashMap<String, byte[]> mIdentityHash;
+
+
+  /**
+   * Creates a new instance of PreparationCache.
+   *
+   * @param cacheDir The directory of the cache. Is created if it doesn't
+   *        exist.
+   * @param maxSize The maximum size of the cache (in bytes).
+   * @param preparatorSettingsArr The preparator settings of the crawler.
+   * @throws RegainException If the cache directory could not be created.
+   */
+  public PreparationCache(File cacheDir, long maxSize,
+    PreparatorSettings[] preparatorSettingsArr)
+    throws RegainException
+  {
+    mCacheDir = cacheDir;
+    mMaxSize = maxSize;
+    mPreparatorSettingsArr = preparatorSettingsArr;
+    mIdentityHash = new HashMap<String, byte[]>();
+
+    if (! cacheDir.exists() && ! cacheDir.mkdirs()) {
+      throw new RegainException("Creating the preparation cache directory failed: "
+          + cacheDir.getAbsolutePath());
+    }
+
+    readCacheDir();
+  }
+
+
+  /**
+   * Reads the result files in the cache directory and sorts them by the time
+   * they were used last.
+   */
+  private void readCacheDir() {
+    List<File> fileList = new ArrayList<File>();
+    File[] subDirArr = mCacheDir.listFiles();
+    if (subDirArr != null) {
+      for (int i = 0; i < subDirArr.length; i++) {
+        File[] fileArr = subDirArr[i].listFiles();
+        if (fileArr != null) {
+          for (int j = 0; j < fileArr.length; j++) {
+            if (fileArr[j].getName().endsWith(FILE_EXTENSION)) {
+              fileList.add(fileArr[j]);
+            }
+          }
+        }
+      }
+    }
+
+    Collections.sort(fileList, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        long diff = file1.lastModified() - file2.lastModified();
+        return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+      }
+    });
+
+    mFileSizeHash = new LinkedHashMap<String, Long>(fileList.size() * 2, 0.75f, true);
+    mSize = 0;
+    for (File file : fileList) {
+      String name = file.getName();
+      String key = name.substring(0, name.length() - FILE_EXTENSION.length());
+      mFileSizeHash.put(key, file.length());
+      mSize += file.length();
+    }
+
+    mLog.info("Preparation cache " + mCacheDir.getAbsolutePath() + " has "
+        + mFileSizeHash.size() + " results (" + RegainToolkit.bytesToString(mSize) + ")");
+  }
+
+
+  /**
+   * Checks whether the results of a preparator can be cached.
+   *
+   * @param preparator The preparator to check.
+   * @return Whether the results of the preparator can be cached.
+   */
+  public boolean accepts(Preparator preparator) {
+    return (preparator instanceof AbstractPreparator)
+      && ((AbstractPreparator) preparator).isContentOnly();
+  }
+
+
+  /**
+   * Gets the key of the result a preparator has for a document.
+   *
+   * @param preparator The preparator.
+   * @param rawDocument The document.
+   * @return The key or <code>null</code> if the hash of the content could not
+   *         be computed.
+   */
+  public String getKey(Preparator preparator, RawDocument rawDocument) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(getIdentity(preparator));
+      digest.update(rawDocument.getContentHash());
+
+      byte[] hash = digest.digest();
+      StringBuilder key = new StringBuilder(hash.length * 2);
+      for (int i = 0; i < hash.length; i++) {
+        int b = hash[i] & 0xff;
+        key.append(Character.forDigit(b >> 4, 16));
+        key.append(Character.forDigit(b & 0x0f, 16));
+      }
+      return key.toString();
+    }
+    catch (Exception exc) {
+      mLog.warn("Creating the preparation cache key for " + rawDocument.getUrl()
+          + " failed", exc);
+      return null;
+    }
+  }
+
+
+  /**
+   * Gets the identity of a preparator. It changes if the preparator is
+   * updated or configured differently.
+   *
+   * @param preparator The preparator.
+   * @return The hash of the identity.
+   * @throws NoSuchAlgorithmException If there is no SHA-1 implementation.
+   * @throws URISyntaxException If the location of the preparator is invalid.
+   */
+  private synchronized byte[] getIdentity(Preparator preparator)
+    throws NoSuchAlgorithmException, URISyntaxException
+  {
+    String className = preparator.getClass().getName();
+    byte[] identity = mIdentityHash.get(className);
+    if (identity == null) {
+      StringBuilder builder = new StringBuilder(className);
+
+      // Add the version of the preparator
+      Package pack = preparator.getClass().getPackage();
+      if ((pack != null) && (pack.getImplementationVersion() != null)) {
+        builder.append('\n').append(pack.getImplementationVersion());
+      }
+      CodeSource codeSource = preparator.getClass().getProtectionDomain().getCodeSource();
+      if ((codeSource != null) && (codeSource.getLocation() != null)) {
+        URL location = codeSource.getLocation();
+        builder.append('\n').append(location);
+        if ("file".equals(location.getProtocol())) {
+          builder.append('\n').append(new File(location.toURI()).lastModified());
+        }
+      }
+
+      // Add the limits of the content
+      if (preparator instanceof AbstractPreparator) {
+        AbstractPreparator writeable = (AbstractPreparator) preparator;
+        builder.append('\n').append(writeable.getMaxFieldLength());
+        builder.append('\n').append(writeable.getMaxSummaryLength());
+      }
+
+      // Add the settings of the preparator
+      for (int i = 0; i < mPreparatorSettingsArr.length; i++) {
+        PreparatorSettings settings = mPreparatorSettingsArr[i];
+        if (settings.getPreparatorClassName().equals(className)) {
+          builder.append('\n').append(settings.getUrlRegex());
+          for (Map.Entry<String, Map<String, String>> section : settings.getPreparatorConfig()) {
+            builder.append('\n').append(section.getKey());
+            builder.append(new TreeMap<String, String>(section.getValue()));
+          }
+          break;
+        }
+      }
+
+      try {
+        identity = MessageDigest.getInstance("SHA-1").digest(builder.toString().getBytes(ENCODING));
+      }
+      catch (IOException exc) {
+        // UTF-8 is always supported
+        throw new RuntimeException(exc);
+      }
+      mIdentityHash.put(className, identity);
+    }
+    return identity;
+  }
+
+
+  /**
+   * Gets the file of a result.
+   *
+   * @param key The key of the result.
+   * @return The file of the result.
+   */
+  private File getFile(String key) {
+    // NOTE: We use sub directories, so there are not too many files in one
+    File subDir = new File(mCacheDir, key.substring(0, 2));
+    return new File(subDir, key + FILE_EXTENSION);
+  }
+
+
+  /**
+   * Loads a result from the cache. If there is a result, the preparator
+   * returns it as if it had prepared the document itself.
+   *
+   * @param key The key of the result.
+   * @param preparator The preparator to set the result to.
+   * @return Whether there was a result in the cache.
+   */
+  public boolean load(String key, Preparator preparator) {
+    synchronized (this) {
+      if (mFileSizeHash.get(key) == null) {
+        return false;
+      }
+    }
+
+    File file = getFile(key);
+    LOAD_PROFILER.startMeasuring();
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+      if (in.readInt() != FILE_MAGIC) {
+        throw new IOException("File has a wrong format");
+      }
+
+      AbstractPreparator writeable = (AbstractPreparator) preparator;
+      writeable.setTitle(readString(in));
+      writeable.setCleanedContent(readString(in));
+      writeable.setCleanedMetaData(readString(in));
+      writeable.setSummary(readString(in));
+      writeable.setHeadlines(readString(in));
+      int additionalFieldCount = in.readInt();
+      for (int i = 0; i < additionalFieldCount; i++) {
+        writeable.addAdditionalField(readString(in), readString(in));
+      }
+
+      // The result was used -> It should be removed last
+      file.setLastModified(System.currentTimeMillis());
+      LOAD_PROFILER.stopMeasuring(file.length());
+      return true;
+    }
+    catch (IOException exc) {
+      LOAD_PROFILER.abortMeasuring();
+      mLog.warn("Loading preparation result " + file.getAbsolutePath() + " failed", exc);
+      preparator.cleanUp();
+      remove(key);
+      return false;
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * Stores the result of a preparator in the cache.
+   *
+   * @param key The key of the result.
+   * @param preparator The preparator that prepared the document.
+   */
+  public void store(String key, Preparator preparator) {
+    if (preparator.getCleanedContent() == null) {
+      return;
+    }
+
+    File file = getFile(key);
+    File tempFile = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      file.getParentFile().mkdirs();
+      out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))));
+      out.writeInt(FILE_MAGIC);
+      writeString(out, preparator.getTitle());
+      writeString(out, preparator.getCleanedContent());
+      writeString(out, preparator.getCleanedMetaData());
+      writeString(out, preparator.getSummary());
+      writeString(out, preparator.getHeadlines());
+      Map<String, String> additionalFieldMap = preparator.getAdditionalFields();
+      if (additionalFieldMap == null) {
+        out.writeInt(0);
+      } else {
+        out.writeInt(additionalFieldMap.size());
+        for (Map.Entry<String, String> entry : additionalFieldMap.entrySet()) {
+          writeString(out, entry.getKey());
+          writeString(out, entry.getValue());
+        }
+      }
+      out.close();
+      out = null;
+    }
+    catch (IOException exc) {
+      mLog.warn("Storing preparation result " + file.getAbsolutePath() + " failed", exc);
+      tempFile.delete();
+      return;
+    }
+    finally {
+      if (out != null) {
+        try { out.close(); } catch (IOException exc) {}
+      }
+    }
+
+    synchronized (this) {
+      // NOTE: On Windows renameTo doesn't replace an existing file
+      Long oldSize = mFileSizeHash.remove(key);
+      if (oldSize != null) {
+        mSize -= oldSize.longValue();
+        file.delete();
+      }
+      if (! tempFile.renameTo(file)) {
+        mLog.warn("Renaming " + tempFile.getAbsolutePath() + " to "
+            + file.getAbsolutePath() + " failed");
+        tempFile.delete();
+        return;
+      }
+
+      mFileSizeHash.put(key, file.length());
+      mSize += file.length();
+
+      // Remove the results not used for the longest time
+      Iterator<Map.Entry<String, Long>> iter = mFileSizeHash.entrySet().iterator();
+      while ((mSize > mMaxSize) && iter.hasNext()) {
+        Map.Entry<String, Long> entry = iter.next();
+        getFile(entry.getKey()).delete();
+        mSize -= entry.getValue().longValue();
+        iter.remove();
+      }
+    }
+  }
+
+
+  /**
+   * Removes a result from the cache.
+   *
+   * @param key The key of the result.
+   */
+  private synchronized void remove(String key) {
+    Long size = mFileSizeHash.remove(key);
+    if (size != null) {
+      mSize -= size.longValue();
+    }
+    getFile(key).delete();
+  }
+
+
+  /**
+   * Writes a String that may be <code>null</code> or longer than 64 KB.
+   *
+   * @param out The stream to write to.
+   * @param text The String to write.
+   * @throws IOException If writing failed.
+   */
+  private static void writeString(DataOutputStream out, String text) throws IOException {
+    if (text == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = text.getBytes(ENCODING);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+
+  /**
+   * Reads a String written by {@link #writeString(DataOutputStream, String)}.
+   *
+   * @param in The stream to read from.
+   * @return The String.
+   * @throws IOException If reading failed.
+   */
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length == -1) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, ENCODING);
+  }
+
+}
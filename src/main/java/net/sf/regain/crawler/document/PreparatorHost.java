@@ -0,0 +1,360 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.config.PreparatorSettings;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+
+/**
+ * The main class of a preparator host process. A preparator host prepares the
+ * documents for the preparators marked as isolated, so a document that crashes
+ * or hangs a preparator (e.g. by an OutOfMemoryError or an endless loop) only
+ * costs a restart of the host instead of the whole crawler run.
+ * <p>
+ * The host is started by the {@link PreparatorHostPool} and talks to it by
+ * serialized objects over stdin and stdout: At first it reads the preparator
+ * settings, then it reads {@link Job}s and answers each with a {@link Result}.
+ * Everything the preparators write to System.out goes to System.err.
+ * <p>
+ * A watchdog stops the host as soon as preparing a document took more CPU time
+ * than allowed. If the memory runs out, the host stops too.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorHost {
+
+  /** The exit code if preparing a document took too much CPU time. */
+  static final int EXIT_TIMEOUT = 3;
+  /** The exit code if the memory ran out while preparing a document. */
+  static final int EXIT_OUT_OF_MEMORY = 4;
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PreparatorHost.class);
+
+  /** The preparators. Key: The class name of the preparator. */
+  private HashMap<String, Preparator> mPreparatorHash;
+
+  /** The maximum CPU time for preparing one document (in nanoseconds). */
+  private long mTimeoutNanos;
+
+  /** The bean for measuring the CPU time. Is <code>null</code> if not supported. */
+  private ThreadMXBean mThreadBean;
+
+  /** The thread preparing the documents. */
+  private Thread mPrepareThread;
+
+  /**
+   * The time when preparing the current document started (in nanoseconds).
+   * Is -1 if no document is prepared at the moment.
+   */
+  private volatile long mJobStartTime = -1;
+
+
+  /**
+   * Creates a new instance of PreparatorHost.
+   *
+   * @param preparatorSettingsArr The preparator settings of the crawler.
+   * @param timeoutSecs The maximum CPU time for preparing one document (in
+   *        seconds).
+   * @param maxFieldLength The maximum number of tokens indexed for a field.
+   * @param maxSummaryLength The maximum length of the summary.
+   * @throws RegainException If creating the preparators failed.
+   */
+  private PreparatorHost(PreparatorSettings[] preparatorSettingsArr, int timeoutSecs,
+    int maxFieldLength, int maxSummaryLength)
+    throws RegainException
+  {
+    // NOTE: We create the same preparators as the crawler does, so the
+    //       preparators not configured get the same settings
+    Preparator[] preparatorArr = PreparatorFactory.getInstance().createPreparatorArr(preparatorSettingsArr);
+    mPreparatorHash = new HashMap<String, Preparator>();
+    for (int i = 0; i < preparatorArr.length; i++) {
+      if (preparatorArr[i] instanceof AbstractPreparator) {
+        ((AbstractPreparator) preparatorArr[i]).setContentLimits(maxFieldLength, maxSummaryLength);
+      }
+      mPreparatorHash.put(preparatorArr[i].getClass().getName(), preparatorArr[i]);
+    }
+
+    mTimeoutNanos = timeoutSecs * 1000000000L;
+    mPrepareThread = Thread.currentThread();
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if (threadBean.isThreadCpuTimeSupported()) {
+      threadBean.setThreadCpuTimeEnabled(true);
+      mThreadBean = threadBean;
+    } else {
+      mLog.warn("Measuring the CPU time is not supported. Using the real time instead.");
+    }
+  }
+
+
+  /**
+   * Gets the time used by the thread preparing the documents.
+   *
+   * @return The CPU time of the prepare thread or the real time if measuring
+   *         the CPU time is not supported (in nanoseconds).
+   */
+  private long getTime() {
+    if (mThreadBean != null) {
+      return mThreadBean.getThreadCpuTime(mPrepareThread.getId());
+    } else {
+      return System.nanoTime();
+    }
+  }
+
+
+  /**
+   * Starts the watchdog that stops the process when preparing a document takes
+   * too long.
+   */
+  private void startWatchdog() {
+    Thread watchdog = new Thread("preparator-host-watchdog") {
+      @Override
+      public void run() {
+        while (true) {
+          try {
+            Thread.sleep(1000);
+          }
+          catch (InterruptedException exc) {
+            return;
+          }
+
+          long startTime = mJobStartTime;
+          if ((startTime != -1) && (getTime() - startTime > mTimeoutNanos)) {
+            System.err.println("Preparing a document took more than "
+                + (mTimeoutNanos / 1000000000L) + " seconds of CPU time");
+            Runtime.getRuntime().halt(EXIT_TIMEOUT);
+          }
+        }
+      }
+    };
+    watchdog.setDaemon(true);
+    watchdog.start();
+  }
+
+
+  /**
+   * Prepares the documents sent by the pool until the pool closes the stream.
+   *
+   * @param in The stream to read the jobs from.
+   * @param out The stream to write the results to.
+   * @throws IOException If reading or writing failed.
+   * @throws ClassNotFoundException If the pool sent an unknown object.
+   */
+  private void run(ObjectInputStream in, ObjectOutputStream out)
+    throws IOException, ClassNotFoundException
+  {
+    startWatchdog();
+
+    while (true) {
+      Job job;
+      try {
+        job = (Job) in.readObject();
+      }
+      catch (EOFException exc) {
+        // The pool closed the stream -> We are done
+        return;
+      }
+
+      Result result = prepare(job);
+
+      out.writeObject(result);
+      // NOTE: We don't need the back references to the old results
+      out.reset();
+      out.flush();
+    }
+  }
+
+
+  /**
+   * Prepares one document.
+   *
+   * @param job The job describing the document to prepare.
+   * @return The prepared document.
+   */
+  private Result prepare(Job job) {
+    Result result = new Result();
+
+    Preparator preparator = mPreparatorHash.get(job.mPreparatorClassName);
+    if (preparator == null) {
+      result.mError = "Preparator " + job.mPreparatorClassName
+          + " is not available in the preparator host";
+      return result;
+    }
+
+    RawDocument rawDocument = null;
+    mJobStartTime = getTime();
+    try {
+      File contentFile = (job.mContentFileName == null) ? null : new File(job.mContentFileName);
+      rawDocument = new RawDocument(job.mUrl, job.mSourceUrl, job.mSourceLinkText, contentFile);
+      rawDocument.setMimeType(job.mMimeType);
+
+      preparator.prepare(rawDocument);
+
+      result.mTitle = preparator.getTitle();
+      result.mCleanedContent = preparator.getCleanedContent();
+      result.mCleanedMetaData = preparator.getCleanedMetaData();
+      result.mSummary = preparator.getSummary();
+      result.mHeadlines = preparator.getHeadlines();
+      result.mPath = preparator.getPath();
+      if (preparator.getAdditionalFields() != null) {
+        result.mAdditionalFieldMap = new HashMap<String, String>(preparator.getAdditionalFields());
+      }
+      result.mLinkMap = rawDocument.getLinks();
+    }
+    catch (OutOfMemoryError err) {
+      // The preparators may be in an inconsistent state now -> Start anew
+      System.err.println("Out of memory while preparing " + job.mUrl);
+      Runtime.getRuntime().halt(EXIT_OUT_OF_MEMORY);
+    }
+    catch (Throwable thr) {
+      StringWriter trace = new StringWriter();
+      thr.printStackTrace(new PrintWriter(trace));
+      result.mError = trace.toString();
+    }
+    finally {
+      mJobStartTime = -1;
+      preparator.cleanUp();
+      if (rawDocument != null) {
+        rawDocument.dispose();
+      }
+    }
+
+    return result;
+  }
+
+
+  /**
+   * Starts a preparator host.
+   *
+   * @param args The command line arguments: The maximum CPU time for
+   *        preparing one document (in seconds), the maximum number of tokens
+   *        indexed for a field and the maximum length of the summary.
+   */
+  public static void main(String[] args) {
+    // The results are sent over stdout -> Redirect all other output
+    FileOutputStream resultStream = new FileOutputStream(FileDescriptor.out);
+    System.setOut(System.err);
+
+    Logger.getRootLogger().addAppender(new ConsoleAppender(
+        new PatternLayout("%-5p %c{1}: %m%n"), ConsoleAppender.SYSTEM_ERR));
+    Logger.getRootLogger().setLevel(Level.WARN);
+
+    try {
+      int timeoutSecs = Integer.parseInt(args[0]);
+      int maxFieldLength = Integer.parseInt(args[1]);
+      int maxSummaryLength = Integer.parseInt(args[2]);
+
+      // NOTE: The output stream must be created first, because the
+      //       ObjectInputStream of the pool waits for its header
+      ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(resultStream));
+      out.flush();
+      ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(System.in));
+
+      PreparatorSettings[] preparatorSettingsArr = (PreparatorSettings[]) in.readObject();
+      PreparatorHost host = new PreparatorHost(preparatorSettingsArr, timeoutSecs,
+          maxFieldLength, maxSummaryLength);
+      host.run(in, out);
+    }
+    catch (Throwable thr) {
+      mLog.error("Preparator host failed", thr);
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+
+
+  /**
+   * A document a preparator host should prepare.
+   */
+  static class Job implements Serializable {
+
+    static final long serialVersionUID = 1L;
+
+    /** The class name of the preparator to use. */
+    String mPreparatorClassName;
+    /** The URL of the document. */
+    String mUrl;
+    /** The URL of the document where the URL was found. */
+    String mSourceUrl;
+    /** The text of the link where the URL was found. May be <code>null</code>. */
+    String mSourceLinkText;
+    /** The mime type of the document. */
+    String mMimeType;
+    /**
+     * The file holding the content. Is <code>null</code> for local files,
+     * they are read from their URL.
+     */
+    String mContentFileName;
+  }
+
+
+  /**
+   * A document prepared by a preparator host.
+   */
+  static class Result implements Serializable {
+
+    static final long serialVersionUID = 1L;
+
+    /** The title. May be <code>null</code>. */
+    String mTitle;
+    /** The cleaned content. */
+    String mCleanedContent;
+    /** The cleaned meta data. May be <code>null</code>. */
+    String mCleanedMetaData;
+    /** The summary. May be <code>null</code>. */
+    String mSummary;
+    /** The headlines. May be <code>null</code>. */
+    String mHeadlines;
+    /** The path. May be <code>null</code>. */
+    PathElement[] mPath;
+    /** The additional fields. May be <code>null</code>. */
+    HashMap<String, String> mAdditionalFieldMap;
+    /** The links found in the document (key: URL, value: link text). */
+    HashMap<String, String> mLinkMap;
+    /**
+     * The error that occurred while preparing (with stack trace). Is
+     * <code>null</code> if the document was prepared.
+     */
+    String mError;
+  }
+
+}
@@ -0,0 +1,459 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.crawler.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.config.PreparatorSettings;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of preparator host processes (see {@link PreparatorHost}). The
+ * preparators marked as isolated in the configuration prepare their documents
+ * in these processes instead of the crawler process.
+ * <p>
+ * Each preparator thread of the crawler uses one host at a time, so the
+ * documents are prepared in parallel by as many processes as there are hosts.
+ * A host is started when it is needed first and started again after it
+ * crashed, ran out of memory or took too long for a document. Only the
+ * document that caused this fails.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class PreparatorHostPool {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PreparatorHostPool.class);
+
+  /**
+   * The real time a document may take as a multiple of the CPU time it may
+   * take. Stops hosts that are waiting for something (e.g. an external
+   * program), the CPU time is watched by the host itself.
+   */
+  private static final int REAL_TIME_FACTOR = 3;
+
+  /** The preparator settings of the crawler. */
+  private PreparatorSettings[] mPreparatorSettingsArr;
+
+  /** The class names of the preparators that run in the hosts. */
+  private HashSet<String> mIsolatedClassNameSet;
+
+  /** The maximum CPU time for preparing one document (in seconds). */
+  private int mTimeoutSecs;
+
+  /** The maximum heap size of a host (in MB). */
+  private int mMaxMemory;
+
+  /** The maximum number of tokens indexed for a field (see {@link AbstractPreparator#setContentLimits(int, int)}). */
+  private int mMaxFieldLength;
+
+  /** The maximum length of the summary. */
+  private int mMaxSummaryLength;
+
+  /** The hosts not used by a thread at the moment. */
+  private BlockingQueue<Host> mIdleHostQueue;
+
+  /** All hosts. */
+  private List<Host> mHostList;
+
+  /** The timer that stops hosts taking too long. */
+  private Timer mTimer;
+
+
+  /**
+   * Creates a new instance of PreparatorHostPool. The hosts are started when
+   * they are needed.
+   *
+   * @param preparatorSettingsArr The preparator settings of the crawler.
+   * @param hostCount The number of hosts.
+   * @param timeoutSecs The maximum CPU time for preparing one document (in
+   *        seconds).
+   * @param maxMemory The maximum heap size of a host (in MB).
+   * @param maxFieldLength The maximum number of tokens indexed for a field.
+   *        If -1 or 0 the content is not limited.
+   * @param maxSummaryLength The maximum length of the summary.
+   */
+  public PreparatorHostPool(PreparatorSettings[] preparatorSettingsArr,
+    int hostCount, int timeoutSecs, int maxMemory, int maxFieldLength,
+    int maxSummaryLength)
+  {
+    mPreparatorSettingsArr = preparatorSettingsArr;
+    mTimeoutSecs = timeoutSecs;
+    mMaxMemory = maxMemory;
+    mMaxFieldLength = maxFieldLength;
+    mMaxSummaryLength = maxSummaryLength;
+
+    mIsolatedClassNameSet = new HashSet<String>();
+    for (int i = 0; i < preparatorSettingsArr.length; i++) {
+      if (preparatorSettingsArr[i].isEnabled() && preparatorSettingsArr[i].isIsolated()) {
+        mIsolatedClassNameSet.add(preparatorSettingsArr[i].getPreparatorClassName());
+      }
+    }
+
+    mIdleHostQueue = new ArrayBlockingQueue<Host>(hostCount);
+    mHostList = new ArrayList<Host>(hostCount);
+    for (int i = 0; i < hostCount; i++) {
+      Host host = new Host(i + 1);
+      mHostList.add(host);
+      mIdleHostQueue.add(host);
+    }
+
+    mTimer = new Timer("preparator-host-timer", true);
+  }
+
+
+  /**
+   * Checks whether there are preparators that should run in preparator hosts.
+   *
+   * @param preparatorSettingsArr The preparator settings to check.
+   * @return Whether there are enabled preparators marked as isolated.
+   */
+  public static boolean hasIsolatedPreparators(PreparatorSettings[] preparatorSettingsArr) {
+    for (int i = 0; i < preparatorSettingsArr.length; i++) {
+      if (preparatorSettingsArr[i].isEnabled() && preparatorSettingsArr[i].isIsolated()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Checks whether a preparator prepares its documents in the hosts.
+   *
+   * @param preparator The preparator to check.
+   * @return Whether the preparator prepares its documents in the hosts.
+   */
+  public boolean isIsolated(Preparator preparator) {
+    return (preparator instanceof AbstractPreparator)
+      && mIsolatedClassNameSet.contains(preparator.getClass().getName());
+  }
+
+
+  /**
+   * Prepares a document in a preparator host. Afterwards the preparator
+   * returns the results as if it prepared the document itself and the links
+   * are added to the raw document.
+   * <p>
+   * Waits until a host is free.
+   *
+   * @param preparator The preparator to use. Must be isolated (see
+   *        {@link #isIsolated(Preparator)}).
+   * @param rawDocument The document to prepare.
+   * @throws RegainException If preparing the document failed or the host
+   *         crashed.
+   */
+  public void prepare(Preparator preparator, RawDocument rawDocument)
+    throws RegainException
+  {
+    PreparatorHost.Job job = new PreparatorHost.Job();
+    job.mPreparatorClassName = preparator.getClass().getName();
+    job.mUrl = rawDocument.getUrl();
+    job.mSourceUrl = rawDocument.getSourceUrl();
+    job.mSourceLinkText = rawDocument.getSourceLinkText();
+    job.mMimeType = rawDocument.getMimeType();
+    if (! job.mUrl.startsWith("file://")) {
+      // The host can't load the document itself -> Pass it in a file
+      job.mContentFileName = rawDocument.getContentAsFile().getAbsolutePath();
+    }
+
+    Host host;
+    try {
+      host = mIdleHostQueue.take();
+    }
+    catch (InterruptedException exc) {
+      throw new RegainException("Waiting for a preparator host was interrupted", exc);
+    }
+
+    PreparatorHost.Result result;
+    try {
+      result = host.prepare(job);
+    }
+    finally {
+      mIdleHostQueue.add(host);
+    }
+
+    if (result.mError != null) {
+      throw new RegainException("Preparing " + job.mUrl + " in preparator host failed: "
+          + result.mError);
+    }
+
+    AbstractPreparator writeable = (AbstractPreparator) preparator;
+    writeable.setTitle(result.mTitle);
+    writeable.setCleanedContent(result.mCleanedContent);
+    writeable.setCleanedMetaData(result.mCleanedMetaData);
+    writeable.setSummary(result.mSummary);
+    writeable.setHeadlines(result.mHeadlines);
+    writeable.setPath(result.mPath);
+    if (result.mAdditionalFieldMap != null) {
+      for (Map.Entry<String, String> entry : result.mAdditionalFieldMap.entrySet()) {
+        writeable.addAdditionalField(entry.getKey(), entry.getValue());
+      }
+    }
+    if (result.mLinkMap != null) {
+      for (Map.Entry<String, String> link : result.mLinkMap.entrySet()) {
+        rawDocument.addLink(link.getKey(), link.getValue());
+      }
+    }
+  }
+
+
+  /**
+   * Stops all hosts.
+   */
+  public void close() {
+    mTimer.cancel();
+    for (Host host : mHostList) {
+      host.stop();
+    }
+  }
+
+
+  /**
+   * One preparator host process.
+   */
+  private class Host {
+
+    /** The number of the host. */
+    private int mNumber;
+
+    /** The process. Is <code>null</code> if the host is not running. */
+    private Process mProcess;
+
+    /** The stream to send the jobs to. */
+    private ObjectOutputStream mOut;
+
+    /** The stream to read the results from. */
+    private ObjectInputStream mIn;
+
+    /** Whether the process was stopped because it took too long. */
+    private volatile boolean mWasKilled;
+
+    /** How often the process was started. */
+    private int mStartCount;
+
+
+    /**
+     * Creates a new instance of Host.
+     *
+     * @param number The number of the host.
+     */
+    public Host(int number) {
+      mNumber = number;
+    }
+
+
+    /**
+     * Starts the process. The streams are opened by {@link #openStreams()}.
+     *
+     * @throws IOException If starting the process failed.
+     */
+    private void start() throws IOException {
+      if (mStartCount == 0) {
+        mLog.info("Starting preparator host " + mNumber);
+      } else {
+        mLog.info("Restarting preparator host " + mNumber);
+      }
+      mStartCount++;
+
+      File javaFile = new File(new File(System.getProperty("java.home"), "bin"), "java");
+      List<String> commandList = new ArrayList<String>();
+      commandList.add(javaFile.getAbsolutePath());
+      commandList.add("-Xmx" + mMaxMemory + "m");
+      commandList.add("-cp");
+      commandList.add(System.getProperty("java.class.path"));
+      commandList.add(PreparatorHost.class.getName());
+      commandList.add(Integer.toString(mTimeoutSecs));
+      commandList.add(Integer.toString(mMaxFieldLength));
+      commandList.add(Integer.toString(mMaxSummaryLength));
+
+      mWasKilled = false;
+      mProcess = new ProcessBuilder(commandList).start();
+      startErrorLogger(mProcess.getErrorStream());
+    }
+
+
+    /**
+     * Opens the streams to the process and sends it the preparator settings.
+     * <p>
+     * NOTE: Reading the stream header blocks until the process has written it.
+     * So this must only be called while the process is watched by the timer.
+     *
+     * @throws IOException If opening the streams failed.
+     */
+    private void openStreams() throws IOException {
+      mOut = new ObjectOutputStream(new BufferedOutputStream(mProcess.getOutputStream()));
+      mOut.writeObject(mPreparatorSettingsArr);
+      mOut.flush();
+      mIn = new ObjectInputStream(new BufferedInputStream(mProcess.getInputStream()));
+    }
+
+
+    /**
+     * Starts a thread that logs the error output of the process.
+     *
+     * @param errorStream The error output of the process.
+     */
+    private void startErrorLogger(final InputStream errorStream) {
+      Thread thread = new Thread("preparator-host-" + mNumber + "-log") {
+        @Override
+        public void run() {
+          try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream));
+            String line;
+            while ((line = reader.readLine()) != null) {
+              mLog.info("Preparator host " + mNumber + ": " + line);
+            }
+          }
+          catch (IOException exc) {
+            // The process was stopped
+          }
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+
+    /**
+     * Prepares a document in this host. Starts the process if it is not
+     * running.
+     *
+     * @param job The document to prepare.
+     * @return The prepared document.
+     * @throws RegainException If the process could not be started, crashed or
+     *         took too long.
+     */
+    public PreparatorHost.Result prepare(PreparatorHost.Job job) throws RegainException {
+      if (mProcess == null) {
+        try {
+          start();
+        }
+        catch (IOException exc) {
+          stop();
+          throw new RegainException("Starting preparator host " + mNumber + " failed", exc);
+        }
+      }
+
+      final Process process = mProcess;
+      TimerTask killTask = new TimerTask() {
+        @Override
+        public void run() {
+          mWasKilled = true;
+          process.destroy();
+        }
+      };
+      mTimer.schedule(killTask, mTimeoutSecs * 1000L * REAL_TIME_FACTOR);
+
+      try {
+        if (mIn == null) {
+          // The process was just started. If it hangs or dies before it is
+          // ready, the timer stops it.
+          openStreams();
+        }
+
+        mOut.writeObject(job);
+        mOut.reset();
+        mOut.flush();
+
+        return (PreparatorHost.Result) mIn.readObject();
+      }
+      catch (Exception exc) {
+        // The process crashed or was stopped
+        String reason = getExitReason();
+        stop();
+        throw new RegainException("Preparator host " + mNumber + " stopped while preparing "
+            + job.mUrl + ": " + reason, exc);
+      }
+      finally {
+        killTask.cancel();
+      }
+    }
+
+
+    /**
+     * Gets why the process stopped.
+     *
+     * @return The reason.
+     */
+    private String getExitReason() {
+      if (mWasKilled) {
+        return "Preparing took more than " + (mTimeoutSecs * REAL_TIME_FACTOR) + " seconds";
+      }
+
+      int exitCode;
+      try {
+        exitCode = mProcess.waitFor();
+      }
+      catch (InterruptedException exc) {
+        return "Unknown";
+      }
+      if (exitCode == PreparatorHost.EXIT_TIMEOUT) {
+        return "Preparing took more than " + mTimeoutSecs + " seconds of CPU time";
+      } else if (exitCode == PreparatorHost.EXIT_OUT_OF_MEMORY) {
+        return "Out of memory (the maximum is " + mMaxMemory + " MB)";
+      } else {
+        return "Exit code " + exitCode;
+      }
+    }
+
+
+    /**
+     * Stops the process. It is started again when the next document should be
+     * prepared.
+     */
+    public void stop() {
+      if (mOut != null) {
+        // NOTE: The host stops when its input is closed
+        try { mOut.close(); } catch (IOException exc) {}
+        mOut = null;
+      }
+      if (mIn != null) {
+        try { mIn.close(); } catch (IOException exc) {}
+        mIn = null;
+      }
+      if (mProcess != null) {
+        mProcess.destroy();
+        mProcess = null;
+      }
+    }
+
+  }
+
+}
@@ -22,14 +22,16 @@ package net.sf.regain.crawler.document;
 
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPSSLStore;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.zip.CRC32;
 
@@ -47,6 +49,7 @@ import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.CrawlerToolkit;
 import net.sf.regain.crawler.Profiler;
+import net.sf.regain.crawler.NotModifiedException;
 import net.sf.regain.crawler.RedirectException;
 
 import net.sf.regain.crawler.access.AccountPasswordEntry;
@@ -77,11 +80,8 @@ public class RawDocument {
   /** The pattern which matches for imap-urls (folder, message and attachment) */
   //Pattern imapPattern = Pattern.compile(".*(message_([0-9]+))(_attachment_([0-9]+))$");
 
-  /**
-   * Der Timeout für HTTP-Downloads. Dieser Wert bestimmt die maximale Zeit
-   * in Sekunden, die ein HTTP-Download insgesamt dauern darf.
-   */
-  private static int mHttpTimeoutSecs = 180;
+  /** The fetcher that loads the HTTP documents. */
+  private static HttpFetcher mHttpFetcher = new HttpFetcher(180, 2, 0);
 
   /** Die URL des Dokuments. */
   private String mUrl;
@@ -101,7 +101,7 @@ public class RawDocument {
    * Ist <CODE>null</CODE>, wenn sich das Dokument in einer Datei befindet und
    * noch nicht angefragt wurde.
    */
-  private byte[] mContent;
+  private ContentBuffer mContent;
 
   /**
    * Der Inhalt des Dokuments als String. Ist <CODE>null</CODE>, bis er zum
@@ -130,6 +130,12 @@ public class RawDocument {
    */
   private String mMimeType;
 
+  /**
+   * The SHA-1 hash of the content. Is <code>null</code> until it is requested
+   * for the first time.
+   */
+  private byte[] mContentHash;
+
   /** HashMap links containing the URL as key and the linktext as value. */
   private HashMap <String,String> mLinks;
 
@@ -139,6 +145,12 @@ public class RawDocument {
   /** Last modified date. Will be changed by protocolls which can determine this date correctly. */
   Date mLastModifiedDate = new Date();
 
+  /**
+   * The validators the server sent for a HTTP document. Is <code>null</code>
+   * for other documents.
+   */
+  private HttpValidators mHttpValidators;
+
   /**
    * Erzeugt eine neue RawDocument-Instanz.
    *
@@ -154,6 +166,29 @@ public class RawDocument {
   public RawDocument(String url, String sourceUrl, String sourceLinkText,
     AccountPasswordEntry accountPasswordEntry )
     throws RegainException
+  {
+    this(url, sourceUrl, sourceLinkText, accountPasswordEntry, null);
+  }
+
+  /**
+   * Creates a new RawDocument instance. HTTP documents are loaded with a
+   * conditional request, if validators are given.
+   *
+   * @param url The URL of the document.
+   * @param sourceUrl The URL of the document where the URL was found.
+   * @param sourceLinkText The text of the link where the URL was found. May be
+   *        <code>null</code>.
+   * @param accountPasswordEntry The account-password entry for the URL. May
+   *        be <code>null</code>.
+   * @param httpValidators The validators of the indexed version of a HTTP
+   *        document. May be <code>null</code>.
+   * @throws net.sf.regain.crawler.NotModifiedException If the HTTP document
+   *         has not changed since the indexed version.
+   * @throws RegainException If loading the document failed.
+   */
+  public RawDocument(String url, String sourceUrl, String sourceLinkText,
+    AccountPasswordEntry accountPasswordEntry, HttpValidators httpValidators)
+    throws RegainException
   {
     this.mLinks = new HashMap<String,String>();
     this.mUrl = url;
@@ -171,21 +206,48 @@ public class RawDocument {
       mContent = null;
       mContentAsFile = null;
     } else {
-      mContent = loadContent(url);
+      mContent = loadContent(url, httpValidators);
       mContentAsFile = null;
     }
   }
 
   /**
-   * Setzt den Timeout für HTTP-Downloads.
-   * <p>
-   * Dieser Wert bestimmt die maximale Zeit, die ein HTTP-Download insgesamt
-   * dauern darf.
+   * Creates a RawDocument for a document that was already loaded by another
+   * process (see {@link PreparatorHost}).
    *
-   * @param httpTimeoutSecs Der neue Timeout.
+   * @param url The URL of the document.
+   * @param sourceUrl The URL of the document where the URL was found.
+   * @param sourceLinkText The text of the link where the URL was found. May be
+   *        <code>null</code>.
+   * @param contentFile The file holding the content of the document. Is only
+   *        used if the document is no local file. It is read on demand (like a
+   *        local file) and is not deleted by {@link #dispose()}.
+   * @throws RegainException If the URL of a local file is invalid.
    */
-  public static void setHttpTimeoutSecs(int httpTimeoutSecs) {
-    mHttpTimeoutSecs = httpTimeoutSecs;
+  RawDocument(String url, String sourceUrl, String sourceLinkText, File contentFile)
+    throws RegainException
+  {
+    this.mLinks = new HashMap<String,String>();
+    this.mUrl = url;
+    this.mSourceUrl = sourceUrl;
+    this.mSourceLinkText = sourceLinkText;
+
+    if (url.startsWith("file://")) {
+      mContentAsFile = RegainToolkit.urlToFile(url);
+      mLastModifiedDate = new Date(mContentAsFile.lastModified());
+    } else {
+      mContent = ContentBuffer.forFile(contentFile);
+      mContentAsFile = contentFile;
+    }
+  }
+
+  /**
+   * Sets the fetcher that loads the HTTP documents.
+   *
+   * @param httpFetcher The fetcher to use.
+   */
+  public static void setHttpFetcher(HttpFetcher httpFetcher) {
+    mHttpFetcher = httpFetcher;
   }
 
   /**
@@ -266,7 +328,7 @@ public class RawDocument {
    * @return content of the document
    * @throws net.sf.regain.RegainException if loading fails
    */
-  private byte[] loadSmbFile(String url) throws RegainException {
+  private ContentBuffer loadSmbFile(String url) throws RegainException {
 
     InputStream in = null;
     try {
@@ -277,7 +339,8 @@ public class RawDocument {
         in = smbFile.getInputStream();
         mLastModifiedDate = new Date(smbFile.lastModified());
 
-        return CrawlerToolkit.loadFileFromStream(in,smbFile.getContentLength());
+        return ContentBuffer.read(in, smbFile.getContentLength(),
+          ContentBuffer.MAX_MEMORY_SIZE, getFileExtension());
 
       } else {
         throw new RegainException("Can't load content from: "
@@ -299,47 +362,39 @@ public class RawDocument {
    * Load content from URL for http/https documents.
    *
    * @param url The URL.
+   * @param validators The validators of the indexed version of the document.
+   *        May be <code>null</code>.
    * @return content of document.
    * @throws RegainException if loading was erroneous
    */
-  private byte[] loadContent(String url) throws RegainException {
+  private ContentBuffer loadContent(String url, HttpValidators validators)
+    throws RegainException
+  {
     HTTP_LOADING_PROFILER.startMeasuring();
-    HttpDownloadThread loaderThread = new HttpDownloadThread(
-      CrawlerToolkit.replaceAuthenticationValuesInURL(url, mAccountPasswordEntry),
-      Thread.currentThread());
-    loaderThread.start();
-
-    // Warten bis entweder der Timeout abläuft, oder bis dieser Thread vom
-    // HttpContentLoaderThread unterbrochen wird.
     try {
-      Thread.sleep(mHttpTimeoutSecs * 1000);
-    } catch (InterruptedException exc) {
+      HttpFetcher.Response response = mHttpFetcher.fetch(
+        CrawlerToolkit.replaceAuthenticationValuesInURL(url, mAccountPasswordEntry),
+        getFileExtension(), validators);
+      HTTP_LOADING_PROFILER.stopMeasuring(response.getContent().getLength());
+
+      mHttpValidators = response.getValidators();
+      if (response.getLastModified() != null) {
+        mLastModifiedDate = response.getLastModified();
+      }
+      return response.getContent();
     }
-
-    // Prüfen, ob wir mittlerweile den Inhalt haben
-    byte[] content = loaderThread.getContent();
-    if (content != null) {
-      HTTP_LOADING_PROFILER.stopMeasuring(content.length);
-      return content;
-    } else {
-      // Wir haben keinen Inhalt
+    catch (RedirectException exc) {
       HTTP_LOADING_PROFILER.abortMeasuring();
-
-      // Check whether download failed
-      if (loaderThread.getError() != null) {
-        if (loaderThread.getError() instanceof RedirectException) {
-          throw (RedirectException) loaderThread.getError();
-        } else {
-          throw new RegainException("Loading Document by HTTP failed: " + url,
-                                    loaderThread.getError());
-        }
-      }
-
-      // Wir haben weder einen Inhalt noch einen Fehler
-      // -> Der Download läuft noch
-      // -> Da jedoch mittlerweile der Timeout abgelaufen ist -> Exception werfen
-      throw new RegainException("Loading Document by HTTP timed out after " +
-          mHttpTimeoutSecs + " seconds: " + url);
+      throw exc;
+    }
+    catch (NotModifiedException exc) {
+      // The server answered, but had nothing to send
+      HTTP_LOADING_PROFILER.stopMeasuring(0);
+      throw exc;
+    }
+    catch (RegainException exc) {
+      HTTP_LOADING_PROFILER.abortMeasuring();
+      throw new RegainException("Loading Document by HTTP failed: " + url, exc);
     }
   }
 
@@ -353,7 +408,7 @@ public class RawDocument {
     int length = 0;
 
     if (mContent != null) {
-      length = mContent.length;
+      length = (int) mContent.getLength();
 
     } else {
       // document still not loaded because it's a file
@@ -387,6 +442,17 @@ public class RawDocument {
   }
 
 
+  /**
+   * Gets the validators the server sent for a HTTP document.
+   *
+   * @return The validators or <code>null</code> if the document was not
+   *         loaded via HTTP.
+   */
+  public HttpValidators getHttpValidators() {
+    return mHttpValidators;
+  }
+
+
   /**
    * Gibt die URL des Dokuments zurück.
    *
@@ -439,12 +505,10 @@ public class RawDocument {
         byte[] content = new byte[0];
         if( mUrl.startsWith("file://")) {
           content = CrawlerToolkit.loadFile(mContentAsFile);
-        } else if( mUrl.startsWith("smb://")) {
-          content =  loadSmbFile(mUrl);
-          mContent = content;
-        } else if( mUrl.startsWith("imap://") || mUrl.startsWith("imaps://")) {
-          content =  loadIMAPMessage(mUrl);
-          mContent = content;
+        } else if( mUrl.startsWith("smb://") || mUrl.startsWith("imap://")
+          || mUrl.startsWith("imaps://"))
+        {
+          content = loadRemoteContent().getBytes();
         }
         FILE_LOADING_PROFILER.stopMeasuring(content.length);
         return content;
@@ -456,10 +520,54 @@ public class RawDocument {
       }
     }
 
+    return mContent.getBytes();
+  }
+
+
+  /**
+   * Loads the content of a document that is neither a local file nor loaded
+   * via HTTP. The content is only loaded once.
+   *
+   * @return The content of the document.
+   * @throws RegainException If loading the document failed.
+   */
+  private ContentBuffer loadRemoteContent() throws RegainException {
+    if (mContent == null) {
+      if (mUrl.startsWith("smb://")) {
+        mContent = loadSmbFile(mUrl);
+      } else {
+        mContent = new ContentBuffer(loadIMAPMessage(mUrl));
+      }
+    }
     return mContent;
   }
 
 
+  /**
+   * Gets the first bytes of the content (e.g. for detecting the mime type).
+   * For local files only the first bytes are read and no temporary file is
+   * written for any document.
+   *
+   * @param maxLength The maximum number of bytes to get.
+   * @return The first bytes of the content. The array is shorter than
+   *         <code>maxLength</code> if the content is shorter.
+   * @throws RegainException If the document couldn't be loaded.
+   */
+  public byte[] getContentHeader(int maxLength) throws RegainException {
+    if (mContent != null) {
+      return mContent.getHeader(maxLength);
+    } else if (mUrl.startsWith("file://")) {
+      return ContentBuffer.readHeader(mContentAsFile, maxLength);
+    } else if (mUrl.startsWith("smb://") || mUrl.startsWith("imap://")
+      || mUrl.startsWith("imaps://"))
+    {
+      return loadRemoteContent().getHeader(maxLength);
+    } else {
+      throw new RegainException("Getting content header for unknown protocol failed: " + mUrl);
+    }
+  }
+
+
 
   /**
    * Gibt den Inhalt des Dokuments als String zurück.
@@ -489,7 +597,7 @@ public class RawDocument {
     throws RegainException
   {
     if (mContent != null) {
-      return new ByteArrayInputStream(mContent);
+      return mContent.openStream();
     } else {
       // This document must be a file
       if(mUrl.startsWith("file://")){
@@ -500,16 +608,10 @@ public class RawDocument {
           throw new RegainException("Creating stream for file failed: " +
               mContentAsFile, thr);
         }
-      } else if(mUrl.startsWith("smb://")) {
-        try {
-           SmbFile smbFile = RegainToolkit.urlToSmbFile(
-             CrawlerToolkit.replaceAuthenticationValuesInURL(mUrl, mAccountPasswordEntry));
-           return smbFile.getInputStream();
-
-        } catch (Throwable thr) {
-          throw new RegainException("Creating stream for file failed: " +
-              mContentAsFile, thr);
-        }
+      } else if(mUrl.startsWith("smb://") || mUrl.startsWith("imap://")
+        || mUrl.startsWith("imaps://"))
+      {
+        return loadRemoteContent().openStream();
       } else {
         throw new RegainException("Creating stream for unknown file protocoll failed.");
 
@@ -518,6 +620,43 @@ public class RawDocument {
   }
 
 
+  /**
+   * Gets the SHA-1 hash of the content. The hash is computed while reading the
+   * content as stream, so the content is not held in memory.
+   *
+   * @return The hash of the content.
+   * @throws RegainException If reading the content failed.
+   */
+  public byte[] getContentHash() throws RegainException {
+    if (mContentHash == null) {
+      InputStream in = null;
+      try {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        in = getContentAsStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+          digest.update(buffer, 0, len);
+        }
+        mContentHash = digest.digest();
+      }
+      catch (IOException exc) {
+        throw new RegainException("Computing the hash of " + mUrl + " failed", exc);
+      }
+      catch (NoSuchAlgorithmException exc) {
+        throw new RegainException("Computing the hash of " + mUrl + " failed", exc);
+      }
+      finally {
+        if (in != null) {
+          try { in.close(); } catch (IOException exc) {}
+        }
+      }
+    }
+
+    return mContentHash;
+  }
+
+
   /**
    * Schreibt den Inhalt des Dokuments in eine Datei.
    *
@@ -525,8 +664,14 @@ public class RawDocument {
    * @throws RegainException Wenn das Schreiben fehl schlug.
    */
   public void writeToFile(File file) throws RegainException {
+    InputStream in = null;
+    FileOutputStream out = null;
     try {
-      RegainToolkit.writeToFile(getContent(), file);
+      in = getContentAsStream();
+      out = new FileOutputStream(file);
+      RegainToolkit.pipe(in, out);
+      out.close();
+      out = null;
 
       if (mContentAsFile == null) {
         // Falls das Dokument in Dateiform benötigt wird, dann diese Datei
@@ -534,10 +679,18 @@ public class RawDocument {
         mContentAsFile = file;
       }
     }
-    catch (RegainException exc) {
+    catch (Exception exc) {
       throw new RegainException("Creating file that contains the "
         + "document from '" + mUrl + "' failed", exc);
     }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+      if (out != null) {
+        try { out.close(); } catch (IOException exc) {}
+      }
+    }
   }
 
 
@@ -568,45 +721,20 @@ public class RawDocument {
    *         konnte.
    */
   public File getContentAsFile(boolean forceTempFile) throws RegainException {
+    if ((mContentAsFile == null) && (mContent != null) && ! mContent.isInMemory()) {
+      // The content is too big for the memory and was already written to a
+      // temporary file -> Use this file
+      return mContent.getFile();
+    }
+
     if ((mContentAsFile == null) || (forceTempFile && ! mContentAsFileIsTemporary)) {
       // Das Dokument wurde via HTTP geladen
       // -> Inhalt in eine Datei schreiben
 
-      // Determine the file extension
-      String extension = "";
-      URL url;
-      String path;
-      if( mUrl.toLowerCase().startsWith("http") /* || mUrl.toLowerCase().startsWith("https") */) {
-        try {
-          url = new URL(mUrl);
-          path = url.getPath();
-          // Handles urls like http://www.example.com/ an http://www.example.com/blog/
-          if( (path.length()==0
-                  && (url.getProtocol().equalsIgnoreCase("http") || url.getProtocol().equalsIgnoreCase("https") ))
-                  || path.endsWith("/")) {
-            path = "index.html";
-          }
-        } catch (MalformedURLException ex) {
-           mLog.debug("Couldn't create URL", ex);
-           path = mUrl;
-        }
-
-        int lastDot = path.lastIndexOf('.');
-        if (lastDot == -1 || path.length()-lastDot>=6 ) {
-          extension = "";
-        } else {
-          extension = path.substring(lastDot);
-        }
-      } else if( mUrl.toLowerCase().startsWith("imap") /* || mUrl.toLowerCase().startsWith("imaps") */ ) {
-        // @todo: consider extensions for attachments too
-        extension = ".mht";
-
-      }
-
       // Get an unused file
       File tmpFile;
       try {
-        tmpFile = File.createTempFile("lucenesearch_", extension);
+        tmpFile = File.createTempFile("lucenesearch_", getFileExtension());
       }
       catch (IOException exc) {
         throw new RegainException("Getting temporary File failed", exc);
@@ -623,6 +751,64 @@ public class RawDocument {
   }
 
 
+  /**
+   * Gets the name of the file holding the content. If the content is not in a
+   * file, a file name is derived from the URL. So the file extension can be
+   * used for detecting the mime type without writing the content to a file.
+   *
+   * @return The name of the file holding the content.
+   */
+  public String getContentFileName() {
+    if (mContentAsFile != null) {
+      return mContentAsFile.getPath();
+    } else if ((mContent != null) && ! mContent.isInMemory()) {
+      return mContent.getFile().getPath();
+    } else {
+      return "lucenesearch_content" + getFileExtension();
+    }
+  }
+
+
+  /**
+   * Gets the extension a file holding the content should have.
+   *
+   * @return The file extension (e.g. ".html") or an empty String.
+   */
+  private String getFileExtension() {
+    String extension = "";
+    URL url;
+    String path;
+    if( mUrl.toLowerCase().startsWith("http") /* || mUrl.toLowerCase().startsWith("https") */) {
+      try {
+        url = new URL(mUrl);
+        path = url.getPath();
+        // Handles urls like http://www.example.com/ an http://www.example.com/blog/
+        if( (path.length()==0
+                && (url.getProtocol().equalsIgnoreCase("http") || url.getProtocol().equalsIgnoreCase("https") ))
+                || path.endsWith("/")) {
+          path = "index.html";
+        }
+      } catch (MalformedURLException ex) {
+         mLog.debug("Couldn't create URL", ex);
+         path = mUrl;
+      }
+
+      int lastDot = path.lastIndexOf('.');
+      if (lastDot == -1 || path.length()-lastDot>=6 ) {
+        extension = "";
+      } else {
+        extension = path.substring(lastDot);
+      }
+    } else if( mUrl.toLowerCase().startsWith("imap") /* || mUrl.toLowerCase().startsWith("imaps") */ ) {
+      // @todo: consider extensions for attachments too
+      extension = ".mht";
+
+    }
+
+    return extension;
+  }
+
+
   /**
    * Gibt alle genutzten System-Ressourcen, wie temporäre Dateien, wieder frei.
    * <p>
@@ -630,6 +816,9 @@ public class RawDocument {
    * GarbageCollector erledigen.
    */
   public void dispose() {
+    if (mContent != null) {
+      mContent.dispose();
+    }
     if ((mContentAsFile != null) && mContentAsFileIsTemporary) {
       if (mLog.isDebugEnabled()) {
         mLog.debug("Deleting temporary file: " + mContentAsFile.getAbsolutePath());
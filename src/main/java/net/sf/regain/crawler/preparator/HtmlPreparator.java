@@ -20,8 +20,9 @@
  */
 package net.sf.regain.crawler.preparator;
 
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import net.sf.regain.RegainException;
@@ -31,19 +32,17 @@ import net.sf.regain.crawler.document.AbstractPreparator;
 import net.sf.regain.crawler.document.PathElement;
 import net.sf.regain.crawler.document.RawDocument;
 import net.sf.regain.crawler.preparator.html.HtmlContentExtractor;
+import net.sf.regain.crawler.preparator.html.HtmlContentVisitor;
 import net.sf.regain.crawler.preparator.html.HtmlPathExtractor;
-import net.sf.regain.crawler.preparator.html.LinkVisitor;
 import org.apache.log4j.Logger;
 import org.apache.regexp.RE;
 import org.apache.regexp.RESyntaxException;
 import org.htmlparser.Parser;
-import org.htmlparser.Tag;
-import org.htmlparser.beans.StringBean;
 import org.htmlparser.lexer.Lexer;
 import org.htmlparser.lexer.Page;
-import org.htmlparser.tags.BaseHrefTag;
 import org.htmlparser.tags.FrameTag;
 import org.htmlparser.tags.LinkTag;
+import org.htmlparser.util.EncodingChangeException;
 import org.htmlparser.util.ParserException;
 
 /**
@@ -57,6 +56,12 @@ public class HtmlPreparator extends AbstractPreparator {
    * The logger for this class
    */
   private static Logger mLog = Logger.getLogger(HtmlPreparator.class);
+  /** The byte order mark of UTF-8. */
+  private static final byte[] UTF8_BOM = { (byte) 0xef, (byte) 0xbb, (byte) 0xbf };
+  /** The byte order mark of UTF-16 big endian. */
+  private static final byte[] UTF16BE_BOM = { (byte) 0xfe, (byte) 0xff };
+  /** The byte order mark of UTF-16 little endian. */
+  private static final byte[] UTF16LE_BOM = { (byte) 0xff, (byte) 0xfe };
   /**
    * Die HtmlContentExtractor, die den jeweiligen zu indizierenden Inhalt aus den HTML-Dokumenten schneiden.
    */
@@ -154,6 +159,10 @@ public class HtmlPreparator extends AbstractPreparator {
 
   /**
    * Prepares a document for indexing.
+   * <p>
+   * The document is parsed once, directly from its raw bytes. The cleaned
+   * text, the title, the headlines and the links are collected in this pass
+   * (see {@link HtmlContentVisitor}).
    *
    * @param rawDocument document which will be prepared
    *
@@ -161,10 +170,6 @@ public class HtmlPreparator extends AbstractPreparator {
    */
   @Override
   public void prepare(RawDocument rawDocument) throws RegainException {
-    // Get the title
-    String title = extractHtmlTitle(rawDocument.getContentAsString());
-    setTitle(title);
-
     // Find the content extractor that is responsible for this document
     HtmlContentExtractor contentExtractor = null;
     if (mContentExtractorList != null) {
@@ -174,112 +179,70 @@ public class HtmlPreparator extends AbstractPreparator {
         }
       }
     }
-
-    // Cut the content and extract the headlines
-    String cuttedContent;
-    String headlines;
-    boolean isContentCutted = false;
-    if (contentExtractor == null) {
+    if ((contentExtractor == null) && mLog.isDebugEnabled()) {
       // There is no HtmlContentExtractor responsible for this document
-      if (mLog.isDebugEnabled()) {
-        mLog.debug("No HTML content extractor is responsible for " + rawDocument.getUrl());
-      }
-
-      cuttedContent = rawDocument.getContentAsString();
-      headlines = null;
-    } else {
-      cuttedContent = contentExtractor.extractContent(rawDocument);
-      headlines = contentExtractor.extractHeadlines(cuttedContent);
-      if (!cuttedContent.equals(rawDocument.getContentAsString())) {
-        isContentCutted = true;
-      }
+      mLog.debug("No HTML content extractor is responsible for " + rawDocument.getUrl());
     }
 
-    // Using HTMLParser to extract the content
-    String cleanedContent = null;
-    Page htmlPage = new Page(cuttedContent, "UTF-8");
-    Parser parser = new Parser(new Lexer(htmlPage));
-    StringBean stringBean = new StringBean();
-
-    // replace multiple whitespace with one whitespace
-    stringBean.setCollapse(true);
-    // Do not extract URLs
-    stringBean.setLinks(false);
-    // replace &nbsp; with whitespace
-    stringBean.setReplaceNonBreakingSpaces(true);
+    // Parse the document
+    // NOTE: The positions of the text are only needed to cut the content
+    HtmlContentVisitor visitor = new HtmlContentVisitor(contentExtractor != null);
+    Page htmlPage = parse(rawDocument, visitor);
 
-    try {
-      // Parse the content
-      parser.visitAllNodesWith(stringBean);
-      cleanedContent = stringBean.getStrings();
+    setTitle(visitor.getTitle());
 
-    } catch (ParserException ex) {
-      throw new RegainException("Error while parsing content: ", ex);
+    // Cut the content and extract the headlines
+    String headlines = visitor.getHeadlines();
+    if (contentExtractor == null) {
+      setCleanedContent(visitor.getStrings());
+    } else {
+      String content = htmlPage.getText();
+      int[] range = contentExtractor.findContent(content, rawDocument.getUrl());
+      setCleanedContent(visitor.getStrings(range[0], range[1]));
+
+      String extractedHeadlines = contentExtractor.extractHeadlines(
+              content.substring(range[0], range[1]));
+      if (extractedHeadlines != null) {
+        // Replace HTML Entities
+        headlines = CrawlerToolkit.replaceHtmlEntities(extractedHeadlines);
+      }
     }
 
-    // The result of parsing the html-content
-    setCleanedContent(cleanedContent);
-
     // Extract links
-    LinkVisitor linkVisitor = new LinkVisitor();
-    if (isContentCutted) {
-      // This means a new parser run which is expensive but neccessary
-      htmlPage = new Page(rawDocument.getContentAsString(), "UTF-8");
-      parser = new Parser(new Lexer(htmlPage));
+    if (visitor.getBaseTag() != null) {
+      htmlPage.setBaseUrl(visitor.getBaseTag().getBaseUrl());
     } else {
-      parser.reset();
+      htmlPage.setBaseUrl(rawDocument.getUrl());
     }
+    mLog.debug("Set base URL to: " + htmlPage.getBaseUrl());
 
-    try {
-      // Parse the content
-      parser.visitAllNodesWith(linkVisitor);
-      ArrayList<Tag> links = linkVisitor.getLinks();
-      ArrayList<Tag> frames = linkVisitor.getFrames();
-      if (linkVisitor.getBaseTag() != null) {
-        htmlPage.setBaseUrl(((BaseHrefTag) linkVisitor.getBaseTag()).getBaseUrl());
-      } else {
-        htmlPage.setBaseUrl(rawDocument.getUrl());
-      }
-      mLog.debug("Set base URL to: " + htmlPage.getBaseUrl());
-
-      // Iterate over all links found
-      Iterator<Tag> linksIter = links.iterator();
-      while (linksIter.hasNext()) {
-        LinkTag currTag = ((LinkTag) linksIter.next());
-        String link = CrawlerToolkit.removeAnchor(currTag.extractLink());
+    // Iterate over all links found
+    for (LinkTag currTag : visitor.getLinkTags()) {
+      String link = CrawlerToolkit.removeAnchor(currTag.extractLink());
 
-        // find urls which do not end with an '/' but are a directory
-        link = CrawlerToolkit.completeDirectory(link);
+      // find urls which do not end with an '/' but are a directory
+      link = CrawlerToolkit.completeDirectory(link);
 
-        //link = CrawlerToolkit.toAbsoluteUrl(link, rawDocument.getUrl());
-        String linkText = (currTag.getLinkText() == null) ? "" : currTag.getLinkText();
+      //link = CrawlerToolkit.toAbsoluteUrl(link, rawDocument.getUrl());
+      String linkText = (currTag.getLinkText() == null) ? "" : currTag.getLinkText();
 
-        // store all http(s)-links the link
-        if (currTag.isHTTPLikeLink()) {
-          rawDocument.addLink(link, linkText);
-        }
+      // store all http(s)-links the link
+      if (currTag.isHTTPLikeLink()) {
+        rawDocument.addLink(link, linkText);
       }
+    }
 
-      // Iterate over all frames found
-      Iterator<Tag> framesIter = frames.iterator();
-      while (framesIter.hasNext()) {
-        FrameTag currTag = ((FrameTag) framesIter.next());
-        String link = CrawlerToolkit.removeAnchor(currTag.getFrameLocation());
-
-        // find urls which do not end with an '/' but are a directory
-        link = CrawlerToolkit.completeDirectory(link);
+    // Iterate over all frames found
+    for (FrameTag currTag : visitor.getFrameTags()) {
+      String link = CrawlerToolkit.removeAnchor(currTag.getFrameLocation());
 
-        rawDocument.addLink(link, "frame");
-      }
+      // find urls which do not end with an '/' but are a directory
+      link = CrawlerToolkit.completeDirectory(link);
 
-    } catch (ParserException ex) {
-      throw new RegainException("Error while extracting links: ", ex);
+      rawDocument.addLink(link, "frame");
     }
 
     if (headlines != null) {
-      // Replace HTML Entities
-      headlines = CrawlerToolkit.replaceHtmlEntities(headlines);
-
       // Set the headlines
       setHeadlines(headlines);
     }
@@ -302,63 +265,117 @@ public class HtmlPreparator extends AbstractPreparator {
   }
 
   /**
-   * Extrahiert den Titel aus einem HTML-Dokument.
-   *
-   * @param content Der Inhalt (die HTML-Rohdaten) des Dokuments, dessen Titel ermittelt werden soll.
+   * Parses a HTML document from its raw bytes.
+   * <p>
+   * The charset is taken from a byte order mark. Otherwise UTF-8 is used if
+   * the document is valid UTF-8, windows-1252 if not. A charset given by a
+   * meta tag overrides this; if text was already read with another charset,
+   * the document is parsed again.
    *
-   * @return Den Titel des HTML-Dokuments.
+   * @param rawDocument The document to parse.
+   * @param visitor The visitor that should visit all nodes.
+   * @return The parsed page.
+   * @throws RegainException If parsing failed.
    */
-  private String extractHtmlTitle(String content) {
-    final String TITLE_START_TAG = "<title>";
-
-    // NOTE: We don't use a regex here, beause it's far too slow and it doesn't
-    //       stop when the body begins.
-    int pos = -1;
-    int startPos = -1;
-    while ((pos = content.indexOf('<', pos + 1)) != -1) {
-      // A tag starts here -> Check whether this is the title tag
-      if (isIndexOf(content, TITLE_START_TAG, pos)) {
-        // The title starts here -> Remember the start pos
-        startPos = pos + TITLE_START_TAG.length();
-        break;
-      } else if (isIndexOf(content, "<body", pos)) {
-        // The body starts here -> Give up
-        break;
-      }
+  private Page parse(RawDocument rawDocument, HtmlContentVisitor visitor)
+          throws RegainException {
+    byte[] content = rawDocument.getContent();
+
+    // Detect the charset
+    String charset;
+    int offset = 0;
+    if (startsWith(content, UTF8_BOM)) {
+      charset = "UTF-8";
+      offset = UTF8_BOM.length;
+    } else if (startsWith(content, UTF16BE_BOM)) {
+      charset = "UTF-16BE";
+      offset = UTF16BE_BOM.length;
+    } else if (startsWith(content, UTF16LE_BOM)) {
+      charset = "UTF-16LE";
+      offset = UTF16LE_BOM.length;
+    } else if (isUtf8(content)) {
+      charset = "UTF-8";
+    } else {
+      charset = "windows-1252";
     }
 
-    // Scan until the end of the title
-    if (startPos != -1) {
-      pos = startPos - 1;
-      while ((pos = content.indexOf('<', pos + 1)) != -1) {
-        if (isIndexOf(content, "</title>", pos)) {
-          // We found the title's end tag -> extract the title
-          return content.substring(startPos, pos);
-        } else if (pos > startPos + 1000) {
-          // This is too long -> There won't come a end tag -> Give up
-          break;
+    Parser parser;
+    try {
+      Page htmlPage = new Page(new ByteArrayInputStream(content, offset,
+              content.length - offset), charset);
+      parser = new Parser(new Lexer(htmlPage));
+    } catch (UnsupportedEncodingException exc) {
+      throw new RegainException("Unsupported charset: " + charset, exc);
+    }
+
+    try {
+      try {
+        parser.visitAllNodesWith(visitor);
+      } catch (EncodingChangeException exc) {
+        // A meta tag changed the charset after text was read with the detected
+        // one -> Parse again with the new charset
+        if (mLog.isDebugEnabled()) {
+          mLog.debug("Parsing " + rawDocument.getUrl() + " again: " + exc.getMessage());
         }
+        visitor.reset();
+        parser.reset();
+        parser.visitAllNodesWith(visitor);
       }
+    } catch (ParserException exc) {
+      throw new RegainException("Error while parsing content: ", exc);
     }
 
-    return null;
+    return parser.getLexer().getPage();
   }
 
   /**
-   * Checks whether an expected substring is at a certain position.
+   * Checks whether a byte array starts with some bytes.
    *
-   * @param content The String to check the excepted substring.
-   * @param expected The expected substring.
-   * @param pos The position where the substring is expected.
-   * @return Whether the expected substring is really at this position.
+   * @param content The byte array to check.
+   * @param prefix The expected bytes.
+   * @return Whether the byte array starts with the expected bytes.
    */
-  private boolean isIndexOf(String content, String expected, int pos) {
-    if (content.length() < pos + expected.length()) {
-      // The expected String doesn't match here
+  private static boolean startsWith(byte[] content, byte[] prefix) {
+    if (content.length < prefix.length) {
       return false;
     }
+    for (int i = 0; i < prefix.length; i++) {
+      if (content[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-    String substring = content.substring(pos, pos + expected.length());
-    return expected.equalsIgnoreCase(substring);
+  /**
+   * Checks whether a byte array is valid UTF-8.
+   *
+   * @param content The byte array to check.
+   * @return Whether the byte array is valid UTF-8.
+   */
+  private static boolean isUtf8(byte[] content) {
+    int i = 0;
+    while (i < content.length) {
+      int b = content[i++] & 0xff;
+      int followCount;
+      if (b < 0x80) {
+        continue;
+      } else if ((b >= 0xc2) && (b <= 0xdf)) {
+        followCount = 1;
+      } else if ((b >= 0xe0) && (b <= 0xef)) {
+        followCount = 2;
+      } else if ((b >= 0xf0) && (b <= 0xf4)) {
+        followCount = 3;
+      } else {
+        return false;
+      }
+
+      for (int j = 0; j < followCount; j++) {
+        if ((i >= content.length) || ((content[i++] & 0xc0) != 0x80)) {
+          return false;
+        }
+      }
+    }
+    return true;
   }
 }
@@ -21,13 +21,14 @@
 package net.sf.regain.crawler.preparator;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.ContentSink;
 import net.sf.regain.crawler.document.RawDocument;
 
 /**
@@ -51,6 +52,11 @@ public class JarPreparator extends AbstractPreparator {
               "application/x-java-enterprisearchive"});
   }
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
   /**
    * Prepares the document for indexing
    *
@@ -62,12 +68,15 @@ public class JarPreparator extends AbstractPreparator {
   public void prepare(RawDocument rawDocument) throws RegainException {
 
     File rawFile = rawDocument.getContentAsFile(false);
-    ArrayList<String> contentParts = new ArrayList<String>();
+    JarFile jarFile = null;
 
     try {
-      JarFile jarFile = new JarFile(rawFile);
+      jarFile = new JarFile(rawFile);
+      // NOTE: We stop as soon as the sink is full, huge archives have
+      //       millions of entries
+      ContentSink sink = getContentSink();
       Enumeration<JarEntry> entries = jarFile.entries();
-      while (entries.hasMoreElements()) {
+      while (entries.hasMoreElements() && ! sink.isFull()) {
         JarEntry entry = entries.nextElement();
         // Extract only file names
         if (!entry.isDirectory()) {
@@ -75,17 +84,19 @@ public class JarPreparator extends AbstractPreparator {
                   RegainToolkit.urlToWhitespacedFileName(entry.getName());
           if (!filenameWithVariants.startsWith(
                   entry.getName().substring(0, entry.getName().length() - 1))) {
-            contentParts.add(entry.getName());
+            appendStringPart(sink, entry.getName());
           }
-          contentParts.add(filenameWithVariants);
+          appendStringPart(sink, filenameWithVariants);
         }
       }
 
-      setCleanedContent(concatenateStringParts(contentParts, Integer.MAX_VALUE));
-
     } catch (Exception ex) {
       throw new RegainException("Error parsing jar/war/ear file: "
               + rawDocument.getUrl(), ex);
+    } finally {
+      if (jarFile != null) {
+        try { jarFile.close(); } catch (IOException exc) {}
+      }
     }
 
   }
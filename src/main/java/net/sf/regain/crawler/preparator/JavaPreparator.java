@@ -45,6 +45,11 @@ public class JavaPreparator extends AbstractPreparator {
     super(new String[]{"text/java"});
   }
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
   /**
    * Prepares the document for indexing
    *
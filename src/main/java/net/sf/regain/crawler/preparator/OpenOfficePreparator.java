@@ -106,6 +106,12 @@ public class OpenOfficePreparator extends AbstractPreparator {
   }
 
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
+
   /**
    * Prepares a document for indexing.
    *
@@ -27,8 +27,10 @@ import org.apache.log4j.Logger;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.ContentSink;
 import net.sf.regain.crawler.document.RawDocument;
 
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.exceptions.CryptographyException;
 import org.apache.pdfbox.pdfparser.PDFParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -62,6 +64,11 @@ public class PdfBoxPreparator extends AbstractPreparator {
     super("application/pdf");
   }
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
   /**
    * Präpariert ein Dokument für die Indizierung.
    *
@@ -98,18 +105,21 @@ public class PdfBoxPreparator extends AbstractPreparator {
       }
 
       // Extract the text with a utility class
-      PDFTextStripper stripper = new PDFTextStripper();
+      // NOTE: The text is written to the content sink page by page, the
+      //       remaining pages are skipped as soon as the sink is full
+      ContentSink sink = getContentSink();
+      PDFTextStripper stripper = new SinkTextStripper(sink);
       stripper.setSuppressDuplicateOverlappingText(false);
       stripper.setSortByPosition(true);
       stripper.setStartPage(1);
       stripper.setEndPage(Integer.MAX_VALUE);
 
-      setCleanedContent(stripper.getText(pdfDocument).replaceAll("visiblespace", " "));
+      stripper.writeText(pdfDocument, sink);
 
       // extract annotations
-      StringBuilder annotsResult = new StringBuilder();
+      boolean hasAnnotations = false;
       List allPages = pdfDocument.getDocumentCatalog().getAllPages();
-      for (int i = 0; i < allPages.size(); i++) {
+      for (int i = 0; (i < allPages.size()) && ! sink.isFull(); i++) {
         int pageNum = i + 1;
         PDPage page = (PDPage) allPages.get(i);
         List<PDAnnotation> annotations = page.getAnnotations();
@@ -120,15 +130,16 @@ public class PdfBoxPreparator extends AbstractPreparator {
         mLog.debug("\nProcess Page " + pageNum + "...");
         for (PDAnnotation annotation : annotations) {
           if (annotation.getContents() != null && annotation.getContents().length() > 0) {
-            annotsResult.append(annotation.getContents());
-            annotsResult.append(" ");
+            if (! hasAnnotations) {
+              sink.write(" Annotations ");
+              hasAnnotations = true;
+            }
+            sink.write(annotation.getContents());
+            sink.write(" ");
             mLog.debug("Text from annotation: " + annotation.getContents());
           }
         }
       }
-      if (annotsResult.length() > 0) {
-        setCleanedContent(getCleanedContent() + " Annotations " + annotsResult.toString());
-      }
 
       // Get the meta data
       PDDocumentInformation info = pdfDocument.getDocumentInformation();
@@ -186,4 +197,37 @@ public class PdfBoxPreparator extends AbstractPreparator {
       }
     }
   }
+
+  /**
+   * Writes the text of a PDF document to a content sink. Skips the remaining
+   * pages as soon as the sink is full.
+   */
+  private static class SinkTextStripper extends PDFTextStripper {
+
+    /** The sink the text is written to. */
+    private ContentSink mSink;
+
+    /**
+     * Creates a new instance of SinkTextStripper.
+     *
+     * @param sink The sink the text is written to.
+     * @throws IOException If loading the properties of the stripper failed.
+     */
+    public SinkTextStripper(ContentSink sink) throws IOException {
+      mSink = sink;
+    }
+
+    @Override
+    protected void processPage(PDPage page, COSStream content) throws IOException {
+      if (! mSink.isFull()) {
+        super.processPage(page, content);
+      }
+    }
+
+    @Override
+    protected void writeString(String text) throws IOException {
+      output.write(text.replace("visiblespace", " "));
+    }
+
+  }
 }
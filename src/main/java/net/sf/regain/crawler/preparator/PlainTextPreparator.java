@@ -43,6 +43,12 @@ public class PlainTextPreparator extends AbstractPreparator {
   }
 
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
+
   /**
    * Präpariert ein Dokument für die Indizierung.
    *
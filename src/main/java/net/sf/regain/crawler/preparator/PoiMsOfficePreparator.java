@@ -67,6 +67,11 @@ public class PoiMsOfficePreparator extends AbstractPreparator {
               "application/vnd.ms-office"});
   }
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
   /**
    * Prepares the document.
    *
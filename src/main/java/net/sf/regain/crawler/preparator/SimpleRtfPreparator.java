@@ -51,6 +51,12 @@ public class SimpleRtfPreparator extends AbstractPreparator {
   }
 
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
+
   /**
    * Präpariert ein Dokument für die Indizierung.
    *
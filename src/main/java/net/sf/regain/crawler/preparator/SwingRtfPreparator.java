@@ -53,6 +53,12 @@ public class SwingRtfPreparator extends AbstractPreparator {
   }
 
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
+
   /**
    * Präpariert ein Dokument für die Indizierung.
    *
@@ -44,6 +44,12 @@ public class XmlPreparator extends AbstractPreparator {
   }
 
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
+
   /**
    * Präpariert ein Dokument für die Indizierung.
    *
@@ -21,13 +21,14 @@
 package net.sf.regain.crawler.preparator;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.ContentSink;
 import net.sf.regain.crawler.document.RawDocument;
 
 /**
@@ -49,6 +50,11 @@ public class ZipPreparator extends AbstractPreparator {
     super(new String[]{"application/zip"});
   }
 
+  @Override
+  public boolean isContentOnly() {
+    return true;
+  }
+
   /**
    * Prepares the document for indexing
    *
@@ -60,28 +66,33 @@ public class ZipPreparator extends AbstractPreparator {
   public void prepare(RawDocument rawDocument) throws RegainException {
 
     File rawFile = rawDocument.getContentAsFile(false);
-    ArrayList<String> contentParts = new ArrayList<String>();
+    ZipFile zipFile = null;
 
     try {
-      ZipFile zipFile = new ZipFile(rawFile, ZipFile.OPEN_READ);
-      for (Enumeration entries = zipFile.entries(); entries.hasMoreElements();) {
+      zipFile = new ZipFile(rawFile, ZipFile.OPEN_READ);
+      // NOTE: We stop as soon as the sink is full, huge archives have
+      //       millions of entries
+      ContentSink sink = getContentSink();
+      for (Enumeration entries = zipFile.entries(); entries.hasMoreElements() && ! sink.isFull();) {
         ZipEntry entry = (ZipEntry) entries.nextElement();
         if (!entry.isDirectory()) {
           String filenameWithVariants =
                   RegainToolkit.urlToWhitespacedFileName(entry.getName());
           if (!filenameWithVariants.startsWith(
                   entry.getName().substring(0, entry.getName().length() - 1))) {
-            contentParts.add(entry.getName());
+            appendStringPart(sink, entry.getName());
           }
-          contentParts.add(filenameWithVariants);
+          appendStringPart(sink, filenameWithVariants);
         }
       }
 
-      setCleanedContent(concatenateStringParts(contentParts, Integer.MAX_VALUE));
-
     } catch (Exception ex) {
       throw new RegainException("Error parsing archive (zipped) file: "
               + rawDocument.getUrl(), ex);
+    } finally {
+      if (zipFile != null) {
+        try { zipFile.close(); } catch (IOException exc) {}
+      }
     }
 
   }
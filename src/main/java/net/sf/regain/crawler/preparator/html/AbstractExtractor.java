@@ -153,7 +153,30 @@ public class AbstractExtractor {
     throws RegainException
   {
     String content = rawDocument.getContentAsString();
+    int[] fragment = findFragment(content, rawDocument.getUrl());
+    int fragmentStart = fragment[0];
+    int fragmentEnd = fragment[1];
 
+    if ((fragmentStart == 0) && (fragmentEnd == content.length())) {
+      // Nothing to do -> So don't waste ressources
+      return content;
+    } else {
+      return content.substring(fragmentStart, fragmentEnd);
+    }
+  }
+
+
+
+  /**
+   * Sucht das Fragment in einem Text.
+   *
+   * @param content Der Text, in dem das Fragment gesucht werden soll.
+   * @param url Die URL des Dokuments, zu dem der Text gehoert. Wird nur fuer
+   *        Warnungen verwendet.
+   * @return Die Position, an der das Fragment beginnt, und die Position, an
+   *         der es endet.
+   */
+  protected int[] findFragment(String content, String url) {
     // Find the fragment start
     int fragmentStart = 0;
     if (mFragmentStartRE != null) {
@@ -161,7 +184,7 @@ public class AbstractExtractor {
         fragmentStart = mFragmentStartRE.getParenEnd(0);
       } else {
         mLog.warn("The regular expression '" + mFragmentStartRegex + "' had no "
-          + "match for '" + rawDocument.getUrl() + "'");
+          + "match for '" + url + "'");
       }
     }
 
@@ -172,16 +195,11 @@ public class AbstractExtractor {
         fragmentEnd = mFragmentEndRE.getParenStart(0);
       } else {
         mLog.warn("The regular expression '" + mFragmentEndRegex + "' had no "
-          + "match for '" + rawDocument.getUrl() + "'");
+          + "match for '" + url + "'");
       }
     }
 
-    if ((fragmentStart == 0) && (fragmentEnd == content.length())) {
-      // Nothing to do -> So don't waste ressources
-      return content;
-    } else {
-      return content.substring(fragmentStart, fragmentEnd);
-    }
+    return new int[] { fragmentStart, fragmentEnd };
   }
 
 
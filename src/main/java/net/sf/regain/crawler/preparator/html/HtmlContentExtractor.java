@@ -107,6 +107,21 @@ public class HtmlContentExtractor extends AbstractExtractor {
 
 
 
+  /**
+   * Sucht den eigentlichen HTML-Inhalt in einem Dokument.
+   *
+   * @param content Der Text des Dokuments.
+   * @param url Die URL des Dokuments.
+   * @return Die Position, an der der Inhalt beginnt, und die Position, an der
+   *         er endet.
+   * @see #extractContent(RawDocument)
+   */
+  public int[] findContent(String content, String url) {
+    return findFragment(content, url);
+  }
+
+
+
   /**
    * Extrahiert die überschrifen aus einem HTML-Dokuments.
    * <p>
@@ -0,0 +1,313 @@
+/*
+ * regain/2 - A file search engine providing plenty of formats
+ * Copyright (C) 2004, 2013  Til Schneider, Thomas Tesche
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider <info@murfman.de>, Thomas Tesche <thtesche@gmail.com>
+ */
+package net.sf.regain.crawler.preparator.html;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.htmlparser.Tag;
+import org.htmlparser.Text;
+import org.htmlparser.beans.StringBean;
+import org.htmlparser.tags.BaseHrefTag;
+import org.htmlparser.tags.FrameTag;
+import org.htmlparser.tags.LinkTag;
+import org.htmlparser.util.Translate;
+
+/**
+ * Collects everything the HtmlPreparator needs from a HTML document in one
+ * pass: The cleaned text (see {@link StringBean}), the title, the headlines
+ * (h1 - h6), the links, the frames and the base tag.
+ * <p>
+ * If the text positions are tracked, the text of a part of the document can
+ * be got afterwards (see {@link #getStrings(int, int)}). This way the document
+ * doesn't have to be parsed again for a content extractor.
+ *
+ * @author Thomas Tesche (thtesche), https://github.com/thtesche
+ */
+public class HtmlContentVisitor extends StringBean {
+
+  static final long serialVersionUID = 1L;
+
+  /** The links (a tags having a href). */
+  private ArrayList<LinkTag> mLinkList = new ArrayList<LinkTag>();
+  /** The frames (frame tags having a src). */
+  private ArrayList<FrameTag> mFrameList = new ArrayList<FrameTag>();
+  /** The base tag. Is <code>null</code> if the document has none. */
+  private BaseHrefTag mBaseTag;
+
+  /** Whether the body of the document started. */
+  private boolean mIsBody;
+  /** The title. Is <code>null</code> until the title tag is found. */
+  private StringBuilder mTitle;
+  /** Whether the title tag is currently visited. */
+  private boolean mIsTitle;
+  /** The text of the current headline. */
+  private StringBuilder mHeadline = new StringBuilder();
+  /** Whether a headline tag is currently visited. */
+  private boolean mIsHeadline;
+  /** The headlines found so far, each followed by a \n. */
+  private StringBuilder mHeadlines = new StringBuilder();
+
+  /**
+   * The positions of the text nodes in the document. Is <code>null</code> if
+   * the text positions are not tracked.
+   */
+  private int[] mTextPosArr;
+  /**
+   * The positions where the text of the text nodes start in the cleaned text.
+   * Has the same order as mTextPosArr.
+   */
+  private int[] mStringPosArr;
+  /** The number of text nodes tracked so far. */
+  private int mTextCount;
+
+
+  /**
+   * Creates a new instance of HtmlContentVisitor.
+   *
+   * @param trackTextPositions Whether to track the positions of the text, so
+   *        {@link #getStrings(int, int)} can be used.
+   */
+  public HtmlContentVisitor(boolean trackTextPositions) {
+    // replace multiple whitespace with one whitespace
+    setCollapse(true);
+    // Do not extract URLs
+    setLinks(false);
+    // replace &nbsp; with whitespace
+    setReplaceNonBreakingSpaces(true);
+
+    if (trackTextPositions) {
+      mTextPosArr = new int[64];
+      mStringPosArr = new int[64];
+    }
+  }
+
+
+  @Override
+  public void visitTag(Tag tag) {
+    String name = tag.getTagName();
+    if ((tag instanceof LinkTag) && (tag.getAttribute("href") != null)) {
+      mLinkList.add((LinkTag) tag);
+    }
+    else if ((tag instanceof FrameTag) && (tag.getAttribute("src") != null)) {
+      mFrameList.add((FrameTag) tag);
+    }
+    else if ((tag instanceof BaseHrefTag) && (tag.getAttribute("href") != null)) {
+      mBaseTag = (BaseHrefTag) tag;
+    }
+    else if ("BODY".equals(name)) {
+      mIsBody = true;
+    }
+    else if ("TITLE".equals(name) && ! mIsBody && (mTitle == null)) {
+      mTitle = new StringBuilder();
+      mIsTitle = true;
+    }
+    else if (isHeadline(name)) {
+      mHeadline.setLength(0);
+      mIsHeadline = true;
+    }
+
+    super.visitTag(tag);
+  }
+
+
+  @Override
+  public void visitEndTag(Tag tag) {
+    String name = tag.getTagName();
+    if ("TITLE".equals(name)) {
+      mIsTitle = false;
+    }
+    else if (mIsHeadline && isHeadline(name)) {
+      String headline = collapseWhitespace(mHeadline);
+      if (headline.length() != 0) {
+        mHeadlines.append(headline).append('\n');
+      }
+      mIsHeadline = false;
+    }
+
+    super.visitEndTag(tag);
+  }
+
+
+  @Override
+  public void visitStringNode(Text string) {
+    if (mTextPosArr != null) {
+      if (mTextCount == mTextPosArr.length) {
+        mTextPosArr = Arrays.copyOf(mTextPosArr, mTextCount * 2);
+        mStringPosArr = Arrays.copyOf(mStringPosArr, mTextCount * 2);
+      }
+      mTextPosArr[mTextCount] = string.getStartPosition();
+      mStringPosArr[mTextCount] = mBuffer.length();
+      mTextCount++;
+    }
+
+    if (mIsTitle) {
+      mTitle.append(Translate.decode(string.getText()));
+    }
+    if (mIsHeadline) {
+      mHeadline.append(Translate.decode(string.getText())).append(' ');
+    }
+
+    super.visitStringNode(string);
+  }
+
+
+  /**
+   * Forgets everything collected so far, so the document can be visited
+   * again.
+   */
+  public void reset() {
+    mLinkList.clear();
+    mFrameList.clear();
+    mBaseTag = null;
+    mIsBody = false;
+    mTitle = null;
+    mIsTitle = false;
+    mIsHeadline = false;
+    mHeadlines.setLength(0);
+    mTextCount = 0;
+
+    mBuffer.setLength(0);
+    mCollapseState = 0;
+    mIsScript = false;
+    mIsPre = false;
+    mIsStyle = false;
+  }
+
+
+  /**
+   * Checks whether a tag is a headline tag (h1 - h6).
+   *
+   * @param name The name of the tag in upper case.
+   * @return Whether the tag is a headline tag.
+   */
+  private static boolean isHeadline(String name) {
+    return (name.length() == 2) && (name.charAt(0) == 'H')
+      && (name.charAt(1) >= '1') && (name.charAt(1) <= '6');
+  }
+
+
+  /**
+   * Replaces all whitespace sequences of a text with one blank.
+   *
+   * @param text The text.
+   * @return The text with collapsed whitespace, trimmed.
+   */
+  private static String collapseWhitespace(CharSequence text) {
+    StringBuilder buffer = new StringBuilder(text.length());
+    boolean lastWasWhitespace = true;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (Character.isWhitespace(c) || (c == '\u00a0')) {
+        if (! lastWasWhitespace) {
+          buffer.append(' ');
+        }
+        lastWasWhitespace = true;
+      } else {
+        buffer.append(c);
+        lastWasWhitespace = false;
+      }
+    }
+    return buffer.toString().trim();
+  }
+
+
+  /**
+   * Gets the cleaned text of a part of the document. Only works if the text
+   * positions are tracked.
+   * <p>
+   * A text node belongs to the part if it starts within the part.
+   *
+   * @param startPos The position in the document where the part starts.
+   * @param endPos The position in the document where the part ends.
+   * @return The cleaned text of the part.
+   */
+  public String getStrings(int startPos, int endPos) {
+    int startIdx = 0;
+    while ((startIdx < mTextCount) && (mTextPosArr[startIdx] < startPos)) {
+      startIdx++;
+    }
+    int endIdx = startIdx;
+    while ((endIdx < mTextCount) && (mTextPosArr[endIdx] < endPos)) {
+      endIdx++;
+    }
+
+    int from = (startIdx < mTextCount) ? mStringPosArr[startIdx] : mBuffer.length();
+    int to = (endIdx < mTextCount) ? mStringPosArr[endIdx] : mBuffer.length();
+    return mBuffer.substring(from, to).trim();
+  }
+
+
+  /**
+   * Gets the title of the document.
+   *
+   * @return The title or <code>null</code> if the document has no title.
+   */
+  public String getTitle() {
+    if (mTitle == null) {
+      return null;
+    }
+    String title = collapseWhitespace(mTitle);
+    return (title.length() == 0) ? null : title;
+  }
+
+
+  /**
+   * Gets the headlines of the document (the text of the h1 - h6 tags).
+   *
+   * @return The headlines, separated by \n, or <code>null</code> if the
+   *         document has no headlines.
+   */
+  public String getHeadlines() {
+    return (mHeadlines.length() == 0) ? null : mHeadlines.toString();
+  }
+
+
+  /**
+   * Gets the links of the document.
+   *
+   * @return The a tags having a href.
+   */
+  public ArrayList<LinkTag> getLinkTags() {
+    return mLinkList;
+  }
+
+
+  /**
+   * Gets the frames of the document.
+   *
+   * @return The frame tags having a src.
+   */
+  public ArrayList<FrameTag> getFrameTags() {
+    return mFrameList;
+  }
+
+
+  /**
+   * Gets the base tag of the document.
+   *
+   * @return The base tag or <code>null</code> if the document has none.
+   */
+  public BaseHrefTag getBaseTag() {
+    return mBaseTag;
+  }
+
+}
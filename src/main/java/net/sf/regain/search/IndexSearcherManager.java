@@ -23,28 +23,48 @@ package net.sf.regain.search;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.config.IndexConfig;
+import net.sf.regain.search.results.SortingOption;
+import net.sf.regain.util.io.FieldValueFile;
 
+import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.FSDirectory;
 
 /**
  * Encapsulates the search on the lucene search index.
  * <p>
- * Additionally, every 10 seconds we check if there is a new index available.
- * Search queries cannot be execute during index update.
+ * Additionally, every 10 seconds (see {@link IndexConfig#getIndexUpdateInterval()})
+ * we check if there is a new index available. The check is done at once when
+ * the crawler tells us about a new index (see {@link #notifyIndexUpdate(String)}).
  * If yes, the new index is used and the old saved in /backup/.
+ * <p>
+ * The new index is opened and warmed up while the searches still use the old
+ * one. The old index is closed when the last search using it is finished.
  *
  * @author Til Schneider, www.murfman.de
  */
 public class IndexSearcherManager implements Closeable {
 
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(IndexSearcherManager.class);
+
   /**
    * Der Name des Index-Unterverzeichnisses, in das der neue Index gestellt
    * wird, sobald er fertig ist.
@@ -84,18 +104,45 @@ public class IndexSearcherManager implements Closeable {
   /** Der Analyzer, der für Suchen verwendet werden soll. */
   private Analyzer mAnalyzer;
 
+  /** Das Verzeichnis, in dem die Index-Unterverzeichnisse stehen. */
+  private File mIndexDir;
+
   /** Der Thread, der alle 10 Sekunden Prüft, ob ein neuer Suchindex vorhanden ist. */
   private IndexUpdateThread mIndexUpdateThread;
+  /** The number of seconds between two checks for a new index. */
+  private volatile int mIndexUpdateInterval = IndexConfig.DEFAULT_INDEX_UPDATE_INTERVAL;
+  /** The queries to run on a new index before it is used for searching. */
+  private volatile String[] mWarmUpQueries = new String[0];
+  /**
+   * The sort and facet fields to load the field caches for before a new index
+   * is used.
+   */
+  private volatile SortField[] mWarmUpSortFields = new SortField[0];
+  /** Whether a new index is loaded at the moment. */
+  private boolean mIndexUpdateRunning;
   /**
    * Holds for a field name (String) all distinct values the index has for that
-   * field (String[]).
+   * field (FieldValueFile). Is replaced when a new index is loaded.
+   */
+  private volatile ConcurrentHashMap<String, FieldValueFile> mFieldTermHash =
+          new ConcurrentHashMap<String, FieldValueFile>();
+  /**
+   * The lock for reading field values from the index. Other searches don't
+   * have to wait for it.
+   */
+  private final Object mFieldTermLock = new Object();
+
+  /**
+   * Keeps reference of the current IndexSearcher. Is replaced when a new index
+   * is loaded.
    */
-  private HashMap<String,String[]> mFieldTermHash;
+  private volatile SearcherManager mSearcherManager;
 
   /**
-   * Keeps reference of the current IndexSearcher.
+   * The generation of the index. Is increased every time a new index is
+   * loaded.
    */
-  private SearcherManager mSearcherManager;
+  private volatile long mIndexGeneration;
 
   /**
    * Erzeugt eine neue IndexWriterManager-Instanz.
@@ -104,22 +151,18 @@ public class IndexSearcherManager implements Closeable {
    * @throws RegainException Wenn kein Index-Verzeichnis existiert.
    */
   private IndexSearcherManager(String indexDir) throws RegainException {
+    mIndexDir = new File(indexDir);
     mNewIndexDir = new File(indexDir + File.separator + NEW_INDEX_SUBDIR);
     mWorkingIndexDir = new File(indexDir + File.separator + WORKING_INDEX_SUBDIR);
     mBackupIndexDir = new File(indexDir + File.separator + BACKUP_INDEX_SUBDIR);
 
-    if (!(new File(indexDir).exists()))
+    if (!mIndexDir.exists())
       throw new RegainException("No index folder found at " + indexDir);
 
     checkForIndexUpdate();
 
-    try
-    {
-      mSearcherManager = new SearcherManager(FSDirectory.open(mWorkingIndexDir), new SearcherFactory());
-    }
-    catch (IOException e)
-    {
-      throw new RegainException("Could not open index folder found at " + indexDir, e);
+    if (mSearcherManager == null) {
+      mSearcherManager = openSearcherManager();
     }
 
     mIndexUpdateThread = new IndexUpdateThread();
@@ -150,6 +193,58 @@ public class IndexSearcherManager implements Closeable {
     }
   }
 
+  /**
+   * Return the index searcher manager of an index. Takes over the settings of
+   * the index config for loading new indexes.
+   *
+   * @param config The config of the index.
+   *
+   * @return An instance of the corresponding index searcher manager.
+   * @throws RegainException If the directory does not exist or is not an index.
+   */
+  public static IndexSearcherManager getInstance(IndexConfig config) throws RegainException {
+    IndexSearcherManager manager = getInstance(config.getDirectory());
+
+    manager.mIndexUpdateInterval = config.getIndexUpdateInterval();
+    manager.mWarmUpQueries = config.getWarmUpQueries();
+    ArrayList<SortField> sortFieldList = new ArrayList<SortField>();
+    SortingOption[] sortingOptions = config.getSortingOptions();
+    if (sortingOptions != null) {
+      for (int i = 0; i < sortingOptions.length; i++) {
+        if (! SortingOption.RELEVANCE.equals(sortingOptions[i].getSortFieldName())) {
+          sortFieldList.add(sortingOptions[i].getSortField());
+        }
+      }
+    }
+    // NOTE: The facets are counted using the same field caches as the sorting
+    String[] facetFieldList = config.getFacetFieldList();
+    for (int i = 0; i < facetFieldList.length; i++) {
+      sortFieldList.add(new SortField(facetFieldList[i], SortField.STRING));
+    }
+    manager.mWarmUpSortFields = sortFieldList.toArray(new SortField[sortFieldList.size()]);
+
+    return manager;
+  }
+
+  /**
+   * Tells the manager of an index that there is a new index. The new index is
+   * loaded at once instead of at the next regular check.
+   *
+   * @param indexDir The directory of the index.
+   */
+  public static void notifyIndexUpdate(String indexDir) {
+    File dir = new File(indexDir).getAbsoluteFile();
+    synchronized (mIndexManagerHash)
+    {
+      for (IndexSearcherManager manager : mIndexManagerHash.values()) {
+        IndexUpdateThread thread = manager.mIndexUpdateThread;
+        if ((thread != null) && manager.mIndexDir.getAbsoluteFile().equals(dir)) {
+          thread.wakeUp();
+        }
+      }
+    }
+  }
+
   /**
    * Gets all distinct values a index has for a certain field. The values are
    * sorted alphabetically.
@@ -159,43 +254,72 @@ public class IndexSearcherManager implements Closeable {
    * @throws RegainException If reading the values failed.
    */
   public String[] getFieldValues(String field) throws RegainException {
-    if (mFieldTermHash == null) {
-      mFieldTermHash = new HashMap<String,String[]>();
-    }
+    return getFieldValueFile(field).getValues();
+  }
 
-    String[] valueArr = mFieldTermHash.get(field);
-    if (valueArr == null) {
-      valueArr = readFieldValues(field);
-      // Copy the field values to our cache
-      mFieldTermHash.put(field, valueArr);
+  /**
+   * Gets all distinct values a index has for a certain field together with
+   * the number of documents having each value. The values are sorted
+   * alphabetically.
+   *
+   * @param field The field to get the values for.
+   * @return All distinct values the index has for the field.
+   * @throws RegainException If reading the values failed.
+   */
+  public FieldValueFile getFieldValueFile(String field) throws RegainException {
+    ConcurrentHashMap<String, FieldValueFile> fieldTermHash = mFieldTermHash;
+    FieldValueFile fieldValues = fieldTermHash.get(field);
+    if (fieldValues == null) {
+      synchronized (mFieldTermLock) {
+        fieldValues = fieldTermHash.get(field);
+        if (fieldValues == null) {
+          fieldValues = readFieldValues(field);
+          // Copy the field values to our cache
+          fieldTermHash.put(field, fieldValues);
+        }
+      }
     }
 
-    return valueArr;
+    return fieldValues;
   }
 
   /**
-   * Read files from index cache file
-   * (synchronised, as this requires an searchindex/index directory)
+   * Read the field values from the index cache file. The crawler writes this
+   * file for the fields configured in valuePrefetchFields. For other fields
+   * the values are read from the index and the file is written.
    *
    * @param field The field to get the values for.
    * @return All distinct values the index has for the field.
    * @throws RegainException If reading the values failed.
    */
-  protected synchronized String[] readFieldValues(String field) throws RegainException
+  private FieldValueFile readFieldValues(String field) throws RegainException
   {
-    String[] valueArr;
+    long indexGeneration = mIndexGeneration;
+    FieldValueFile fieldValues = FieldValueFile.read(FieldValueFile.getFile(mWorkingIndexDir, field));
+    if (fieldValues != null) {
+      return fieldValues;
+    }
 
     IndexSearcher searcher = null;
     try {
-       searcher = getIndexSearcher();
+      searcher = getIndexSearcher();
       // Read the field values
-      HashMap<String,String[]> valueMap = RegainToolkit.readFieldValues(searcher.getIndexReader(),
-              new String[]{field}, mWorkingIndexDir);
-      valueArr = valueMap.get(field);
+      HashMap<String, FieldValueFile> valueMap = RegainToolkit.readFieldValues(
+              searcher.getIndexReader(), new String[] { field }, null);
+      fieldValues = valueMap.get(field);
     } finally {
       releaseIndexSearcher(searcher);
     }
-    return valueArr;
+
+    // Write the cache file if the values belong to the working index
+    // NOTE: We synchronize with the index update
+    synchronized (this) {
+      if (!mIndexUpdateRunning && (indexGeneration == mIndexGeneration)) {
+        fieldValues.write(FieldValueFile.getFile(mWorkingIndexDir, field));
+      }
+    }
+
+    return fieldValues;
   }
 
   /**
@@ -235,6 +359,17 @@ public class IndexSearcherManager implements Closeable {
 
     ensureIndexDirExists();
 
+    mAnalyzer = readAnalyzer();
+  }
+
+  /**
+   * Creates the analyzer of the working index.
+   *
+   * @return The analyzer.
+   * @throws RegainException If reading the analyzer settings failed.
+   */
+  private Analyzer readAnalyzer() throws RegainException
+  {
     // Read the stopWordList and the exclusionList
     File analyzerTypeFile = new File(mWorkingIndexDir, "analyzerType.txt");
     String analyzerType = RegainToolkit.readStringFromFile(analyzerTypeFile);
@@ -252,7 +387,7 @@ public class IndexSearcherManager implements Closeable {
     }
 
     // NOTE: Make shure to use the same analyzer as in the crawler
-    mAnalyzer = RegainToolkit.createAnalyzer(analyzerType, stopWordList,
+    return RegainToolkit.createAnalyzer(analyzerType, stopWordList,
             exclusionList, untokenizedFieldNames);
   }
 
@@ -276,60 +411,169 @@ public class IndexSearcherManager implements Closeable {
 
   /**
    * Check if there is a new index available.
-   * If so, prepare it by renaming the dirs - it will be opened at the next search.
+   * If so, prepare it by renaming the dirs, open and warm it up. Then it is
+   * used for the following searches.
    * <p>
-   * NOTE: We synchronize this index update with all methods that directly
-   * access the underlying files.
+   * NOTE: We synchronize renaming the dirs with all methods that directly
+   * access the underlying files. The searches use the old index, which is
+   * still open, until the new one is warmed up.
    *
    * @throws RegainException If error during update of index.
    */
   private void checkForIndexUpdate() throws RegainException {
-    if (mNewIndexDir.exists()) {
+    if (! mNewIndexDir.exists()) {
+      return;
+    }
+
+    synchronized (this)
+    {
+      if (mIndexUpdateRunning || ! mNewIndexDir.exists())
+      {
+        return;
+      }
+
+      mLog.info("New index found on " + new java.util.Date());
+
+      // ---- Okay, now we can move the directories
+
+      // Remove the old backup if it should still exist
+      if (mBackupIndexDir.exists()) {
+        RegainToolkit.deleteDirectory(mBackupIndexDir);
+      }
+
+      // Backup the current index (if there is one)
+      if (mWorkingIndexDir.exists()) {
+        if (!mWorkingIndexDir.renameTo(mBackupIndexDir)) {
+          throw new RegainException("Renaming " + mWorkingIndexDir + " to "
+                  + mBackupIndexDir + " failed!");
+        }
+      }
+
+      // Move the new index
+      if (!mNewIndexDir.renameTo(mWorkingIndexDir)) {
+        throw new RegainException("Renaming " + mNewIndexDir + " to "
+                + mWorkingIndexDir + " failed!");
+      }
+
+      mIndexUpdateRunning = true;
+    }
+
+    SearcherManager searcherManager = null;
+    try {
+      // Open and warm up the new index while the old one is still used
+      searcherManager = openSearcherManager();
+    }
+    finally {
       synchronized (this)
       {
-        if (mNewIndexDir.exists())
-        {
-          System.out.println("New index found on " + new java.util.Date());
+        mIndexUpdateRunning = false;
+
+        if (searcherManager != null) {
+          SearcherManager oldSearcherManager = mSearcherManager;
+          mSearcherManager = searcherManager;
 
           // Recreate analyzer and field term cache on next use
           mAnalyzer = null;
-          mFieldTermHash = null;
+          mFieldTermHash = new ConcurrentHashMap<String, FieldValueFile>();
 
-          // ---- Okay, now we can move the directories
+          // Results and filters of the old index are no longer valid
+          mIndexGeneration++;
+          SearchToolkit.clearFilterCache();
 
-          // Remove the old backup if it should still exist
-          if (mBackupIndexDir.exists()) {
-            RegainToolkit.deleteDirectory(mBackupIndexDir);
-          }
-
-          // Backup the current index (if there is one)
-          if (mWorkingIndexDir.exists()) {
-            if (!mWorkingIndexDir.renameTo(mBackupIndexDir)) {
-              throw new RegainException("Renaming " + mWorkingIndexDir + " to "
-                      + mBackupIndexDir + " failed!");
+          if (oldSearcherManager != null) {
+            // NOTE: The old index is closed when it is released by the last
+            //       search using it
+            try {
+              oldSearcherManager.close();
+            }
+            catch (IOException exc) {
+              throw new RegainException("Closing the old index failed", exc);
             }
           }
+        }
+      }
+    }
 
-          // Move the new index
-          if (!mNewIndexDir.renameTo(mWorkingIndexDir)) {
-            throw new RegainException("Renaming " + mNewIndexDir + " to "
-                    + mWorkingIndexDir + " failed!");
-          }
+    mLog.info("Finished loading new index.");
+  }
 
-          try
-          {
-            if (mSearcherManager != null)
-              mSearcherManager.maybeRefresh();
-          }
-          catch (IOException e)
-          {
-            throw new RegainException("Refresh of lucene index failed.");
-          }
+  /**
+   * Opens the working index. The IndexSearcher is warmed up before it is
+   * returned.
+   *
+   * @return The SearcherManager of the working index.
+   * @throws RegainException If opening the index failed.
+   */
+  private SearcherManager openSearcherManager() throws RegainException {
+    try
+    {
+      return new SearcherManager(FSDirectory.open(mWorkingIndexDir), new SearcherFactory() {
+        @Override
+        public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+          IndexSearcher searcher = new IndexSearcher(reader);
+          warmUp(searcher);
+          return searcher;
+        }
+      });
+    }
+    catch (IOException e)
+    {
+      throw new RegainException("Could not open index folder found at "
+              + mIndexDir.getPath(), e);
+    }
+  }
 
-          System.out.println("Finished loading new index.");
+  /**
+   * Warms up a new IndexSearcher: Loads the field caches of the sort and facet
+   * fields and runs the warm-up queries.
+   *
+   * @param searcher The IndexSearcher to warm up.
+   * @throws IOException If searching failed.
+   */
+  private void warmUp(IndexSearcher searcher) throws IOException {
+    SortField[] sortFields = mWarmUpSortFields;
+    String[] queries = mWarmUpQueries;
+    if ((sortFields.length == 0) && (queries.length == 0)) {
+      return;
+    }
+
+    long startTime = System.currentTimeMillis();
+    for (int i = 0; i < sortFields.length; i++) {
+      try {
+        searcher.search(new MatchAllDocsQuery(), null, 1, new Sort(sortFields[i]));
+      }
+      catch (RuntimeException exc) {
+        // The field is tokenized
+        mLog.warn("Loading the field cache of " + sortFields[i].getField()
+                + " failed: " + exc.getMessage());
+      }
+    }
+
+    if (queries.length != 0) {
+      // NOTE: The analyzer of the new index is read once for all queries.
+      //       mAnalyzer may still belong to the old index at this point.
+      QueryParser parser;
+      try {
+        parser = new QueryParser(RegainToolkit.getLuceneVersion(),
+                "content", readAnalyzer());
+      }
+      catch (RegainException exc) {
+        throw new IOException("Creating the analyzer failed", exc);
+      }
+      parser.setDefaultOperator(QueryParser.AND_OPERATOR);
+
+      for (int i = 0; i < queries.length; i++) {
+        try {
+          searcher.search(parser.parse(queries[i]), null, 10);
+        }
+        catch (ParseException exc) {
+          mLog.warn("Warm-up query '" + queries[i] + "' has a wrong syntax", exc);
         }
       }
     }
+
+    mLog.info("Warmed up new index in "
+            + (System.currentTimeMillis() - startTime) + " ms.");
   }
 
   /**
@@ -353,7 +597,34 @@ public class IndexSearcherManager implements Closeable {
    */
   public IndexSearcher getIndexSearcher() throws RegainException {
     ensureIndexDirExists();
-    return mSearcherManager.acquire();
+    while (true) {
+      SearcherManager searcherManager = mSearcherManager;
+      if (searcherManager == null) {
+        throw new RegainException("The index searcher manager is already closed");
+      }
+      try {
+        return searcherManager.acquire();
+      }
+      catch (AlreadyClosedException exc) {
+        // A new index was loaded meanwhile -> Try again with the new one
+      }
+    }
+  }
+
+  /**
+   * Gets the generation of the index. The generation changes every time a new
+   * index is loaded, so it tells whether objects created on an older
+   * IndexSearcher should be created again.
+   * <p>
+   * NOTE: Get the generation <i>before</i> getting the IndexSearcher. So the
+   * generation may be too old, but it is never too new. For this reason the
+   * generation must not be used to decide whether document numbers are still
+   * valid. Use the IndexReader of the IndexSearcher for this.
+   *
+   * @return The generation of the index.
+   */
+  public long getIndexGeneration() {
+    return mIndexGeneration;
   }
 
   /**
@@ -368,7 +639,9 @@ public class IndexSearcherManager implements Closeable {
         return;
 
     try {
-      mSearcherManager.release(searcher);
+      // NOTE: The searcher may belong to an old index, so we don't ask the
+      //       current SearcherManager
+      searcher.getIndexReader().decRef();
     } catch (IOException e) {
       throw new RegainException("Release failed", e);
     }
@@ -381,12 +654,17 @@ public class IndexSearcherManager implements Closeable {
       mIndexUpdateThread.close();
     mIndexUpdateThread = null;
 
-    mSearcherManager.close();
+    SearcherManager searcherManager = mSearcherManager;
     mSearcherManager = null;
+    if (searcherManager != null)
+      searcherManager.close();
   }
 
   public static void closeAll() throws IOException
   {
+    // The searchers on several indexes hold references on our readers
+    MultiIndexSearcherManager.closeAll();
+
     for (Closeable indexManager : mIndexManagerHash.values())
     {
       indexManager.close();
@@ -408,13 +686,11 @@ public class IndexSearcherManager implements Closeable {
    */
   private class IndexUpdateThread extends Thread implements Closeable
   {
-    /**
-     * Nb of milliseconds between a check if a new index is available.
-     */
-    private static final int INDEX_UPDATE_THREAD_SLEEPTIME = 10000;
-
     private volatile boolean quit = false;
 
+    /** Whether the thread should check for a new index at once. */
+    private boolean mWakeUp = false;
+
     @Override
     public void run() {
       // Do while no termination is requested
@@ -429,13 +705,30 @@ public class IndexSearcherManager implements Closeable {
         }
 
         // Wait some time (approx. 10 sec, but don't be disappointed if it's more or less)
-        try {
-          Thread.sleep(INDEX_UPDATE_THREAD_SLEEPTIME);
-        } catch (InterruptedException exc) {
+        // NOTE: We don't interrupt the thread to wake it up, since this
+        //       would close the files lucene reads from at the moment
+        synchronized (this) {
+          try {
+            if (!mWakeUp && !quit) {
+              wait(mIndexUpdateInterval * 1000L);
+            }
+          } catch (InterruptedException exc) {
+          }
+          mWakeUp = false;
         }
       }
     }
 
+    /**
+     * Request a check for a new index.
+     * Will check as soon as possible.
+     */
+    public synchronized void wakeUp()
+    {
+      mWakeUp = true;
+      notify();
+    }
+
     /**
      * Request termination of thread.
      * Will terminate as soon as possible.
@@ -443,7 +736,7 @@ public class IndexSearcherManager implements Closeable {
     public void close()
     {
       quit = true;
-      interrupt(); // Wake him up if he's sleeping!
+      wakeUp(); // Wake him up if he's sleeping!
     }
   }
 }
@@ -0,0 +1,317 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.search;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.util.LimitedExecutor;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * Encapsulates the search on several lucene search indexes at once.
+ * <p>
+ * Holds one IndexSearcher on a MultiReader for every combination of indexes,
+ * so searches on the same indexes share their caches (e.g. the field caches
+ * used for sorting). The IndexSearcher is created again as soon as one of the
+ * indexes was replaced by a new one (see
+ * {@link IndexSearcherManager#getIndexGeneration()}).
+ * <p>
+ * The IndexSearchers are reference counted like the ones of the
+ * IndexSearcherManager: Every IndexSearcher got by {@link #getIndexSearcher()}
+ * must be released by {@link #releaseIndexSearcher(IndexSearcher)}.
+ * <p>
+ * If parallel search is configured, the segments of the indexes are searched
+ * at the same time by a thread pool shared by all searches. Every search gets
+ * its own IndexSearcher on the shared MultiReader, which runs at most
+ * maxThreadsPerSearch segments at a time (see {@link LimitedExecutor}). Only
+ * the methods of the IndexSearcher that return TopDocs search in parallel.
+ * <p>
+ * NOTE: The segments are the sub readers of the IndexSearchers, so the field
+ * caches and the bitsets of the cached filters are built per segment and are
+ * shared with the searchers of the single indexes.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class MultiIndexSearcherManager implements Closeable {
+
+  /**
+   * Holds for a combination of index directories (key) the responsible
+   * MultiIndexSearcherManager (value).
+   */
+  private static HashMap<String, MultiIndexSearcherManager> mMultiManagerHash;
+
+  static {
+    mMultiManagerHash = new HashMap<String, MultiIndexSearcherManager>();
+  }
+
+  /**
+   * The thread pool for parallel searches. Is shared by all managers. Is
+   * <code>null</code> until a manager for parallel search is created.
+   */
+  private static ExecutorService mSearchExecutor;
+
+  /** The managers of the searched indexes. */
+  private IndexSearcherManager[] mIndexManagerArr;
+
+  /**
+   * The maximum number of threads a single search may use. The segments are
+   * searched one after another if this is less than 2.
+   */
+  private int mMaxThreadsPerSearch;
+
+  /**
+   * The current IndexSearcher. The manager holds one reference on its reader,
+   * which is released when the IndexSearcher is replaced.
+   */
+  private IndexSearcher mIndexSearcher;
+
+  /** The generations of the indexes the current IndexSearcher was created for. */
+  private long[] mIndexGenerations;
+
+
+  /**
+   * Creates a new instance of MultiIndexSearcherManager.
+   *
+   * @param indexManagerArr The managers of the searched indexes.
+   * @param maxThreadsPerSearch The maximum number of threads a single search
+   *        may use.
+   */
+  private MultiIndexSearcherManager(IndexSearcherManager[] indexManagerArr,
+    int maxThreadsPerSearch)
+  {
+    mIndexManagerArr = indexManagerArr;
+    mMaxThreadsPerSearch = maxThreadsPerSearch;
+  }
+
+
+  /**
+   * Return the manager for a combination of index directories.
+   *
+   * @param indexDirArr The directories of the indexes. The order of the
+   *        directories determines the order of the documents.
+   * @param searchThreadCount The number of threads for parallel searches.
+   *        0 if the indexes should be searched one after another. The thread
+   *        pool is created by the first manager for parallel search.
+   * @param maxThreadsPerSearch The maximum number of threads a single search
+   *        may use.
+   * @return An instance of the corresponding manager.
+   * @throws RegainException If a directory does not exist or is not an index.
+   */
+  public static MultiIndexSearcherManager getInstance(String[] indexDirArr,
+    int searchThreadCount, int maxThreadsPerSearch)
+    throws RegainException
+  {
+    if (searchThreadCount <= 0) {
+      maxThreadsPerSearch = 0;
+    }
+    String key = Arrays.toString(indexDirArr) + "#" + maxThreadsPerSearch;
+    synchronized (mMultiManagerHash)
+    {
+      MultiIndexSearcherManager manager = mMultiManagerHash.get(key);
+      if (manager == null) {
+        IndexSearcherManager[] indexManagerArr = new IndexSearcherManager[indexDirArr.length];
+        for (int i = 0; i < indexDirArr.length; i++) {
+          indexManagerArr[i] = IndexSearcherManager.getInstance(indexDirArr[i]);
+        }
+        if ((maxThreadsPerSearch > 1) && (mSearchExecutor == null)) {
+          mSearchExecutor = createSearchExecutor(searchThreadCount);
+        }
+        manager = new MultiIndexSearcherManager(indexManagerArr, maxThreadsPerSearch);
+        mMultiManagerHash.put(key, manager);
+      }
+
+      return manager;
+    }
+  }
+
+
+  /**
+   * Gets the current generations of the indexes.
+   *
+   * @return The generations of the indexes.
+   * @see IndexSearcherManager#getIndexGeneration()
+   */
+  public long[] getIndexGenerations() {
+    long[] generations = new long[mIndexManagerArr.length];
+    for (int i = 0; i < mIndexManagerArr.length; i++) {
+      generations[i] = mIndexManagerArr[i].getIndexGeneration();
+    }
+    return generations;
+  }
+
+
+  /**
+   * Returns the IndexSearcher for all indexes. The IndexSearcher is created
+   * again if one of the indexes was replaced since the last call.
+   * <p>
+   * Must be released after use (see
+   * {@link IndexSearcherManager#getIndexSearcher()}).
+   *
+   * @return The IndexSearcher.
+   * @throws RegainException If opening an index failed.
+   */
+  public synchronized IndexSearcher getIndexSearcher() throws RegainException {
+    if (mIndexManagerArr == null) {
+      throw new RegainException("The manager is already closed");
+    }
+
+    // NOTE: Get the generations before the IndexSearchers, see getIndexGeneration()
+    long[] generations = getIndexGenerations();
+    if ((mIndexSearcher == null) || ! Arrays.equals(generations, mIndexGenerations)) {
+      IndexSearcher searcher = createIndexSearcher();
+      if (mIndexSearcher != null) {
+        // Release our reference. The old reader is closed as soon as all
+        // searches using it are finished.
+        releaseIndexSearcher(mIndexSearcher);
+      }
+      mIndexSearcher = searcher;
+      mIndexGenerations = generations;
+    }
+
+    mIndexSearcher.getIndexReader().incRef();
+    if (mMaxThreadsPerSearch < 2) {
+      return mIndexSearcher;
+    }
+
+    // NOTE: The IndexSearcher only holds the sub readers, so creating it
+    //       is cheap. The reader and its caches are shared.
+    return new IndexSearcher(mIndexSearcher.getIndexReader(),
+            new LimitedExecutor(mSearchExecutor, mMaxThreadsPerSearch));
+  }
+
+
+  /**
+   * Creates an IndexSearcher on the current readers of all indexes.
+   *
+   * @return The IndexSearcher.
+   * @throws RegainException If opening an index failed.
+   */
+  private IndexSearcher createIndexSearcher() throws RegainException {
+    IndexSearcher[] searcherArr = new IndexSearcher[mIndexManagerArr.length];
+    try {
+      IndexReader[] readerArr = new IndexReader[mIndexManagerArr.length];
+      for (int i = 0; i < mIndexManagerArr.length; i++) {
+        searcherArr[i] = mIndexManagerArr[i].getIndexSearcher();
+        readerArr[i] = searcherArr[i].getIndexReader();
+      }
+
+      // NOTE: The MultiReader holds its own reference on every reader
+      return new IndexSearcher(new MultiReader(readerArr, false));
+    }
+    finally {
+      for (int i = 0; i < mIndexManagerArr.length; i++) {
+        mIndexManagerArr[i].releaseIndexSearcher(searcherArr[i]);
+      }
+    }
+  }
+
+
+  /**
+   * Release an IndexSearcher that was acquired by getIndexSearcher().
+   * NOTE: It musn't be used afterwards!
+   *
+   * @param searcher Reference to the index searcher. (Null is silently ignored.)
+   * @throws RegainException If closing the reader failed.
+   */
+  public void releaseIndexSearcher(IndexSearcher searcher) throws RegainException {
+    if (searcher == null)
+      return;
+
+    try {
+      decRef(searcher);
+    } catch (IOException exc) {
+      throw new RegainException("Release failed", exc);
+    }
+  }
+
+
+  /**
+   * Releases one reference on the reader of an IndexSearcher.
+   *
+   * @param searcher The IndexSearcher.
+   * @throws IOException If closing the reader failed.
+   */
+  private static void decRef(IndexSearcher searcher) throws IOException {
+    searcher.getIndexReader().decRef();
+  }
+
+
+  @Override
+  public synchronized void close() throws IOException
+  {
+    if (mIndexSearcher != null) {
+      decRef(mIndexSearcher);
+    }
+    mIndexSearcher = null;
+    mIndexManagerArr = null;
+  }
+
+
+  public static void closeAll() throws IOException
+  {
+    synchronized (mMultiManagerHash)
+    {
+      for (Closeable manager : mMultiManagerHash.values())
+      {
+        manager.close();
+      }
+      mMultiManagerHash.clear();
+
+      if (mSearchExecutor != null) {
+        mSearchExecutor.shutdown();
+        mSearchExecutor = null;
+      }
+    }
+  }
+
+
+  /**
+   * Creates the thread pool for parallel searches.
+   *
+   * @param threadCount The number of threads.
+   * @return The thread pool.
+   */
+  private static ExecutorService createSearchExecutor(int threadCount) {
+    return Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+      private int mThreadNumber = 0;
+
+      @Override
+      public synchronized Thread newThread(Runnable runnable) {
+        mThreadNumber++;
+        Thread thread = new Thread(runnable, "search-" + mThreadNumber);
+        // The searches must not prevent the VM from exiting
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+}
@@ -25,9 +25,13 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.zip.DataFormatException;
 
 import net.sf.regain.RegainException;
@@ -51,10 +55,13 @@ import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
 
 /**
  * A toolkit for the search JSPs containing helper methods.
@@ -92,6 +99,21 @@ public class SearchToolkit {
    * Holds for an extension the mime type.
    */
   private static HashMap<String, String> mMimeTypeHash;
+  /** The maximum number of filters held by the filter cache. */
+  private static final int MAX_CACHED_FILTER_COUNT = 100;
+  /**
+   * The filters of the last searches. Key: The filter query. The least
+   * recently used filter comes first.
+   */
+  private static LinkedHashMap<Query, Filter> mFilterCache =
+          new LinkedHashMap<Query, Filter>(16, 0.75f, true) {
+            static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Query, Filter> eldest) {
+              return size() > MAX_CACHED_FILTER_COUNT;
+            }
+          };
 
   /**
    * Gets the IndexConfig array from the PageContext. It contains the
@@ -313,10 +335,13 @@ public class SearchToolkit {
       // Get the index configurations
       IndexConfig[] indexConfigArr = getIndexConfigArrWithParent(request);
 
-      results = new SearchResultsImpl(indexConfigArr, request);
+      SearchResultsImpl resultsImpl = new SearchResultsImpl(indexConfigArr, request);
+      results = resultsImpl;
 
-      // Store the SearchResults in the page context
+      // Store the SearchResults in the page context. They hold the index
+      // searcher until the page is finished.
       request.setContextAttribute(SEARCH_RESULTS_ATTR_NAME, results);
+      request.addCloseable(resultsImpl);
     }
 
     return results;
@@ -408,8 +433,7 @@ public class SearchToolkit {
     int nbHits = 0;
     // Check whether one of the indexes contains the file
     for (int i = 0; i < configArr.length; i++) {
-      String dir = configArr[i].getDirectory();
-      manager = IndexSearcherManager.getInstance(dir);
+      manager = IndexSearcherManager.getInstance(configArr[i]);
 
       String transformedFileUrl = fileUrl;
       // back transform the file url according to given rewrite rules
@@ -436,18 +460,22 @@ public class SearchToolkit {
       } catch (ParseException ex) {
         throw new RegainException("Parsing of url lookup-query failed.", ex);
       }
+      Filter filter = null;
       if (configArr[i].getSearchAccessController() != null) {
         SearchAccessController accessController = configArr[i].getSearchAccessController();
         String[] allGroups = accessController.getUserGroups(request);
         RegainToolkit.checkGroupArray(accessController, allGroups);
-        query = addAccessControlToQuery(query, allGroups);
+        Query groupQuery = createAccessControlQuery(allGroups);
+        if (groupQuery != null) {
+          filter = getCachedFilter(groupQuery);
+        }
       }
 
       try {
         searcher = manager.getIndexSearcher();
 
-        TopScoreDocCollector collector = TopScoreDocCollector.create(1, false);
-        searcher.search(query, collector);
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+        searcher.search(query, filter, collector);
         nbHits = collector.getTotalHits();
       } catch (IOException exc) {
         throw new RegainException("Searching query failed", exc);
@@ -504,6 +532,65 @@ public class SearchToolkit {
     return mainQuery;
   }
 
+  /**
+   * Creates a query that matches the documents one of the groups has reading
+   * rights for (To be used together with SearchAccessController).
+   * <p>
+   * The query should be used as filter (see {@link #getCachedFilter(Query)}),
+   * since it doesn't make sense to score the groups.
+   *
+   * @param allGroups Groups of the user
+   * @return The query or <code>null</code> if all documents may be read (if
+   *         there are no groups, see {@link #addAccessControlToQuery(Query, String[])}).
+   */
+  public static Query createAccessControlQuery(String[] allGroups) {
+    if ((allGroups == null || allGroups.length == 0)) {
+      return null;
+    }
+
+    // Sort the groups, so the same groups give the same filter
+    BooleanQuery groupQuery = new BooleanQuery();
+    for (String group : new TreeSet<String>(Arrays.asList(allGroups))) {
+      // Add as OR
+      groupQuery.add(new TermQuery(new Term(RegainToolkit.FIELD_ACCESS_CONTROL_GROUPS, group)),
+              Occur.SHOULD);
+    }
+    return groupQuery;
+  }
+
+  /**
+   * Gets a filter that matches the same documents as a query. The filter
+   * caches the matching documents of each index segment, so searches using the
+   * same filter query don't have to search for it again.
+   * <p>
+   * The filters are cached until a new index is loaded. The query is used as
+   * key of the cache, so it must not be changed afterwards.
+   *
+   * @param filterQuery The query to get the filter for.
+   * @return The filter.
+   */
+  public static Filter getCachedFilter(Query filterQuery) {
+    synchronized (mFilterCache) {
+      Filter filter = mFilterCache.get(filterQuery);
+      if (filter == null) {
+        filter = new CachingWrapperFilter(new QueryWrapperFilter(filterQuery));
+        mFilterCache.put(filterQuery, filter);
+      }
+      return filter;
+    }
+  }
+
+  /**
+   * Removes all filters from the filter cache.
+   *
+   * @see #getCachedFilter(Query)
+   */
+  public static void clearFilterCache() {
+    synchronized (mFilterCache) {
+      mFilterCache.clear();
+    }
+  }
+
   /**
    * Sends a file to the client.
    *
@@ -16,6 +16,10 @@ public class IndexConfig {
 
   /** Default list of index fields to search in. */
   protected static final String[] DEFAULT_SEARCH_FIELD_LIST = {"content", "title", "headlines", "location", "filename"};
+  /** Default number of seconds between two checks for a new index. */
+  public static final int DEFAULT_INDEX_UPDATE_INTERVAL = 10;
+  /** The default fields to count the values of in the search results. */
+  public static final String[] DEFAULT_FACET_FIELD_LIST = { "mimetype" };
   /** The name of the index. */
   private String mName;
   /** The directory where the index is located. */
@@ -64,6 +68,19 @@ public class IndexConfig {
   /** The sorting options for the results. */
   private SortingOption[] mSortingOptions;
   private boolean mShowSortFieldContent;
+  /**
+   * The number of threads for searching several indexes at once. 0 if the
+   * indexes should be searched one after another.
+   */
+  private int mSearchThreadCount;
+  /** The maximum number of threads a single search may use. */
+  private int mMaxThreadsPerSearch;
+  /** The number of seconds between two checks for a new index. */
+  private int mIndexUpdateInterval = DEFAULT_INDEX_UPDATE_INTERVAL;
+  /** The queries to run on a new index before it is used for searching. */
+  private String[] mWarmUpQueries = new String[0];
+  /** The fields to count the values of in the search results. */
+  private String[] mFacetFieldList = DEFAULT_FACET_FIELD_LIST;
 
   /**
    * Creates a new instance of IndexConfig.
@@ -284,4 +301,99 @@ public class IndexConfig {
   public boolean getShowSortFieldContent() {
     return mShowSortFieldContent;
   }
+
+  /**
+   * Sets the threads to use when this index is searched together with other
+   * indexes.
+   *
+   * @param searchThreadCount The number of threads shared by all searches.
+   *        0 if the indexes should be searched one after another.
+   * @param maxThreadsPerSearch The maximum number of threads a single search
+   *        may use.
+   */
+  public void setParallelSearch(int searchThreadCount, int maxThreadsPerSearch) {
+    this.mSearchThreadCount = searchThreadCount;
+    this.mMaxThreadsPerSearch = maxThreadsPerSearch;
+  }
+
+  /**
+   * Gets the number of threads for searching several indexes at once. The
+   * threads are shared by all searches.
+   *
+   * @return The number of threads or 0 if the indexes should be searched one
+   *         after another.
+   */
+  public int getSearchThreadCount() {
+    return mSearchThreadCount;
+  }
+
+  /**
+   * Gets the maximum number of threads a single search on several indexes
+   * may use.
+   *
+   * @return The maximum number of threads per search.
+   */
+  public int getMaxThreadsPerSearch() {
+    return mMaxThreadsPerSearch;
+  }
+
+  /**
+   * Sets the number of seconds between two checks for a new index.
+   *
+   * @param indexUpdateInterval The number of seconds between two checks.
+   */
+  public void setIndexUpdateInterval(int indexUpdateInterval) {
+    this.mIndexUpdateInterval = indexUpdateInterval;
+  }
+
+  /**
+   * Gets the number of seconds between two checks for a new index.
+   * <p>
+   * NOTE: The crawler of the desktop search tells the search when it created a
+   * new index, so this is only the fallback.
+   *
+   * @return The number of seconds between two checks for a new index.
+   */
+  public int getIndexUpdateInterval() {
+    return mIndexUpdateInterval;
+  }
+
+  /**
+   * Sets the queries to run on a new index before it is used for searching.
+   *
+   * @param warmUpQueries The warm-up queries.
+   */
+  public void setWarmUpQueries(String[] warmUpQueries) {
+    this.mWarmUpQueries = warmUpQueries;
+  }
+
+  /**
+   * Gets the queries to run on a new index before it is used for searching.
+   * This way the first searches on a new index are as fast as the other ones.
+   *
+   * @return The warm-up queries.
+   */
+  public String[] getWarmUpQueries() {
+    return mWarmUpQueries;
+  }
+
+  /**
+   * Sets the fields to count the values of in the search results.
+   *
+   * @param facetFieldList The fields to count the values of.
+   */
+  public void setFacetFieldList(String[] facetFieldList) {
+    this.mFacetFieldList = facetFieldList;
+  }
+
+  /**
+   * Gets the fields to count the values of in the search results. The values
+   * of all these fields are counted together in one pass over the hits.
+   *
+   * @return The fields to count the values of.
+   * @see net.sf.regain.search.results.SearchResults#getFacetCounts(String)
+   */
+  public String[] getFacetFieldList() {
+    return mFacetFieldList;
+  }
 }
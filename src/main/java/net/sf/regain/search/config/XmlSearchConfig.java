@@ -62,6 +62,16 @@ public class XmlSearchConfig implements SearchConfig {
     node = XmlToolkit.getChild(defaultNode, "Highlighting");
     boolean highlighting = (node == null) ? true : XmlToolkit.getTextAsBoolean(node);
 
+    // get the number of threads for searching several indexes at once
+    node = XmlToolkit.getChild(defaultNode, "parallelSearch");
+    int searchThreadCount = 0;
+    int maxThreadsPerSearch = 0;
+    if (node != null) {
+      searchThreadCount = XmlToolkit.getTextAsInt(node);
+      maxThreadsPerSearch = XmlToolkit.getAttributeAsInt(node, "maxThreadsPerSearch",
+              searchThreadCount);
+    }
+
     // get the sorting options
     SortingOption[] sortingOptions = null;
     Node sortResultsNode = XmlToolkit.getChild(defaultNode, "sortResults");
@@ -154,6 +164,34 @@ public class XmlSearchConfig implements SearchConfig {
         }
       }
 
+      // Read the interval of the checks for a new index
+      node = XmlToolkit.getCascadedChild(indexNode, defaultNode, "indexUpdateInterval");
+      int indexUpdateInterval = IndexConfig.DEFAULT_INDEX_UPDATE_INTERVAL;
+      if (node != null) {
+        indexUpdateInterval = XmlToolkit.getTextAsInt(node);
+      }
+
+      // Read the warm-up queries
+      node = XmlToolkit.getCascadedChild(indexNode, defaultNode, "warmUpQueryList");
+      String[] warmUpQueries = new String[0];
+      if (node != null) {
+        Node[] queryNodeArr = XmlToolkit.getChildArr(node, "query");
+        warmUpQueries = new String[queryNodeArr.length];
+        for (int i = 0; i < queryNodeArr.length; i++) {
+          warmUpQueries[i] = XmlToolkit.getText(queryNodeArr[i], true);
+        }
+      }
+
+      // Read the fields to count the values of in the search results
+      node = XmlToolkit.getCascadedChild(indexNode, defaultNode, "facetFieldList");
+      String[] facetFieldList = IndexConfig.DEFAULT_FACET_FIELD_LIST;
+      if (node != null) {
+        facetFieldList = XmlToolkit.getTextAsWordList(node, false);
+        if (facetFieldList == null) {
+          facetFieldList = new String[0];
+        }
+      }
+
       // Create the index config
       IndexConfig indexConfig = new IndexConfig(indexName, directory,
               openInNewWindowRegex, useFileToHttpBridge, searchFieldList, rewriteRules,
@@ -161,6 +199,10 @@ public class XmlSearchConfig implements SearchConfig {
               searchAccessControllerConfig, highlighting, sortingOptions,
               showSortFieldContent);
       indexConfig.setParent(isParent);
+      indexConfig.setParallelSearch(searchThreadCount, maxThreadsPerSearch);
+      indexConfig.setIndexUpdateInterval(indexUpdateInterval);
+      indexConfig.setWarmUpQueries(warmUpQueries);
+      indexConfig.setFacetFieldList(facetFieldList);
       if (null != parentName && parentName.length() > 0) {
         indexConfig.setParentName(parentName);
       }
@@ -0,0 +1,175 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.search.results;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * Counts for several fields how many hits have each value of the field.
+ * <p>
+ * The hits are counted by the ordinals of the values in the field cache of
+ * each segment (see {@link FieldCache#getStringIndex(IndexReader, String)}),
+ * the values are only looked up when a segment is finished. So all fields are
+ * counted in one pass over the hits. The field caches are shared with the
+ * sorting by these fields.
+ * <p>
+ * NOTE: Only fields having at most one untokenized value per document can be
+ * counted this way (like mimetype or path_sort).
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+class FacetCollector extends Collector {
+
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(FacetCollector.class);
+
+  /** The names of the fields to count. */
+  private String[] mFieldArr;
+
+  /**
+   * The field caches of the current segment. Has the same order as mFieldArr.
+   * An entry is <code>null</code> if the field can't be counted.
+   */
+  private FieldCache.StringIndex[] mStringIndexArr;
+
+  /**
+   * The counts of the current segment. Holds for each field the number of hits
+   * for each ordinal.
+   */
+  private int[][] mOrdCountArr;
+
+  /**
+   * Holds for each field the counts of the finished segments. Key: The value,
+   * value: The number of hits having that value.
+   */
+  private List<HashMap<String, Integer>> mCountMapList;
+
+
+  /**
+   * Creates a new instance of FacetCollector.
+   *
+   * @param fieldArr The names of the fields to count.
+   */
+  public FacetCollector(String[] fieldArr) {
+    mFieldArr = fieldArr;
+    mStringIndexArr = new FieldCache.StringIndex[fieldArr.length];
+    mOrdCountArr = new int[fieldArr.length][];
+    mCountMapList = new ArrayList<HashMap<String, Integer>>(fieldArr.length);
+    for (int i = 0; i < fieldArr.length; i++) {
+      mCountMapList.add(new HashMap<String, Integer>());
+    }
+  }
+
+
+  @Override
+  public void setScorer(Scorer scorer) {
+    // The scores are not needed
+  }
+
+
+  @Override
+  public void setNextReader(IndexReader reader, int docBase) throws IOException {
+    finishSegment();
+
+    for (int i = 0; i < mFieldArr.length; i++) {
+      try {
+        mStringIndexArr[i] = FieldCache.DEFAULT.getStringIndex(reader, mFieldArr[i]);
+        mOrdCountArr[i] = new int[mStringIndexArr[i].lookup.length];
+      }
+      catch (RuntimeException exc) {
+        // The field has more terms than documents -> It is tokenized
+        mLog.warn("Can't count the values of field " + mFieldArr[i]
+                + ": " + exc.getMessage());
+        mStringIndexArr[i] = null;
+        mOrdCountArr[i] = null;
+      }
+    }
+  }
+
+
+  @Override
+  public void collect(int doc) {
+    for (int i = 0; i < mOrdCountArr.length; i++) {
+      if (mOrdCountArr[i] != null) {
+        mOrdCountArr[i][mStringIndexArr[i].order[doc]]++;
+      }
+    }
+  }
+
+
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    return true;
+  }
+
+
+  /**
+   * Adds the counts of the current segment to the counts of the finished
+   * segments.
+   */
+  private void finishSegment() {
+    for (int i = 0; i < mFieldArr.length; i++) {
+      int[] ordCounts = mOrdCountArr[i];
+      if (ordCounts != null) {
+        String[] lookup = mStringIndexArr[i].lookup;
+        HashMap<String, Integer> countMap = mCountMapList.get(i);
+        // NOTE: Ordinal 0 stands for documents without a value
+        for (int ord = 1; ord < ordCounts.length; ord++) {
+          if (ordCounts[ord] != 0) {
+            Integer count = countMap.get(lookup[ord]);
+            int oldCount = (count == null) ? 0 : count.intValue();
+            countMap.put(lookup[ord], oldCount + ordCounts[ord]);
+          }
+        }
+      }
+      mStringIndexArr[i] = null;
+      mOrdCountArr[i] = null;
+    }
+  }
+
+
+  /**
+   * Gets the counts of all fields. Must be called after the search.
+   *
+   * @return Holds for each field (key) how many hits have each value of the
+   *         field (value).
+   */
+  public Map<String, Map<String, Integer>> getCounts() {
+    finishSegment();
+
+    HashMap<String, Map<String, Integer>> countsHash = new HashMap<String, Map<String, Integer>>();
+    for (int i = 0; i < mFieldArr.length; i++) {
+      countsHash.put(mFieldArr[i], mCountMapList.get(i));
+    }
+    return countsHash;
+  }
+
+}
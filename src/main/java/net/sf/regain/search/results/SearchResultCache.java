@@ -0,0 +1,196 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.search.results;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Caches the hits of the last searches, so paging through the results and
+ * repeating popular searches doesn't search again.
+ * <p>
+ * The least recently used entry is removed when the cache is full. The
+ * document numbers of an entry belong to the IndexReader that was searched,
+ * so an entry is only used for a search on the very same IndexReader. The
+ * entries only hold weak references to the IndexReaders, so they don't keep
+ * a replaced index in memory.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class SearchResultCache {
+
+  /** The entries. The least recently used entry comes first. */
+  private LinkedHashMap<String, Entry> mEntryMap;
+
+
+  /**
+   * Creates a new instance of SearchResultCache.
+   *
+   * @param maxEntryCount The maximum number of entries to hold.
+   */
+  public SearchResultCache(final int maxEntryCount) {
+    mEntryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntryCount;
+      }
+    };
+  }
+
+
+  /**
+   * Gets an entry.
+   *
+   * @param key The key of the search.
+   * @param reader The IndexReader the search uses.
+   * @return The entry or <code>null</code> if there is no entry or if the
+   *         entry belongs to another IndexReader.
+   */
+  public synchronized Entry get(String key, IndexReader reader) {
+    Entry entry = mEntryMap.get(key);
+    if ((entry != null) && (entry.mReaderRef.get() != reader)) {
+      // At least one index was replaced since this entry was created
+      mEntryMap.remove(key);
+      return null;
+    }
+    return entry;
+  }
+
+
+  /**
+   * Puts an entry.
+   *
+   * @param key The key of the search.
+   * @param entry The entry.
+   */
+  public synchronized void put(String key, Entry entry) {
+    mEntryMap.put(key, entry);
+  }
+
+
+  /**
+   * Removes all entries.
+   */
+  public synchronized void clear() {
+    mEntryMap.clear();
+  }
+
+
+  /**
+   * Gets the number of entries.
+   *
+   * @return The number of entries.
+   */
+  public synchronized int size() {
+    return mEntryMap.size();
+  }
+
+
+  /**
+   * The cached result of one search.
+   */
+  public static class Entry {
+
+    /** The searched query. */
+    private Query mQuery;
+    /** The filter of the search. May be <code>null</code>. */
+    private Filter mFilter;
+    /** The first hits. */
+    private ScoreDoc[] mScoreDocs;
+    /** The total number of hits. */
+    private int mTotalHitCount;
+    /** The searched IndexReader. */
+    private WeakReference<IndexReader> mReaderRef;
+
+
+    /**
+     * Creates a new instance of Entry.
+     *
+     * @param query The searched query.
+     * @param filter The filter of the search. May be <code>null</code>.
+     * @param scoreDocs The first hits.
+     * @param totalHitCount The total number of hits.
+     * @param reader The searched IndexReader. The document numbers of the
+     *        hits belong to this reader.
+     */
+    public Entry(Query query, Filter filter, ScoreDoc[] scoreDocs,
+      int totalHitCount, IndexReader reader)
+    {
+      mQuery = query;
+      mFilter = filter;
+      mScoreDocs = scoreDocs;
+      mTotalHitCount = totalHitCount;
+      mReaderRef = new WeakReference<IndexReader>(reader);
+    }
+
+
+    /**
+     * Gets the searched query.
+     *
+     * @return The searched query.
+     */
+    public Query getQuery() {
+      return mQuery;
+    }
+
+
+    /**
+     * Gets the filter of the search.
+     *
+     * @return The filter of the search or <code>null</code> if there is none.
+     */
+    public Filter getFilter() {
+      return mFilter;
+    }
+
+
+    /**
+     * Gets the first hits.
+     *
+     * @return The first hits.
+     */
+    public ScoreDoc[] getScoreDocs() {
+      return mScoreDocs;
+    }
+
+
+    /**
+     * Gets the total number of hits.
+     *
+     * @return The total number of hits.
+     */
+    public int getTotalHitCount() {
+      return mTotalHitCount;
+    }
+
+  }
+
+}
@@ -20,6 +20,8 @@
  */
 package net.sf.regain.search.results;
 
+import java.util.Map;
+
 import net.sf.regain.RegainException;
 
 import org.apache.lucene.document.Document;
@@ -46,8 +48,22 @@ public interface SearchResults {
    */
   public int getDocumentCount();
 
+  /**
+   * Declares index fields the page shows for the hits. These fields are loaded
+   * at once with the documents of the next hits, all other fields are loaded
+   * on first access (see {@link #getHitDocument(int)}).
+   *
+   * @param fieldNames The names of the fields.
+   */
+  public void addHitFields(String[] fieldNames);
+
   /**
    * Gets the document of one hit.
+   * <p>
+   * Only the fields declared by {@link #addHitFields(String[])} are loaded at
+   * once. The other fields are loaded when they are accessed the first time.
+   * As long as no fields were declared, all fields except large ones (like
+   * the summary) are loaded at once.
    *
    * @param index The index of the hit.
    * @return the document of one hit.
@@ -118,7 +134,10 @@ public interface SearchResults {
   public int getSearchTime();
 
   /**
-   * Highlights fields in the document.
+   * Highlights fields in the document. The summary is shortened, too.
+   * <p>
+   * Nothing is done if the summary of the hit was already highlighted or
+   * shortened.
    *
    * @param index The index of the hit.
    * @return the document of one hit.
@@ -138,10 +157,28 @@ public interface SearchResults {
 
   /**
    * Shortens the summary.
+   * <p>
+   * Nothing is done if the summary of the hit was already highlighted or
+   * shortened.
    *
    * @param index The index of the hit.
    * @throws RegainException if shorten fails.
    */
   public void shortenSummary(int index) throws RegainException;
 
+  /**
+   * Gets how many hits have each value of a field.
+   * <p>
+   * The values of all fields configured in the facetFieldList of the index
+   * config are counted together in one pass over the hits on the first call.
+   * Other fields are counted on their own.
+   *
+   * @param field The name of the field. The field must have at most one
+   *        untokenized value per document.
+   * @return Holds for each value of the field (key) the number of hits having
+   *         that value (value). Values no hit has are missing.
+   * @throws RegainException If counting failed.
+   */
+  public Map<String, Integer> getFacetCounts(String field) throws RegainException;
+
 }
@@ -20,16 +20,26 @@
  */
 package net.sf.regain.search.results;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.sf.regain.RegainException;
 import net.sf.regain.RegainToolkit;
 import net.sf.regain.search.IndexSearcherManager;
+import net.sf.regain.search.MultiIndexSearcherManager;
+import net.sf.regain.search.SearchConstants;
 import net.sf.regain.search.SearchToolkit;
 import net.sf.regain.search.access.SearchAccessController;
 import net.sf.regain.search.config.IndexConfig;
@@ -42,25 +52,31 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.document.CompressionTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.FieldSelectorResult;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.index.TermPositionVector;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.FieldValueHitQueue;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocsCollector;
-import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.highlight.Encoder;
 import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.highlight.TokenSources;
 import org.apache.regexp.RE;
 import org.apache.regexp.RESyntaxException;
 
@@ -70,22 +86,42 @@ import org.apache.regexp.RESyntaxException;
  *
  * @author Thomas Tesche (thtesche), https://github.com/thtesche
  */
-public class SearchResultsImpl implements SearchResults {
+public class SearchResultsImpl implements SearchResults, Closeable {
 
-  /** The searcher (single or multi). */
+  /**
+   * The searcher (single or multi). It is shared with other searches. This
+   * object holds a reference on it until {@link #close()} is called at the end
+   * of the page, so it stays open while the hits are shown even if a new index
+   * is loaded meanwhile.
+   */
   private IndexSearcher mIndexSearcher;
-  /** The reader (multi). */
-  private MultiReader mMultiReader;
+  /**
+   * The manager mIndexSearcher was taken from if a single index is searched.
+   * Is <code>null</code> if the searcher was released.
+   */
+  private IndexSearcherManager mIndexSearcherManager;
+  /**
+   * The manager mIndexSearcher was taken from if multiple indexes are searched.
+   * Is <code>null</code> if the searcher was released.
+   */
+  private MultiIndexSearcherManager mMultiSearcherManager;
   /** The Query text. */
   private String mQueryText;
   /** The time the search took. */
   private int mSearchTime;
   /** The index name. In case of an single index it's exactly this name and 'multiindex' in other case. */
   private String mIndexName;
-  /** The hits of this search. */
-  private ScoreDoc[] hitScoreDocs;
-  /** The DocCollector. */
-  private TopDocsCollector<FieldValueHitQueue.Entry> topDocsCollector;
+  /**
+   * The hits of this search that were loaded so far. These are the first
+   * hits, the other ones are loaded when they are needed.
+   */
+  private ScoreDoc[] hitScoreDocs = new ScoreDoc[0];
+  /** The total number of hits of this search. */
+  private int mTotalHitCount;
+  /** The sort order of the hits. */
+  private Sort mSort;
+  /** Whether the hits are sorted by relevance. */
+  private boolean mSortByRelevance;
 
   private static Pattern mimetypeFieldPattern = Pattern.compile("(mimetype:\"([^:]*)\")");
   private static Pattern negativeMimetypeFieldPattern = Pattern.compile("((-|!|NOT )mimetype:\"([^:]*)\")");
@@ -94,16 +130,55 @@ public class SearchResultsImpl implements SearchResults {
    * neuen Fenster geöffnet wird.
    */
   private RE mOpenInNewWindowRegex;
-  /** The boolean query used while searching and highlighting */
-  private BooleanQuery mQuery;
+  /** The query used while searching and highlighting */
+  private Query mQuery;
+  /**
+   * The filter for the mimetype and access control clauses of the search or
+   * <code>null</code> if there are no such clauses.
+   */
+  private Filter mFilter;
   /** The current analyzer */
   private Analyzer mAnalyzer;
   /** The current config. */
   private IndexConfig mIndexConfig;
+  /**
+   * The highlighter for the summaries. Is created on first use and used for
+   * all hits.
+   */
+  private Highlighter mSummaryHighlighter;
+  /** The highlighter for the titles. Uses the same scorer as the summaries. */
+  private Highlighter mTitleHighlighter;
+  /**
+   * Holds for the fields counted so far (key) how many hits have each value of
+   * the field (value). Is <code>null</code> until the first counts are needed.
+   */
+  private HashMap<String, Map<String, Integer>> mFacetCountHash;
+  /**
+   * The fields the page shows for the hits (see {@link #addHitFields(String[])}).
+   * Is replaced when fields are added.
+   */
+  private volatile Set<String> mHitFieldSet = Collections.emptySet();
+  /** The hits whose summary was already highlighted or shortened. */
+  private BitSet mSummaryPreparedHits = new BitSet();
+
+  /**
+   * The large fields. As long as the page didn't declare the fields it shows,
+   * these are the only fields that are loaded on first access.
+   */
+  private static final Set<String> LARGE_FIELD_SET =
+          new HashSet<String>(Arrays.asList("summary", "content", "metadata"));
 
   /** The logger for this class */
   private static Logger mLog = Logger.getLogger(SearchResultsImpl.class);
 
+  /** The maximum number of searches to hold in the result cache. */
+  private static final int MAX_CACHED_SEARCH_COUNT = 100;
+  /** The maximum number of hits of one search to hold in the result cache. */
+  private static final int MAX_CACHED_HIT_COUNT = 10000;
+  /** The hits of the last searches. */
+  private static SearchResultCache mResultCache =
+          new SearchResultCache(MAX_CACHED_SEARCH_COUNT);
+
   /** held the transformed hits. */
   private List lazyHitList = ListUtils.lazyList(new ArrayList(), new Factory() {
     /** Factory for create a new LazyList-entry. */
@@ -128,28 +203,20 @@ public class SearchResultsImpl implements SearchResults {
     long startTime = System.currentTimeMillis();
     ArrayList<String> groupsArr = new ArrayList<String>();
     IndexSearcherManager[] indexSearcherManagers = new IndexSearcherManager[indexConfigs.length];
-    IndexSearcher[] searchers = new IndexSearcher[indexConfigs.length];
-    IndexReader[] readerArray = new IndexReader[indexConfigs.length];
 
     mQueryText = SearchToolkit.getSearchQuery(request);
     mLog.debug("Initial Query: " + mQueryText);
 
-    String queryText = null;
-
-    BooleanQuery mimeQuery = new BooleanQuery();
-    queryText = removeMimetypeQuery(mQueryText, mimeQuery);
-
+    boolean searcherKept = false;
     try {
     // If there is at least on index
     if (indexConfigs.length >= 1) {
 
-      boolean useAccessController = false;
       for (int i = 0; i < indexConfigs.length; i++) {
         // Get the groups the current user has reading rights for
         String[] groupArr = null;
         SearchAccessController accessController = indexConfigs[i].getSearchAccessController();
         if (accessController != null) {
-          useAccessController = true;
           groupArr = accessController.getUserGroups(request);
           // Check the Group array
           RegainToolkit.checkGroupArray(accessController, groupArr);
@@ -157,33 +224,30 @@ public class SearchResultsImpl implements SearchResults {
         }
         // build composed result: all groups over all indeces the user has the rights.
         // find the IndexSearcherManager for every index
-        indexSearcherManagers[i] = IndexSearcherManager.getInstance(indexConfigs[i].getDirectory());
+        indexSearcherManagers[i] = IndexSearcherManager.getInstance(indexConfigs[i]);
 
       }
 
       String[] allGroups = groupsArr.toArray(new String[0]);
 
-      // Decide whether to use IndexSearcher (only one index) or MultiSearcher
+      // Decide whether to use the IndexSearcher of the index (only one index)
+      // or the shared one of all indexes
       if (indexSearcherManagers.length == 1) {
         //System.out.println("SingleSearcher");
         mIndexSearcher = indexSearcherManagers[0].getIndexSearcher();
+        mIndexSearcherManager = indexSearcherManagers[0];
         mAnalyzer = indexSearcherManagers[0].getAnalyzer();
         mIndexName = indexConfigs[0].getName();
-        readerArray[0] = mIndexSearcher.getIndexReader();
-        mMultiReader = new MultiReader(readerArray, false);
 
       } else {
-        // Collect all IndexSearchers and instantiate a MultiSearcher
-        for (int j = 0; j < indexSearcherManagers.length; j++) {
-          searchers[j] = indexSearcherManagers[j].getIndexSearcher();
-          readerArray[j] = searchers[j].getIndexReader();
-        }
-        mMultiReader = new MultiReader(readerArray, false);
-
-        if (indexSearcherManagers[0] != null) {
-          indexSearcherManagers[0].releaseIndexSearcher(mIndexSearcher);
+        String[] indexDirArr = new String[indexConfigs.length];
+        for (int j = 0; j < indexConfigs.length; j++) {
+          indexDirArr[j] = indexConfigs[j].getDirectory();
         }
-        mIndexSearcher = new IndexSearcher(mMultiReader);
+        MultiIndexSearcherManager multiSearcherManager = MultiIndexSearcherManager.getInstance(indexDirArr,
+                indexConfigs[0].getSearchThreadCount(), indexConfigs[0].getMaxThreadsPerSearch());
+        mIndexSearcher = multiSearcherManager.getIndexSearcher();
+        mMultiSearcherManager = multiSearcherManager;
         // get the 'first' analyzer (in fact it is a random choice)
         // All indexes has to be build with the same analyzer
         mAnalyzer = indexSearcherManagers[0].getAnalyzer();
@@ -191,76 +255,60 @@ public class SearchResultsImpl implements SearchResults {
       }
 
       mIndexConfig = indexConfigs[0];
-      mQuery = null;
-      if (queryText != null && queryText.trim().length() > 0) {
-        // start the creation of the lucene query object
 
-        try {
-          mQuery = new BooleanQuery();
-
-          for (int k = 0; k < indexConfigs.length; k++) {
-
-            String[] searchFieldArr = indexConfigs[k].getSearchFieldList();
-            for (int i = 0; i < searchFieldArr.length; i++) {
-
-              QueryParser parser = new QueryParser(RegainToolkit.getLuceneVersion(), searchFieldArr[i], mAnalyzer);
-              parser.setDefaultOperator(QueryParser.AND_OPERATOR);
-              parser.setAllowLeadingWildcard(true);
-
-//              if (!searchFieldArr[i].equals("filename")) {
-                Query fieldQuery = parser.parse(queryText);
-                // Add as OR
-                mQuery.add(fieldQuery, Occur.SHOULD);
-//              } else {
-//                // The field filename is not stemmed
-//                mQuery.add(new TermQuery(new Term("filename", queryText)), Occur.SHOULD);
-//              }
-            }
-            if (mLog.isDebugEnabled()) {
-              mLog.debug("Query: '" + queryText + "' -> '" + mQuery.toString() + "'");
-            }
-
-          }
-        } catch (ParseException exc) {
-          throw new RegainException("Error while parsing search pattern '" + mQueryText
-                  + "': " + exc.getMessage(), exc);
-        }
-
-        // Check whether access control is used
-        if (useAccessController) {
-          mQuery = SearchToolkit.addAccessControlToQuery(mQuery, allGroups);
-        }
-      }
-
-      // Add the mimetype field search
-      if (mimeQuery.getClauses().length > 0) {
-
-        if (mQuery != null) {
-          mimeQuery.add(mQuery, Occur.MUST);
-        }
-
-        // Set the main query as query to use
-        mQuery = mimeQuery;
+      SortingOption sortingOption = new SortingOption(request.getParameter("order"));
+      mSortByRelevance = SortingOption.RELEVANCE.equals(sortingOption.getSortFieldName());
+      mSort = new Sort(sortingOption.getSortField());
+      mLog.debug("Sort by:" + sortingOption.toString());
+
+      // Check whether the same search was done before (e.g. for another page)
+      // NOTE: The cached hits are only valid for the reader they were found
+      //       on, so we check against the reader we actually got.
+      IndexReader reader = mIndexSearcher.getIndexReader();
+      String cacheKey = createCacheKey(indexConfigs, allGroups, sortingOption);
+      SearchResultCache.Entry cacheEntry = mResultCache.get(cacheKey, reader);
+      if (cacheEntry != null) {
+        mLog.debug("Using cached hits for query: " + mQueryText);
+        mQuery = cacheEntry.getQuery();
+        mFilter = cacheEntry.getFilter();
+        hitScoreDocs = cacheEntry.getScoreDocs();
+        mTotalHitCount = cacheEntry.getTotalHitCount();
+      } else {
+        mQuery = createQuery(indexConfigs, allGroups);
       }
 
-
       if (mQuery != null) {
         mLog.debug("Lucene Query: " + mQuery.toString());
+        if (mFilter != null) {
+          mLog.debug("Lucene Filter: " + mFilter.toString());
+        }
 
         try {
-          SortingOption sortingOption = new SortingOption(request.getParameter("order"));
-          Sort sort = new Sort(sortingOption.getSortField());
-          mLog.debug("Sort by:" + sortingOption.toString());
-
-          topDocsCollector = TopFieldCollector.create(sort, 10000, true, true, true, false);
-
-          mIndexSearcher.search(mQuery, topDocsCollector);
-          hitScoreDocs = topDocsCollector.topDocs().scoreDocs;
+          // Only collect the hits up to the current page
+          int fromResult = request.getParameterAsInt(SearchConstants.PARAM_FROM_RESULT, 0);
+          int maxResults = request.getParameterAsInt(SearchConstants.PARAM_MAX_RESULTS,
+                  SearchConstants.DEFAULT_MAX_RESULTS);
+          int hitsToLoad = Math.max(fromResult, 0) + Math.max(maxResults, 0);
+          if (hitsToLoad == 0) {
+            if (cacheEntry == null) {
+              // No hits are shown -> Only count them
+              mTotalHitCount = mIndexSearcher.search(mQuery, mFilter, 1).totalHits;
+            }
+          } else {
+            loadHits(hitsToLoad);
+          }
 
         } catch (IOException exc) {
           throw new RegainException("Searching query failed", exc);
         }
 
+        // Cache the hits if there are new ones
+        if (((cacheEntry == null) || (cacheEntry.getScoreDocs() != hitScoreDocs))
+          && (hitScoreDocs.length <= MAX_CACHED_HIT_COUNT))
+        {
+          mResultCache.put(cacheKey, new SearchResultCache.Entry(mQuery, mFilter,
+                  hitScoreDocs, mTotalHitCount, reader));
+        }
       }
 
       String openInNewWindowRegex = indexConfigs[0].getOpenInNewWindowRegex();
@@ -275,12 +323,11 @@ public class SearchResultsImpl implements SearchResults {
     } else {
       // no index given
     }
+    searcherKept = true;
     } finally {
-      for (int i = 0; i < indexSearcherManagers.length; i++)
-      {
-        if (indexSearcherManagers[i] != null) {
-          indexSearcherManagers[i].releaseIndexSearcher(searchers[i]);
-        }
+      // NOTE: If the search failed, no page will show hits
+      if (! searcherKept) {
+        close();
       }
     }
 
@@ -288,6 +335,175 @@ public class SearchResultsImpl implements SearchResults {
 
   }
 
+  /**
+   * Creates the query for the search. The mimetype and access control clauses
+   * don't influence the score, so they are put into a cached filter (see
+   * {@link SearchToolkit#getCachedFilter(Query)}), which is set as mFilter.
+   *
+   * @param indexConfigs The array of index configs
+   * @param allGroups The groups the user has reading rights for.
+   * @return The query or <code>null</code> if there is nothing to search for.
+   * @throws RegainException If the query text has a wrong syntax.
+   */
+  private Query createQuery(IndexConfig[] indexConfigs, String[] allGroups)
+          throws RegainException {
+    BooleanQuery mimeQuery = new BooleanQuery();
+    String queryText = removeMimetypeQuery(mQueryText, mimeQuery);
+    // NOTE: removeMimetypeQuery adds the positive mime types as MUST clause
+    boolean hasPositiveClause = false;
+    for (BooleanClause clause : mimeQuery.getClauses()) {
+      hasPositiveClause |= (clause.getOccur() == Occur.MUST);
+    }
+
+    BooleanQuery query = null;
+    if (queryText != null && queryText.trim().length() > 0) {
+      // start the creation of the lucene query object
+
+      try {
+        query = new BooleanQuery();
+
+        for (int k = 0; k < indexConfigs.length; k++) {
+
+          String[] searchFieldArr = indexConfigs[k].getSearchFieldList();
+          for (int i = 0; i < searchFieldArr.length; i++) {
+
+            QueryParser parser = new QueryParser(RegainToolkit.getLuceneVersion(), searchFieldArr[i], mAnalyzer);
+            parser.setDefaultOperator(QueryParser.AND_OPERATOR);
+            parser.setAllowLeadingWildcard(true);
+
+//            if (!searchFieldArr[i].equals("filename")) {
+              Query fieldQuery = parser.parse(queryText);
+              // Add as OR
+              query.add(fieldQuery, Occur.SHOULD);
+//            } else {
+//              // The field filename is not stemmed
+//              query.add(new TermQuery(new Term("filename", queryText)), Occur.SHOULD);
+//            }
+          }
+          if (mLog.isDebugEnabled()) {
+            mLog.debug("Query: '" + queryText + "' -> '" + query.toString() + "'");
+          }
+
+        }
+      } catch (ParseException exc) {
+        throw new RegainException("Error while parsing search pattern '" + mQueryText
+                + "': " + exc.getMessage(), exc);
+      }
+    }
+
+    if (query == null) {
+      if (! hasPositiveClause) {
+        // There is nothing to search for (Only excluding mime types match
+        // nothing)
+        return null;
+      }
+
+      // Only search for the mime types
+      query = new BooleanQuery();
+      query.add(new MatchAllDocsQuery(), Occur.MUST);
+    }
+
+    // Check whether access control is used
+    Query groupQuery = SearchToolkit.createAccessControlQuery(allGroups);
+    if (groupQuery != null) {
+      mimeQuery.add(groupQuery, Occur.MUST);
+      hasPositiveClause = true;
+    }
+
+    // Filter the mimetype and access control clauses
+    if (mimeQuery.getClauses().length > 0) {
+      if (! hasPositiveClause) {
+        // A query with excluding clauses only matches nothing
+        mimeQuery.add(new MatchAllDocsQuery(), Occur.MUST);
+      }
+      mFilter = SearchToolkit.getCachedFilter(mimeQuery);
+    }
+
+    return query;
+  }
+
+  /**
+   * Creates the key of the search for the result cache.
+   *
+   * @param indexConfigs The array of index configs
+   * @param allGroups The groups the user has reading rights for.
+   * @param sortingOption The sort order of the hits.
+   * @return The key of the search.
+   */
+  private String createCacheKey(IndexConfig[] indexConfigs, String[] allGroups,
+          SortingOption sortingOption) {
+    StringBuilder key = new StringBuilder();
+    if (mQueryText != null) {
+      key.append(mQueryText.trim().replaceAll("\\s+", " "));
+    }
+    key.append('\n');
+    for (int i = 0; i < indexConfigs.length; i++) {
+      key.append(indexConfigs[i].getName()).append('@').append(indexConfigs[i].getDirectory());
+      key.append(Arrays.toString(indexConfigs[i].getSearchFieldList())).append(' ');
+    }
+    key.append('\n');
+    // The order of the groups doesn't matter
+    key.append(new TreeSet<String>(Arrays.asList(allGroups)));
+    key.append('\n');
+    key.append(sortingOption.getFieldNameAndOrder());
+    return key.toString();
+  }
+
+  /**
+   * Loads the first hits of the search. Sets the total hit count, too.
+   * <p>
+   * When sorting by relevance, the hits that are already loaded are not
+   * searched again, the search continues after the last loaded hit.
+   * <p>
+   * NOTE: Only the search methods returning TopDocs search several indexes in
+   * parallel (see MultiIndexSearcherManager).
+   *
+   * @param count The number of hits to load.
+   * @throws IOException If searching failed.
+   */
+  private synchronized void loadHits(int count) throws IOException {
+    if (count <= hitScoreDocs.length) {
+      return;
+    }
+
+    if (mSortByRelevance) {
+      // Continue after the last loaded hit
+      ScoreDoc after = (hitScoreDocs.length == 0) ? null : hitScoreDocs[hitScoreDocs.length - 1];
+      TopDocs topDocs = mIndexSearcher.searchAfter(after, mQuery, mFilter,
+              count - hitScoreDocs.length);
+      ScoreDoc[] newScoreDocs = topDocs.scoreDocs;
+
+      ScoreDoc[] scoreDocs = new ScoreDoc[hitScoreDocs.length + newScoreDocs.length];
+      System.arraycopy(hitScoreDocs, 0, scoreDocs, 0, hitScoreDocs.length);
+      System.arraycopy(newScoreDocs, 0, scoreDocs, hitScoreDocs.length, newScoreDocs.length);
+      hitScoreDocs = scoreDocs;
+      if (after == null) {
+        mTotalHitCount = topDocs.totalHits;
+      }
+    } else {
+      // NOTE: The scores are not needed for sorting, by default the
+      // IndexSearcher doesn't calculate them. They are calculated for the
+      // shown hits only (see getHitScore).
+      TopDocs topDocs = mIndexSearcher.search(mQuery, mFilter, count, mSort);
+      hitScoreDocs = topDocs.scoreDocs;
+      mTotalHitCount = topDocs.totalHits;
+    }
+  }
+
+  /**
+   * Makes sure that a hit is loaded.
+   *
+   * @param index The index of the hit.
+   * @throws IOException If searching failed.
+   */
+  private void ensureHitLoaded(int index) throws IOException {
+    if ((index >= hitScoreDocs.length) && (index < mTotalHitCount)) {
+      // Load some more hits, so paging through the hits doesn't search for
+      // each hit
+      loadHits(Math.max(index + 1, hitScoreDocs.length * 2));
+    }
+  }
+
   /**
    * Create a Query from mime type terms and remove them from the query text
    * @param queryText   Original query text
@@ -395,10 +611,30 @@ public class SearchResultsImpl implements SearchResults {
    */
   @Override
   public int getHitCount() {
-    if (hitScoreDocs == null) {
-      return 0;
+    return mTotalHitCount;
+  }
+
+  /**
+   * Releases the searcher. Is called at the end of the page (see
+   * {@link PageRequest#addCloseable(Closeable)}). Afterwards no hits can be
+   * loaded anymore.
+   */
+  @Override
+  public void close() {
+    try {
+      if (mMultiSearcherManager != null) {
+        mMultiSearcherManager.releaseIndexSearcher(mIndexSearcher);
+      } else if (mIndexSearcherManager != null) {
+        mIndexSearcherManager.releaseIndexSearcher(mIndexSearcher);
+      }
+    }
+    catch (RegainException exc) {
+      mLog.error("Releasing the index searcher failed", exc);
+    }
+    finally {
+      mMultiSearcherManager = null;
+      mIndexSearcherManager = null;
     }
-    return hitScoreDocs.length;
   }
 
   /**
@@ -408,10 +644,10 @@ public class SearchResultsImpl implements SearchResults {
    */
   @Override
   public int getDocumentCount() {
-    if (mMultiReader == null) {
+    if (mIndexSearcher == null) {
       return 0;
     }
-    return mMultiReader.numDocs() - mMultiReader.numDeletedDocs();
+    return mIndexSearcher.getIndexReader().numDocs();
   }
 
   /**
@@ -432,7 +668,9 @@ public class SearchResultsImpl implements SearchResults {
       // The document is empty, so it's created by the factory. Replace it with the real one
       // at this position
       if (currDoc.getFields().isEmpty()) {
-        lazyHitList.set(index, mIndexSearcher.doc(hitScoreDocs[index].doc));
+        ensureHitLoaded(index);
+        lazyHitList.set(index, mIndexSearcher.doc(hitScoreDocs[index].doc,
+                new HitFieldSelector(mHitFieldSet)));
       }
     } catch (Exception ex) {
       throw new RegainException("Error while accessing index", ex);
@@ -441,6 +679,36 @@ public class SearchResultsImpl implements SearchResults {
 
   }
 
+  /**
+   * Declares index fields the page shows for the hits.
+   *
+   * @param fieldNames The names of the fields.
+   */
+  @Override
+  public synchronized void addHitFields(String[] fieldNames) {
+    List<String> fieldList = Arrays.asList(fieldNames);
+    if (! mHitFieldSet.containsAll(fieldList)) {
+      // NOTE: The set is replaced, so loading hits doesn't need to synchronize
+      HashSet<String> hitFieldSet = new HashSet<String>(mHitFieldSet);
+      hitFieldSet.addAll(fieldList);
+      mHitFieldSet = hitFieldSet;
+    }
+  }
+
+  /**
+   * Marks the summary of a hit as highlighted or shortened.
+   *
+   * @param index The index of the hit.
+   * @return Whether the summary was not highlighted or shortened before.
+   */
+  private synchronized boolean markSummaryPrepared(int index) {
+    if (mSummaryPreparedHits.get(index)) {
+      return false;
+    }
+    mSummaryPreparedHits.set(index);
+    return true;
+  }
+
   /**
    * Writes a changed document back to the list.
    *
@@ -464,7 +732,14 @@ public class SearchResultsImpl implements SearchResults {
   @Override
   public float getHitScore(int index) throws RegainException {
     try {
-      return hitScoreDocs[index].score;
+      ensureHitLoaded(index);
+      ScoreDoc scoreDoc = hitScoreDocs[index];
+      if (Float.isNaN(scoreDoc.score)) {
+        // The scores are not tracked when sorting by a field
+        // -> Calculate the score of this hit
+        scoreDoc.score = mIndexSearcher.explain(mQuery, scoreDoc.doc).getValue();
+      }
+      return scoreDoc.score;
     } catch (Exception exc) {
       throw new RegainException("Error while getting score of search hit #" + index, exc);
     }
@@ -480,6 +755,60 @@ public class SearchResultsImpl implements SearchResults {
     return mSearchTime;
   }
 
+  /**
+   * Gets how many hits have each value of a field.
+   * <p>
+   * The values of all fields of the facetFieldList are counted by a
+   * {@link FacetCollector} in one pass over the hits on the first call.
+   *
+   * @param field The name of the field.
+   * @return Holds for each value of the field the number of hits having it.
+   * @throws RegainException If counting failed.
+   */
+  @Override
+  public synchronized Map<String, Integer> getFacetCounts(String field)
+          throws RegainException {
+    if (mQuery == null) {
+      return Collections.emptyMap();
+    }
+
+    if (mFacetCountHash == null) {
+      mFacetCountHash = new HashMap<String, Map<String, Integer>>();
+      countFacets(mIndexConfig.getFacetFieldList());
+    }
+    if (! mFacetCountHash.containsKey(field)) {
+      countFacets(new String[] { field });
+    }
+
+    return mFacetCountHash.get(field);
+  }
+
+  /**
+   * Counts the values of some fields in one pass over the hits.
+   *
+   * @param fieldArr The fields to count the values of.
+   * @throws RegainException If searching failed.
+   */
+  private void countFacets(String[] fieldArr) throws RegainException {
+    if (fieldArr.length == 0) {
+      return;
+    }
+
+    long startTime = System.currentTimeMillis();
+    try {
+      FacetCollector collector = new FacetCollector(fieldArr);
+      mIndexSearcher.search(mQuery, mFilter, collector);
+      mFacetCountHash.putAll(collector.getCounts());
+    } catch (IOException exc) {
+      throw new RegainException("Counting the values of "
+              + Arrays.toString(fieldArr) + " failed", exc);
+    }
+    if (mLog.isDebugEnabled()) {
+      mLog.debug("Counted the values of " + Arrays.toString(fieldArr) + " in "
+              + (System.currentTimeMillis() - startTime) + " ms");
+    }
+  }
+
   /**
    * Gets whether a hit should be opened in a new window.
    *
@@ -571,6 +900,10 @@ public class SearchResultsImpl implements SearchResults {
    */
   @Override
   public void shortenSummary(int index) throws RegainException {
+    if (! markSummaryPrepared(index)) {
+      return;
+    }
+
     Document document = getHitDocument(index);
     String text = SearchToolkit.getCompressedFieldValue(document, "summary");
 
@@ -598,28 +931,21 @@ public class SearchResultsImpl implements SearchResults {
    */
   @Override
   public void highlightHitDocument(int index) throws RegainException {
+    if (! markSummaryPrepared(index)) {
+      return;
+    }
 
-    IndexSearcher searcher = null;
-    IndexSearcherManager manager = null;
     try {
-      manager = IndexSearcherManager.getInstance(mIndexConfig.getDirectory());
-      searcher = manager.getIndexSearcher();
-      // The highlighter needs a rewritten query to work with wildcard and fuzzy queries
-      Query rewrittenQuery = searcher.rewrite(mQuery);
-      QueryScorer queryScorer = new QueryScorer(rewrittenQuery);
-      // End added by Anders
-
-      Highlighter highlighter = new Highlighter(
-              new SimpleHTMLFormatter("<span class=\"highlight\">", "</span>"), queryScorer);
+      createHighlighters();
 
       // Remark: the summary is at this point not a summary. It contains the
       // first n characters from the document. n is configurable (default: 250000)
       // We transform this summary into
       // a) a summary matching the search terms (highlighting)
       // b) and a shortend summary (200 characters)
-//      int docId = hitScoreDocs[index].doc;
 
       Document document = getHitDocument(index);
+      int docId = hitScoreDocs[index].doc;
       String text = SearchToolkit.getCompressedFieldValue(document, "summary");
 
       if (text != null) {
@@ -634,14 +960,20 @@ public class SearchResultsImpl implements SearchResults {
         }
 
         String resHighlSummary = null;
-        // Remove 'html', this works the same way as PageResponse.printNoHTML()
-        text = RegainToolkit.replace(text, "<", "&lt;");
-        text = RegainToolkit.replace(text, ">", "&gt;");
-
-        TokenStream tokenStream = mAnalyzer.tokenStream("content",
-                new StringReader(text));
+        // Use the term vector of the summary if there is one. Otherwise the
+        // summary has to be analyzed again.
+        TokenStream tokenStream;
+        TermFreqVector termVector = mIndexSearcher.getIndexReader().getTermFreqVector(docId, "summary");
+        if ((termVector instanceof TermPositionVector) && (termVector.size() > 0)
+                && (((TermPositionVector) termVector).getOffsets(0) != null)) {
+          tokenStream = TokenSources.getTokenStream((TermPositionVector) termVector, false);
+        } else {
+          tokenStream = mAnalyzer.tokenStream("content", new StringReader(text));
+        }
         // Get 3 best fragments and seperate with a " ... "
-        resHighlSummary = highlighter.getBestFragments(tokenStream, text, 3, " ... ");
+        // NOTE: The highlighter removes 'html' from the text, this works the
+        //       same way as PageResponse.printNoHTML()
+        resHighlSummary = mSummaryHighlighter.getBestFragments(tokenStream, text, 3, " ... ");
 
         if (resHighlSummary != null) {
           //System.out.println("Highlighted summary: " + resHighlSummary);
@@ -657,7 +989,7 @@ public class SearchResultsImpl implements SearchResults {
         TokenStream tokenStream = mAnalyzer.tokenStream("content",
                 new StringReader(text));
         // Get the best fragment
-        resHighlTitle = highlighter.getBestFragment(tokenStream, text);
+        resHighlTitle = mTitleHighlighter.getBestFragment(tokenStream, text);
       }
 
       if (resHighlTitle != null) {
@@ -680,15 +1012,88 @@ public class SearchResultsImpl implements SearchResults {
 
     } catch (IOException exIO) {
       throw new RegainException("Error while searching pattern: " + mQueryText, exIO);
+    }
 
-    } finally {
-      if (manager != null) {
-        manager.releaseIndexSearcher(searcher);
+  }
+
+  /**
+   * Creates the highlighters, if this was not done yet.
+   *
+   * @throws IOException If rewriting the query failed.
+   */
+  private synchronized void createHighlighters() throws IOException {
+    if (mSummaryHighlighter == null) {
+      // The highlighter needs a rewritten query to work with wildcard and fuzzy
+      // queries. Rewriting may be expensive, so it is done once for all hits.
+      Query rewrittenQuery = mIndexSearcher.rewrite(mQuery);
+      QueryScorer queryScorer = new QueryScorer(rewrittenQuery);
+
+      SimpleHTMLFormatter formatter = new SimpleHTMLFormatter("<span class=\"highlight\">", "</span>");
+      mSummaryHighlighter = new Highlighter(formatter, new HtmlTagEncoder(), queryScorer);
+      mTitleHighlighter = new Highlighter(formatter, queryScorer);
+    }
+  }
+
+  /**
+   * Selects the fields of a hit document that are loaded at once. All other
+   * fields are loaded when they are accessed the first time.
+   */
+  private static class HitFieldSelector implements FieldSelector {
+
+    static final long serialVersionUID = 1L;
+
+    /** The fields the page shows for the hits. */
+    private Set<String> mFieldSet;
+
+    /**
+     * Creates a new instance of HitFieldSelector.
+     *
+     * @param fieldSet The fields the page shows for the hits. If empty, all
+     *        fields except the large ones are loaded at once.
+     */
+    public HitFieldSelector(Set<String> fieldSet) {
+      mFieldSet = fieldSet;
+    }
+
+    /**
+     * Decides whether a field is loaded at once.
+     *
+     * @param fieldName The name of the field.
+     * @return Whether to load the field at once or on first access.
+     */
+    public FieldSelectorResult accept(String fieldName) {
+      if (mFieldSet.contains(fieldName) || fieldName.equals("url")) {
+        // NOTE: The URL is needed for most hit tags
+        return FieldSelectorResult.LOAD;
+      } else if (mFieldSet.isEmpty() && ! LARGE_FIELD_SET.contains(fieldName)) {
+        return FieldSelectorResult.LOAD;
+      } else {
+        return FieldSelectorResult.LAZY_LOAD;
       }
     }
 
   }
 
+  /**
+   * Escapes the html tags of the highlighted text. The text is escaped by the
+   * highlighter and not before, so the offsets of the term vectors still
+   * match.
+   */
+  private static class HtmlTagEncoder implements Encoder {
+
+    /**
+     * Escapes the html tags of a text.
+     *
+     * @param originalText The text to escape.
+     * @return The escaped text.
+     */
+    public String encodeText(String originalText) {
+      String text = RegainToolkit.replace(originalText, "<", "&lt;");
+      return RegainToolkit.replace(text, ">", "&gt;");
+    }
+
+  }
+
   /**
    * Gets whether the search terms should be highlighted
    *
@@ -0,0 +1,220 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.search.sharedlib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.regain.RegainException;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.SearchConstants;
+import net.sf.regain.search.SearchToolkit;
+import net.sf.regain.search.results.SearchResults;
+import net.sf.regain.util.sharedtag.PageRequest;
+import net.sf.regain.util.sharedtag.PageResponse;
+import net.sf.regain.util.sharedtag.SharedTag;
+
+/**
+ * Generates a list of the values of a field the hits have, together with the
+ * number of hits having each value. Each value links to the search results
+ * restricted to that value.
+ * <p>
+ * The values are counted in one pass over the hits (see
+ * {@link SearchResults#getFacetCounts(String)}).
+ * <p>
+ * Tag Parameters:
+ * <ul>
+ * <li><code>field</code>: The name of the index field to create the list for.</li>
+ * <li><code>depth</code>: The number of path levels to show for a path field
+ *     like path_sort. The hits below a shown path are counted for it. If not
+ *     set, the values are shown as they are.</li>
+ * <li><code>maxValues</code>: The maximum number of values to show. The values
+ *     most hits have are shown first.</li>
+ * <li><code>targetPage</code>: The URL of the page where the links should point to.</li>
+ * <li><code>class</code>: The style sheet class to use for the list.</li>
+ * </ul>
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class FacetlistTag extends SharedTag implements SearchConstants {
+
+  /** Die Default-Seite, auf die die Links zeigen sollen. */
+  private static final String DEFAULT_TARGET_PAGE = "SearchOutput.jsp";
+
+
+  /**
+   * Called when the parser reaches the end tag.
+   *
+   * @param request The page request.
+   * @param response The page response.
+   * @throws RegainException If there was an exception.
+   */
+  @Override
+  public void printEndTag(PageRequest request, PageResponse response)
+    throws RegainException
+  {
+    String fieldName = getParameter("field", true);
+    int depth = getParameterAsInt("depth", -1);
+    int maxValues = getParameterAsInt("maxValues", Integer.MAX_VALUE);
+
+    SearchResults results = SearchToolkit.getSearchResults(request);
+    Map<String, Integer> countMap = results.getFacetCounts(fieldName);
+    if (depth >= 0) {
+      countMap = groupByPath(countMap, depth);
+    }
+    if (countMap.isEmpty()) {
+      return;
+    }
+
+    // Sort the values: The values most hits have first
+    final Map<String, Integer> counts = countMap;
+    ArrayList<String> valueList = new ArrayList<String>(counts.keySet());
+    Collections.sort(valueList, new Comparator<String>() {
+      @Override
+      public int compare(String value1, String value2) {
+        int diff = counts.get(value2).intValue() - counts.get(value1).intValue();
+        return (diff != 0) ? diff : value1.compareTo(value2);
+      }
+    });
+
+    String query = SearchToolkit.getSearchQuery(request);
+    String styleSheetClass = getParameter("class");
+    if (styleSheetClass != null) {
+      response.print("<ul class=\"" + styleSheetClass + "\">");
+    } else {
+      response.print("<ul>");
+    }
+    for (int i = 0; i < valueList.size() && i < maxValues; i++) {
+      String value = valueList.get(i);
+      String refinedQuery = query + " " + createFieldQuery(fieldName, value, depth >= 0);
+
+      response.print("<li>");
+      printLink(request, response, refinedQuery);
+      // Undo the encoding of spaces done by Crawler.addJob
+      response.printNoHtml(RegainToolkit.replace(value, "%20", " "));
+      response.print("</a> (" + counts.get(value) + ")</li>");
+    }
+    response.print("</ul>");
+  }
+
+
+  /**
+   * Groups the counts of path values by their first path levels.
+   *
+   * @param countMap The counts of the paths.
+   * @param depth The number of path levels to keep.
+   * @return The counts of the shortened paths.
+   */
+  private Map<String, Integer> groupByPath(Map<String, Integer> countMap, int depth) {
+    HashMap<String, Integer> groupedMap = new HashMap<String, Integer>();
+    for (Map.Entry<String, Integer> entry : countMap.entrySet()) {
+      String path = entry.getKey();
+
+      // Cut the path after the depth-th slash (a leading slash doesn't count)
+      int pos = path.startsWith("/") ? 1 : 0;
+      for (int level = 0; level < depth && pos >= 0; level++) {
+        pos = path.indexOf('/', pos);
+        if (pos >= 0) {
+          pos++;
+        }
+      }
+      if (pos >= 0) {
+        path = path.substring(0, pos);
+      }
+      if (path.length() == 0) {
+        // Hits without a path are not shown
+        continue;
+      }
+
+      Integer count = groupedMap.get(path);
+      int oldCount = (count == null) ? 0 : count.intValue();
+      groupedMap.put(path, oldCount + entry.getValue().intValue());
+    }
+    return groupedMap;
+  }
+
+
+  /**
+   * Creates the query text that restricts the search to a value of a field.
+   *
+   * @param fieldName The name of the field.
+   * @param value The value.
+   * @param isPrefix Whether value is a prefix of the wanted values.
+   * @return The query text.
+   */
+  private String createFieldQuery(String fieldName, String value, boolean isPrefix) {
+    StringBuilder fieldQuery = new StringBuilder(fieldName).append(':');
+    if (isPrefix) {
+      // Escape all special characters and the white space
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (! Character.isLetterOrDigit(c)) {
+          fieldQuery.append('\\');
+        }
+        fieldQuery.append(c);
+      }
+      fieldQuery.append('*');
+    } else {
+      fieldQuery.append('"').append(RegainToolkit.replace(value, "\"", "\\\"")).append('"');
+    }
+    return fieldQuery.toString();
+  }
+
+
+  /**
+   * Prints the start of a hyperlink to the search results of a query.
+   *
+   * @param request The page request.
+   * @param response The page response.
+   * @param query The search query.
+   * @throws RegainException If printing failed.
+   */
+  private void printLink(PageRequest request, PageResponse response, String query)
+    throws RegainException
+  {
+    String targetPage = getParameter("targetPage", DEFAULT_TARGET_PAGE);
+
+    String encoding = response.getEncoding();
+    String encodedQuery = RegainToolkit.urlEncode(query, encoding);
+
+    response.print("<a href=\"" + targetPage + "?query=" + encodedQuery);
+    String[] indexNameArr = request.getParameters("index");
+    if (indexNameArr != null) {
+      for (int i = 0; i < indexNameArr.length; i++) {
+        String encodedIndexName = RegainToolkit.urlEncode(indexNameArr[i], encoding);
+        response.print("&index=" + encodedIndexName);
+      }
+    }
+    int maxResults = request.getParameterAsInt(PARAM_MAX_RESULTS, SearchConstants.DEFAULT_MAX_RESULTS);
+    if (maxResults != SearchConstants.DEFAULT_MAX_RESULTS) {
+      response.print("&maxresults=" + maxResults);
+    }
+    String order = request.getParameter("order");
+    if (order != null && order.length() > 0) {
+      response.print("&order=" + order);
+    }
+    response.print("\">");
+  }
+
+}
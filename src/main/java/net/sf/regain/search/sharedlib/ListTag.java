@@ -113,15 +113,10 @@ public class ListTag extends SharedTag implements SearchConstants {
     PageRequest request)
     throws RegainException
   {
-    boolean shouldHighlight = results.getShouldHighlight(hitIndex);
-
     try {
+      // NOTE: The summary is highlighted or shortened by the hit tags showing
+      //       it, so it is only read if it is needed
       Document hit = results.getHitDocument(hitIndex);
-      if (shouldHighlight) {
-        results.highlightHitDocument(hitIndex);
-      } else {
-        results.shortenSummary(hitIndex);
-      }
       request.setContextAttribute(ATTR_CURRENT_HIT, hit);
       float score = results.getHitScore(hitIndex);
       request.setContextAttribute(ATTR_CURRENT_HIT_SCORE, score);
@@ -131,6 +126,7 @@ public class ListTag extends SharedTag implements SearchConstants {
       //System.out.println("order: " + order);
       if (!(order == null || order.length() == 0 || order.startsWith(SortingOption.RELEVANCE))) {
         String fieldName = order.substring(0, order.lastIndexOf("_"));
+        results.addHitFields(new String[] { fieldName });
         //System.out.println("none standard order. fieldname: " + fieldName);
         Fieldable field = hit.getFieldable(fieldName);
         String fieldContent = null;
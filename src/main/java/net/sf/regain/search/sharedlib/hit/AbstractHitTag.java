@@ -22,6 +22,8 @@ package net.sf.regain.search.sharedlib.hit;
 
 import net.sf.regain.RegainException;
 import net.sf.regain.search.SearchConstants;
+import net.sf.regain.search.SearchToolkit;
+import net.sf.regain.search.results.SearchResults;
 import net.sf.regain.util.sharedtag.PageRequest;
 import net.sf.regain.util.sharedtag.PageResponse;
 import net.sf.regain.util.sharedtag.SharedTag;
@@ -31,6 +33,9 @@ import org.apache.lucene.document.Document;
 /**
  * Parent class for all tags that show information about a search hit. Provides
  * a template method that gets the current hit.
+ * <p>
+ * The tags declare the index fields they show (see {@link #getHitFields()}),
+ * so only these fields are loaded at once for the next hits.
  *
  * @author Til Schneider, www.murfman.de
  */
@@ -59,10 +64,48 @@ public abstract class AbstractHitTag extends SharedTag
 
     Integer hitIndex = (Integer) request.getContextAttribute(ATTR_CURRENT_HIT_INDEX);
 
+    String[] hitFields = getHitFields();
+    if (hitFields.length != 0) {
+      SearchToolkit.getSearchResults(request).addHitFields(hitFields);
+    }
+
     printEndTag(request, response, hit, hitIndex.intValue());
   }
 
 
+  /**
+   * Gets the index fields this tag shows.
+   * <p>
+   * May be overridden by subclasses. The default implementation returns an
+   * empty array.
+   *
+   * @return The names of the fields.
+   * @throws RegainException If a tag parameter is missing.
+   */
+  protected String[] getHitFields() throws RegainException {
+    return new String[0];
+  }
+
+
+  /**
+   * Highlights or shortens the summary of a hit, depending on the index
+   * config. The summary is only read if a tag needs it.
+   *
+   * @param results The search results.
+   * @param hitIndex The index of the hit.
+   * @throws RegainException If highlighting failed.
+   */
+  protected void prepareSummary(SearchResults results, int hitIndex)
+    throws RegainException
+  {
+    if (results.getShouldHighlight(hitIndex)) {
+      results.highlightHitDocument(hitIndex);
+    } else {
+      results.shortenSummary(hitIndex);
+    }
+  }
+
+
   /**
    * The template method.
    * <p>
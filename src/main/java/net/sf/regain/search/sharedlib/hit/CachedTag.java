@@ -46,9 +46,8 @@ public class CachedTag extends AbstractHitTag {
           Document hit, int hitIndex)
           throws RegainException {
 
-    String content = null;
-    content = hit.get("content");
-    if (content != null) {
+    // NOTE: The content is not loaded, it is only checked whether there is one
+    if (hit.getFieldable("content") != null) {
       String hitNumber = Integer.toString(hitIndex + 1);
 
       response.print("<span class=\"cached\" onclick=\"return toggleMe('hit_" +
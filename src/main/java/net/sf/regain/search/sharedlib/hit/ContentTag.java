@@ -33,6 +33,17 @@ import org.apache.lucene.document.Document;
  */
 public class ContentTag extends AbstractHitTag {
 
+  /**
+   * Gets the index fields this tag shows.
+   *
+   * @return The names of the fields.
+   */
+  @Override
+  protected String[] getHitFields() {
+    return new String[] { "content" };
+  }
+
+
   /**
    * Generates the tag.
    *
@@ -41,6 +41,18 @@ import org.apache.lucene.document.Document;
  */
 public class FieldTag extends AbstractHitTag {
 
+  /**
+   * Gets the index fields this tag shows.
+   *
+   * @return The names of the fields.
+   * @throws RegainException If the field parameter is missing.
+   */
+  @Override
+  protected String[] getHitFields() throws RegainException {
+    return new String[] { getParameter("field", true) };
+  }
+
+
   /**
    * Generates the tag.
    *
@@ -54,6 +66,7 @@ public class FieldTag extends AbstractHitTag {
           Document hit, int hitIndex)
           throws RegainException {
     boolean shouldHighlight;
+    SearchResults results = SearchToolkit.getSearchResults(request);
 
     String highlight = getParameter("highlight");
     if (highlight != null)
@@ -62,11 +75,14 @@ public class FieldTag extends AbstractHitTag {
     }
     else
     {
-      SearchResults results = SearchToolkit.getSearchResults(request);
       shouldHighlight = results.getShouldHighlight(hitIndex);
     }
 
     String fieldname = getParameter("field", true);
+    if (fieldname.equals("summary") || (shouldHighlight && fieldname.equals("title"))) {
+      // Highlight or shorten the summary (the title is highlighted with it)
+      prepareSummary(results, hitIndex);
+    }
     String value = null;
     if (shouldHighlight) {
       value = hit.get(RegainToolkit.createHighlightedFieldIdent(fieldname));
@@ -36,6 +36,17 @@ import org.apache.lucene.document.Document;
  */
 public class LastModifiedTag extends AbstractHitTag {
 
+  /**
+   * Gets the index fields this tag shows.
+   *
+   * @return The names of the fields.
+   */
+  @Override
+  protected String[] getHitFields() {
+    return new String[] { "last-modified" };
+  }
+
+
   /**
    * Generates the tag.
    *
@@ -42,6 +42,17 @@ import org.apache.lucene.document.Document;
  */
 public class LinkTag extends AbstractHitTag {
 
+  /**
+   * Gets the index fields this tag shows.
+   *
+   * @return The names of the fields.
+   */
+  @Override
+  protected String[] getHitFields() {
+    return new String[] { "url", "title" };
+  }
+
+
   /**
    * Generates the tag.
    *
@@ -58,6 +69,10 @@ public class LinkTag extends AbstractHitTag {
     // Get the search results
     SearchResults results = SearchToolkit.getSearchResults(request);
     boolean shouldHighlight = results.getShouldHighlight(hitIndex);
+    if (shouldHighlight) {
+      // Create the highlighted title
+      prepareSummary(results, hitIndex);
+    }
     boolean onlyUrl = getParameterAsBoolean("onlyUrl", false);
 
     String url = results.getHitUrl(hitIndex);
@@ -46,6 +46,17 @@ import org.apache.lucene.document.Document;
  */
 public class PathTag extends AbstractHitTag {
 
+  /**
+   * Gets the index fields this tag shows.
+   *
+   * @return The names of the fields.
+   */
+  @Override
+  protected String[] getHitFields() {
+    return new String[] { "path" };
+  }
+
+
   /**
    * Generates the tag.
    *
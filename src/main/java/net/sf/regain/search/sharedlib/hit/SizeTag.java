@@ -34,6 +34,17 @@ import org.apache.lucene.document.Document;
  */
 public class SizeTag extends AbstractHitTag {
 
+  /**
+   * Gets the index fields this tag shows.
+   *
+   * @return The names of the fields.
+   */
+  @Override
+  protected String[] getHitFields() {
+    return new String[] { "size" };
+  }
+
+
   /**
    * Generates the tag.
    *
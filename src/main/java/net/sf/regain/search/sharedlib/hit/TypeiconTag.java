@@ -52,6 +52,17 @@ public class TypeiconTag extends AbstractHitTag {
   private static HashMap<String, Boolean> mExtensionAvailableMap = new HashMap<String, Boolean>();
 
 
+  /**
+   * Gets the index fields this tag shows.
+   *
+   * @return The names of the fields.
+   */
+  @Override
+  protected String[] getHitFields() {
+    return new String[] { "url" };
+  }
+
+
   /**
    * Generates the tag.
    *
@@ -41,6 +41,17 @@ import org.apache.lucene.document.Document;
  */
 public class UrlTag extends AbstractHitTag {
 
+  /**
+   * Gets the index fields this tag shows.
+   *
+   * @return The names of the fields.
+   */
+  @Override
+  protected String[] getHitFields() {
+    return new String[] { "url" };
+  }
+
+
   /**
    * Generates the tag.
    *
@@ -31,6 +31,7 @@ import net.sf.regain.RegainToolkit;
 import net.sf.regain.crawler.Crawler;
 import net.sf.regain.crawler.config.CrawlerConfig;
 import net.sf.regain.crawler.config.XmlCrawlerConfig;
+import net.sf.regain.search.IndexSearcherManager;
 
 import org.apache.log4j.Logger;
 
@@ -212,6 +213,9 @@ public class IndexUpdateManager implements DesktopConstants {
           mLog.info("Starting index update on " + new Date());
           mCrawler = new Crawler(config, authProps);
           mCrawler.run(true, false, null);
+
+          // Let the search use the new index at once
+          IndexSearcherManager.notifyIndexUpdate(config.getIndexDir());
         }
         catch (RegainException exc) {
           mLog.error("Updating the index failed", exc);
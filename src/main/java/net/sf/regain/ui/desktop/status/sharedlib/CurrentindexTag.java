@@ -81,7 +81,7 @@ public class CurrentindexTag extends SharedTag implements DesktopConstants {
       String sizeAsString = RegainToolkit.bytesToString(size, request.getLocale());
 
       // Get the document count
-      IndexSearcherManager manager = IndexSearcherManager.getInstance(config.getDirectory());
+      IndexSearcherManager manager = IndexSearcherManager.getInstance(config);
       int docCount = manager.getDocumentCount();
 
       // Print the results
@@ -0,0 +1,93 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.ui.server.taglib;
+
+import net.sf.regain.util.sharedtag.taglib.SharedTagWrapperTag;
+
+/**
+ * Taglib wrapper for the shared facetlist tag.
+ *
+ * @see net.sf.regain.search.sharedlib.FacetlistTag
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class FacetlistTag extends SharedTagWrapperTag {
+
+  static final long serialVersionUID = 1L;
+
+  /**
+   * Creates a new instance of FacetlistTag.
+   */
+  public FacetlistTag() {
+    super(new net.sf.regain.search.sharedlib.FacetlistTag());
+  }
+
+
+  /**
+   * Sets the name of the index field to create the list for.
+   *
+   * @param field The name of the index field.
+   */
+  public void setField(String field) {
+    getNestedTag().setParameter("field", field);
+  }
+
+
+  /**
+   * Sets the number of path levels to show for a path field.
+   *
+   * @param depth The number of path levels to show.
+   */
+  public void setDepth(String depth) {
+    getNestedTag().setParameter("depth", depth);
+  }
+
+
+  /**
+   * Sets the maximum number of values to show.
+   *
+   * @param maxValues The maximum number of values to show.
+   */
+  public void setMaxValues(String maxValues) {
+    getNestedTag().setParameter("maxValues", maxValues);
+  }
+
+
+  /**
+   * Sets the URL of the page where the links should point to.
+   *
+   * @param targetPage The URL of the page where the links should point to.
+   */
+  public void setTargetPage(String targetPage) {
+    getNestedTag().setParameter("targetPage", targetPage);
+  }
+
+
+  /**
+   * Sets the style sheet class to use for the list.
+   *
+   * @param styleSheetClass The style sheet class to use for the list.
+   */
+  public void setClass(String styleSheetClass) {
+    getNestedTag().setParameter("class", styleSheetClass);
+  }
+
+}
@@ -20,6 +20,7 @@
  */
 package net.sf.regain.util;
 
+import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -41,7 +42,9 @@ import java.util.Set;
  * @param <K> Key
  * @param <V> Value
  */
-public class ChainedHashMap<K, V> implements Map<K, V>, Iterable<Map.Entry<K, V>> {
+public class ChainedHashMap<K, V> implements Map<K, V>, Iterable<Map.Entry<K, V>>, Serializable {
+
+    static final long serialVersionUID = 1L;
 
     private static final int DEFAULT_HASHTABLE_SIZE = 20;
 
@@ -0,0 +1,175 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks on a shared thread pool, but at most a certain number at a time.
+ * The other tasks wait in a queue, so other users of the pool get their share
+ * of the threads.
+ * <p>
+ * The lifecycle methods only affect this executor, never the shared pool:
+ * After {@link #shutdown()} no new tasks are accepted, but the waiting ones
+ * are still run. {@link #shutdownNow()} returns the waiting tasks instead of
+ * running them. Running tasks are not interrupted, since the threads belong
+ * to the shared pool.
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class LimitedExecutor extends AbstractExecutorService {
+
+  /** The shared thread pool. */
+  private Executor mExecutor;
+  /** The maximum number of tasks running at a time. */
+  private int mMaxThreads;
+  /** The tasks waiting to be run. Also the lock of this executor. */
+  private LinkedList<Runnable> mTaskList = new LinkedList<Runnable>();
+  /** The number of threads of the pool running tasks for this executor. */
+  private int mThreadCount;
+  /** Whether this executor was shut down. */
+  private boolean mIsShutdown;
+
+
+  /**
+   * Creates a new instance of LimitedExecutor.
+   *
+   * @param executor The shared thread pool.
+   * @param maxThreads The maximum number of tasks running at a time.
+   */
+  public LimitedExecutor(Executor executor, int maxThreads) {
+    mExecutor = executor;
+    mMaxThreads = maxThreads;
+  }
+
+
+  @Override
+  public void execute(Runnable task) {
+    synchronized (mTaskList) {
+      if (mIsShutdown) {
+        throw new RejectedExecutionException("The executor is shut down");
+      }
+      mTaskList.add(task);
+      if (mThreadCount >= mMaxThreads) {
+        // A running thread will take the task
+        return;
+      }
+      mThreadCount++;
+    }
+
+    try {
+      mExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          runTasks();
+        }
+      });
+    }
+    catch (RuntimeException exc) {
+      synchronized (mTaskList) {
+        mTaskList.remove(task);
+        mThreadCount--;
+        mTaskList.notifyAll();
+      }
+      throw exc;
+    }
+  }
+
+
+  /**
+   * Runs the waiting tasks until there are no more.
+   */
+  private void runTasks() {
+    while (true) {
+      Runnable task;
+      synchronized (mTaskList) {
+        task = mTaskList.poll();
+        if (task == null) {
+          mThreadCount--;
+          // Wake up awaitTermination
+          mTaskList.notifyAll();
+          return;
+        }
+      }
+      task.run();
+    }
+  }
+
+
+  @Override
+  public void shutdown() {
+    synchronized (mTaskList) {
+      mIsShutdown = true;
+    }
+  }
+
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    synchronized (mTaskList) {
+      mIsShutdown = true;
+      List<Runnable> waitingList = new ArrayList<Runnable>(mTaskList);
+      mTaskList.clear();
+      return waitingList;
+    }
+  }
+
+
+  @Override
+  public boolean isShutdown() {
+    synchronized (mTaskList) {
+      return mIsShutdown;
+    }
+  }
+
+
+  @Override
+  public boolean isTerminated() {
+    synchronized (mTaskList) {
+      return mIsShutdown && (mThreadCount == 0);
+    }
+  }
+
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (mTaskList) {
+      while (! (mIsShutdown && (mThreadCount == 0))) {
+        long waitNanos = deadline - System.nanoTime();
+        if (waitNanos <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(mTaskList, waitNanos);
+      }
+      return true;
+    }
+  }
+
+}
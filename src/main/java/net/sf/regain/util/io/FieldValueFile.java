@@ -0,0 +1,211 @@
+/*
+ * regain - A file search engine providing plenty of formats
+ * Copyright (C) 2004  Til Schneider
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Til Schneider, info@murfman.de
+ */
+package net.sf.regain.util.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import net.sf.regain.RegainException;
+
+/**
+ * The distinct values of an index field together with the number of
+ * documents having each value. The values are sorted alphabetically.
+ * <p>
+ * The values are stored in the index directory in a compact binary file per
+ * field, which is written by the crawler and read by the
+ * search. The file contains:
+ * <pre>
+ * int      FILE_MAGIC
+ * int      The number of values
+ * For each value:
+ *   int    The number of documents having the value
+ *   int    The length of the value in bytes
+ *   byte[] The value in UTF-8
+ * </pre>
+ *
+ * @author Til Schneider, www.murfman.de
+ */
+public class FieldValueFile {
+
+  /** The prefix of the names of the field value files. */
+  public static final String FILE_NAME_PREFIX = "field_values_";
+  /** The extension of the names of the field value files. */
+  private static final String FILE_NAME_EXTENSION = ".bin";
+  /** The first int of a field value file ("RGFV"). */
+  private static final int FILE_MAGIC = 0x52474656;
+  /** The character encoding of the values. */
+  private static final String ENCODING = "UTF-8";
+
+  /** The values. Sorted alphabetically. */
+  private String[] mValueArr;
+  /** The number of documents having the value with the same index. */
+  private int[] mDocFreqArr;
+
+
+  /**
+   * Creates a new instance of FieldValueFile.
+   *
+   * @param valueArr The values. Must be sorted alphabetically.
+   * @param docFreqArr The number of documents having the value with the same
+   *        index.
+   */
+  public FieldValueFile(String[] valueArr, int[] docFreqArr) {
+    mValueArr = valueArr;
+    mDocFreqArr = docFreqArr;
+  }
+
+
+  /**
+   * Gets the values.
+   *
+   * @return The values, sorted alphabetically.
+   */
+  public String[] getValues() {
+    return mValueArr;
+  }
+
+
+  /**
+   * Gets the number of documents having each value.
+   *
+   * @return The number of documents having the value with the same index as
+   *         in {@link #getValues()}.
+   */
+  public int[] getDocFreqs() {
+    return mDocFreqArr;
+  }
+
+
+  /**
+   * Gets the file holding the values of a field.
+   *
+   * @param indexDir The directory of the index.
+   * @param field The name of the field.
+   * @return The file holding the values.
+   */
+  public static File getFile(File indexDir, String field) {
+    return new File(indexDir, FILE_NAME_PREFIX + field + FILE_NAME_EXTENSION);
+  }
+
+
+  /**
+   * Reads the values of a field.
+   *
+   * @param file The file to read.
+   * @return The values or <code>null</code> if the file does not exist.
+   * @throws RegainException If reading the file failed.
+   */
+  public static FieldValueFile read(File file) throws RegainException {
+    if (! file.exists()) {
+      return null;
+    }
+
+    // NOTE: The file is not mapped into memory, since a mapped file stays
+    //       locked until the buffer is garbage collected. On Windows the file
+    //       couldn't be replaced or deleted before.
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+      if (in.readInt() != FILE_MAGIC) {
+        throw new RegainException("File has a wrong format: " + file.getAbsolutePath());
+      }
+      int count = in.readInt();
+      String[] valueArr = new String[count];
+      int[] docFreqArr = new int[count];
+      byte[] bytes = new byte[64];
+      for (int i = 0; i < count; i++) {
+        docFreqArr[i] = in.readInt();
+        int length = in.readInt();
+        if (length > bytes.length) {
+          bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        in.readFully(bytes, 0, length);
+        valueArr[i] = new String(bytes, 0, length, ENCODING);
+      }
+
+      return new FieldValueFile(valueArr, docFreqArr);
+    }
+    catch (IOException exc) {
+      throw new RegainException("Reading field values from " + file.getAbsolutePath()
+              + " failed", exc);
+    }
+    catch (RuntimeException exc) {
+      // The file is corrupt (e.g. a negative length)
+      throw new RegainException("Reading field values from " + file.getAbsolutePath()
+              + " failed", exc);
+    }
+    finally {
+      if (in != null) {
+        try { in.close(); } catch (IOException exc) {}
+      }
+    }
+  }
+
+
+  /**
+   * Writes the values to a file. The file is written under a temporary name
+   * first, so readers never see a half written file.
+   *
+   * @param file The file to write.
+   * @throws RegainException If writing the file failed.
+   */
+  public void write(File file) throws RegainException {
+    File tempFile = new File(file.getPath() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(mValueArr.length);
+      for (int i = 0; i < mValueArr.length; i++) {
+        byte[] bytes = mValueArr[i].getBytes(ENCODING);
+        out.writeInt(mDocFreqArr[i]);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+      out.close();
+      out = null;
+    }
+    catch (IOException exc) {
+      throw new RegainException("Writing field values to " + file.getAbsolutePath()
+              + " failed", exc);
+    }
+    finally {
+      if (out != null) {
+        try { out.close(); } catch (IOException exc) {}
+      }
+    }
+
+    // NOTE: On Windows renameTo doesn't replace an existing file
+    file.delete();
+    if (! tempFile.renameTo(file)) {
+      throw new RegainException("Renaming " + tempFile.getAbsolutePath() + " to "
+              + file.getAbsolutePath() + " failed");
+    }
+  }
+
+}
@@ -20,13 +20,18 @@
  */
 package net.sf.regain.util.sharedtag;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Locale;
 
 import net.sf.regain.RegainException;
 
+import org.apache.log4j.Logger;
+
 /**
  * A page request.
  *
@@ -34,6 +39,9 @@ import net.sf.regain.RegainException;
  */
 public abstract class PageRequest {
 
+  /** The logger for this class */
+  private static Logger mLog = Logger.getLogger(PageRequest.class);
+
   /**
    * Gets the request parameter with the given name that was given to the page
    * via GET or POST.
@@ -248,4 +256,37 @@ public abstract class PageRequest {
    */
   public abstract File getWorkingDir() throws RegainException;
 
+
+  /**
+   * Registers a resource that has to be closed when the page is finished
+   * (e.g. search results holding a reference on the index).
+   *
+   * @param closeable The resource to close.
+   */
+  public abstract void addCloseable(Closeable closeable);
+
+
+  /**
+   * Closes the resources registered for a page.
+   *
+   * @param closeableList The resources to close. May be <code>null</code>.
+   */
+  protected static void close(List<Closeable> closeableList) {
+    if (closeableList == null) {
+      return;
+    }
+    for (Closeable closeable : closeableList) {
+      try {
+        closeable.close();
+      }
+      catch (IOException exc) {
+        mLog.error("Closing a resource of the page failed", exc);
+      }
+      catch (RuntimeException exc) {
+        mLog.error("Closing a resource of the page failed", exc);
+      }
+    }
+    closeableList.clear();
+  }
+
 }
@@ -25,7 +25,6 @@ import java.io.File;
 import java.io.PrintStream;
 
 import net.sf.regain.RegainException;
-import net.sf.regain.util.sharedtag.PageRequest;
 import net.sf.regain.util.sharedtag.PageResponse;
 
 import org.apache.log4j.Logger;
@@ -101,7 +100,7 @@ public class SharedTagResource extends BasicResource {
     ByteArrayOutputStream stream = new ByteArrayOutputStream();
     PrintStream printStream = new PrintStream(stream, false, SIMPLE_TAG_ENCODING);
 
-    PageRequest request = new SimplePageRequest(req);
+    SimplePageRequest request = new SimplePageRequest(req);
     PageResponse response = new SimplePageResponse(this, req, resp, printStream, SIMPLE_TAG_ENCODING);
 
     // Add the error to the page attributes
@@ -138,6 +137,7 @@ public class SharedTagResource extends BasicResource {
       }
     }
     finally {
+      request.close();
       printStream.close();
       stream.close();
     }
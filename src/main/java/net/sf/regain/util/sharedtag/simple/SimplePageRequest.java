@@ -20,11 +20,14 @@
  */
 package net.sf.regain.util.sharedtag.simple;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 
 import net.sf.regain.RegainException;
@@ -58,6 +61,9 @@ public class SimplePageRequest extends PageRequest {
   /** The session. */
   private Session mSession;
 
+  /** The resources to close when the page is finished. May be null. */
+  private List<Closeable> mCloseableList;
+
   /**
    * Creates a new instance of SimplePageRequest.
    *
@@ -188,6 +194,29 @@ public class SimplePageRequest extends PageRequest {
   }
 
 
+  /**
+   * Registers a resource that has to be closed when the page is finished.
+   *
+   * @param closeable The resource to close.
+   * @see #close()
+   */
+  public void addCloseable(Closeable closeable) {
+    if (mCloseableList == null) {
+      mCloseableList = new ArrayList<Closeable>();
+    }
+    mCloseableList.add(closeable);
+  }
+
+
+  /**
+   * Closes the resources registered for the page. Is called when the page is
+   * finished.
+   */
+  public void close() {
+    close(mCloseableList);
+  }
+
+
   /**
    * Sets an attribute at the session.
    *
@@ -20,15 +20,19 @@
  */
 package net.sf.regain.util.sharedtag.taglib;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Locale;
 
 import org.apache.log4j.Logger;
+import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.PageContext;
 
@@ -54,6 +58,12 @@ public class JspPageRequest extends PageRequest {
   /** The logger for this class. */
   private static Logger mLog = Logger.getLogger(JspPageRequest.class);
 
+  /**
+   * The name of the request attribute holding the resources to close when the
+   * request is finished.
+   */
+  private static final String CLOSEABLE_LIST_ATTR_NAME = "SharedTagCloseableList";
+
   /**
    * Creates a new instance of JspPageRequest.
    *
@@ -189,6 +199,39 @@ public class JspPageRequest extends PageRequest {
   }
 
 
+  /**
+   * Registers a resource that has to be closed when the page is finished.
+   * <p>
+   * The resources are held by the servlet request, so the
+   * {@link SharedTagRequestListener} can close them when the request (including
+   * all included pages) is finished.
+   *
+   * @param closeable The resource to close.
+   */
+  @SuppressWarnings("unchecked")
+  public void addCloseable(Closeable closeable) {
+    ServletRequest request = mPageContext.getRequest();
+    List<Closeable> closeableList = (List<Closeable>) request.getAttribute(CLOSEABLE_LIST_ATTR_NAME);
+    if (closeableList == null) {
+      closeableList = new ArrayList<Closeable>();
+      request.setAttribute(CLOSEABLE_LIST_ATTR_NAME, closeableList);
+    }
+    closeableList.add(closeable);
+  }
+
+
+  /**
+   * Closes the resources registered for a request.
+   *
+   * @param request The finished request.
+   */
+  @SuppressWarnings("unchecked")
+  static void close(ServletRequest request) {
+    close((List<Closeable>) request.getAttribute(CLOSEABLE_LIST_ATTR_NAME));
+    request.removeAttribute(CLOSEABLE_LIST_ATTR_NAME);
+  }
+
+
   /**
    * Gets an init parameter.
    *
@@ -18,39 +18,36 @@
  *
  * Contact: Til Schneider, info@murfman.de
  */
-package net.sf.regain.crawler.document;
+package net.sf.regain.util.sharedtag.taglib;
 
-import net.sf.regain.crawler.Profiler;
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.ServletRequestListener;
 
 /**
- * Allow ordering by priority of Preparator. (Higher values first.)
- * @author Benjamin
+ * Closes the resources the pages of a request registered (see
+ * {@link JspPageRequest#addCloseable(java.io.Closeable)}) when the request is
+ * finished. Must be registered as listener in the web.xml.
+ *
+ * @author Til Schneider, www.murfman.de
  */
-public class PreparatorProfilerPair implements Comparable<PreparatorProfilerPair>
-{
-  private Preparator preparator;
-  private Profiler profiler;
-
-  public Preparator getPreparator()
-  {
-    return preparator;
-  }
+public class SharedTagRequestListener implements ServletRequestListener {
 
-  public Profiler getProfiler()
-  {
-    return profiler;
+  /**
+   * Called when a request starts. Does nothing.
+   *
+   * @param event The event.
+   */
+  public void requestInitialized(ServletRequestEvent event) {
   }
 
-  public PreparatorProfilerPair(Preparator preparator, Profiler profiler)
-  {
-    this.preparator = preparator;
-    this.profiler = profiler;
-  }
 
-  @Override
-  public int compareTo(PreparatorProfilerPair other)
-  {
-    return Integer.valueOf(other.preparator.getPriority()).compareTo(preparator.getPriority());
+  /**
+   * Called when a request is finished. Closes the resources of the request.
+   *
+   * @param event The event.
+   */
+  public void requestDestroyed(ServletRequestEvent event) {
+    JspPageRequest.close(event.getServletRequest());
   }
 
 }
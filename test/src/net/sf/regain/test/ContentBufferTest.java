@@ -0,0 +1,78 @@
+package net.sf.regain.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.document.ContentBuffer;
+
+public class ContentBufferTest extends TestCase {
+
+  private static byte[] createContent(int length)
+  {
+    byte[] content = new byte[length];
+    for (int i = 0; i < length; i++) {
+      content[i] = (byte) (i % 251);
+    }
+    return content;
+  }
+
+  private static byte[] readAll(ContentBuffer buffer) throws Exception
+  {
+    InputStream in = buffer.openStream();
+    try {
+      return RegainToolkit.readStringFromStream(in, "ISO-8859-1").getBytes("ISO-8859-1");
+    } finally {
+      in.close();
+    }
+  }
+
+  public void testInMemory() throws Exception
+  {
+    byte[] content = createContent(10000);
+    ContentBuffer buffer = ContentBuffer.read(new ByteArrayInputStream(content), -1, 10000, ".txt");
+
+    assertTrue(buffer.isInMemory());
+    assertNull(buffer.getFile());
+    assertEquals(10000, buffer.getLength());
+    assertTrue(Arrays.equals(content, buffer.getBytes()));
+    assertTrue(Arrays.equals(Arrays.copyOf(content, 16), buffer.getHeader(16)));
+    assertEquals(10000, buffer.getHeader(20000).length);
+
+    // The content can be read more than once
+    assertTrue(Arrays.equals(content, readAll(buffer)));
+    assertTrue(Arrays.equals(content, readAll(buffer)));
+    buffer.dispose();
+  }
+
+  public void testSpillToFile() throws Exception
+  {
+    byte[] content = createContent(10001);
+    ContentBuffer buffer = ContentBuffer.read(new ByteArrayInputStream(content), 100, 10000, ".txt");
+
+    assertFalse(buffer.isInMemory());
+    File file = buffer.getFile();
+    assertTrue(file.getName().endsWith(".txt"));
+    assertEquals(10001, buffer.getLength());
+    assertTrue(Arrays.equals(content, buffer.getBytes()));
+    assertTrue(Arrays.equals(Arrays.copyOf(content, 16), buffer.getHeader(16)));
+    assertTrue(Arrays.equals(content, readAll(buffer)));
+    assertTrue(Arrays.equals(content, readAll(buffer)));
+
+    buffer.dispose();
+    assertFalse(file.exists());
+  }
+
+  public void testEmpty() throws Exception
+  {
+    ContentBuffer buffer = ContentBuffer.read(new ByteArrayInputStream(new byte[0]), 0, 10000, "");
+
+    assertTrue(buffer.isInMemory());
+    assertEquals(0, buffer.getLength());
+    assertEquals(0, buffer.getHeader(16).length);
+  }
+
+}
@@ -0,0 +1,71 @@
+package net.sf.regain.test;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.document.ContentSink;
+
+public class ContentSinkTest extends TestCase {
+
+  private static String createWords(int count)
+  {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.append("word").append(i).append(' ');
+    }
+    return builder.toString();
+  }
+
+  public void testUnlimited() throws Exception
+  {
+    String text = createWords(10000);
+    ContentSink sink = new ContentSink(-1, 10);
+    sink.write(text);
+    sink.append(text, 0, 100);
+
+    assertFalse(sink.isFull());
+    assertEquals(text + text.substring(0, 100), sink.toString());
+    assertSame(text, ContentSink.limit(text, -1, 10));
+  }
+
+  public void testWordLimit() throws Exception
+  {
+    // 10 tokens -> 40 words are kept
+    ContentSink sink = new ContentSink(10, 10);
+    String text = createWords(100);
+    for (int i = 0; i < text.length(); i += 7) {
+      sink.write(text.substring(i, Math.min(i + 7, text.length())).toCharArray());
+    }
+
+    assertTrue(sink.isFull());
+    assertEquals(createWords(40), sink.toString());
+    assertEquals(createWords(40), ContentSink.limit(text, 10, 10));
+
+    // Text written afterwards is dropped
+    sink.write("more");
+    assertEquals(createWords(40), sink.toString());
+  }
+
+  public void testSummaryLength() throws Exception
+  {
+    // The words are kept until the summary can be cut from the content
+    String text = createWords(100);
+    String limited = ContentSink.limit(text, 1, 200);
+
+    assertEquals(201, limited.length());
+    assertTrue(text.startsWith(limited));
+  }
+
+  public void testCharLimit() throws Exception
+  {
+    // Text without whitespace is cut after 16 chars per word
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      text.append('x');
+    }
+    ContentSink sink = new ContentSink(10, 0);
+    sink.append(text);
+
+    assertTrue(sink.isFull());
+    assertEquals(10 * ContentSink.WORD_FACTOR * ContentSink.MAX_CHARS_PER_WORD, sink.length());
+  }
+
+}
@@ -0,0 +1,87 @@
+package net.sf.regain.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.CrawlerFrontier;
+import net.sf.regain.crawler.CrawlerJob;
+
+public class CrawlerFrontierTest extends TestCase {
+
+  private static CrawlerJob createJob(int number)
+  {
+    return new CrawlerJob("http://www.example.com/" + number + ".html",
+      "http://www.example.com/", (number % 2 == 0) ? null : "Link " + number,
+      true, number % 3 != 0);
+  }
+
+  private static void assertJob(int number, CrawlerJob job)
+  {
+    CrawlerJob expected = createJob(number);
+    assertEquals(expected.getUrl(), job.getUrl());
+    assertEquals(expected.getSourceUrl(), job.getSourceUrl());
+    assertEquals(expected.getSourceLinkText(), job.getSourceLinkText());
+    assertEquals(expected.shouldBeParsed(), job.shouldBeParsed());
+    assertEquals(expected.shouldBeIndexed(), job.shouldBeIndexed());
+  }
+
+  public void testSpilledJobsKeepOrder() throws Exception
+  {
+    CrawlerFrontier frontier = new CrawlerFrontier(10);
+    for (int i = 0; i < 100; i++) {
+      frontier.addJob(createJob(i), false);
+    }
+    frontier.addJob(createJob(1000), true);
+    assertEquals(101, frontier.getWaitingJobCount());
+
+    CrawlerJob job = frontier.takeJob();
+    assertJob(1000, job);
+    frontier.finishJob(job);
+    for (int i = 0; i < 100; i++) {
+      job = frontier.takeJob();
+      assertJob(i, job);
+      // Jobs added while the others are processed come last
+      if (i % 10 == 0) {
+        frontier.addJob(createJob(100 + i / 10), false);
+      }
+      frontier.finishJob(job);
+    }
+    for (int i = 100; i < 110; i++) {
+      job = frontier.takeJob();
+      assertJob(i, job);
+      frontier.finishJob(job);
+    }
+    assertNull(frontier.takeJob());
+  }
+
+  public void testWriteAndReadState() throws Exception
+  {
+    CrawlerFrontier frontier = new CrawlerFrontier(10);
+    for (int i = 0; i < 50; i++) {
+      frontier.addJob(createJob(i), false);
+    }
+    for (int i = 0; i < 15; i++) {
+      frontier.finishJob(frontier.takeJob());
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    frontier.writeState(out);
+    out.close();
+    frontier.stop();
+
+    CrawlerFrontier resumed = new CrawlerFrontier(10);
+    resumed.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(35, resumed.getWaitingJobCount());
+    for (int i = 15; i < 50; i++) {
+      CrawlerJob job = resumed.takeJob();
+      assertJob(i, job);
+      resumed.finishJob(job);
+    }
+    assertNull(resumed.takeJob());
+  }
+
+}
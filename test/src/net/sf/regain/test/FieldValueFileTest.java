@@ -0,0 +1,31 @@
+package net.sf.regain.test;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import net.sf.regain.util.io.FieldValueFile;
+
+public class FieldValueFileTest extends TestCase {
+
+  public void testWriteAndRead() throws Exception
+  {
+    File dir = new File(System.getProperty("java.io.tmpdir"));
+    File file = FieldValueFile.getFile(dir, "test" + System.nanoTime());
+    String[] valueArr = { "", "application/pdf", "text/html", "\u00fcber", "\u65e5\u672c" };
+    int[] docFreqArr = { 1, 42, 7, 3, 100000 };
+    try {
+      new FieldValueFile(valueArr, docFreqArr).write(file);
+
+      FieldValueFile read = FieldValueFile.read(file);
+      assertEquals(valueArr.length, read.getValues().length);
+      for (int i = 0; i < valueArr.length; i++) {
+        assertEquals(valueArr[i], read.getValues()[i]);
+        assertEquals(docFreqArr[i], read.getDocFreqs()[i]);
+      }
+    } finally {
+      file.delete();
+    }
+    assertNull(FieldValueFile.read(file));
+  }
+
+}
@@ -0,0 +1,194 @@
+package net.sf.regain.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainException;
+import net.sf.regain.crawler.HttpStreamException;
+import net.sf.regain.crawler.NotModifiedException;
+import net.sf.regain.crawler.RedirectException;
+import net.sf.regain.crawler.document.ContentBuffer;
+import net.sf.regain.crawler.document.HttpFetcher;
+import net.sf.regain.crawler.document.HttpValidators;
+
+public class HttpFetcherTest extends TestCase {
+
+  private static final String LAST_MODIFIED = "Sun, 06 Nov 1994 08:49:37 GMT";
+
+  private HttpServer server;
+  private String baseUrl;
+  private Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+  private AtomicInteger activeCount = new AtomicInteger();
+  private AtomicInteger maxActiveCount = new AtomicInteger();
+
+  @Override
+  public void setUp() throws Exception
+  {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        int active = activeCount.incrementAndGet();
+        synchronized (maxActiveCount) {
+          maxActiveCount.set(Math.max(maxActiveCount.get(), active));
+        }
+        try {
+          String path = exchange.getRequestURI().getPath();
+          if (path.equals("/redirect")) {
+            exchange.getResponseHeaders().add("Location", "/doc.html");
+            send(exchange, 302, "moved");
+          } else if (path.equals("/slow")) {
+            Thread.sleep(300);
+            send(exchange, 200, "slow");
+          } else if (path.equals("/hang")) {
+            Thread.sleep(3000);
+            send(exchange, 200, "hang");
+          } else if (path.equals("/cached.html")) {
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+              exchange.sendResponseHeaders(304, -1);
+              exchange.close();
+            } else {
+              send(exchange, 200, "cached");
+            }
+          } else if (path.equals("/doc.html")) {
+            send(exchange, 200, "<html>Hello</html>");
+          } else {
+            send(exchange, 404, "not found");
+          }
+        } catch (InterruptedException exc) {
+          throw new IOException(exc.toString());
+        } finally {
+          activeCount.decrementAndGet();
+        }
+      }
+    });
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @Override
+  public void tearDown()
+  {
+    server.stop(0);
+  }
+
+  private static void send(HttpExchange exchange, int code, String body) throws IOException
+  {
+    byte[] bytes = body.getBytes("UTF-8");
+    exchange.sendResponseHeaders(code, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  public void testFetchReusesConnection() throws Exception
+  {
+    HttpFetcher fetcher = new HttpFetcher(10, 2, 0);
+    for (int i = 0; i < 5; i++) {
+      ContentBuffer content = fetcher.fetch(baseUrl + "/doc.html", ".html", null).getContent();
+      assertEquals("<html>Hello</html>", new String(content.getBytes(), "UTF-8"));
+    }
+    assertEquals(1, clientPorts.size());
+  }
+
+  public void testRedirectAndDeadLink() throws Exception
+  {
+    HttpFetcher fetcher = new HttpFetcher(10, 2, 0);
+    try {
+      fetcher.fetch(baseUrl + "/redirect", "", null);
+      fail("Expected a redirect");
+    } catch (RedirectException exc) {
+      assertEquals(baseUrl + "/doc.html", exc.getRedirectUrl());
+    }
+
+    try {
+      fetcher.fetch(baseUrl + "/missing.html", ".html", null);
+      fail("Expected a dead link");
+    } catch (HttpStreamException exc) {
+      assertTrue(exc.isHttpReturnCodeFromDeadLink());
+    }
+
+    // The connection is still reused after a redirect and an error
+    fetcher.fetch(baseUrl + "/doc.html", ".html", null);
+    assertEquals(1, clientPorts.size());
+  }
+
+  public void testConnectionsPerHostAndPoliteness() throws Exception
+  {
+    final HttpFetcher fetcher = new HttpFetcher(10, 2, 50);
+    final AtomicInteger errorCount = new AtomicInteger();
+    Thread[] threadArr = new Thread[6];
+    long startTime = System.currentTimeMillis();
+    for (int i = 0; i < threadArr.length; i++) {
+      threadArr[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            fetcher.fetch(baseUrl + "/slow", "", null);
+          } catch (RegainException exc) {
+            errorCount.incrementAndGet();
+          }
+        }
+      };
+      threadArr[i].start();
+    }
+    for (int i = 0; i < threadArr.length; i++) {
+      threadArr[i].join();
+    }
+
+    assertEquals(0, errorCount.get());
+    assertEquals(2, maxActiveCount.get());
+    // 6 requests of 300 ms with 2 connections take at least 900 ms
+    assertTrue(System.currentTimeMillis() - startTime >= 900);
+  }
+
+  public void testNotModified() throws Exception
+  {
+    HttpFetcher fetcher = new HttpFetcher(10, 2, 0);
+    HttpFetcher.Response response = fetcher.fetch(baseUrl + "/cached.html", ".html", null);
+    HttpValidators validators = response.getValidators();
+    assertEquals("\"v1\"", validators.getETag());
+    assertEquals(LAST_MODIFIED, validators.getLastModified());
+    assertEquals(784111777000L, response.getLastModified().getTime());
+
+    try {
+      fetcher.fetch(baseUrl + "/cached.html", ".html", validators);
+      fail("Expected not modified");
+    } catch (NotModifiedException exc) {
+      // expected
+    }
+
+    // Changed validators -> The document is loaded
+    response = fetcher.fetch(baseUrl + "/cached.html", ".html",
+      new HttpValidators("\"v0\"", null));
+    assertEquals("cached", new String(response.getContent().getBytes(), "UTF-8"));
+  }
+
+  public void testTimeout() throws Exception
+  {
+    HttpFetcher fetcher = new HttpFetcher(1, 2, 0);
+    long startTime = System.currentTimeMillis();
+    try {
+      fetcher.fetch(baseUrl + "/hang", "", null);
+      fail("Expected a timeout");
+    } catch (RegainException exc) {
+      // expected
+    }
+    assertTrue(System.currentTimeMillis() - startTime < 2500);
+  }
+
+}
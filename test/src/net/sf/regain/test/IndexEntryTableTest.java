@@ -0,0 +1,78 @@
+package net.sf.regain.test;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.IndexEntryTable;
+
+public class IndexEntryTableTest extends TestCase {
+
+  private IndexEntryTable table;
+
+  @Override
+  public void setUp()
+  {
+    table = new IndexEntryTable(2);
+  }
+
+  public void testPutAndGet()
+  {
+    table.put("file:///tmp/a.txt", 1000L, false);
+    table.put("file:///tmp/b.txt", 2000L, true);
+    table.put("http://www.example.com/%C3%A4.html", IndexEntryTable.UNKNOWN_LAST_MODIFIED, false);
+
+    int a = table.getEntry("file:///tmp/a.txt");
+    int b = table.getEntry("file:///tmp/b.txt");
+    int c = table.getEntry("http://www.example.com/%C3%A4.html");
+    assertEquals(1000L, table.getLastModified(a));
+    assertFalse(table.isFailed(a));
+    assertEquals(2000L, table.getLastModified(b));
+    assertTrue(table.isFailed(b));
+    assertEquals(IndexEntryTable.UNKNOWN_LAST_MODIFIED, table.getLastModified(c));
+
+    assertEquals(-1, table.getEntry("file:///tmp/c.txt"));
+    assertEquals(-1, table.getEntry("file:///tmp/a.tx"));
+    assertEquals(3, table.size());
+  }
+
+  public void testDuplicates()
+  {
+    table.put("file:///tmp/a.txt", 1000L, false);
+    table.put("file:///tmp/a.txt", 3000L, true);
+
+    int a = table.getEntry("file:///tmp/a.txt");
+    assertEquals(2, table.getIndexEntryCount(a));
+    assertEquals(1000L, table.getLastModified(a));
+    assertEquals(1, table.size());
+  }
+
+  public void testGrowing()
+  {
+    for (int i = 0; i < 10000; i++) {
+      table.put("file:///tmp/dir" + (i % 100) + "/file" + i + ".txt", i, (i % 7) == 0);
+    }
+    assertEquals(10000, table.size());
+    for (int i = 0; i < 10000; i++) {
+      int entry = table.getEntry("file:///tmp/dir" + (i % 100) + "/file" + i + ".txt");
+      assertTrue("Entry " + i + " not found", entry != -1);
+      assertEquals(i, table.getLastModified(entry));
+      assertEquals((i % 7) == 0, table.isFailed(entry));
+      assertEquals(1, table.getIndexEntryCount(entry));
+    }
+  }
+
+  public void testLongUrls()
+  {
+    StringBuilder buffer = new StringBuilder("file:///tmp/");
+    for (int i = 0; i < 10000; i++) {
+      buffer.append("long/");
+    }
+    String prefix = buffer.toString();
+    for (int i = 0; i < 20; i++) {
+      table.put(prefix + i + ".txt", i, false);
+    }
+    assertEquals(20, table.size());
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, table.getLastModified(table.getEntry(prefix + i + ".txt")));
+    }
+  }
+
+}
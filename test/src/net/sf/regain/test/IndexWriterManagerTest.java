@@ -0,0 +1,54 @@
+package net.sf.regain.test;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.IndexWriterManager;
+import net.sf.regain.crawler.UrlChecker;
+import net.sf.regain.crawler.config.PrefixUrlMatcher;
+import net.sf.regain.crawler.config.UrlMatcher;
+import net.sf.regain.crawler.config.WhiteListEntry;
+
+public class IndexWriterManagerTest extends TestCase {
+
+  private static final String LAST_MODIFIED = "20100101";
+
+  private static UrlChecker createUrlChecker()
+  {
+    WhiteListEntry updated = new WhiteListEntry(
+      new PrefixUrlMatcher("http://www.example.com/", true, true), "updated");
+    WhiteListEntry preserved = new WhiteListEntry(
+      new PrefixUrlMatcher("http://www.example.org/", true, true), "preserved");
+    preserved.setShouldBeUpdated(false);
+
+    return new UrlChecker(new WhiteListEntry[] { updated, preserved },
+      new UrlMatcher[0]);
+  }
+
+  public void testIsObsoleteEntry() throws Exception
+  {
+    UrlChecker checker = createUrlChecker();
+    checker.setAccepted("http://www.example.com/a.html");
+
+    // Accepted in this run -> keep
+    assertFalse(IndexWriterManager.isObsoleteEntry(checker,
+      "http://www.example.com/a.html", LAST_MODIFIED));
+    // Not found in this run -> delete
+    assertTrue(IndexWriterManager.isObsoleteEntry(checker,
+      "http://www.example.com/b.html", LAST_MODIFIED));
+    // Not updated in this run -> keep
+    assertFalse(IndexWriterManager.isObsoleteEntry(checker,
+      "http://www.example.org/a.html", LAST_MODIFIED));
+  }
+
+  public void testIsObsoleteEntryWithoutLastModified() throws Exception
+  {
+    UrlChecker checker = createUrlChecker();
+    checker.setAccepted("http://www.example.com/a.html");
+
+    // Entries without last-modified are deleted in any case
+    assertTrue(IndexWriterManager.isObsoleteEntry(checker,
+      "http://www.example.com/a.html", null));
+    assertTrue(IndexWriterManager.isObsoleteEntry(checker,
+      "http://www.example.org/a.html", null));
+  }
+
+}
@@ -0,0 +1,103 @@
+package net.sf.regain.test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import net.sf.regain.util.LimitedExecutor;
+
+public class LimitedExecutorTest extends TestCase {
+
+  private ExecutorService mPool;
+
+  @Override
+  protected void setUp()
+  {
+    mPool = Executors.newFixedThreadPool(8);
+  }
+
+  @Override
+  protected void tearDown()
+  {
+    mPool.shutdownNow();
+  }
+
+  public void testConcurrencyIsBounded() throws Exception
+  {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final AtomicInteger finished = new AtomicInteger();
+    LimitedExecutor executor = new LimitedExecutor(mPool, 2);
+    for (int i = 0; i < 20; i++) {
+      executor.execute(new Runnable() {
+        public void run() {
+          int count = running.incrementAndGet();
+          synchronized (maxRunning) {
+            maxRunning.set(Math.max(maxRunning.get(), count));
+          }
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException exc) {}
+          running.decrementAndGet();
+          finished.incrementAndGet();
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    assertEquals(20, finished.get());
+    assertTrue(maxRunning.get() <= 2);
+  }
+
+  public void testShutdownKeepsSharedPool() throws Exception
+  {
+    LimitedExecutor executor = new LimitedExecutor(mPool, 2);
+    executor.shutdown();
+    assertTrue(executor.isShutdown());
+    assertTrue(executor.isTerminated());
+    try {
+      executor.execute(new Runnable() { public void run() {} });
+      fail("Task accepted after shutdown");
+    } catch (RejectedExecutionException exc) {
+      // Expected
+    }
+
+    assertFalse(mPool.isShutdown());
+    assertEquals("ok", mPool.submit(new Runnable() { public void run() {} }, "ok").get());
+  }
+
+  public void testShutdownNowReturnsWaitingTasks() throws Exception
+  {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Runnable blocker = new Runnable() {
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException exc) {}
+      }
+    };
+    LimitedExecutor executor = new LimitedExecutor(mPool, 1);
+    executor.execute(blocker);
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    Runnable waiting = new Runnable() { public void run() {} };
+    executor.execute(waiting);
+
+    List<Runnable> waitingList = executor.shutdownNow();
+    assertEquals(1, waitingList.size());
+    assertSame(waiting, waitingList.get(0));
+    assertFalse(executor.isTerminated());
+
+    release.countDown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertFalse(mPool.isShutdown());
+  }
+
+}
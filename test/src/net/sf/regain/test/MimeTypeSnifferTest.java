@@ -0,0 +1,188 @@
+package net.sf.regain.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.document.MimeTypeSniffer;
+
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifier;
+
+public class MimeTypeSnifferTest extends TestCase {
+
+  private static final String[] FILE_NAMES = {
+    null, "test", "test.pdf", "test.doc", "test.xls", "test.ppt", "test.msg",
+    "test.jpg", "test.png", "test.gif", "test.zip", "test.jar", "test.docx",
+    "test.odt", "test.txt", "test.html", "test.tar"
+  };
+
+  private MagicMimeTypeIdentifier mIdentifier;
+  private MimeTypeSniffer mSniffer;
+
+  @Override
+  protected void setUp()
+  {
+    mIdentifier = new MagicMimeTypeIdentifier();
+    mSniffer = new MimeTypeSniffer();
+  }
+
+  private byte[] createHeader(int[] magic) throws Exception
+  {
+    byte[] header = new byte[mIdentifier.getMinArrayLength()];
+    for (int i = 0; i < header.length; i++) {
+      header[i] = (byte) (0x80 + i % 64);
+    }
+    for (int i = 0; i < magic.length; i++) {
+      header[i] = (byte) magic[i];
+    }
+    return header;
+  }
+
+  private static int[] toIntArr(String text)
+  {
+    int[] arr = new int[text.length()];
+    for (int i = 0; i < arr.length; i++) {
+      arr[i] = text.charAt(i);
+    }
+    return arr;
+  }
+
+  private String identify(byte[] header, String fileName)
+  {
+    return mIdentifier.identify(header, fileName,
+      new URIImpl("file:///tmp/" + ((fileName == null) ? "test" : fileName), false));
+  }
+
+  /**
+   * Checks that the sniffer gives the same result as the identifier for all
+   * file names.
+   *
+   * @return Whether the sniffer identified the header.
+   */
+  private boolean assertSameAsIdentifier(byte[] header) throws Exception
+  {
+    boolean sniffed = false;
+    for (int i = 0; i < FILE_NAMES.length; i++) {
+      String mimeType = mSniffer.identify(header, FILE_NAMES[i]);
+      if (mimeType != null) {
+        sniffed = true;
+        assertEquals(FILE_NAMES[i], identify(header, FILE_NAMES[i]), mimeType);
+      }
+    }
+    return sniffed;
+  }
+
+  public void testBinaryFormats() throws Exception
+  {
+    int[][] magicArr = {
+      toIntArr("%PDF-1.4\n"),
+      { 0xff, 0xd8, 0xff, 0xe0, 0x00, 0x10, 'J', 'F', 'I', 'F', 0x00 },
+      { 0xff, 0xd8, 0xff, 0xe1, 0x12, 0x34, 'E', 'x', 'i', 'f', 0x00 },
+      { 0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a },
+      toIntArr("GIF89a"),
+      toIntArr("GIF87a"),
+      { 'P', 'K', 0x03, 0x04, 0x14, 0x00 },
+      { 0xd0, 0xcf, 0x11, 0xe0, 0xa1, 0xb1, 0x1a, 0xe1, 0, 0, 0, 0, 0, 0, 0, 0 }
+    };
+    for (int i = 0; i < magicArr.length; i++) {
+      assertTrue("Magic number " + i + " not sniffed",
+        assertSameAsIdentifier(createHeader(magicArr[i])));
+    }
+  }
+
+  public void testOtherFormatsAreLeftToIdentifier() throws Exception
+  {
+    String[] textArr = {
+      "<html><body>test</body></html>", "<?xml version=\"1.0\"?><a/>",
+      "{\\rtf1\\ansi test}", "plain text", "  %PDF-1.4 after white space"
+    };
+    for (int i = 0; i < textArr.length; i++) {
+      byte[] header = createHeader(toIntArr(textArr[i]));
+      for (int j = 0; j < FILE_NAMES.length; j++) {
+        assertNull(textArr[i], mSniffer.identify(header, FILE_NAMES[j]));
+      }
+    }
+  }
+
+  public void testTarAtOffset257() throws Exception
+  {
+    // A tar archive whose first file name looks like a sniffed magic number.
+    // The identifier checks zip files before tar files, but tar files before
+    // PDF and GIF files.
+    int[][] magicArr = { toIntArr("%PDF-1.4"), { 'P', 'K', 0x03, 0x04 }, toIntArr("GIF89a") };
+    for (int i = 0; i < magicArr.length; i++) {
+      byte[] header = createHeader(magicArr[i]);
+      byte[] ustar = "ustar".getBytes("ISO-8859-1");
+      System.arraycopy(ustar, 0, header, 257, ustar.length);
+
+      assertSameAsIdentifier(header);
+      if (! "application/zip".equals(identify(header, "test.tar"))) {
+        assertEquals("application/x-tar", identify(header, "test.tar"));
+        assertNull(mSniffer.identify(header, "test.tar"));
+      }
+    }
+  }
+
+  public void testOoxmlWithoutExtension() throws Exception
+  {
+    File dir = new File(System.getProperty("java.io.tmpdir"));
+    File docx = new File(dir, "regain_sniffer_test" + System.nanoTime() + ".docx");
+    File noExtension = new File(dir, "regain_sniffer_test" + System.nanoTime());
+    File plainZip = new File(dir, "regain_sniffer_test" + System.nanoTime() + ".zip");
+    try {
+      writeZip(docx, new String[] { "[Content_Types].xml", "_rels/.rels", "word/document.xml" });
+      writeZip(noExtension, new String[] { "[Content_Types].xml", "_rels/.rels", "word/document.xml" });
+      writeZip(plainZip, new String[] { "readme.txt" });
+
+      byte[] header = readHeader(noExtension);
+      assertEquals("application/zip", mSniffer.identify(header, noExtension.getName()));
+      // The identifier only knows the OOXML document by its extension
+      String expected = mIdentifier.identify(header, null,
+        new URIImpl("zip:mime:file:" + docx.toURI(), false));
+      assertFalse("application/zip".equals(expected));
+      assertEquals(expected, mSniffer.identifyZipContainer(noExtension));
+      assertEquals(expected, mSniffer.identifyZipContainer(docx));
+
+      assertNull(mSniffer.identifyZipContainer(plainZip));
+    } finally {
+      docx.delete();
+      noExtension.delete();
+      plainZip.delete();
+    }
+  }
+
+  private static void writeZip(File file, String[] entryArr) throws Exception
+  {
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+    try {
+      for (int i = 0; i < entryArr.length; i++) {
+        out.putNextEntry(new ZipEntry(entryArr[i]));
+        out.write("<x/>".getBytes("UTF-8"));
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private byte[] readHeader(File file) throws Exception
+  {
+    byte[] header = new byte[Math.min((int) file.length(), mIdentifier.getMinArrayLength())];
+    InputStream in = new FileInputStream(file);
+    try {
+      int pos = 0;
+      while (pos < header.length) {
+        pos += in.read(header, pos, header.length - pos);
+      }
+    } finally {
+      in.close();
+    }
+    return header;
+  }
+
+}
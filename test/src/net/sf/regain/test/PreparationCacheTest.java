@@ -0,0 +1,85 @@
+package net.sf.regain.test;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.crawler.config.PreparatorSettings;
+import net.sf.regain.crawler.document.AbstractPreparator;
+import net.sf.regain.crawler.document.PreparationCache;
+import net.sf.regain.crawler.document.RawDocument;
+import net.sf.regain.crawler.preparator.FilenamePreparator;
+import net.sf.regain.crawler.preparator.PlainTextPreparator;
+
+public class PreparationCacheTest extends TestCase {
+
+  private File mDir;
+  private PreparationCache mCache;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    mDir = new File(System.getProperty("java.io.tmpdir"),
+      "regain_prepcache_test" + System.nanoTime());
+    mDir.mkdirs();
+    RegainToolkit.writeToFile("same content", new File(mDir, "first.txt"));
+    RegainToolkit.writeToFile("same content", new File(mDir, "second.txt"));
+    mCache = new PreparationCache(new File(mDir, "cache"), 1024 * 1024,
+      new PreparatorSettings[0]);
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    RegainToolkit.deleteDirectory(mDir);
+  }
+
+  /**
+   * Prepares a document the way the DocumentFactory does.
+   *
+   * @return Whether the result was taken from the cache.
+   */
+  private boolean prepare(AbstractPreparator preparator, String fileName)
+    throws Exception
+  {
+    preparator.cleanUp();
+    RawDocument rawDocument = new RawDocument(
+      RegainToolkit.fileToUrl(new File(mDir, fileName)), null, null, null);
+    String key = null;
+    if (mCache.accepts(preparator)) {
+      key = mCache.getKey(preparator, rawDocument);
+      if (mCache.load(key, preparator)) {
+        return true;
+      }
+    }
+    preparator.prepare(rawDocument);
+    if (key != null) {
+      mCache.store(key, preparator);
+    }
+    return false;
+  }
+
+  public void testUrlDependentResultIsNotCached() throws Exception
+  {
+    FilenamePreparator preparator = new FilenamePreparator();
+    assertFalse(mCache.accepts(preparator));
+
+    assertFalse(prepare(preparator, "first.txt"));
+    String firstContent = preparator.getCleanedContent();
+    assertFalse(prepare(preparator, "second.txt"));
+    String secondContent = preparator.getCleanedContent();
+
+    assertFalse(firstContent.equals(secondContent));
+  }
+
+  public void testContentOnlyResultIsCached() throws Exception
+  {
+    PlainTextPreparator preparator = new PlainTextPreparator();
+    assertTrue(mCache.accepts(preparator));
+
+    assertFalse(prepare(preparator, "first.txt"));
+    assertTrue(prepare(preparator, "second.txt"));
+    assertEquals("same content", preparator.getCleanedContent().trim());
+  }
+
+}
@@ -0,0 +1,212 @@
+package net.sf.regain.test;
+
+import java.io.Closeable;
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+import net.sf.regain.RegainToolkit;
+import net.sf.regain.search.IndexSearcherManager;
+import net.sf.regain.search.config.IndexConfig;
+import net.sf.regain.search.results.SearchResultCache;
+import net.sf.regain.search.results.SearchResultsImpl;
+import net.sf.regain.search.results.SortingOption;
+import net.sf.regain.util.sharedtag.PageRequest;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+public class SearchResultCacheTest extends TestCase {
+
+  private File mIndexDir;
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    IndexSearcherManager.closeAll();
+    if (mIndexDir != null) {
+      RegainToolkit.deleteDirectory(mIndexDir);
+    }
+  }
+
+  private static IndexReader createReader() throws Exception
+  {
+    RAMDirectory dir = new RAMDirectory();
+    new IndexWriter(dir, new IndexWriterConfig(RegainToolkit.getLuceneVersion(),
+      RegainToolkit.createAnalyzer("english", new String[0], new String[0], new String[0]))).close();
+    return IndexReader.open(dir);
+  }
+
+  private static SearchResultCache.Entry createEntry(IndexReader reader)
+  {
+    return new SearchResultCache.Entry(new TermQuery(new Term("content", "test")), null,
+      new ScoreDoc[] { new ScoreDoc(1, 1.0f) }, 1, reader);
+  }
+
+  public void testLeastRecentlyUsedEntryIsRemoved() throws Exception
+  {
+    IndexReader reader = createReader();
+    SearchResultCache cache = new SearchResultCache(2);
+    cache.put("a", createEntry(reader));
+    cache.put("b", createEntry(reader));
+    assertNotNull(cache.get("a", reader));
+    cache.put("c", createEntry(reader));
+
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get("a", reader));
+    assertNull(cache.get("b", reader));
+    assertNotNull(cache.get("c", reader));
+    reader.close();
+  }
+
+  public void testEntryOfOtherReaderIsInvalid() throws Exception
+  {
+    IndexReader oldReader = createReader();
+    IndexReader newReader = createReader();
+    SearchResultCache cache = new SearchResultCache(10);
+    cache.put("a", createEntry(oldReader));
+    assertNull(cache.get("a", newReader));
+    assertEquals(0, cache.size());
+    oldReader.close();
+    newReader.close();
+  }
+
+  /**
+   * Searches the same query before and after the index was replaced. The
+   * matching document has another document number in the new index, so using
+   * the cached hits of the old index would give the wrong document.
+   */
+  public void testCachedHitsAreNotUsedOnNewIndex() throws Exception
+  {
+    mIndexDir = new File(System.getProperty("java.io.tmpdir"),
+      "regain_cache_test" + System.nanoTime());
+    writeIndex(new File(mIndexDir, "index"), new String[] { "old-apple", "old-pear" });
+
+    IndexConfig config = new IndexConfig("test", mIndexDir.getAbsolutePath(), null, false,
+      new String[] { "content" }, null, null, null, null, false, new SortingOption[0], false);
+    IndexConfig[] configArr = new IndexConfig[] { config };
+
+    assertEquals("old-apple", searchFirstUrl(configArr, "apple"));
+
+    // Replace the index. The apple is document 1 now.
+    writeIndex(new File(mIndexDir, "new"), new String[] { "new-pear", "new-apple" });
+    IndexSearcherManager manager = IndexSearcherManager.getInstance(config);
+    long generation = manager.getIndexGeneration();
+    IndexSearcherManager.notifyIndexUpdate(mIndexDir.getAbsolutePath());
+    for (int i = 0; (i < 200) && (manager.getIndexGeneration() == generation); i++) {
+      Thread.sleep(50);
+    }
+    assertTrue(manager.getIndexGeneration() != generation);
+
+    assertEquals("new-apple", searchFirstUrl(configArr, "apple"));
+  }
+
+  private static void writeIndex(File dir, String[] nameArr) throws Exception
+  {
+    dir.mkdirs();
+    RegainToolkit.writeToFile("english", new File(dir, "analyzerType.txt"));
+    RegainToolkit.writeToFile("", new File(dir, "stopWordList.txt"));
+    IndexWriter writer = new IndexWriter(FSDirectory.open(dir),
+      new IndexWriterConfig(RegainToolkit.getLuceneVersion(),
+        RegainToolkit.createAnalyzer("english", new String[0], new String[0], new String[0])));
+    for (int i = 0; i < nameArr.length; i++) {
+      Document doc = new Document();
+      doc.add(new Field("url", nameArr[i], Field.Store.YES, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("content", nameArr[i].replace('-', ' '), Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+  }
+
+  private static String searchFirstUrl(IndexConfig[] configArr, String query)
+    throws Exception
+  {
+    TestPageRequest request = new TestPageRequest();
+    request.mParameterMap.put("query", query);
+    SearchResultsImpl results = new SearchResultsImpl(configArr, request);
+    try {
+      assertEquals(1, results.getHitCount());
+      return results.getHitUrl(0);
+    } finally {
+      results.close();
+    }
+  }
+
+  /**
+   * A PageRequest that only provides parameters.
+   */
+  private static class TestPageRequest extends PageRequest {
+
+    private HashMap<String, String> mParameterMap = new HashMap<String, String>();
+    private HashMap<String, Object> mContextMap = new HashMap<String, Object>();
+
+    public String getParameter(String name) {
+      return mParameterMap.get(name);
+    }
+
+    public String[] getParameters(String name) {
+      String value = mParameterMap.get(name);
+      return (value == null) ? null : new String[] { value };
+    }
+
+    @SuppressWarnings("rawtypes")
+    public Enumeration getParameterNames() {
+      return Collections.enumeration(mParameterMap.keySet());
+    }
+
+    public String getHeader(String name) {
+      return null;
+    }
+
+    public long getHeaderAsDate(String name) {
+      return -1;
+    }
+
+    public Locale getLocale() {
+      return Locale.ENGLISH;
+    }
+
+    public void setContextAttribute(String name, Object value) {
+      mContextMap.put(name, value);
+    }
+
+    public Object getContextAttribute(String name) {
+      return mContextMap.get(name);
+    }
+
+    public void setSessionAttribute(String name, Object value) {
+    }
+
+    public Object getSessionAttribute(String name) {
+      return null;
+    }
+
+    public String getInitParameter(String name) {
+      return null;
+    }
+
+    public URL getResourceBaseUrl() {
+      return null;
+    }
+
+    public File getWorkingDir() {
+      return new File(".");
+    }
+
+    public void addCloseable(Closeable closeable) {
+    }
+  }
+
+}
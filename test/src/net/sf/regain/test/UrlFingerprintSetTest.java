@@ -0,0 +1,48 @@
+package net.sf.regain.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.UrlFingerprintSet;
+
+public class UrlFingerprintSetTest extends TestCase {
+
+  public void testAddAndContains()
+  {
+    UrlFingerprintSet set = new UrlFingerprintSet();
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(set.add("http://www.example.com/page" + i + ".html"));
+    }
+    assertFalse(set.add("http://www.example.com/page42.html"));
+    assertEquals(10000, set.size());
+
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(set.contains("http://www.example.com/page" + i + ".html"));
+    }
+    assertFalse(set.contains("http://www.example.com/page10000.html"));
+    assertFalse(set.contains(""));
+  }
+
+  public void testWriteAndRead() throws Exception
+  {
+    UrlFingerprintSet set = new UrlFingerprintSet();
+    set.add("http://www.example.com/a.html");
+    set.add("http://www.example.com/b.html");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    set.write(out);
+    out.close();
+
+    UrlFingerprintSet read = new UrlFingerprintSet();
+    read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(2, read.size());
+    assertTrue(read.contains("http://www.example.com/a.html"));
+    assertTrue(read.contains("http://www.example.com/b.html"));
+    assertFalse(read.contains("http://www.example.com/c.html"));
+  }
+
+}
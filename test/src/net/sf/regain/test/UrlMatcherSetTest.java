@@ -0,0 +1,76 @@
+package net.sf.regain.test;
+
+import junit.framework.TestCase;
+import net.sf.regain.crawler.config.PrefixUrlMatcher;
+import net.sf.regain.crawler.config.RegexUrlMatcher;
+import net.sf.regain.crawler.config.UrlMatcher;
+import net.sf.regain.crawler.config.UrlMatcherSet;
+
+public class UrlMatcherSetTest extends TestCase {
+
+  private static final String[] URLS = {
+    "http://www.example.com/",
+    "http://www.example.com/docs/a.html",
+    "http://www.example.com/docs/a.pdf",
+    "http://www.example.com/docs/backup/a.html",
+    "http://www.example.com/private/a.html",
+    "http://www.example.org/a.html",
+    "http://www.example.org/a.HTML",
+    "http://www.example.org/cgi-bin/x?y=1",
+    "file:///home/docs/a.txt",
+    "file:///home/docs/a.txt~",
+    "file:///home/docsold/a.txt",
+    ""
+  };
+
+  private static UrlMatcher[] createMatchers() throws Exception
+  {
+    return new UrlMatcher[] {
+      new PrefixUrlMatcher("http://www.example.com/private/", false, false),
+      new RegexUrlMatcher("http://www\\.example\\.com/docs/.*\\.pdf", false, true),
+      new PrefixUrlMatcher("http://www.example.com/docs/", true, false),
+      new RegexUrlMatcher(".*/backup/.*", false, false),
+      new RegexUrlMatcher(".*~", false, false),
+      new RegexUrlMatcher("(?i).*\\.html", true, true),
+      new RegexUrlMatcher("http://www.example.org/(cgi-bin|docs)/.*", true, true),
+      new RegexUrlMatcher("http://(www|web)\\.example\\.org/.*", false, true),
+      new PrefixUrlMatcher("file:///home/docs/", true, true),
+      new PrefixUrlMatcher("http://www.example.com/", false, false)
+    };
+  }
+
+  public void testFindFirstMatch() throws Exception
+  {
+    UrlMatcher[] matcherArr = createMatchers();
+    UrlMatcherSet set = new UrlMatcherSet(matcherArr);
+    for (int i = 0; i < URLS.length; i++) {
+      UrlMatcher expected = null;
+      for (int j = 0; j < matcherArr.length; j++) {
+        if (matcherArr[j].matches(URLS[i])) {
+          expected = matcherArr[j];
+          break;
+        }
+      }
+      assertSame(URLS[i], expected, set.findFirstMatch(URLS[i]));
+    }
+  }
+
+  public void testMatchesAny() throws Exception
+  {
+    UrlMatcher[] matcherArr = createMatchers();
+    for (int count = 0; count <= matcherArr.length; count++) {
+      // Check every suffix of the matcher list
+      UrlMatcher[] subArr = new UrlMatcher[matcherArr.length - count];
+      System.arraycopy(matcherArr, count, subArr, 0, subArr.length);
+      UrlMatcherSet set = new UrlMatcherSet(subArr);
+      for (int i = 0; i < URLS.length; i++) {
+        boolean expected = false;
+        for (int j = 0; j < subArr.length; j++) {
+          expected |= subArr[j].matches(URLS[i]);
+        }
+        assertEquals(URLS[i], expected, set.matchesAny(URLS[i]));
+      }
+    }
+  }
+
+}